@@ -0,0 +1,46 @@
+package attatrol.neural.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of the benchmark jar, runs benchmarks with the GC profiler and writes results in JSON,
+ * so results of two versions may be diffed.
+ * <p>
+ * Usage: {@code java -jar target/benchmarks.jar [include regex] [result file]},
+ * by default all benchmarks are run and results are written into {@value #DEFAULT_RESULT_FILE}.
+ * Use {@code java -cp target/benchmarks.jar org.openjdk.jmh.Main} for full JMH command line.
+ * @author attatrol
+ *
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Default path of result file
+     */
+    public static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    /**
+     * Not in use
+     */
+    private BenchmarkRunner() { }
+
+    /**
+     * Runs benchmarks.
+     * @param args optional regex of included benchmarks and optional path of result file
+     * @throws RunnerException on failure of benchmarks
+     */
+    public static void main(String[] args) throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(args.length > 1 ? args[1] : DEFAULT_RESULT_FILE)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,156 @@
+package attatrol.neural.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+
+/**
+ * Measures {@link NeuralNetwork#map(double[], double[])} and
+ * {@link NeuralNetwork#learn(double[], double[], double[])} of a fully interconnected perceptron
+ * with one hidden layer. Samples are cycled through a pool of random vectors.
+ * @author attatrol
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeuralNetworkBenchmark {
+
+    /**
+     * Number of samples in the pool
+     */
+    private static final int SAMPLE_NUMBER = 256;
+
+    /**
+     * Input vector size
+     */
+    @Param({"16", "256", "1024"})
+    private int inputVectorSize;
+
+    /**
+     * Hidden layer size
+     */
+    @Param({"64", "512"})
+    private int hiddenLayerSize;
+
+    /**
+     * Result vector size
+     */
+    @Param({"10"})
+    private int resultVectorSize;
+
+    /**
+     * Benchmarked network
+     */
+    private NeuralNetwork network;
+
+    /**
+     * Input vectors
+     */
+    private double[][] inputVectors;
+
+    /**
+     * Reference vectors
+     */
+    private double[][] references;
+
+    /**
+     * Buffer for result vector
+     */
+    private double[] resultBuffer;
+
+    /**
+     * Index of the next sample
+     */
+    private int sample;
+
+    /**
+     * Creates network and samples.
+     * @throws NeuralNetworkGenerationException on failure to create network
+     */
+    @Setup
+    public void setUp() throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(inputVectorSize, hiddenLayerSize, LayerInterconnectionDistribution.DISPERSE,
+                LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(hiddenLayerSize, resultVectorSize, LayerInterconnectionDistribution.DISPERSE,
+                LayerType.ORDINARY));
+        description.addLayer(new Layer(resultVectorSize, 1, LayerInterconnectionDistribution.DISPERSE,
+                LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(1., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.1f));
+        settings.setSeed(1L);
+        network = NeuralNetworkFactory.getNetwork(settings);
+        final Random random = new Random(1L);
+        inputVectors = new double[SAMPLE_NUMBER][inputVectorSize];
+        references = new double[SAMPLE_NUMBER][resultVectorSize];
+        for (int i = 0; i < SAMPLE_NUMBER; i++) {
+            for (int j = 0; j < inputVectorSize; j++) {
+                inputVectors[i][j] = random.nextDouble();
+            }
+            for (int j = 0; j < resultVectorSize; j++) {
+                references[i][j] = random.nextDouble();
+            }
+        }
+        resultBuffer = new double[resultVectorSize];
+    }
+
+    /**
+     * @return result vector
+     * @throws NeuralNetworkRuntimeException on internal failure
+     */
+    @Benchmark
+    public double[] map() throws NeuralNetworkRuntimeException {
+        network.map(inputVectors[nextSample()], resultBuffer);
+        return resultBuffer;
+    }
+
+    /**
+     * @return result vector
+     * @throws NeuralNetworkRuntimeException on internal failure
+     */
+    @Benchmark
+    public double[] learn() throws NeuralNetworkRuntimeException {
+        final int index = nextSample();
+        network.learn(inputVectors[index], references[index], resultBuffer);
+        return resultBuffer;
+    }
+
+    /**
+     * @return index of the next sample
+     */
+    private int nextSample() {
+        sample = (sample + 1) % SAMPLE_NUMBER;
+        return sample;
+    }
+}
@@ -0,0 +1,90 @@
+package attatrol.neural.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopology;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import attatrol.neural.topology.LayeredTopologyGenerator;
+
+/**
+ * Measures {@link LayeredTopologyGenerator#generate(LayeredTopologyDescription)} for each
+ * {@link LayerInterconnectionDistribution}. Topology has 3 layers of the same size
+ * and a surface layer of {@link #SURFACE_LAYER_SIZE} neurons, description is seeded.
+ * @author attatrol
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologyGenerationBenchmark {
+
+    /**
+     * Size of the surface layer
+     */
+    private static final int SURFACE_LAYER_SIZE = 10;
+
+    /**
+     * Distribution of connections of all layers
+     */
+    @Param({"LOCALIZED", "DISPERSE", "RANDOM"})
+    private LayerInterconnectionDistribution distribution;
+
+    /**
+     * Size of layers except the surface one
+     */
+    @Param({"1024", "16384", "131072"})
+    private int layerSize;
+
+    /**
+     * Number of children of a neuron, except for the last hidden layer
+     */
+    @Param({"16", "128"})
+    private int childPerNeuronNumber;
+
+    /**
+     * Description of generated topology
+     */
+    private LayeredTopologyDescription description;
+
+    /**
+     * Creates topology description.
+     * @throws NeuralNetworkGenerationException on invalid description
+     */
+    @Setup
+    public void setUp() throws NeuralNetworkGenerationException {
+        description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(layerSize, childPerNeuronNumber, distribution, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(layerSize, childPerNeuronNumber, distribution, LayerType.ORDINARY));
+        description.addLayer(new Layer(layerSize, SURFACE_LAYER_SIZE, distribution, LayerType.ORDINARY));
+        description.addLayer(new Layer(SURFACE_LAYER_SIZE, 1, distribution, LayerType.SURFACE));
+        description.setSeed(1L);
+    }
+
+    /**
+     * @return generated topology
+     * @throws NeuralNetworkGenerationException on failure to generate topology
+     */
+    @Benchmark
+    public LayeredTopology generate() throws NeuralNetworkGenerationException {
+        return LayeredTopologyGenerator.generate(description);
+    }
+}
@@ -0,0 +1,120 @@
+package attatrol.neural.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.network.TopologySetting;
+
+/**
+ * Measures creation (topology generation and weight initialization) and
+ * {@link NeuralNetwork#map(double[], double[])} of networks of each {@link TopologySetting} preset
+ * which has a layered topology description factory.
+ * @author attatrol
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopologySettingBenchmark {
+
+    /**
+     * Topology preset
+     */
+    @Param({"ONE_LAYER_PERCEPTRON", "TWO_LAYER_PERCEPTRON", "THREE_LAYER_PERCEPTRON",
+        "WIDE_THREE_LAYER_PERCEPTRON", "PYRAMIDAL", "PYRAMIDAL_LOCALIZED"})
+    private TopologySetting topologySetting;
+
+    /**
+     * Input vector size
+     */
+    @Param({"16", "256", "1024"})
+    private int inputVectorSize;
+
+    /**
+     * Result vector size
+     */
+    @Param({"10"})
+    private int resultVectorSize;
+
+    /**
+     * Settings of created networks
+     */
+    private NeuralNetworkSettings settings;
+
+    /**
+     * Network used by map benchmark
+     */
+    private NeuralNetwork network;
+
+    /**
+     * Input vector
+     */
+    private double[] inputVector;
+
+    /**
+     * Buffer for result vector
+     */
+    private double[] resultBuffer;
+
+    /**
+     * Creates settings, network and input vector.
+     * @throws NeuralNetworkGenerationException on failure to create network
+     */
+    @Setup
+    public void setUp() throws NeuralNetworkGenerationException {
+        settings = new NeuralNetworkSettings(inputVectorSize, resultVectorSize, 1., topologySetting,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.1f));
+        settings.setSeed(1L);
+        network = NeuralNetworkFactory.getNetwork(settings);
+        final Random random = new Random(1L);
+        inputVector = new double[inputVectorSize];
+        for (int i = 0; i < inputVectorSize; i++) {
+            inputVector[i] = random.nextDouble();
+        }
+        resultBuffer = new double[resultVectorSize];
+    }
+
+    /**
+     * @return created network
+     * @throws NeuralNetworkGenerationException on failure to create network
+     */
+    @Benchmark
+    public NeuralNetwork create() throws NeuralNetworkGenerationException {
+        return NeuralNetworkFactory.getNetwork(settings);
+    }
+
+    /**
+     * @return result vector
+     * @throws NeuralNetworkRuntimeException on internal failure
+     */
+    @Benchmark
+    public double[] map() throws NeuralNetworkRuntimeException {
+        network.map(inputVector, resultBuffer);
+        return resultBuffer;
+    }
+}
@@ -35,6 +35,13 @@ public class SigmoidFunction implements ActivationFunction {
         this.a = a;
     }
 
+    /**
+     * @return flatness ratio
+     */
+    public float getFlatnessRatio() {
+        return a;
+    }
+
     /**
      * {@inheritDoc}
      * Calculates value of the sigmoid function.
@@ -75,6 +75,16 @@ public class ActivationFunctionAnalyzer implements AnalyticalProcessor{
         activationFunction.checkValidity();
     }
 
+    /**
+     * Calculates result of a single neuron from its linear combination,
+     * the same way as {@link #process(NeuralNetworkState, LearningProcessor)} does.
+     * @param linearCombo linear combination
+     * @return result of the neuron
+     */
+    public double activate(double linearCombo) {
+        return getResult(linearCombo);
+    }
+
     /**
      * A hook for a {@link StochasticActivationFunctionAnalyzer}.
      * Very possible that this hook will be used to produce other kinds of analyzers,
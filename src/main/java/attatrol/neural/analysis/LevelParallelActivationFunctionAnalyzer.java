@@ -0,0 +1,159 @@
+package attatrol.neural.analysis;
+
+import java.util.stream.IntStream;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.topology.LayeredTopologyGenerator;
+import attatrol.neural.topology.TraverseLevels;
+
+/**
+ * Activation function analyzer which calculates neurons level by level (see {@link TraverseLevels}),
+ * neurons of a large level are split into chunks which are calculated concurrently.
+ * Each neuron is calculated exactly as {@link ActivationFunctionAnalyzer} does,
+ * so results are the same.
+ * <p>
+ * Levels are found once per network graph and cached, graph is identified by its parents array,
+ * so learning processors which modify the graph in place are not supported.
+ * @author attatrol
+ *
+ */
+public class LevelParallelActivationFunctionAnalyzer extends ActivationFunctionAnalyzer {
+
+    /**
+     * Minimal number of connections coming into a level to calculate the level concurrently
+     */
+    public static final int PARALLEL_LEVEL_MIN_CONNECTIONS = 1 << 14;
+
+    /**
+     * Number of chunks per processor, more chunks balance uneven fan-in better
+     */
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -1822537093384318467L;
+
+    /**
+     * Levels of the last processed graph
+     */
+    private transient volatile LevelCache cache;
+
+    /**
+     * Default ctor.
+     * @param activationFunction activation function
+     */
+    public LevelParallelActivationFunctionAnalyzer(ActivationFunction activationFunction) {
+        super(activationFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Traverses over levels, neurons of large levels are calculated concurrently.
+     */
+    @Override
+    public void process(NeuralNetworkState state, LearningProcessor learner) {
+        final LevelCache levelCache = getLevelCache(state);
+        final int[] traverseOrder = levelCache.levels.getForwardTraverseNeuronsOrder();
+        final int[] levelFirstIndex = levelCache.levels.getLevelFirstIndex();
+        final int processorNumber = Runtime.getRuntime().availableProcessors();
+        for (int level = 0; level < levelCache.levels.getLevelNumber(); level++) {
+            final int first = levelFirstIndex[level];
+            final int last = levelFirstIndex[level + 1];
+            final int chunkNumber = Math.min(last - first, processorNumber * CHUNKS_PER_PROCESSOR);
+            if (processorNumber == 1 || chunkNumber < 2
+                    || levelCache.levelConnectionNumber[level] < PARALLEL_LEVEL_MIN_CONNECTIONS) {
+                processNeurons(state, traverseOrder, first, last);
+            }
+            else {
+                IntStream.range(0, chunkNumber).parallel().forEach(c -> processNeurons(state, traverseOrder,
+                        first + (int) ((long) (last - first) * c / chunkNumber),
+                        first + (int) ((long) (last - first) * (c + 1) / chunkNumber)));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LevelParallelActivationFunctionAnalyzer [activationFunction=" + activationFunction + "]";
+    }
+
+    /**
+     * Calculates linear combinations and results of a part of traverse order.
+     * @param state state of some neural network
+     * @param traverseOrder traverse order grouped by levels
+     * @param first first index in traverse order, inclusive
+     * @param last last index in traverse order, exclusive
+     */
+    private void processNeurons(NeuralNetworkState state, int[] traverseOrder, int first, int last) {
+        final float[][] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        final int[][] parents = state.getParents();
+        final double[] linearCombination = state.getLinearCombination();
+        final double[] result = state.getResult();
+        for (int i = first; i < last; i++) {
+            final int currentNeuronIndex = traverseOrder[i];
+            double linearCombo = bias[currentNeuronIndex];
+            for (int j = 0; j < parents[currentNeuronIndex].length; j++) {
+                linearCombo += weight[currentNeuronIndex][j]
+                        * result[parents[currentNeuronIndex][j]];
+            }
+            linearCombination[currentNeuronIndex] = linearCombo;
+            result[currentNeuronIndex] = getResult(linearCombo);
+        }
+    }
+
+    /**
+     * Returns cached levels of the graph of the state, finds them if graph has changed.
+     * @param state state of some neural network
+     * @return levels of the graph
+     */
+    private LevelCache getLevelCache(NeuralNetworkState state) {
+        LevelCache levelCache = cache;
+        if (levelCache == null || levelCache.parents != state.getParents()) {
+            final int[][] parents = state.getParents();
+            final TraverseLevels levels;
+            try {
+                levels = LayeredTopologyGenerator.getTraverseLevels(parents, state.getChildren(),
+                        state.getInputVectorSize());
+            }
+            catch (NeuralNetworkGenerationException e) {
+                // network graph has a valid traverse order, so it has no cycles
+                throw new IllegalStateException(e);
+            }
+            levelCache = new LevelCache(parents, levels, levels.getLevelConnectionNumber(parents));
+            cache = levelCache;
+        }
+        return levelCache;
+    }
+
+    /**
+     * Levels of some network graph.
+     */
+    private static final class LevelCache {
+
+        /**
+         * Parents array of the graph
+         */
+        private final int[][] parents;
+
+        /**
+         * Levels of the graph
+         */
+        private final TraverseLevels levels;
+
+        /**
+         * Number of connections coming into neurons of each level
+         */
+        private final long[] levelConnectionNumber;
+
+        LevelCache(int[][] parents, TraverseLevels levels, long[] levelConnectionNumber) {
+            this.parents = parents;
+            this.levels = levels;
+            this.levelConnectionNumber = levelConnectionNumber;
+        }
+    }
+}
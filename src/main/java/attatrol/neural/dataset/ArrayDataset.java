@@ -0,0 +1,70 @@
+package attatrol.neural.dataset;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+
+/**
+ * Dataset that holds samples in arrays on heap. Arrays are not copied.
+ * @author attatrol
+ *
+ */
+public class ArrayDataset implements Dataset {
+
+    private final double[][] inputVectors;
+
+    private final double[][] references;
+
+    private final int inputVectorSize;
+
+    private final int resultVectorSize;
+
+    /**
+     * Default ctor.
+     * @param inputVectors input vectors of samples
+     * @param references reference vectors of samples, same order as input vectors
+     * @throws NeuralNetworkRuntimeException if dataset is empty or vectors have different sizes
+     */
+    public ArrayDataset(double[][] inputVectors, double[][] references) throws NeuralNetworkRuntimeException {
+        if (inputVectors.length == 0 || inputVectors.length != references.length) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Dataset has %d input vectors and %d reference vectors",
+                            inputVectors.length, references.length));
+        }
+        this.inputVectorSize = inputVectors[0].length;
+        this.resultVectorSize = references[0].length;
+        for (int i = 0; i < inputVectors.length; i++) {
+            if (inputVectors[i].length != inputVectorSize || references[i].length != resultVectorSize) {
+                throw new NeuralNetworkRuntimeException(String.format("Sample %d has vectors of sizes %d and %d,"
+                        + " expected %d and %d", i, inputVectors[i].length, references[i].length,
+                        inputVectorSize, resultVectorSize));
+            }
+        }
+        this.inputVectors = inputVectors;
+        this.references = references;
+    }
+
+    @Override
+    public int size() {
+        return inputVectors.length;
+    }
+
+    @Override
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    @Override
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    @Override
+    public void getInputVector(int index, double[] buffer) {
+        System.arraycopy(inputVectors[index], 0, buffer, 0, inputVectorSize);
+    }
+
+    @Override
+    public void getReference(int index, double[] buffer) {
+        System.arraycopy(references[index], 0, buffer, 0, resultVectorSize);
+    }
+
+}
@@ -0,0 +1,29 @@
+package attatrol.neural.dataset;
+
+import java.io.IOException;
+
+/**
+ * Source of samples for {@link PipelinedBatchSource}, e.g. a file parser.
+ * Implementations used with several loader threads must be thread safe.
+ * @author attatrol
+ *
+ */
+public interface BatchLoader {
+
+    /**
+     * Fills batch with the next samples and sets its size.
+     * @param batch preallocated batch
+     * @return false if there are no more samples (batch is ignored then)
+     * @throws IOException on failure to load samples
+     */
+    boolean fill(VectorBatch batch) throws IOException;
+
+    /**
+     * Hints that the next fill will load about the given number of samples, so they may be read
+     * in advance. Called by loader threads after a filled batch is passed on. Does nothing by default.
+     * @param sampleNumber number of samples
+     */
+    default void prefetch(int sampleNumber) {
+    }
+
+}
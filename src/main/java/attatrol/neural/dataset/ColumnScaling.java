@@ -0,0 +1,134 @@
+package attatrol.neural.dataset;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.utils.Utils;
+
+/**
+ * Min-max scaling of raw sample columns: input columns are mapped linearly from [min, max]
+ * into [0, input vector amplitude], reference columns into [0, 1]. Values out of the range are clamped,
+ * constant columns are mapped to 0.
+ * Immutable, see {@link CsvParser#fitScaling(double)} for fitting.
+ * @author attatrol
+ *
+ */
+public final class ColumnScaling {
+
+    /**
+     * Minimal value of each column, input columns first
+     */
+    private final double[] min;
+
+    /**
+     * Maximal value of each column, input columns first
+     */
+    private final double[] max;
+
+    /**
+     * Input vector size
+     */
+    private final int inputVectorSize;
+
+    /**
+     * Amplitude of input vector coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * Default ctor.
+     * @param min minimal value of each column
+     * @param max maximal value of each column
+     * @param inputVectorSize input vector size
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     */
+    private ColumnScaling(double[] min, double[] max, int inputVectorSize, double inputVectorAmplitude) {
+        this.min = min;
+        this.max = max;
+        this.inputVectorSize = inputVectorSize;
+        this.inputVectorAmplitude = inputVectorAmplitude;
+    }
+
+    /**
+     * Factory method for column scaling, checks if parameters are valid.
+     * @param min minimal value of each column, input columns first, array is copied
+     * @param max maximal value of each column, input columns first, array is copied
+     * @param inputVectorSize input vector size, the rest of columns are reference ones
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @return column scaling
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static ColumnScaling getColumnScaling(double[] min, double[] max, int inputVectorSize,
+            double inputVectorAmplitude) throws NeuralNetworkGenerationException {
+        if (min.length != max.length || inputVectorSize < 1 || inputVectorSize >= min.length) {
+            throw new NeuralNetworkGenerationException("Column ranges don't match vector sizes");
+        }
+        if (!(inputVectorAmplitude > 0.) || Double.isInfinite(inputVectorAmplitude)) {
+            throw new NeuralNetworkGenerationException("Input vector amplitude must be a positive number");
+        }
+        return new ColumnScaling(Utils.getCopy(min), Utils.getCopy(max), inputVectorSize, inputVectorAmplitude);
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    /**
+     * @return result vector size
+     */
+    public int getResultVectorSize() {
+        return min.length - inputVectorSize;
+    }
+
+    /**
+     * @return amplitude of input vector coordinates
+     */
+    public double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * @param column column index, input columns first
+     * @return minimal value of the column
+     */
+    public double getMin(int column) {
+        return min[column];
+    }
+
+    /**
+     * @param column column index, input columns first
+     * @return maximal value of the column
+     */
+    public double getMax(int column) {
+        return max[column];
+    }
+
+    /**
+     * Scales raw sample in place.
+     * @param inputVector raw input vector
+     * @param reference raw reference vector
+     */
+    public void scale(double[] inputVector, double[] reference) {
+        for (int i = 0; i < inputVectorSize; i++) {
+            inputVector[i] = scale(inputVector[i], i, inputVectorAmplitude);
+        }
+        for (int i = 0; i < reference.length; i++) {
+            reference[i] = scale(reference[i], inputVectorSize + i, 1.);
+        }
+    }
+
+    /**
+     * @param value raw value
+     * @param column column index
+     * @param amplitude upper bound of the target range
+     * @return scaled value
+     */
+    private double scale(double value, int column, double amplitude) {
+        final double range = max[column] - min[column];
+        if (!(range > 0.)) {
+            return 0.;
+        }
+        return Math.max(0., Math.min(amplitude, (value - min[column]) / range * amplitude));
+    }
+}
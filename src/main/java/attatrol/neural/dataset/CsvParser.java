@@ -0,0 +1,668 @@
+package attatrol.neural.dataset;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+
+/**
+ * Parallel parser of delimited text files of samples: each line holds input vector coordinates
+ * followed by reference vector coordinates, empty lines are skipped, the first line may be a header.
+ * <p>
+ * File is split into chunks of {@link #CHUNK_SIZE} bytes, a chunk owns the lines which start in it,
+ * so chunks are parsed independently by threads of the common pool. Chunks are memory-mapped, numbers
+ * are parsed right from the mapping: decimal numbers with at most 15 significant digits and small
+ * exponents are converted exactly by a single multiplication or division, other fields are passed to
+ * {@link Double#parseDouble(String)}.
+ * <p>
+ * Raw values are scaled with {@link ColumnScaling}, which is fitted by a parallel pass over the file,
+ * see {@link #fitScaling(double)}. Scaled samples are either written into a dataset file by
+ * {@link #convert(Path, ColumnScaling)} in file order, or streamed into training by a loader
+ * of {@link #getBatchLoader(ColumnScaling)}. Instances are immutable and may be shared between threads.
+ * @author attatrol
+ *
+ */
+public final class CsvParser {
+
+    /**
+     * Size of a chunk, in bytes
+     */
+    public static final int CHUNK_SIZE = 1 << 23;
+
+    /**
+     * Maximal length of a line, in bytes
+     */
+    public static final int MAX_LINE_LENGTH = 1 << 20;
+
+    /**
+     * Exact powers of ten
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /**
+     * Largest mantissa which may take one more digit staying exact in double
+     */
+    private static final long MANTISSA_LIMIT = ((1L << 53) - 9) / 10;
+
+    /**
+     * Largest exponent parsed on the fast path
+     */
+    private static final int EXPONENT_LIMIT = 400;
+
+    /**
+     * File path
+     */
+    private final Path path;
+
+    /**
+     * File size
+     */
+    private final long fileSize;
+
+    /**
+     * Input vector size
+     */
+    private final int inputVectorSize;
+
+    /**
+     * Result vector size
+     */
+    private final int resultVectorSize;
+
+    /**
+     * Field delimiter
+     */
+    private final byte delimiter;
+
+    /**
+     * If true, the first line is skipped
+     */
+    private final boolean header;
+
+    /**
+     * Default ctor.
+     * @param path file path
+     * @param fileSize file size
+     * @param inputVectorSize input vector size
+     * @param resultVectorSize result vector size
+     * @param delimiter field delimiter
+     * @param header if true, the first line is skipped
+     */
+    private CsvParser(Path path, long fileSize, int inputVectorSize, int resultVectorSize, byte delimiter,
+            boolean header) {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.inputVectorSize = inputVectorSize;
+        this.resultVectorSize = resultVectorSize;
+        this.delimiter = delimiter;
+        this.header = header;
+    }
+
+    /**
+     * Factory method for parser, checks if parameters are valid.
+     * @param path file path
+     * @param inputVectorSize input vector size, the first columns
+     * @param resultVectorSize result vector size, the last columns
+     * @param delimiter field delimiter, an ASCII character which doesn't occur in numbers
+     * @param header if true, the first line is skipped
+     * @return parser
+     * @throws IOException on failure to read file size
+     * @throws NeuralNetworkGenerationException on invalid vector sizes or delimiter
+     */
+    public static CsvParser getCsvParser(Path path, int inputVectorSize, int resultVectorSize, char delimiter,
+            boolean header) throws IOException, NeuralNetworkGenerationException {
+        if (inputVectorSize < 1 || resultVectorSize < 1) {
+            throw new NeuralNetworkGenerationException("Vector sizes must be positive integers");
+        }
+        if (delimiter > 127 || delimiter == '\n' || delimiter == '\r' || Character.isLetterOrDigit(delimiter)
+                || delimiter == '.' || delimiter == '-' || delimiter == '+') {
+            throw new NeuralNetworkGenerationException("Invalid delimiter " + delimiter);
+        }
+        return new CsvParser(path, Files.size(path), inputVectorSize, resultVectorSize, (byte) delimiter, header);
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    /**
+     * @return result vector size
+     */
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    /**
+     * @return number of chunks, at least one
+     */
+    public int getChunkNumber() {
+        return (int) Math.max(1, (fileSize + CHUNK_SIZE - 1) / CHUNK_SIZE);
+    }
+
+    /**
+     * Finds range of each column by a parallel pass over the file.
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @return column scaling
+     * @throws IOException on failure to read file or on invalid content
+     * @throws NeuralNetworkGenerationException on invalid amplitude
+     */
+    public ColumnScaling fitScaling(double inputVectorAmplitude)
+            throws IOException, NeuralNetworkGenerationException {
+        final int columnNumber = inputVectorSize + resultVectorSize;
+        final double[][] range;
+        try {
+            range = IntStream.range(0, getChunkNumber()).parallel().mapToObj(this::getChunkRange)
+                    .reduce(CsvParser::mergeRanges).get();
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (int i = 0; i < columnNumber; i++) {
+            // no samples
+            if (range[0][i] > range[1][i]) {
+                range[0][i] = 0.;
+                range[1][i] = 0.;
+            }
+        }
+        return ColumnScaling.getColumnScaling(range[0], range[1], inputVectorSize, inputVectorAmplitude);
+    }
+
+    /**
+     * Parses the whole file and writes scaled samples into a dataset file (see {@link DatasetFile})
+     * in file order. Chunks are parsed in parallel by waves, so memory use is bounded.
+     * @param target path of dataset file
+     * @param scaling column scaling, its amplitude is written into the file
+     * @return number of samples
+     * @throws IOException on failure to read or to write files or on invalid content
+     * @throws NeuralNetworkGenerationException if scaling doesn't match vector sizes
+     */
+    public long convert(Path target, ColumnScaling scaling) throws IOException, NeuralNetworkGenerationException {
+        checkScaling(scaling);
+        final int chunkNumber = getChunkNumber();
+        final int wave = 2 * Runtime.getRuntime().availableProcessors();
+        final double[] input = new double[inputVectorSize];
+        final double[] reference = new double[resultVectorSize];
+        try (DatasetFileWriter writer = DatasetFileWriter.getDatasetFileWriter(target, inputVectorSize,
+                resultVectorSize, scaling.getInputVectorAmplitude())) {
+            for (int first = 0; first < chunkNumber; first += wave) {
+                final ParsedChunk[] chunks;
+                try {
+                    chunks = IntStream.range(first, Math.min(chunkNumber, first + wave)).parallel()
+                            .mapToObj(chunk -> parseChunk(chunk, scaling)).toArray(ParsedChunk[]::new);
+                }
+                catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                for (ParsedChunk chunk : chunks) {
+                    for (int i = 0; i < chunk.size; i++) {
+                        final int row = i * (inputVectorSize + resultVectorSize);
+                        System.arraycopy(chunk.values, row, input, 0, inputVectorSize);
+                        System.arraycopy(chunk.values, row + inputVectorSize, reference, 0, resultVectorSize);
+                        writer.append(input, reference);
+                    }
+                }
+            }
+            writer.commit();
+            return writer.getSampleNumber();
+        }
+        catch (NeuralNetworkRuntimeException e) {
+            // vectors always have sizes of the writer
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates a loader which streams samples into a {@link PipelinedBatchSource}. Loader is thread safe:
+     * each loader thread claims a whole chunk at a time, so batches of several threads go in arbitrary order.
+     * The loader reads the file once.
+     * @param scaling column scaling, null to keep raw values
+     * @return batch loader
+     * @throws NeuralNetworkGenerationException if scaling doesn't match vector sizes
+     */
+    public BatchLoader getBatchLoader(ColumnScaling scaling) throws NeuralNetworkGenerationException {
+        if (scaling != null) {
+            checkScaling(scaling);
+        }
+        return new StreamLoader(scaling);
+    }
+
+    /**
+     * @param scaling column scaling
+     * @throws NeuralNetworkGenerationException if scaling doesn't match vector sizes
+     */
+    private void checkScaling(ColumnScaling scaling) throws NeuralNetworkGenerationException {
+        if (scaling.getInputVectorSize() != inputVectorSize || scaling.getResultVectorSize() != resultVectorSize) {
+            throw new NeuralNetworkGenerationException("Column scaling doesn't match vector sizes");
+        }
+    }
+
+    /**
+     * Finds range of each column in a chunk.
+     * @param chunk chunk index
+     * @return minimal values and maximal values of columns
+     */
+    private double[][] getChunkRange(int chunk) {
+        final double[] input = new double[inputVectorSize];
+        final double[] reference = new double[resultVectorSize];
+        final double[] min = new double[inputVectorSize + resultVectorSize];
+        final double[] max = new double[min.length];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        try {
+            final ChunkReader reader = new ChunkReader(chunk);
+            while (reader.next(input, reference)) {
+                for (int i = 0; i < min.length; i++) {
+                    final double value = i < inputVectorSize ? input[i] : reference[i - inputVectorSize];
+                    if (value < min[i]) {
+                        min[i] = value;
+                    }
+                    if (value > max[i]) {
+                        max[i] = value;
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new double[][] {min, max};
+    }
+
+    /**
+     * @param first ranges of columns
+     * @param second ranges of columns
+     * @return union of ranges, stored into the first argument
+     */
+    private static double[][] mergeRanges(double[][] first, double[][] second) {
+        for (int i = 0; i < first[0].length; i++) {
+            first[0][i] = Math.min(first[0][i], second[0][i]);
+            first[1][i] = Math.max(first[1][i], second[1][i]);
+        }
+        return first;
+    }
+
+    /**
+     * Parses and scales all samples of a chunk.
+     * @param chunk chunk index
+     * @param scaling column scaling
+     * @return parsed samples
+     */
+    private ParsedChunk parseChunk(int chunk, ColumnScaling scaling) {
+        final double[] input = new double[inputVectorSize];
+        final double[] reference = new double[resultVectorSize];
+        final int rowSize = inputVectorSize + resultVectorSize;
+        final ParsedChunk parsed = new ParsedChunk(rowSize);
+        try {
+            final ChunkReader reader = new ChunkReader(chunk);
+            while (reader.next(input, reference)) {
+                scaling.scale(input, reference);
+                if ((parsed.size + 1) * rowSize > parsed.values.length) {
+                    parsed.values = Arrays.copyOf(parsed.values, parsed.values.length * 2);
+                }
+                System.arraycopy(input, 0, parsed.values, parsed.size * rowSize, inputVectorSize);
+                System.arraycopy(reference, 0, parsed.values, parsed.size * rowSize + inputVectorSize,
+                        resultVectorSize);
+                parsed.size++;
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return parsed;
+    }
+
+    /**
+     * Parses a number, see the class description.
+     * @param buffer buffer
+     * @param from first byte of the number, inclusive
+     * @param to last byte of the number, exclusive
+     * @param offset position of the buffer in file, for error messages
+     * @return value
+     * @throws IOException on invalid number
+     */
+    private static double parseNumber(ByteBuffer buffer, int from, int to, long offset) throws IOException {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int exponent = 0;
+        final int integerStart = i;
+        for (; i < to; i++) {
+            final int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (mantissa > MANTISSA_LIMIT) {
+                return parseSlow(buffer, from, to, offset);
+            }
+            mantissa = mantissa * 10 + digit;
+        }
+        int digitNumber = i - integerStart;
+        if (i < to && buffer.get(i) == '.') {
+            i++;
+            final int fractionStart = i;
+            for (; i < to; i++) {
+                final int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                if (mantissa > MANTISSA_LIMIT) {
+                    return parseSlow(buffer, from, to, offset);
+                }
+                mantissa = mantissa * 10 + digit;
+                exponent--;
+            }
+            digitNumber += i - fractionStart;
+        }
+        if (digitNumber == 0) {
+            return parseSlow(buffer, from, to, offset);
+        }
+        if (i < to && (buffer.get(i) == 'e' || buffer.get(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negativeExponent = buffer.get(i) == '-';
+                i++;
+            }
+            final int exponentStart = i;
+            int value = 0;
+            for (; i < to; i++) {
+                final int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9 || value > EXPONENT_LIMIT) {
+                    return parseSlow(buffer, from, to, offset);
+                }
+                value = value * 10 + digit;
+            }
+            if (i == exponentStart) {
+                return parseSlow(buffer, from, to, offset);
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i != to) {
+            return parseSlow(buffer, from, to, offset);
+        }
+        if (mantissa == 0) {
+            return negative ? -0. : 0.;
+        }
+        if (exponent < -22 || exponent > 22) {
+            return parseSlow(buffer, from, to, offset);
+        }
+        // both operands are exact, so the single rounding is correct
+        final double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a number by {@link Double#parseDouble(String)}.
+     * @param buffer buffer
+     * @param from first byte of the number, inclusive
+     * @param to last byte of the number, exclusive
+     * @param offset position of the buffer in file, for error messages
+     * @return value
+     * @throws IOException on invalid number
+     */
+    private static double parseSlow(ByteBuffer buffer, int from, int to, long offset) throws IOException {
+        final byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(from + i);
+        }
+        final String field = new String(bytes, StandardCharsets.ISO_8859_1);
+        try {
+            return Double.parseDouble(field);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException(String.format("Invalid number \"%s\" at byte %d", field, offset + from), e);
+        }
+    }
+
+    /**
+     * @param b byte
+     * @return true if the byte is a space, a tab or a carriage return
+     */
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Samples of a chunk, rows of input and reference vector coordinates.
+     */
+    private static final class ParsedChunk {
+
+        /**
+         * Rows of coordinates
+         */
+        private double[] values;
+
+        /**
+         * Number of rows
+         */
+        private int size;
+
+        /**
+         * Default ctor.
+         * @param rowSize row size
+         */
+        private ParsedChunk(int rowSize) {
+            values = new double[rowSize * 1024];
+        }
+    }
+
+    /**
+     * Sequential reader of lines owned by a chunk.
+     */
+    private final class ChunkReader {
+
+        /**
+         * Mapping of the chunk and of the tail of its last line
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Position of the mapping in file
+         */
+        private final long offset;
+
+        /**
+         * Position in mapping after the chunk, lines which start there belong to the next chunk
+         */
+        private final int end;
+
+        /**
+         * True if mapping reaches end of file
+         */
+        private final boolean last;
+
+        /**
+         * Start of the next line in mapping
+         */
+        private int position;
+
+        /**
+         * Default ctor, maps the chunk and finds its first line.
+         * @param chunk chunk index
+         * @throws IOException on failure to map file
+         */
+        private ChunkReader(int chunk) throws IOException {
+            final long start = (long) chunk * CHUNK_SIZE;
+            final long chunkEnd = Math.min(fileSize, start + CHUNK_SIZE);
+            // one byte before chunk tells if chunk starts with a line
+            offset = Math.max(0, start - 1);
+            final long mappingEnd = Math.min(fileSize, chunkEnd + MAX_LINE_LENGTH);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, mappingEnd - offset);
+            }
+            end = (int) (chunkEnd - offset);
+            last = mappingEnd == fileSize;
+            position = (int) (start - offset);
+            if (start > 0) {
+                while (position < end && buffer.get(position - 1) != '\n') {
+                    position++;
+                }
+            }
+            else if (header) {
+                position = findLineEnd(0) + 1;
+            }
+        }
+
+        /**
+         * Parses the next line of the chunk.
+         * @param input buffer for input vector
+         * @param reference buffer for reference vector
+         * @return false if there are no more lines
+         * @throws IOException on invalid line
+         */
+        private boolean next(double[] input, double[] reference) throws IOException {
+            final int limit = buffer.limit();
+            while (position < end) {
+                int p = position;
+                while (p < limit && isBlank(buffer.get(p))) {
+                    p++;
+                }
+                // blank line
+                if (p < limit && buffer.get(p) == '\n' || p == limit && last) {
+                    position = p + 1;
+                    continue;
+                }
+                p = position;
+                final int columnNumber = input.length + reference.length;
+                for (int column = 0; column < columnNumber; column++) {
+                    final int fieldStart = p;
+                    byte b = 0;
+                    while (p < limit && (b = buffer.get(p)) != delimiter && b != '\n') {
+                        p++;
+                    }
+                    if (p == limit && !last) {
+                        throw new IOException(String.format("Line at byte %d of %s is longer than %d bytes",
+                                offset + position, path, MAX_LINE_LENGTH));
+                    }
+                    final boolean lineEnd = p == limit || b == '\n';
+                    if (lineEnd != (column == columnNumber - 1)) {
+                        throw new IOException(String.format("Line at byte %d of %s doesn't have %d columns",
+                                offset + position, path, columnNumber));
+                    }
+                    final double value = parseField(fieldStart, p);
+                    if (column < input.length) {
+                        input[column] = value;
+                    }
+                    else {
+                        reference[column - input.length] = value;
+                    }
+                    p++;
+                }
+                position = p;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Parses a field, trims spaces, tabs and carriage returns.
+         * @param from first byte of the field, inclusive
+         * @param to last byte of the field, exclusive
+         * @return value
+         * @throws IOException on invalid number
+         */
+        private double parseField(int from, int to) throws IOException {
+            int first = from;
+            int last = to;
+            while (first < last && isBlank(buffer.get(first))) {
+                first++;
+            }
+            while (last > first && isBlank(buffer.get(last - 1))) {
+                last--;
+            }
+            return parseNumber(buffer, first, last, offset);
+        }
+
+        /**
+         * @param from position in mapping
+         * @return position of the end of line, or end of mapping
+         * @throws IOException if the line is longer than the mapping
+         */
+        private int findLineEnd(int from) throws IOException {
+            int p = from;
+            while (p < buffer.limit() && buffer.get(p) != '\n') {
+                p++;
+            }
+            if (p == buffer.limit() && !last) {
+                throw new IOException(String.format("Line at byte %d of %s is longer than %d bytes",
+                        offset + from, path, MAX_LINE_LENGTH));
+            }
+            return p;
+        }
+    }
+
+    /**
+     * Thread safe loader of scaled samples, each thread reads chunks it claims.
+     */
+    private final class StreamLoader implements BatchLoader {
+
+        /**
+         * Column scaling, may be null
+         */
+        private final ColumnScaling scaling;
+
+        /**
+         * Index of the next unclaimed chunk
+         */
+        private final AtomicInteger nextChunk = new AtomicInteger();
+
+        /**
+         * Reader of the chunk claimed by the thread
+         */
+        private final ThreadLocal<ChunkReader> reader = new ThreadLocal<>();
+
+        /**
+         * Default ctor.
+         * @param scaling column scaling, may be null
+         */
+        private StreamLoader(ColumnScaling scaling) {
+            this.scaling = scaling;
+        }
+
+        @Override
+        public boolean fill(VectorBatch batch) throws IOException {
+            int size = 0;
+            while (size < batch.getCapacity()) {
+                final ChunkReader current = reader.get();
+                final double[] input = batch.getInputVectors()[size];
+                final double[] reference = batch.getReferences()[size];
+                if (current != null && current.next(input, reference)) {
+                    if (scaling != null) {
+                        scaling.scale(input, reference);
+                    }
+                    size++;
+                }
+                else {
+                    final int chunk = nextChunk.getAndIncrement();
+                    if (chunk >= getChunkNumber()) {
+                        reader.remove();
+                        break;
+                    }
+                    reader.set(new ChunkReader(chunk));
+                }
+            }
+            batch.setSize(size);
+            return size > 0;
+        }
+    }
+}
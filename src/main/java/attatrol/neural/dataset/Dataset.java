@@ -0,0 +1,65 @@
+package attatrol.neural.dataset;
+
+/**
+ * Abstract set of samples for learning and testing of neural networks.
+ * Each sample consists of an input vector and a reference result vector.
+ * <p>
+ * Samples are copied into buffers provided by caller, thus implementations
+ * are free to keep data in any form (arrays, files, memory mapped buffers)
+ * and iteration over a dataset does not allocate memory per sample.
+ * Implementations must allow concurrent reads.
+ * @author attatrol
+ *
+ */
+public interface Dataset {
+
+    /**
+     * @return number of samples
+     */
+    int size();
+
+    /**
+     * @return cardinality of input vectors
+     */
+    int getInputVectorSize();
+
+    /**
+     * @return cardinality of reference vectors
+     */
+    int getResultVectorSize();
+
+    /**
+     * Copies input vector of a sample into buffer.
+     * @param index index of the sample
+     * @param buffer buffer of input vector size
+     */
+    void getInputVector(int index, double[] buffer);
+
+    /**
+     * Copies reference vector of a sample into buffer.
+     * @param index index of the sample
+     * @param buffer buffer of result vector size
+     */
+    void getReference(int index, double[] buffer);
+
+    /**
+     * Tells if coordinates of all input vectors are known to lie in [0, inputVectorAmplitude],
+     * so networks may skip their checks, see {@link attatrol.neural.network.NeuralNetwork#learnValidated(double[],
+     * double[], double[])}.
+     * @param inputVectorAmplitude amplitude of input vector coordinates of a network
+     * @return true if dataset is validated for the amplitude, false if unknown
+     */
+    default boolean isValidated(double inputVectorAmplitude) {
+        return false;
+    }
+
+    /**
+     * Hints that samples of the range will be read soon, implementations which keep data outside
+     * of the heap may load it in advance. Does nothing by default.
+     * @param fromIndex first index of the range, inclusive
+     * @param toIndex last index of the range, exclusive
+     */
+    default void prefetch(int fromIndex, int toIndex) {
+    }
+
+}
@@ -0,0 +1,69 @@
+package attatrol.neural.dataset;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads batches from a dataset, samples are taken in order of an index array.
+ * Thread safe, each sample is loaded exactly once. In natural order samples of the next fill
+ * are prefetched on request (see {@link Dataset#prefetch(int, int)}).
+ * @author attatrol
+ *
+ */
+public class DatasetBatchLoader implements BatchLoader {
+
+    private final Dataset dataset;
+
+    /**
+     * Order of samples, null for natural order
+     */
+    private final int[] order;
+
+    /**
+     * Index of the next sample to load
+     */
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    /**
+     * Ctor for natural order of samples.
+     * @param dataset dataset
+     */
+    public DatasetBatchLoader(Dataset dataset) {
+        this(dataset, null);
+    }
+
+    /**
+     * Ctor for arbitrary order of samples.
+     * @param dataset dataset
+     * @param order indexes of samples in order of loading, array is not copied
+     */
+    public DatasetBatchLoader(Dataset dataset, int[] order) {
+        this.dataset = dataset;
+        this.order = order;
+    }
+
+    @Override
+    public boolean fill(VectorBatch batch) {
+        final int total = order == null ? dataset.size() : order.length;
+        final int from = cursor.getAndAdd(batch.getCapacity());
+        if (from >= total) {
+            return false;
+        }
+        final int size = Math.min(batch.getCapacity(), total - from);
+        for (int i = 0; i < size; i++) {
+            final int index = order == null ? from + i : order[from + i];
+            dataset.getInputVector(index, batch.getInputVectors()[i]);
+            dataset.getReference(index, batch.getReferences()[i]);
+        }
+        batch.setSize(size);
+        return true;
+    }
+
+    @Override
+    public void prefetch(int sampleNumber) {
+        final int from = cursor.get();
+        if (order == null && from < dataset.size()) {
+            dataset.prefetch(from, (int) Math.min(dataset.size(), (long) from + sampleNumber));
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package attatrol.neural.dataset;
+
+import java.util.stream.IntStream;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Evaluates average value of error function of a neural network on a dataset.
+ * Dataset is divided into shards which are evaluated in parallel,
+ * each shard has its own result buffers and shares weights with the others.
+ * Analytical processor must be safe to use from several threads at once
+ * (activation function analyzers are).
+ * @author attatrol
+ *
+ */
+public final class DatasetEvaluator {
+
+    /**
+     * Not in use
+     */
+    private DatasetEvaluator() { }
+
+    /**
+     * Evaluates average error of a network on a dataset.
+     * Deep copy of the network state is evaluated, so network may be used meanwhile.
+     * @param network neural network
+     * @param errorFunction error function
+     * @param dataset dataset
+     * @param shardNumber number of parallel shards
+     * @return average value of error function, NaN on empty dataset
+     * @throws NeuralNetworkRuntimeException if dataset doesn't fit the network
+     * or if its input vector coordinates are out of bounds
+     */
+    public static double getAverageError(NeuralNetwork network, ErrorFunction errorFunction,
+            Dataset dataset, int shardNumber) throws NeuralNetworkRuntimeException {
+        return getAverageError(network.getNetworkStateCopy(), network.getAnalythicalProcessor(),
+                network.getLearningProcessor(), errorFunction, dataset, shardNumber);
+    }
+
+    /**
+     * Evaluates average error of a network state on a dataset.
+     * Weights, biases and topology of the state are only read. Coordinates of input vectors are checked
+     * as in {@link NeuralNetwork#map(double[])} unless dataset is validated or state takes raw input.
+     * @param state network state
+     * @param analyzer analytical processor of the network
+     * @param learner learning processor of the network, passed to analyzer
+     * @param errorFunction error function
+     * @param dataset dataset
+     * @param shardNumber number of parallel shards
+     * @return average value of error function, NaN on empty dataset
+     * @throws NeuralNetworkRuntimeException if dataset doesn't fit the network
+     * or if its input vector coordinates are out of bounds
+     */
+    public static double getAverageError(NeuralNetworkState state, AnalyticalProcessor analyzer,
+            LearningProcessor learner, ErrorFunction errorFunction, Dataset dataset, int shardNumber)
+                    throws NeuralNetworkRuntimeException {
+        if (dataset.getInputVectorSize() != state.getInputVectorSize()
+                || dataset.getResultVectorSize() != state.getResultVectorSize()) {
+            throw new NeuralNetworkRuntimeException(String.format("Dataset has vectors of sizes %d and %d,"
+                    + " network accepts %d and produces %d", dataset.getInputVectorSize(),
+                    dataset.getResultVectorSize(), state.getInputVectorSize(), state.getResultVectorSize()));
+        }
+        if (dataset.size() == 0) {
+            return Double.NaN;
+        }
+        final double amplitude = state.isRawInput() || dataset.isValidated(state.getInputVectorAmplitude())
+                ? Double.NaN : state.getInputVectorAmplitude();
+        final int effectiveShardNumber = Math.max(1, Math.min(shardNumber, dataset.size()));
+        final double[] shardError = new double[effectiveShardNumber];
+        final NeuralNetworkRuntimeException[] shardFailure = new NeuralNetworkRuntimeException[effectiveShardNumber];
+        IntStream.range(0, effectiveShardNumber).parallel().forEach(i -> {
+            try {
+                shardError[i] = getTotalError(state, analyzer, learner, errorFunction, dataset, amplitude,
+                        (int) ((long) dataset.size() * i / effectiveShardNumber),
+                        (int) ((long) dataset.size() * (i + 1) / effectiveShardNumber));
+            }
+            catch (NeuralNetworkRuntimeException e) {
+                shardFailure[i] = e;
+            }
+        });
+        for (NeuralNetworkRuntimeException failure : shardFailure) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        double error = 0.;
+        for (double value : shardError) {
+            error += value;
+        }
+        return error / dataset.size();
+    }
+
+    /**
+     * Evaluates total error on a continuous range of samples.
+     * @param state network state
+     * @param analyzer analytical processor of the network
+     * @param learner learning processor of the network
+     * @param errorFunction error function
+     * @param dataset dataset
+     * @param amplitude amplitude of input vector coordinates, NaN if they need no checks
+     * @param from first sample index, inclusive
+     * @param to last sample index, exclusive
+     * @return total error
+     * @throws NeuralNetworkRuntimeException if input vector coordinates are out of bounds
+     */
+    private static double getTotalError(NeuralNetworkState state, AnalyticalProcessor analyzer,
+            LearningProcessor learner, ErrorFunction errorFunction, Dataset dataset, double amplitude,
+            int from, int to) throws NeuralNetworkRuntimeException {
+        final int sourceNumber = state.getParents().length;
+        final NeuralNetworkState shardState = new NeuralNetworkState(true, state.getInputVectorAmplitude(),
+                state.getInputVectorSize(), state.getResultVectorSize(), state.getWeight(),
+                state.getBias(), new double[sourceNumber], new double[sourceNumber],
+                state.getChildren(), state.getParents(), state.getTraverseOrder());
+        final double[] result = shardState.getResult();
+        final double[] input = new double[state.getInputVectorSize()];
+        final double[] reference = new double[state.getResultVectorSize()];
+        final double[] resultVector = new double[state.getResultVectorSize()];
+        double error = 0.;
+        for (int i = from; i < to; i++) {
+            dataset.getInputVector(i, input);
+            dataset.getReference(i, reference);
+            if (!Double.isNaN(amplitude)) {
+                NeuralNetwork.checkInputVector(input, input.length, amplitude);
+            }
+            System.arraycopy(input, 0, result, 0, input.length);
+            analyzer.process(shardState, learner);
+            System.arraycopy(result, sourceNumber - resultVector.length, resultVector, 0, resultVector.length);
+            error += errorFunction.getValue(resultVector, reference);
+        }
+        return error;
+    }
+}
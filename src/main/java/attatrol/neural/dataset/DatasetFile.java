@@ -0,0 +1,129 @@
+package attatrol.neural.dataset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+
+/**
+ * Utility class, binary columnar format of datasets.
+ * <p>
+ * File is little-endian, it starts with a header of {@link #HEADER_SIZE} bytes:
+ * <pre>
+ *  0 int    magic "MLPS"
+ *  4 int    format version
+ *  8 int    flags, see {@link #FLAG_VALIDATED}
+ * 12 int    input vector size
+ * 16 int    result vector size
+ * 20 int    reserved, 0
+ * 24 long   number of samples
+ * 32 double input vector amplitude
+ * 40 long   CRC32 of all bytes after header
+ * 48 int    CRC32 of header bytes 0..47
+ * 52 int    reserved, 0
+ * 56 long   reserved, 0
+ * </pre>
+ * Two sections follow: input vectors of all samples, then reference vectors of all samples,
+ * each vector is a row of doubles. Rows have fixed width, so a sample is found without an index.
+ * <p>
+ * Files are written by {@link DatasetFileWriter} into a temporary file and atomically moved into place,
+ * see {@link MappedDataset} for reading.
+ * @author attatrol
+ *
+ */
+public final class DatasetFile {
+
+    /**
+     * Extension of dataset files
+     */
+    public static final String FILE_EXTENSION = ".samples";
+
+    /**
+     * Flag, set if coordinates of all input vectors lie in [0, input vector amplitude]
+     */
+    public static final int FLAG_VALIDATED = 1;
+
+    /**
+     * First int of each dataset file ("MLPS")
+     */
+    static final int MAGIC = 0x53504C4D;
+
+    /**
+     * Version of file format
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of header, in bytes
+     */
+    static final int HEADER_SIZE = 64;
+
+    /**
+     * Position of CRC32 of data in header
+     */
+    static final int DATA_CRC_POSITION = 40;
+
+    /**
+     * Position of CRC32 of header in header
+     */
+    static final int HEADER_CRC_POSITION = 48;
+
+    /**
+     * Not in use
+     */
+    private DatasetFile() { }
+
+    /**
+     * Writes dataset into a file atomically.
+     * @param dataset dataset
+     * @param inputVectorAmplitude amplitude of input vector coordinates, file is marked
+     * as validated if all coordinates lie in [0, amplitude]
+     * @param path file path
+     * @throws IOException on failure to write file
+     * @throws NeuralNetworkGenerationException on invalid vector sizes or amplitude
+     */
+    public static void write(Dataset dataset, double inputVectorAmplitude, Path path)
+            throws IOException, NeuralNetworkGenerationException {
+        final double[] input = new double[dataset.getInputVectorSize()];
+        final double[] reference = new double[dataset.getResultVectorSize()];
+        try (DatasetFileWriter writer = DatasetFileWriter.getDatasetFileWriter(path,
+                dataset.getInputVectorSize(), dataset.getResultVectorSize(), inputVectorAmplitude)) {
+            for (int i = 0; i < dataset.size(); i++) {
+                dataset.getInputVector(i, input);
+                dataset.getReference(i, reference);
+                writer.append(input, reference);
+            }
+            writer.commit();
+        }
+        catch (NeuralNetworkRuntimeException e) {
+            // vectors of the dataset always have its sizes
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Memory maps a dataset file, see {@link MappedDataset#map(Path)}.
+     * @param path file path
+     * @return mapped dataset
+     * @throws IOException on failure to read file or on damaged header
+     */
+    public static MappedDataset map(Path path) throws IOException {
+        return MappedDataset.map(path);
+    }
+
+    /**
+     * Calculates CRC32 of header bytes before header checksum.
+     * @param header header buffer
+     * @return checksum
+     */
+    static int getHeaderCrc(ByteBuffer header) {
+        final CRC32 crc = new CRC32();
+        for (int i = 0; i < HEADER_CRC_POSITION; i++) {
+            crc.update(header.get(i));
+        }
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,334 @@
+package attatrol.neural.dataset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.utils.FileUtils;
+
+/**
+ * Writes samples into a dataset file (see {@link DatasetFile}) one by one, number of samples
+ * needn't be known in advance. Input vectors are streamed into a temporary file, reference vectors
+ * into another one, which is appended to the first on {@link #commit()}, then the file is moved into place.
+ * Writer checks input vectors on the way and marks file as validated if all of them are in bounds.
+ * <p>
+ * Not thread safe. Closing writer without commit deletes temporary files.
+ * @author attatrol
+ *
+ */
+public final class DatasetFileWriter implements Closeable {
+
+    /**
+     * Size of write buffers, in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Target path
+     */
+    private final Path path;
+
+    /**
+     * Temporary file of input vectors, becomes the dataset file
+     */
+    private final Path inputFile;
+
+    /**
+     * Temporary file of reference vectors
+     */
+    private final Path referenceFile;
+
+    /**
+     * Channel of input vectors
+     */
+    private final FileChannel inputChannel;
+
+    /**
+     * Channel of reference vectors
+     */
+    private final FileChannel referenceChannel;
+
+    /**
+     * Buffer of input vectors
+     */
+    private final ByteBuffer inputBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Buffer of reference vectors
+     */
+    private final ByteBuffer referenceBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Checksum of all data in file order
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Input vector size
+     */
+    private final int inputVectorSize;
+
+    /**
+     * Result vector size
+     */
+    private final int resultVectorSize;
+
+    /**
+     * Amplitude of input vector coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * Number of written samples
+     */
+    private long sampleNumber;
+
+    /**
+     * True while all input vectors are in bounds
+     */
+    private boolean validated = true;
+
+    /**
+     * True after commit or close
+     */
+    private boolean finished;
+
+    /**
+     * Default ctor.
+     * @param path target path
+     * @param inputFile temporary file of input vectors
+     * @param referenceFile temporary file of reference vectors
+     * @param inputVectorSize input vector size
+     * @param resultVectorSize result vector size
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @throws IOException on failure to open files
+     */
+    private DatasetFileWriter(Path path, Path inputFile, Path referenceFile, int inputVectorSize,
+            int resultVectorSize, double inputVectorAmplitude) throws IOException {
+        this.path = path;
+        this.inputFile = inputFile;
+        this.referenceFile = referenceFile;
+        this.inputVectorSize = inputVectorSize;
+        this.resultVectorSize = resultVectorSize;
+        this.inputVectorAmplitude = inputVectorAmplitude;
+        inputChannel = FileChannel.open(inputFile, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(referenceFile, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        }
+        finally {
+            if (channel == null) {
+                inputChannel.close();
+            }
+        }
+        referenceChannel = channel;
+        inputChannel.position(DatasetFile.HEADER_SIZE);
+    }
+
+    /**
+     * Factory method for dataset file writer, checks if parameters are valid, creates temporary files.
+     * @param path target path
+     * @param inputVectorSize input vector size
+     * @param resultVectorSize result vector size
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @return writer
+     * @throws IOException on failure to create files
+     * @throws NeuralNetworkGenerationException on invalid vector sizes or amplitude
+     */
+    public static DatasetFileWriter getDatasetFileWriter(Path path, int inputVectorSize, int resultVectorSize,
+            double inputVectorAmplitude) throws IOException, NeuralNetworkGenerationException {
+        if (inputVectorSize < 1 || resultVectorSize < 1) {
+            throw new NeuralNetworkGenerationException("Vector sizes must be positive integers");
+        }
+        if (!(inputVectorAmplitude > 0.) || Double.isInfinite(inputVectorAmplitude)) {
+            throw new NeuralNetworkGenerationException("Input vector amplitude must be a positive number");
+        }
+        final Path inputFile = FileUtils.createTemporaryFile(path);
+        Path referenceFile = null;
+        try {
+            referenceFile = FileUtils.createTemporaryFile(path);
+            return new DatasetFileWriter(path, inputFile, referenceFile, inputVectorSize, resultVectorSize,
+                    inputVectorAmplitude);
+        }
+        catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(inputFile);
+            if (referenceFile != null) {
+                Files.deleteIfExists(referenceFile);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends sample.
+     * @param inputVector input vector
+     * @param reference reference vector
+     * @throws IOException on failure to write
+     * @throws NeuralNetworkRuntimeException if vectors have wrong sizes, if writer is finished
+     * or if file already holds {@link Integer#MAX_VALUE} samples, as datasets are indexed by int
+     */
+    public void append(double[] inputVector, double[] reference) throws IOException, NeuralNetworkRuntimeException {
+        if (finished) {
+            throw new NeuralNetworkRuntimeException("Dataset file writer is finished");
+        }
+        if (sampleNumber == Integer.MAX_VALUE) {
+            throw new NeuralNetworkRuntimeException("Dataset file can't hold more than "
+                    + Integer.MAX_VALUE + " samples");
+        }
+        if (inputVector.length != inputVectorSize || reference.length != resultVectorSize) {
+            throw new NeuralNetworkRuntimeException(String.format("Sample has vectors of sizes %d and %d,"
+                    + " expected %d and %d", inputVector.length, reference.length, inputVectorSize,
+                    resultVectorSize));
+        }
+        for (double value : inputVector) {
+            if (inputBuffer.remaining() < 8) {
+                flush(inputBuffer, inputChannel, crc);
+            }
+            inputBuffer.putDouble(value);
+            // NaN fails the check too
+            validated &= value >= 0. && value <= inputVectorAmplitude;
+        }
+        for (double value : reference) {
+            if (referenceBuffer.remaining() < 8) {
+                flush(referenceBuffer, referenceChannel, null);
+            }
+            referenceBuffer.putDouble(value);
+        }
+        sampleNumber++;
+    }
+
+    /**
+     * Appends all samples of a batch.
+     * @param batch batch
+     * @throws IOException on failure to write
+     * @throws NeuralNetworkRuntimeException if vectors have wrong sizes, if writer is finished
+     * or if file is full
+     */
+    public void append(VectorBatch batch) throws IOException, NeuralNetworkRuntimeException {
+        for (int i = 0; i < batch.getSize(); i++) {
+            append(batch.getInputVectors()[i], batch.getReferences()[i]);
+        }
+    }
+
+    /**
+     * @return number of written samples
+     */
+    public long getSampleNumber() {
+        return sampleNumber;
+    }
+
+    /**
+     * Completes the file and moves it into place.
+     * @throws IOException on failure to write or to move file
+     * @throws NeuralNetworkRuntimeException if writer is finished
+     */
+    public void commit() throws IOException, NeuralNetworkRuntimeException {
+        if (finished) {
+            throw new NeuralNetworkRuntimeException("Dataset file writer is finished");
+        }
+        flush(inputBuffer, inputChannel, crc);
+        flush(referenceBuffer, referenceChannel, null);
+        // append reference vectors to input vectors
+        long position = 0;
+        final long size = referenceChannel.size();
+        while (position < size) {
+            inputBuffer.clear();
+            final int read = referenceChannel.read(inputBuffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of temporary file " + referenceFile);
+            }
+            position += read;
+            flush(inputBuffer, inputChannel, crc);
+        }
+
+        final ByteBuffer header = ByteBuffer.allocate(DatasetFile.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(DatasetFile.MAGIC);
+        header.putInt(DatasetFile.FORMAT_VERSION);
+        header.putInt(validated ? DatasetFile.FLAG_VALIDATED : 0);
+        header.putInt(inputVectorSize);
+        header.putInt(resultVectorSize);
+        header.putInt(0);
+        header.putLong(sampleNumber);
+        header.putDouble(inputVectorAmplitude);
+        header.putLong(crc.getValue());
+        header.putInt(DatasetFile.getHeaderCrc(header));
+        header.putInt(0);
+        header.putLong(0L);
+        header.flip();
+        long headerPosition = 0;
+        while (header.hasRemaining()) {
+            headerPosition += inputChannel.write(header, headerPosition);
+        }
+        inputChannel.force(false);
+        finished = true;
+        try {
+            closeChannels();
+            FileUtils.moveIntoPlace(inputFile, path);
+        }
+        finally {
+            Files.deleteIfExists(inputFile);
+        }
+    }
+
+    /**
+     * Closes files, deletes temporary files if the writer isn't committed.
+     * @throws IOException on failure to close or to delete files
+     */
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            finished = true;
+            try {
+                closeChannels();
+            }
+            finally {
+                Files.deleteIfExists(inputFile);
+            }
+        }
+    }
+
+    /**
+     * Closes channels, deletes temporary file of reference vectors.
+     * @throws IOException on failure to close or to delete files
+     */
+    private void closeChannels() throws IOException {
+        try {
+            inputChannel.close();
+        }
+        finally {
+            try {
+                referenceChannel.close();
+            }
+            finally {
+                Files.deleteIfExists(referenceFile);
+            }
+        }
+    }
+
+    /**
+     * Writes buffer content at the channel position.
+     * @param buffer buffer, cleared after write
+     * @param channel channel
+     * @param checksum checksum to update, may be null
+     * @throws IOException on failure to write
+     */
+    private static void flush(ByteBuffer buffer, FileChannel channel, CRC32 checksum) throws IOException {
+        buffer.flip();
+        if (checksum != null) {
+            checksum.update(buffer.duplicate());
+        }
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,98 @@
+package attatrol.neural.dataset;
+
+import java.util.SplittableRandom;
+
+/**
+ * Utility methods for datasets.
+ * @author attatrol
+ *
+ */
+public final class DatasetUtils {
+
+    /**
+     * Not in use
+     */
+    private DatasetUtils() { }
+
+    /**
+     * Shuffles array in place (Fisher-Yates algorithm).
+     * @param array array to shuffle
+     * @param random source of random numbers
+     */
+    public static void shuffle(int[] array, SplittableRandom random) {
+        for (int i = array.length - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int temp = array[i];
+            array[i] = array[j];
+            array[j] = temp;
+        }
+    }
+
+    /**
+     * Randomly splits dataset into training and validation parts.
+     * Parts are views over the original dataset, no samples are copied.
+     * @param dataset original dataset
+     * @param validationFraction fraction of samples that goes to validation part, in [0, 1)
+     * @param seed seed of the random split
+     * @return array of two datasets: training part and validation part
+     */
+    public static Dataset[] split(Dataset dataset, double validationFraction, long seed) {
+        final int[] indexes = new int[dataset.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = i;
+        }
+        shuffle(indexes, new SplittableRandom(seed));
+        final int validationSize = (int) (indexes.length * validationFraction);
+        final int[] validationIndexes = new int[validationSize];
+        final int[] trainingIndexes = new int[indexes.length - validationSize];
+        System.arraycopy(indexes, 0, validationIndexes, 0, validationSize);
+        System.arraycopy(indexes, validationSize, trainingIndexes, 0, trainingIndexes.length);
+        return new Dataset[] {new SubsetDataset(dataset, trainingIndexes),
+            new SubsetDataset(dataset, validationIndexes)};
+    }
+
+    /**
+     * View over the subset of samples of some dataset.
+     */
+    private static final class SubsetDataset implements Dataset {
+
+        private final Dataset dataset;
+
+        private final int[] indexes;
+
+        SubsetDataset(Dataset dataset, int[] indexes) {
+            this.dataset = dataset;
+            this.indexes = indexes;
+        }
+
+        @Override
+        public int size() {
+            return indexes.length;
+        }
+
+        @Override
+        public int getInputVectorSize() {
+            return dataset.getInputVectorSize();
+        }
+
+        @Override
+        public int getResultVectorSize() {
+            return dataset.getResultVectorSize();
+        }
+
+        @Override
+        public void getInputVector(int index, double[] buffer) {
+            dataset.getInputVector(indexes[index], buffer);
+        }
+
+        @Override
+        public void getReference(int index, double[] buffer) {
+            dataset.getReference(indexes[index], buffer);
+        }
+
+        @Override
+        public boolean isValidated(double inputVectorAmplitude) {
+            return dataset.isValidated(inputVectorAmplitude);
+        }
+    }
+}
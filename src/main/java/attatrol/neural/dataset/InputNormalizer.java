@@ -0,0 +1,322 @@
+package attatrol.neural.dataset;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.utils.Utils;
+
+/**
+ * Affine normalization of raw features into [0, input vector amplitude]:
+ * each coordinate is mapped as {@code x * scale + shift}.
+ * <p>
+ * Normalizer is fitted by a single streaming pass over a dataset (see {@link NormalizationMethod}),
+ * means and variances are accumulated by Welford's method. For training use a normalized view of
+ * the dataset ({@link #normalize(Dataset)}). For inference fold the normalizer into the trained network
+ * ({@link #fold(NeuralNetwork)}): input coordinates feed neurons only through weighted sums,
+ * so each weight of a connection from an input coordinate is multiplied by its scale and the weighted shift
+ * is added to the bias of the neuron. The folded network takes raw features at no extra cost per call,
+ * it is marked as taking raw input, so coordinates are not checked against amplitude.
+ * <p>
+ * Normalized view clamps values into [0, amplitude], while the folded network extrapolates linearly,
+ * so they agree on features within the fitted range only. Weights and biases are stored in floats,
+ * folding large shifts into biases loses precision, so center features with large offsets beforehand.
+ * Instances are immutable.
+ * @author attatrol
+ *
+ */
+public final class InputNormalizer {
+
+    /**
+     * Number of standard deviations on each side of the mean mapped into [0, amplitude]
+     * by {@link NormalizationMethod#STANDARD}
+     */
+    public static final double STANDARD_DEVIATION_NUMBER = 3.;
+
+    /**
+     * Scale of each coordinate
+     */
+    private final double[] scale;
+
+    /**
+     * Shift of each coordinate
+     */
+    private final double[] shift;
+
+    /**
+     * Amplitude of normalized coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * Default ctor.
+     * @param scale scale of each coordinate
+     * @param shift shift of each coordinate
+     * @param inputVectorAmplitude amplitude of normalized coordinates
+     */
+    private InputNormalizer(double[] scale, double[] shift, double inputVectorAmplitude) {
+        this.scale = scale;
+        this.shift = shift;
+        this.inputVectorAmplitude = inputVectorAmplitude;
+    }
+
+    /**
+     * Fits normalizer by a single pass over input vectors of a dataset.
+     * Constant features are mapped into amplitude / 2.
+     * @param dataset dataset of raw features
+     * @param method normalization method
+     * @param inputVectorAmplitude amplitude of input vector coordinates of the network
+     * @return normalizer
+     * @throws NeuralNetworkGenerationException on empty dataset, on non-finite features or invalid amplitude
+     */
+    public static InputNormalizer fit(Dataset dataset, NormalizationMethod method, double inputVectorAmplitude)
+            throws NeuralNetworkGenerationException {
+        if (!(inputVectorAmplitude > 0.) || Double.isInfinite(inputVectorAmplitude)) {
+            throw new NeuralNetworkGenerationException("Input vector amplitude must be a positive number");
+        }
+        if (dataset.size() == 0) {
+            throw new NeuralNetworkGenerationException("Normalizer can't be fitted on empty dataset");
+        }
+        final int size = dataset.getInputVectorSize();
+        final double[] input = new double[size];
+        final double[] min = new double[size];
+        final double[] max = new double[size];
+        final double[] mean = new double[size];
+        final double[] squareDeviationSum = new double[size];
+        for (int n = 0; n < dataset.size(); n++) {
+            dataset.getInputVector(n, input);
+            for (int i = 0; i < size; i++) {
+                final double value = input[i];
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw new NeuralNetworkGenerationException(String.format(
+                            "Sample %d has non-finite coordinate %d", n, i));
+                }
+                if (n == 0 || value < min[i]) {
+                    min[i] = value;
+                }
+                if (n == 0 || value > max[i]) {
+                    max[i] = value;
+                }
+                final double delta = value - mean[i];
+                mean[i] += delta / (n + 1);
+                squareDeviationSum[i] += delta * (value - mean[i]);
+            }
+        }
+        final double[] scale = new double[size];
+        final double[] shift = new double[size];
+        for (int i = 0; i < size; i++) {
+            if (method == NormalizationMethod.MIN_MAX) {
+                if (max[i] > min[i]) {
+                    scale[i] = inputVectorAmplitude / (max[i] - min[i]);
+                    shift[i] = -min[i] * scale[i];
+                }
+                else {
+                    shift[i] = inputVectorAmplitude / 2;
+                }
+            }
+            else {
+                final double deviation = Math.sqrt(squareDeviationSum[i] / dataset.size());
+                if (deviation > 0.) {
+                    scale[i] = inputVectorAmplitude / (2 * STANDARD_DEVIATION_NUMBER * deviation);
+                }
+                shift[i] = inputVectorAmplitude / 2 - mean[i] * scale[i];
+            }
+        }
+        return new InputNormalizer(scale, shift, inputVectorAmplitude);
+    }
+
+    /**
+     * Factory method for normalizer with known coefficients.
+     * @param scale scale of each coordinate, array is copied
+     * @param shift shift of each coordinate, array is copied
+     * @param inputVectorAmplitude amplitude of normalized coordinates
+     * @return normalizer
+     * @throws NeuralNetworkGenerationException on invalid coefficients or amplitude
+     */
+    public static InputNormalizer getInputNormalizer(double[] scale, double[] shift, double inputVectorAmplitude)
+            throws NeuralNetworkGenerationException {
+        if (!(inputVectorAmplitude > 0.) || Double.isInfinite(inputVectorAmplitude)) {
+            throw new NeuralNetworkGenerationException("Input vector amplitude must be a positive number");
+        }
+        if (scale.length == 0 || scale.length != shift.length) {
+            throw new NeuralNetworkGenerationException("Scales and shifts must have the same positive size");
+        }
+        for (int i = 0; i < scale.length; i++) {
+            if (Double.isNaN(scale[i] + shift[i]) || Double.isInfinite(scale[i] + shift[i])) {
+                throw new NeuralNetworkGenerationException("Coefficients of coordinate " + i + " are not finite");
+            }
+        }
+        return new InputNormalizer(Utils.getCopy(scale), Utils.getCopy(shift), inputVectorAmplitude);
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return scale.length;
+    }
+
+    /**
+     * @return amplitude of normalized coordinates
+     */
+    public double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * @param coordinate index of the coordinate
+     * @return scale of the coordinate
+     */
+    public double getScale(int coordinate) {
+        return scale[coordinate];
+    }
+
+    /**
+     * @param coordinate index of the coordinate
+     * @return shift of the coordinate
+     */
+    public double getShift(int coordinate) {
+        return shift[coordinate];
+    }
+
+    /**
+     * Normalizes raw features, values are clamped into [0, amplitude], infinite ones too.
+     * NaN has no place in the range, so it is rejected, thus normalized vectors are always valid.
+     * @param rawInput raw features
+     * @param buffer buffer for normalized input vector, may be the same array
+     * @throws IllegalArgumentException if some feature is NaN
+     */
+    public void normalize(double[] rawInput, double[] buffer) {
+        for (int i = 0; i < scale.length; i++) {
+            if (Double.isNaN(rawInput[i])) {
+                throw new IllegalArgumentException("Feature " + i + " is NaN");
+            }
+            buffer[i] = Math.max(0., Math.min(inputVectorAmplitude, rawInput[i] * scale[i] + shift[i]));
+        }
+    }
+
+    /**
+     * Creates a view of the dataset with normalized input vectors, reference vectors are kept.
+     * The view is validated for networks with the same or larger amplitude
+     * (see {@link Dataset#isValidated(double)}).
+     * @param dataset dataset of raw features
+     * @return normalized view
+     * @throws NeuralNetworkGenerationException if dataset has other input vector size
+     */
+    public Dataset normalize(Dataset dataset) throws NeuralNetworkGenerationException {
+        if (dataset.getInputVectorSize() != scale.length) {
+            throw new NeuralNetworkGenerationException(String.format(
+                    "Dataset has input vector size %d, normalizer has %d", dataset.getInputVectorSize(),
+                    scale.length));
+        }
+        return new NormalizedDataset(dataset);
+    }
+
+    /**
+     * Folds normalizer into weights and biases of a network state.
+     * @param state network state, not modified
+     * @return new state which takes raw features, topology arrays are shared,
+     * results and linear combinations are new arrays
+     * @throws NeuralNetworkGenerationException if state has other input vector size or already takes raw features
+     */
+    public NeuralNetworkState fold(NeuralNetworkState state) throws NeuralNetworkGenerationException {
+        if (state.getInputVectorSize() != scale.length) {
+            throw new NeuralNetworkGenerationException(String.format(
+                    "Network has input vector size %d, normalizer has %d", state.getInputVectorSize(),
+                    scale.length));
+        }
+        if (state.isRawInput()) {
+            throw new NeuralNetworkGenerationException("Network already takes raw features");
+        }
+        if (state.getInputVectorAmplitude() < inputVectorAmplitude) {
+            throw new NeuralNetworkGenerationException(String.format(
+                    "Network has input vector amplitude %f, normalizer has %f", state.getInputVectorAmplitude(),
+                    inputVectorAmplitude));
+        }
+        final int[][] parents = state.getParents();
+        final float[][] weight = Utils.getDeepCopy(state.getWeight());
+        final float[] bias = Utils.getCopy(state.getBias());
+        for (int neuronIndex : state.getTraverseOrder()) {
+            double foldedBias = bias[neuronIndex];
+            for (int k = 0; k < parents[neuronIndex].length; k++) {
+                final int parent = parents[neuronIndex][k];
+                if (parent < scale.length) {
+                    foldedBias += weight[neuronIndex][k] * shift[parent];
+                    weight[neuronIndex][k] = (float) (weight[neuronIndex][k] * scale[parent]);
+                }
+            }
+            bias[neuronIndex] = (float) foldedBias;
+        }
+        final NeuralNetworkState folded = new NeuralNetworkState(false, state.getInputVectorAmplitude(),
+                state.getInputVectorSize(), state.getResultVectorSize(), weight, bias,
+                new double[parents.length], new double[parents.length], state.getChildren(), parents,
+                state.getTraverseOrder());
+        folded.setRawInput(true);
+        return folded;
+    }
+
+    /**
+     * Folds normalizer into a network, see {@link #fold(NeuralNetworkState)}.
+     * @param network trained network, not modified
+     * @return new network with the same processors which takes raw features
+     * @throws NeuralNetworkGenerationException if network has other input vector size or already takes raw features
+     */
+    public NeuralNetwork fold(NeuralNetwork network) throws NeuralNetworkGenerationException {
+        return new NeuralNetwork(fold(network.getNetworkStateCopy()), network.getAnalythicalProcessor(),
+                network.getLearningProcessor());
+    }
+
+    /**
+     * View of a dataset with normalized input vectors.
+     */
+    private final class NormalizedDataset implements Dataset {
+
+        /**
+         * Dataset of raw features
+         */
+        private final Dataset dataset;
+
+        /**
+         * Default ctor.
+         * @param dataset dataset of raw features
+         */
+        private NormalizedDataset(Dataset dataset) {
+            this.dataset = dataset;
+        }
+
+        @Override
+        public int size() {
+            return dataset.size();
+        }
+
+        @Override
+        public int getInputVectorSize() {
+            return dataset.getInputVectorSize();
+        }
+
+        @Override
+        public int getResultVectorSize() {
+            return dataset.getResultVectorSize();
+        }
+
+        @Override
+        public void getInputVector(int index, double[] buffer) {
+            dataset.getInputVector(index, buffer);
+            InputNormalizer.this.normalize(buffer, buffer);
+        }
+
+        @Override
+        public void getReference(int index, double[] buffer) {
+            dataset.getReference(index, buffer);
+        }
+
+        @Override
+        public boolean isValidated(double amplitude) {
+            return inputVectorAmplitude <= amplitude;
+        }
+
+        @Override
+        public void prefetch(int fromIndex, int toIndex) {
+            dataset.prefetch(fromIndex, toIndex);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package attatrol.neural.dataset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only dataset over a memory-mapped dataset file (see {@link DatasetFile}).
+ * <p>
+ * Mapping reads and checks only the header, samples are paged in by the operating system on access,
+ * so datasets larger than the heap are ready in milliseconds. Rows are either copied from the mapping
+ * into caller buffers by bulk reads, or read in place through views ({@link #getInputRow(int)},
+ * {@link #getReferenceRow(int)}). Each section is mapped in segments of whole rows of at most
+ * {@link #SEGMENT_SIZE} bytes. {@link #prefetch(int, int)} touches pages of a range of rows, so that
+ * a loader thread takes page faults of the next block ahead of its reads. Validation flag of the header
+ * replaces checks of input vectors by networks, see {@link #isValidated(double)}; data checksum is checked on demand
+ * by {@link #isChecksumValid()}, as it reads the whole file.
+ * Instances are immutable and may be shared between threads.
+ * @author attatrol
+ *
+ */
+public final class MappedDataset implements Dataset {
+
+    /**
+     * Maximal size of a mapped segment, in bytes
+     */
+    public static final int SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * Size of a memory page touched by prefetch, in bytes
+     */
+    private static final int PAGE_SIZE = 4096;
+
+    /**
+     * Mapped segments in file order, input vectors first
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Views of segments of input vectors
+     */
+    private final DoubleBuffer[] inputSegments;
+
+    /**
+     * Views of segments of reference vectors
+     */
+    private final DoubleBuffer[] referenceSegments;
+
+    /**
+     * Number of input vectors per segment
+     */
+    private final int inputRowsPerSegment;
+
+    /**
+     * Number of reference vectors per segment
+     */
+    private final int referenceRowsPerSegment;
+
+    /**
+     * Number of samples
+     */
+    private final int size;
+
+    /**
+     * Input vector size
+     */
+    private final int inputVectorSize;
+
+    /**
+     * Result vector size
+     */
+    private final int resultVectorSize;
+
+    /**
+     * Amplitude of input vector coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * Flags
+     */
+    private final int flags;
+
+    /**
+     * Checksum of data stored in header
+     */
+    private final long dataCrc;
+
+    /**
+     * Result of prefetch reads, keeps them from being eliminated
+     */
+    private volatile int sink;
+
+    /**
+     * Default ctor.
+     * @param segments mapped segments in file order
+     * @param inputSegmentNumber number of segments of input vectors
+     * @param inputRowsPerSegment number of input vectors per segment
+     * @param referenceRowsPerSegment number of reference vectors per segment
+     * @param header header
+     */
+    private MappedDataset(MappedByteBuffer[] segments, int inputSegmentNumber, int inputRowsPerSegment,
+            int referenceRowsPerSegment, ByteBuffer header) {
+        this.segments = segments;
+        this.inputRowsPerSegment = inputRowsPerSegment;
+        this.referenceRowsPerSegment = referenceRowsPerSegment;
+        this.flags = header.getInt(8);
+        this.inputVectorSize = header.getInt(12);
+        this.resultVectorSize = header.getInt(16);
+        this.size = (int) header.getLong(24);
+        this.inputVectorAmplitude = header.getDouble(32);
+        this.dataCrc = header.getLong(DatasetFile.DATA_CRC_POSITION);
+        inputSegments = new DoubleBuffer[inputSegmentNumber];
+        referenceSegments = new DoubleBuffer[segments.length - inputSegmentNumber];
+        for (int i = 0; i < segments.length; i++) {
+            final DoubleBuffer view = segments[i].duplicate().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            if (i < inputSegmentNumber) {
+                inputSegments[i] = view;
+            }
+            else {
+                referenceSegments[i - inputSegmentNumber] = view;
+            }
+        }
+    }
+
+    /**
+     * Memory maps a dataset file, checks its header and size.
+     * @param path file path
+     * @return mapped dataset
+     * @throws IOException on failure to read file or on damaged header
+     */
+    public static MappedDataset map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < DatasetFile.HEADER_SIZE) {
+                throw new IOException(path + " is too short for a dataset file");
+            }
+            final ByteBuffer header = ByteBuffer.allocate(DatasetFile.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                channel.read(header, header.position());
+            }
+            if (header.getInt(0) != DatasetFile.MAGIC || header.getInt(4) != DatasetFile.FORMAT_VERSION) {
+                throw new IOException(path + " is not a dataset file of version " + DatasetFile.FORMAT_VERSION);
+            }
+            if (header.getInt(DatasetFile.HEADER_CRC_POSITION) != DatasetFile.getHeaderCrc(header)) {
+                throw new IOException(path + " has invalid header checksum");
+            }
+            if ((header.getInt(8) & ~DatasetFile.FLAG_VALIDATED) != 0) {
+                throw new IOException(path + " has unknown flags " + Integer.toHexString(header.getInt(8)));
+            }
+            final int inputVectorSize = header.getInt(12);
+            final int resultVectorSize = header.getInt(16);
+            final long sampleNumber = header.getLong(24);
+            if (inputVectorSize < 1 || resultVectorSize < 1 || sampleNumber < 0 || sampleNumber > Integer.MAX_VALUE
+                    || fileSize != DatasetFile.HEADER_SIZE
+                            + 8L * sampleNumber * ((long) inputVectorSize + resultVectorSize)) {
+                throw new IOException(path + " has invalid size");
+            }
+            final long inputRowSize = 8L * inputVectorSize;
+            final long referenceRowSize = 8L * resultVectorSize;
+            if (inputRowSize > SEGMENT_SIZE || referenceRowSize > SEGMENT_SIZE) {
+                throw new IOException(path + " has too large vectors");
+            }
+            final int inputRowsPerSegment = (int) Math.min(SEGMENT_SIZE / inputRowSize, Integer.MAX_VALUE);
+            final int referenceRowsPerSegment = (int) Math.min(SEGMENT_SIZE / referenceRowSize, Integer.MAX_VALUE);
+            final int inputSegmentNumber = getSegmentNumber(sampleNumber, inputRowsPerSegment);
+            final int referenceSegmentNumber = getSegmentNumber(sampleNumber, referenceRowsPerSegment);
+            final MappedByteBuffer[] segments = new MappedByteBuffer[inputSegmentNumber + referenceSegmentNumber];
+            long position = DatasetFile.HEADER_SIZE;
+            for (int i = 0; i < segments.length; i++) {
+                final boolean input = i < inputSegmentNumber;
+                final int segment = input ? i : i - inputSegmentNumber;
+                final int rowsPerSegment = input ? inputRowsPerSegment : referenceRowsPerSegment;
+                final long rows = Math.min(rowsPerSegment, sampleNumber - (long) segment * rowsPerSegment);
+                final long segmentSize = rows * (input ? inputRowSize : referenceRowSize);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, segmentSize);
+                position += segmentSize;
+            }
+            return new MappedDataset(segments, inputSegmentNumber, inputRowsPerSegment, referenceRowsPerSegment,
+                    header);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    @Override
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    /**
+     * @return amplitude of input vector coordinates the file was written for
+     */
+    public double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * @return flags, see {@link DatasetFile#FLAG_VALIDATED}
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    @Override
+    public void getInputVector(int index, double[] buffer) {
+        getRow(inputSegments, inputRowsPerSegment, inputVectorSize, index).get(buffer, 0, inputVectorSize);
+    }
+
+    @Override
+    public void getReference(int index, double[] buffer) {
+        getRow(referenceSegments, referenceRowsPerSegment, resultVectorSize, index).get(buffer, 0, resultVectorSize);
+    }
+
+    /**
+     * Creates a view of an input vector, nothing is copied.
+     * @param index index of the sample
+     * @return read-only view of input vector size, positioned at its start
+     */
+    public DoubleBuffer getInputRow(int index) {
+        return getRow(inputSegments, inputRowsPerSegment, inputVectorSize, index).slice();
+    }
+
+    /**
+     * Creates a view of a reference vector, nothing is copied.
+     * @param index index of the sample
+     * @return read-only view of result vector size, positioned at its start
+     */
+    public DoubleBuffer getReferenceRow(int index) {
+        return getRow(referenceSegments, referenceRowsPerSegment, resultVectorSize, index).slice();
+    }
+
+    /**
+     * Reads a single coordinate of an input vector straight from the mapping.
+     * @param index index of the sample
+     * @param coordinate index of the coordinate
+     * @return value of the coordinate
+     */
+    public double getInputCoordinate(int index, int coordinate) {
+        return inputSegments[index / inputRowsPerSegment]
+                .get((index % inputRowsPerSegment) * inputVectorSize + coordinate);
+    }
+
+    /**
+     * {@inheritDoc}
+     * File is validated once when written, so no networks with the same or larger amplitude need checks.
+     */
+    @Override
+    public boolean isValidated(double amplitude) {
+        return (flags & DatasetFile.FLAG_VALIDATED) != 0 && inputVectorAmplitude <= amplitude;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Touches each memory page of the samples, so they are loaded by the calling thread.
+     */
+    @Override
+    public void prefetch(int fromIndex, int toIndex) {
+        final int from = Math.max(0, fromIndex);
+        final int to = Math.min(size, toIndex);
+        if (from < to) {
+            int sum = touch(inputSegments, inputRowsPerSegment, inputVectorSize, from, to);
+            sum += touch(referenceSegments, referenceRowsPerSegment, resultVectorSize, from, to);
+            sink = sum;
+        }
+    }
+
+    /**
+     * Reads the whole file and compares its checksum with the stored one.
+     * @return true if data is not damaged
+     */
+    public boolean isChecksumValid() {
+        final CRC32 crc = new CRC32();
+        for (MappedByteBuffer segment : segments) {
+            crc.update(segment.duplicate());
+        }
+        return crc.getValue() == dataCrc;
+    }
+
+    /**
+     * Creates a view of a segment bounded by a row, segment views are shared, so they are never moved.
+     * @param views views of segments of a section
+     * @param rowsPerSegment number of rows per segment
+     * @param rowSize row size, in doubles
+     * @param index index of the row
+     * @return view of the segment, its position and limit bound the row
+     */
+    private static DoubleBuffer getRow(DoubleBuffer[] views, int rowsPerSegment, int rowSize, int index) {
+        final DoubleBuffer row = views[index / rowsPerSegment].duplicate();
+        final int first = (index % rowsPerSegment) * rowSize;
+        row.limit(first + rowSize);
+        row.position(first);
+        return row;
+    }
+
+    /**
+     * Reads a value from each memory page of a range of rows.
+     * @param views views of segments of a section
+     * @param rowsPerSegment number of rows per segment
+     * @param rowSize row size, in doubles
+     * @param from first row, inclusive
+     * @param to last row, exclusive
+     * @return sum of bits of read values
+     */
+    private static int touch(DoubleBuffer[] views, int rowsPerSegment, int rowSize, int from, int to) {
+        final int step = PAGE_SIZE / 8;
+        int sum = 0;
+        int row = from;
+        while (row < to) {
+            final int segment = row / rowsPerSegment;
+            final int segmentLast = (int) Math.min(to, (long) (segment + 1) * rowsPerSegment);
+            final DoubleBuffer view = views[segment];
+            final int first = (row % rowsPerSegment) * rowSize;
+            final int last = first + (segmentLast - row) * rowSize;
+            for (int i = first; i < last; i += step) {
+                sum += (int) Double.doubleToRawLongBits(view.get(i));
+            }
+            sum += (int) Double.doubleToRawLongBits(view.get(last - 1));
+            row = segmentLast;
+        }
+        return sum;
+    }
+
+    /**
+     * @param sampleNumber number of samples
+     * @param rowsPerSegment number of rows per segment
+     * @return number of segments of a section, at least one
+     */
+    private static int getSegmentNumber(long sampleNumber, int rowsPerSegment) {
+        return (int) Math.max(1, (sampleNumber + rowsPerSegment - 1) / rowsPerSegment);
+    }
+}
@@ -0,0 +1,22 @@
+package attatrol.neural.dataset;
+
+/**
+ * Ways to map raw features into [0, input vector amplitude], see {@link InputNormalizer}.
+ * @author attatrol
+ *
+ */
+public enum NormalizationMethod {
+
+    /**
+     * Range of each feature in the dataset is mapped onto [0, amplitude]
+     */
+    MIN_MAX,
+
+    /**
+     * Mean of each feature is mapped into amplitude / 2, values within
+     * {@link InputNormalizer#STANDARD_DEVIATION_NUMBER} standard deviations of the mean are mapped into
+     * [0, amplitude]
+     */
+    STANDARD;
+
+}
@@ -0,0 +1,82 @@
+package attatrol.neural.dataset;
+
+/**
+ * POJO, backpressure metrics of a {@link PipelinedBatchSource}.
+ * <p>
+ * If consumer wait time dominates, training thread starves and training is I/O-bound,
+ * add loader threads or speed up parsing. If loader wait time dominates, the ring is full
+ * most of the time and training is compute-bound.
+ * @author attatrol
+ *
+ */
+public class PipelineStatistics {
+
+    /**
+     * Number of batches filled by loaders
+     */
+    private final long loadedBatchNumber;
+
+    /**
+     * Number of batches taken by consumer
+     */
+    private final long consumedBatchNumber;
+
+    /**
+     * Total time loader threads spent on loading, in nanoseconds
+     */
+    private final long loadTime;
+
+    /**
+     * Total time loader threads waited for a free batch (ring was full), in nanoseconds
+     */
+    private final long loaderWaitTime;
+
+    /**
+     * Total time consumer waited for a filled batch (ring was empty), in nanoseconds
+     */
+    private final long consumerWaitTime;
+
+    public PipelineStatistics(long loadedBatchNumber, long consumedBatchNumber, long loadTime,
+            long loaderWaitTime, long consumerWaitTime) {
+        this.loadedBatchNumber = loadedBatchNumber;
+        this.consumedBatchNumber = consumedBatchNumber;
+        this.loadTime = loadTime;
+        this.loaderWaitTime = loaderWaitTime;
+        this.consumerWaitTime = consumerWaitTime;
+    }
+
+    public long getLoadedBatchNumber() {
+        return loadedBatchNumber;
+    }
+
+    public long getConsumedBatchNumber() {
+        return consumedBatchNumber;
+    }
+
+    public long getLoadTime() {
+        return loadTime;
+    }
+
+    public long getLoaderWaitTime() {
+        return loaderWaitTime;
+    }
+
+    public long getConsumerWaitTime() {
+        return consumerWaitTime;
+    }
+
+    /**
+     * @return true if consumer waited for data more than loaders waited for free space
+     */
+    public boolean isInputBound() {
+        return consumerWaitTime > loaderWaitTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PipelineStatistics [loaded=%d, consumed=%d, load=%d ms, loader wait=%d ms,"
+                + " consumer wait=%d ms, %s]", loadedBatchNumber, consumedBatchNumber, loadTime / 1000000,
+                loaderWaitTime / 1000000, consumerWaitTime / 1000000,
+                isInputBound() ? "input bound" : "compute bound");
+    }
+}
@@ -0,0 +1,270 @@
+package attatrol.neural.dataset;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.learning.BatchLearningProcessor;
+import attatrol.neural.network.NeuralNetwork;
+
+/**
+ * Producer-consumer pipeline which overlaps loading of samples with training.
+ * <p>
+ * There is a bounded ring of preallocated batches. Loader threads take free batches,
+ * fill them with a {@link BatchLoader} and pass them to the consumer (training thread),
+ * consumer returns drained batches back into the ring. Thus no memory is allocated per
+ * batch and loading never runs ahead of training more than by the ring size.
+ * After passing a batch on, a loader asks {@link BatchLoader#prefetch(int)} to read ahead
+ * the samples of the next batch, before it possibly waits for a free one.
+ * <p>
+ * Batches may come out of order if there are several loader threads.
+ * @author attatrol
+ *
+ */
+public class PipelinedBatchSource implements AutoCloseable {
+
+    /**
+     * Marker of the end of data, put into the filled queue by the last finished loader.
+     */
+    private static final VectorBatch END_OF_DATA = new VectorBatch(0, 0, 0);
+
+    private final BatchLoader loader;
+
+    /**
+     * Free batches
+     */
+    private final BlockingQueue<VectorBatch> freeBatches;
+
+    /**
+     * Filled batches, one extra place for end of data marker
+     */
+    private final BlockingQueue<VectorBatch> filledBatches;
+
+    private final Thread[] loaderThreads;
+
+    private final AtomicInteger activeLoaderNumber;
+
+    private final AtomicLong loadedBatchNumber = new AtomicLong();
+
+    private final AtomicLong loadTime = new AtomicLong();
+
+    private final AtomicLong loaderWaitTime = new AtomicLong();
+
+    private final AtomicLong consumedBatchNumber = new AtomicLong();
+
+    private final AtomicLong consumerWaitTime = new AtomicLong();
+
+    /**
+     * First failure of some loader
+     */
+    private volatile Exception failure;
+
+    private boolean started;
+
+    /**
+     * Default ctor.
+     * @param loader batch loader
+     * @param inputVectorSize input vector size
+     * @param resultVectorSize result vector size
+     * @param batchSize batch capacity
+     * @param ringSize number of batches in the ring
+     * @param loaderThreadNumber number of loader threads
+     */
+    private PipelinedBatchSource(BatchLoader loader, int inputVectorSize, int resultVectorSize,
+            int batchSize, int ringSize, int loaderThreadNumber) {
+        this.loader = loader;
+        freeBatches = new ArrayBlockingQueue<>(ringSize);
+        filledBatches = new ArrayBlockingQueue<>(ringSize + 1);
+        for (int i = 0; i < ringSize; i++) {
+            freeBatches.add(new VectorBatch(batchSize, inputVectorSize, resultVectorSize));
+        }
+        activeLoaderNumber = new AtomicInteger(loaderThreadNumber);
+        loaderThreads = new Thread[loaderThreadNumber];
+        for (int i = 0; i < loaderThreadNumber; i++) {
+            loaderThreads[i] = new Thread(this::runLoader, "batch-loader-" + i);
+            loaderThreads[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * Factory method for pipelined batch source, checks if parameters are valid.
+     * @param loader batch loader, must be thread safe if there are several loader threads
+     * @param inputVectorSize input vector size
+     * @param resultVectorSize result vector size
+     * @param batchSize batch capacity
+     * @param ringSize number of batches in the ring, at least loader thread number + 1
+     * @param loaderThreadNumber number of loader threads
+     * @return pipelined batch source, not started
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static PipelinedBatchSource getPipelinedBatchSource(BatchLoader loader, int inputVectorSize,
+            int resultVectorSize, int batchSize, int ringSize, int loaderThreadNumber)
+                    throws NeuralNetworkGenerationException {
+        if (loader == null) {
+            throw new NeuralNetworkGenerationException("Batch loader is null");
+        }
+        if (inputVectorSize < 1 || resultVectorSize < 1) {
+            throw new NeuralNetworkGenerationException("Vector sizes must be positive integers");
+        }
+        if (batchSize < 1) {
+            throw new NeuralNetworkGenerationException("Batch size must be a positive integer");
+        }
+        if (loaderThreadNumber < 1) {
+            throw new NeuralNetworkGenerationException("Number of loader threads must be a positive integer");
+        }
+        if (ringSize <= loaderThreadNumber) {
+            throw new NeuralNetworkGenerationException("Ring must have more batches than there are loader threads");
+        }
+        return new PipelinedBatchSource(loader, inputVectorSize, resultVectorSize, batchSize, ringSize,
+                loaderThreadNumber);
+    }
+
+    /**
+     * Starts loader threads.
+     */
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            for (Thread thread : loaderThreads) {
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Takes the next filled batch, waits if there is none.
+     * Batch must be returned with {@link #release(VectorBatch)} after use.
+     * @return filled batch, null if there is no more data
+     * @throws NeuralNetworkRuntimeException on loader failure or on interruption
+     */
+    public VectorBatch take() throws NeuralNetworkRuntimeException {
+        start();
+        final long waitStart = System.nanoTime();
+        final VectorBatch batch;
+        try {
+            batch = filledBatches.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NeuralNetworkRuntimeException("Interrupted while waiting for a batch", e);
+        }
+        consumerWaitTime.addAndGet(System.nanoTime() - waitStart);
+        if (batch == END_OF_DATA) {
+            // leave marker for subsequent calls
+            filledBatches.offer(END_OF_DATA);
+            if (failure != null) {
+                throw new NeuralNetworkRuntimeException("Failed to load a batch: " + failure.getMessage(),
+                        failure);
+            }
+            return null;
+        }
+        consumedBatchNumber.incrementAndGet();
+        return batch;
+    }
+
+    /**
+     * Returns drained batch back into the ring.
+     * @param batch batch taken by {@link #take()}
+     */
+    public void release(VectorBatch batch) {
+        batch.setSize(0);
+        freeBatches.offer(batch);
+    }
+
+    /**
+     * Drains all batches into a network. Batch learning processors get whole batches,
+     * other learning processors get samples one by one through
+     * {@link NeuralNetwork#learn(double[], double[], double[])}.
+     * @param network network to train
+     * @return number of learned samples
+     * @throws NeuralNetworkRuntimeException on loader or learning failure
+     */
+    public long train(NeuralNetwork network) throws NeuralNetworkRuntimeException {
+        final boolean batchLearning = network.getLearningProcessor() instanceof BatchLearningProcessor;
+        final double[] answer = new double[network.getResultVectorSize()];
+        long sampleNumber = 0;
+        VectorBatch batch;
+        while ((batch = take()) != null) {
+            try {
+                final int size = batch.getSize();
+                if (batchLearning) {
+                    if (size == batch.getCapacity()) {
+                        network.learnBatch(batch.getInputVectors(), batch.getReferences());
+                    }
+                    else if (size > 0) {
+                        network.learnBatch(Arrays.copyOf(batch.getInputVectors(), size),
+                                Arrays.copyOf(batch.getReferences(), size));
+                    }
+                }
+                else {
+                    for (int i = 0; i < size; i++) {
+                        network.learn(batch.getInputVectors()[i], batch.getReferences()[i], answer);
+                    }
+                }
+                sampleNumber += size;
+            }
+            finally {
+                release(batch);
+            }
+        }
+        return sampleNumber;
+    }
+
+    /**
+     * @return snapshot of backpressure metrics
+     */
+    public PipelineStatistics getStatistics() {
+        return new PipelineStatistics(loadedBatchNumber.get(), consumedBatchNumber.get(), loadTime.get(),
+                loaderWaitTime.get(), consumerWaitTime.get());
+    }
+
+    /**
+     * Stops loader threads.
+     */
+    @Override
+    public void close() {
+        for (Thread thread : loaderThreads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Loader thread main loop.
+     */
+    private void runLoader() {
+        try {
+            while (failure == null) {
+                final long waitStart = System.nanoTime();
+                final VectorBatch batch = freeBatches.take();
+                final long loadStart = System.nanoTime();
+                loaderWaitTime.addAndGet(loadStart - waitStart);
+                final boolean filled = loader.fill(batch);
+                loadTime.addAndGet(System.nanoTime() - loadStart);
+                if (!filled) {
+                    freeBatches.offer(batch);
+                    break;
+                }
+                loadedBatchNumber.incrementAndGet();
+                filledBatches.put(batch);
+                loader.prefetch(batch.getCapacity());
+            }
+        }
+        catch (InterruptedException e) {
+            // pipeline is closed
+        }
+        catch (Exception e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+        finally {
+            if (activeLoaderNumber.decrementAndGet() == 0 || failure != null) {
+                filledBatches.offer(END_OF_DATA);
+            }
+        }
+    }
+}
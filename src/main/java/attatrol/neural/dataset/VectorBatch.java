@@ -0,0 +1,72 @@
+package attatrol.neural.dataset;
+
+/**
+ * Preallocated batch of samples. Batches are reused, so vectors are overwritten
+ * on each refill and must not be retained by the consumer.
+ * @author attatrol
+ *
+ */
+public class VectorBatch {
+
+    /**
+     * Input vectors, capacity x input vector size
+     */
+    private final double[][] inputVectors;
+
+    /**
+     * Reference vectors, capacity x result vector size
+     */
+    private final double[][] references;
+
+    /**
+     * Number of filled samples, first ones
+     */
+    private int size;
+
+    /**
+     * Default ctor.
+     * @param capacity maximal number of samples
+     * @param inputVectorSize input vector size
+     * @param resultVectorSize result vector size
+     */
+    public VectorBatch(int capacity, int inputVectorSize, int resultVectorSize) {
+        inputVectors = new double[capacity][inputVectorSize];
+        references = new double[capacity][resultVectorSize];
+    }
+
+    /**
+     * @return maximal number of samples
+     */
+    public int getCapacity() {
+        return inputVectors.length;
+    }
+
+    /**
+     * @return number of filled samples
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @param size number of filled samples
+     */
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    /**
+     * @return input vector buffers, only first {@link #getSize()} are filled
+     */
+    public double[][] getInputVectors() {
+        return inputVectors;
+    }
+
+    /**
+     * @return reference vector buffers, only first {@link #getSize()} are filled
+     */
+    public double[][] getReferences() {
+        return references;
+    }
+
+}
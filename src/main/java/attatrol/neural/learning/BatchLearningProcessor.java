@@ -0,0 +1,37 @@
+package attatrol.neural.learning;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Learning processor that is able to learn on a whole set of samples at once
+ * instead of a single sample, e.g. full-batch quasi-Newton methods.
+ * <p>
+ * Ensure that there is only one client neural network for each mutable processor.
+ * @author attatrol
+ *
+ */
+public interface BatchLearningProcessor extends LearningProcessor {
+
+    /**
+     * Modifies internal state of neural network using the whole batch of samples.
+     * Input vectors are already checked by the network, reference vectors are not.
+     * Weight and bias arrays of the state must be modified in place.
+     * @param state state of some neural network
+     * @param inputs input vectors of the batch
+     * @param references reference result vectors of the batch, same order as inputs
+     * @param analyzer analytical processor of the network
+     * @throws NeuralNetworkRuntimeException on some error during learning
+     */
+    void processBatch(NeuralNetworkState state, double[][] inputs, double[][] references,
+            AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException;
+
+    /**
+     * @return average error on the batch after the last batch learning, NaN if processor doesn't measure it
+     */
+    default double getLastError() {
+        return Double.NaN;
+    }
+
+}
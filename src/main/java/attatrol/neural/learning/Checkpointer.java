@@ -0,0 +1,550 @@
+package attatrol.neural.learning;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.network.ModelDeltaFile;
+import attatrol.neural.network.ModelFile;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.utils.Utils;
+
+/**
+ * Writes checkpoints of a trained network on a background thread, see {@link ModelFile} for the format.
+ * <p>
+ * Training thread only copies weights and biases into one of two reusable snapshot buffers
+ * (topology arrays are shared), the writer thread writes the other one meanwhile.
+ * If both buffers are busy, the checkpoint is skipped, training never waits for the disk.
+ * Each file is written into a temporary file and renamed on completion, only the last
+ * checkpoints are kept. Failures of the writer don't stop training, see {@link #getLastFailure()}.
+ * <p>
+ * Optionally checkpoints form chains: a full checkpoint is followed by delta checkpoints
+ * (see {@link ModelDeltaFile}) which store only blocks changed since the previous checkpoint.
+ * The writer thread keeps a copy of weights and biases which the chain reproduces and compares
+ * each snapshot with it, a change threshold lets blocks with tiny changes be skipped.
+ * A full checkpoint is written instead of a delta when the chain is long enough, when most
+ * blocks have changed, or after a failure. {@link #restore(int)} replays the chain.
+ * <p>
+ * Add it to {@link Trainer} as a listener, or call {@link #checkpoint(NeuralNetwork, int)} directly.
+ * Learning processors which modify topology arrays in place are not supported.
+ * @author attatrol
+ *
+ */
+public final class Checkpointer implements TrainingListener, Closeable {
+
+    /**
+     * Minimal number of digits of epoch in file names, shorter epochs are zero padded
+     */
+    public static final int EPOCH_DIGIT_NUMBER = 8;
+
+    /**
+     * Number of snapshot buffers
+     */
+    private static final int BUFFER_NUMBER = 2;
+
+    /**
+     * Marks end of work for the writer thread
+     */
+    private static final Snapshot CLOSE = new Snapshot();
+
+    /**
+     * Directory of checkpoint files
+     */
+    private final Path directory;
+
+    /**
+     * Name prefix of checkpoint files
+     */
+    private final String prefix;
+
+    /**
+     * Checkpoint is made after each this number of epochs
+     */
+    private final int epochInterval;
+
+    /**
+     * Number of kept full checkpoint files, deltas are kept along with their full checkpoint
+     */
+    private final int keepLastNumber;
+
+    /**
+     * Maximal number of delta checkpoints after a full one
+     */
+    private final int maxDeltaNumber;
+
+    /**
+     * Maximal absolute difference of a value which is not written into a delta
+     */
+    private final float changeThreshold;
+
+    /**
+     * Snapshot buffers available for the training thread
+     */
+    private final BlockingQueue<Snapshot> free = new ArrayBlockingQueue<>(BUFFER_NUMBER);
+
+    /**
+     * Snapshots waiting for the writer thread
+     */
+    private final BlockingQueue<Snapshot> pending = new ArrayBlockingQueue<>(BUFFER_NUMBER + 1);
+
+    /**
+     * Writer thread
+     */
+    private final Thread writerThread;
+
+    /**
+     * Number of written checkpoints
+     */
+    private final AtomicInteger writtenNumber = new AtomicInteger();
+
+    /**
+     * Number of skipped checkpoints
+     */
+    private final AtomicInteger skippedNumber = new AtomicInteger();
+
+    /**
+     * Last failure of the writer thread, null if none
+     */
+    private volatile IOException lastFailure;
+
+    /**
+     * True after {@link #close()}
+     */
+    private volatile boolean closed;
+
+    /**
+     * Weights which the chain of checkpoints reproduces, used by the writer thread only
+     */
+    private float[][] baseWeight;
+
+    /**
+     * Biases which the chain of checkpoints reproduces, null if the next checkpoint should be full.
+     * Used by the writer thread only
+     */
+    private float[] baseBias;
+
+    /**
+     * Epoch of the last written checkpoint, used by the writer thread only
+     */
+    private int lastEpochNumber;
+
+    /**
+     * Number of deltas written after the last full checkpoint, used by the writer thread only
+     */
+    private int deltaNumber;
+
+    /**
+     * Default ctor.
+     * @param directory directory of checkpoint files
+     * @param prefix name prefix of checkpoint files
+     * @param epochInterval checkpoint is made after each this number of epochs
+     * @param keepLastNumber number of kept full checkpoint files
+     * @param maxDeltaNumber maximal number of delta checkpoints after a full one
+     * @param changeThreshold maximal absolute difference of a value which is not written into a delta
+     */
+    private Checkpointer(Path directory, String prefix, int epochInterval, int keepLastNumber,
+            int maxDeltaNumber, float changeThreshold) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.epochInterval = epochInterval;
+        this.keepLastNumber = keepLastNumber;
+        this.maxDeltaNumber = maxDeltaNumber;
+        this.changeThreshold = changeThreshold;
+        for (int i = 0; i < BUFFER_NUMBER; i++) {
+            free.add(new Snapshot());
+        }
+        writerThread = new Thread(this::runWriter, "checkpoint-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Factory method for checkpointer, checks if parameters are valid, starts the writer thread.
+     * @param directory directory of checkpoint files, created on the first write
+     * @param prefix name prefix of checkpoint files, files are named prefix-epoch.model,
+     * epoch is zero padded to at least {@link #EPOCH_DIGIT_NUMBER} digits
+     * @param epochInterval checkpoint is made after each this number of epochs
+     * @param keepLastNumber number of kept checkpoint files
+     * @return checkpointer
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static Checkpointer getCheckpointer(Path directory, String prefix, int epochInterval,
+            int keepLastNumber) throws NeuralNetworkGenerationException {
+        return getCheckpointer(directory, prefix, epochInterval, keepLastNumber, 0);
+    }
+
+    /**
+     * Factory method for checkpointer which writes chains of delta checkpoints,
+     * checks if parameters are valid, starts the writer thread.
+     * @param directory directory of checkpoint files, created on the first write
+     * @param prefix name prefix of checkpoint files, files are named prefix-epoch.model
+     * and prefix-epoch.delta
+     * @param epochInterval checkpoint is made after each this number of epochs
+     * @param keepLastNumber number of kept full checkpoint files, deltas are kept along with them
+     * @param maxDeltaNumber maximal number of delta checkpoints after a full one, 0 for full checkpoints only
+     * @return checkpointer
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static Checkpointer getCheckpointer(Path directory, String prefix, int epochInterval,
+            int keepLastNumber, int maxDeltaNumber) throws NeuralNetworkGenerationException {
+        return getCheckpointer(directory, prefix, epochInterval, keepLastNumber, maxDeltaNumber, 0f);
+    }
+
+    /**
+     * Factory method for checkpointer which writes chains of lossy delta checkpoints:
+     * a value whose difference from the restored one doesn't exceed the threshold is not written,
+     * so restored weights and biases differ from the trained ones by at most the threshold.
+     * Checks if parameters are valid, starts the writer thread.
+     * @param directory directory of checkpoint files, created on the first write
+     * @param prefix name prefix of checkpoint files, files are named prefix-epoch.model
+     * and prefix-epoch.delta
+     * @param epochInterval checkpoint is made after each this number of epochs
+     * @param keepLastNumber number of kept full checkpoint files, deltas are kept along with them
+     * @param maxDeltaNumber maximal number of delta checkpoints after a full one, 0 for full checkpoints only
+     * @param changeThreshold maximal absolute difference of a value which is not written into a delta,
+     * 0 for exact checkpoints
+     * @return checkpointer
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static Checkpointer getCheckpointer(Path directory, String prefix, int epochInterval,
+            int keepLastNumber, int maxDeltaNumber, float changeThreshold) throws NeuralNetworkGenerationException {
+        if (directory == null || prefix == null || prefix.isEmpty()) {
+            throw new NeuralNetworkGenerationException("Directory and prefix of checkpoints must be set");
+        }
+        if (epochInterval < 1) {
+            throw new NeuralNetworkGenerationException("Checkpoint interval must be a positive integer");
+        }
+        if (keepLastNumber < 1) {
+            throw new NeuralNetworkGenerationException("Number of kept checkpoints must be a positive integer");
+        }
+        if (maxDeltaNumber < 0) {
+            throw new NeuralNetworkGenerationException("Number of delta checkpoints must be non-negative");
+        }
+        if (!(changeThreshold >= 0f) || Float.isInfinite(changeThreshold)) {
+            throw new NeuralNetworkGenerationException("Change threshold must be a non-negative number");
+        }
+        return new Checkpointer(directory, prefix, epochInterval, keepLastNumber, maxDeltaNumber,
+                changeThreshold);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Makes checkpoint after each {@link #epochInterval} epochs.
+     */
+    @Override
+    public void epochFinished(NeuralNetwork network, EpochReport report) {
+        if (report.getEpochNumber() % epochInterval == 0) {
+            checkpoint(network, report.getEpochNumber());
+        }
+    }
+
+    /**
+     * Takes snapshot of the network and passes it to the writer thread.
+     * @param network network
+     * @param epochNumber number of epoch, used in file name
+     * @return true if checkpoint is queued, false if it is skipped because both buffers are busy
+     * or checkpointer is closed
+     */
+    public boolean checkpoint(NeuralNetwork network, int epochNumber) {
+        final Snapshot snapshot = closed ? null : free.poll();
+        if (snapshot == null) {
+            skippedNumber.incrementAndGet();
+            return false;
+        }
+        snapshot.state = network.getNetworkStateSnapshot(snapshot.weight, snapshot.bias);
+        snapshot.weight = snapshot.state.getWeight();
+        snapshot.bias = snapshot.state.getBias();
+        snapshot.epochNumber = epochNumber;
+        pending.add(snapshot);
+        return true;
+    }
+
+    /**
+     * @param epochNumber number of epoch
+     * @return path of the full checkpoint file of the epoch
+     */
+    public Path getPath(int epochNumber) {
+        return getPath(epochNumber, ModelFile.FILE_EXTENSION);
+    }
+
+    /**
+     * @param epochNumber number of epoch
+     * @return path of the delta checkpoint file of the epoch
+     */
+    public Path getDeltaPath(int epochNumber) {
+        return getPath(epochNumber, ModelDeltaFile.FILE_EXTENSION);
+    }
+
+    /**
+     * @return path of the latest full checkpoint file, null if there are none
+     * @throws IOException on failure to list directory
+     */
+    public Path getLatestCheckpoint() throws IOException {
+        final List<Path> checkpoints = getCheckpoints(ModelFile.FILE_EXTENSION);
+        return checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size() - 1);
+    }
+
+    /**
+     * @return epoch of the latest full or delta checkpoint, -1 if there are none
+     * @throws IOException on failure to list directory
+     */
+    public int getLatestEpochNumber() throws IOException {
+        int latestEpochNumber = -1;
+        for (String extension : new String[] {ModelFile.FILE_EXTENSION, ModelDeltaFile.FILE_EXTENSION}) {
+            final List<Path> checkpoints = getCheckpoints(extension);
+            if (!checkpoints.isEmpty()) {
+                latestEpochNumber = Math.max(latestEpochNumber,
+                        getEpochNumber(checkpoints.get(checkpoints.size() - 1), extension));
+            }
+        }
+        return latestEpochNumber;
+    }
+
+    /**
+     * Restores network state of a checkpoint: reads the latest full checkpoint up to the epoch
+     * and applies deltas written after it. Use it with
+     * {@link NeuralNetwork#NeuralNetwork(NeuralNetworkState, attatrol.neural.analysis.AnalyticalProcessor,
+     * LearningProcessor)}.
+     * @param epochNumber epoch of the checkpoint
+     * @return network state
+     * @throws IOException on failure to read files, on damaged files or on a broken chain of deltas
+     */
+    public NeuralNetworkState restore(int epochNumber) throws IOException {
+        Path base = null;
+        int currentEpochNumber = -1;
+        for (Path path : getCheckpoints(ModelFile.FILE_EXTENSION)) {
+            final int baseEpochNumber = getEpochNumber(path, ModelFile.FILE_EXTENSION);
+            if (baseEpochNumber <= epochNumber) {
+                base = path;
+                currentEpochNumber = baseEpochNumber;
+            }
+        }
+        if (base == null) {
+            throw new IOException("No full checkpoint up to epoch " + epochNumber);
+        }
+        final NeuralNetworkState state = ModelFile.read(base);
+        for (Path path : getCheckpoints(ModelDeltaFile.FILE_EXTENSION)) {
+            final int deltaEpochNumber = getEpochNumber(path, ModelDeltaFile.FILE_EXTENSION);
+            if (deltaEpochNumber > currentEpochNumber && deltaEpochNumber <= epochNumber) {
+                currentEpochNumber = ModelDeltaFile.apply(path, state, currentEpochNumber);
+            }
+        }
+        if (currentEpochNumber != epochNumber) {
+            throw new IOException("No checkpoint of epoch " + epochNumber);
+        }
+        return state;
+    }
+
+    /**
+     * @return number of written checkpoints
+     */
+    public int getWrittenNumber() {
+        return writtenNumber.get();
+    }
+
+    /**
+     * @return number of checkpoints skipped because the writer was busy
+     */
+    public int getSkippedNumber() {
+        return skippedNumber.get();
+    }
+
+    /**
+     * @return last failure of the writer thread, null if none
+     */
+    public IOException getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Waits until all queued checkpoints are written, then stops the writer thread.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.add(CLOSE);
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of the writer thread.
+     */
+    private void runWriter() {
+        while (true) {
+            final Snapshot snapshot;
+            try {
+                snapshot = pending.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (snapshot == CLOSE) {
+                return;
+            }
+            try {
+                write(snapshot);
+                writtenNumber.incrementAndGet();
+                deleteOldCheckpoints();
+            }
+            catch (IOException e) {
+                baseWeight = null;
+                baseBias = null;
+                lastFailure = e;
+            }
+            snapshot.state = null;
+            free.add(snapshot);
+        }
+    }
+
+    /**
+     * Writes snapshot as a delta checkpoint if the chain allows it, as a full one otherwise.
+     * @param snapshot snapshot
+     * @throws IOException on failure to write file
+     */
+    private void write(Snapshot snapshot) throws IOException {
+        final boolean[] changedBlocks = baseBias != null && deltaNumber < maxDeltaNumber
+                ? ModelDeltaFile.getChangedBlocks(snapshot.state, baseWeight, baseBias, changeThreshold) : null;
+        if (changedBlocks != null && 2 * ModelDeltaFile.getChangedBlockNumber(changedBlocks) <= changedBlocks.length) {
+            ModelDeltaFile.write(snapshot.state, changedBlocks, lastEpochNumber, snapshot.epochNumber,
+                    getDeltaPath(snapshot.epochNumber));
+            ModelDeltaFile.updateBase(snapshot.state, changedBlocks, baseWeight, baseBias);
+            deltaNumber++;
+        }
+        else {
+            baseWeight = null;
+            baseBias = null;
+            ModelFile.write(snapshot.state, getPath(snapshot.epochNumber));
+            if (maxDeltaNumber > 0) {
+                baseWeight = Utils.getDeepCopy(snapshot.state.getWeight());
+                baseBias = Utils.getCopy(snapshot.state.getBias());
+            }
+            deltaNumber = 0;
+        }
+        lastEpochNumber = snapshot.epochNumber;
+    }
+
+    /**
+     * Deletes all full checkpoint files but the last ones, and deltas older than the kept full checkpoints.
+     * @throws IOException on failure to list directory or to delete a file
+     */
+    private void deleteOldCheckpoints() throws IOException {
+        final List<Path> checkpoints = getCheckpoints(ModelFile.FILE_EXTENSION);
+        if (checkpoints.size() <= keepLastNumber) {
+            return;
+        }
+        for (int i = 0; i < checkpoints.size() - keepLastNumber; i++) {
+            Files.deleteIfExists(checkpoints.get(i));
+        }
+        final int oldestEpochNumber = getEpochNumber(checkpoints.get(checkpoints.size() - keepLastNumber),
+                ModelFile.FILE_EXTENSION);
+        for (Path path : getCheckpoints(ModelDeltaFile.FILE_EXTENSION)) {
+            if (getEpochNumber(path, ModelDeltaFile.FILE_EXTENSION) < oldestEpochNumber) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * @param epochNumber number of epoch
+     * @param extension file extension
+     * @return path of the checkpoint file of the epoch
+     */
+    private Path getPath(int epochNumber, String extension) {
+        return directory.resolve(String.format("%s-%0" + EPOCH_DIGIT_NUMBER + "d%s", prefix, epochNumber,
+                extension));
+    }
+
+    /**
+     * @param path path of a checkpoint file
+     * @param extension file extension
+     * @return epoch of the checkpoint
+     */
+    private int getEpochNumber(Path path, String extension) {
+        final String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(prefix.length() + 1, name.length() - extension.length()));
+    }
+
+    /**
+     * Lists checkpoint files by plain name comparison, so prefix may contain any characters.
+     * @param extension file extension
+     * @return checkpoint files in the directory, oldest first
+     * @throws IOException on failure to list directory
+     */
+    private List<Path> getCheckpoints(String extension) throws IOException {
+        final List<Path> checkpoints = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return checkpoints;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (isCheckpoint(path.getFileName().toString(), extension)) {
+                    checkpoints.add(path);
+                }
+            }
+        }
+        // epochs have at least the same number of digits, so longer names are later epochs
+        Collections.sort(checkpoints, Comparator.comparingInt((Path path) -> path.getFileName().toString().length())
+                .thenComparing(Comparator.naturalOrder()));
+        return checkpoints;
+    }
+
+    /**
+     * @param name file name
+     * @param extension file extension
+     * @return true if name is prefix, dash, epoch of at least {@link #EPOCH_DIGIT_NUMBER} digits and extension
+     */
+    private boolean isCheckpoint(String name, String extension) {
+        final int first = prefix.length() + 1;
+        final int last = name.length() - extension.length();
+        // epochs are ints, so they have at most 10 digits
+        if (last - first < EPOCH_DIGIT_NUMBER || last - first > 10 || !name.startsWith(prefix + "-")
+                || !name.endsWith(extension)) {
+            return false;
+        }
+        for (int i = first; i < last; i++) {
+            if (name.charAt(i) < '0' || name.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return Long.parseLong(name.substring(first, last)) <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Reusable snapshot buffer.
+     */
+    private static final class Snapshot {
+
+        private float[][] weight;
+
+        private float[] bias;
+
+        private NeuralNetworkState state;
+
+        private int epochNumber;
+    }
+}
@@ -0,0 +1,69 @@
+package attatrol.neural.learning;
+
+/**
+ * POJO, describes results of a single training epoch.
+ * @author attatrol
+ *
+ */
+public class EpochReport {
+
+    /**
+     * Number of the epoch, starts with 1
+     */
+    private final int epochNumber;
+
+    /**
+     * Average error on training set, measured while learning it, NaN if learning processor doesn't report it
+     */
+    private final double trainingError;
+
+    /**
+     * Average error on validation set, NaN if validation wasn't performed this epoch
+     */
+    private final double validationError;
+
+    /**
+     * Time spent on learning, in nanoseconds
+     */
+    private final long trainingTime;
+
+    /**
+     * Time spent on validation, in nanoseconds
+     */
+    private final long validationTime;
+
+    public EpochReport(int epochNumber, double trainingError, double validationError,
+            long trainingTime, long validationTime) {
+        this.epochNumber = epochNumber;
+        this.trainingError = trainingError;
+        this.validationError = validationError;
+        this.trainingTime = trainingTime;
+        this.validationTime = validationTime;
+    }
+
+    public int getEpochNumber() {
+        return epochNumber;
+    }
+
+    public double getTrainingError() {
+        return trainingError;
+    }
+
+    public double getValidationError() {
+        return validationError;
+    }
+
+    public long getTrainingTime() {
+        return trainingTime;
+    }
+
+    public long getValidationTime() {
+        return validationTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Epoch %d: training error %f, validation error %f, %d ms", epochNumber,
+                trainingError, validationError, (trainingTime + validationTime) / 1000000);
+    }
+}
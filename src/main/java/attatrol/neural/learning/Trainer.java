@@ -0,0 +1,360 @@
+package attatrol.neural.learning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.dataset.Dataset;
+import attatrol.neural.dataset.DatasetEvaluator;
+import attatrol.neural.dataset.DatasetUtils;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.supervised.AbstractErrorMinimizerLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Epoch driven trainer of a neural network.
+ * <p>
+ * Each epoch training set is traversed in shuffled order (index array is shuffled in place,
+ * samples are never moved). If network's learning processor is a {@link BatchLearningProcessor},
+ * samples are grouped into batches, otherwise they are learned one by one. All buffers are
+ * allocated once per training, so the training loop doesn't allocate memory per sample.
+ * <p>
+ * Validation set is evaluated in parallel once per {@link TrainerSettings#getValidationInterval()}
+ * epochs, training stops when validation error doesn't improve for {@link TrainerSettings#getPatience()}
+ * validations in a row. Weights and biases of the best validated epoch are kept in a snapshot and restored
+ * after training unless {@link TrainerSettings#isBestStateRestored()} is off.
+ * @author attatrol
+ *
+ */
+public class Trainer {
+
+    /**
+     * Trained network
+     */
+    private final NeuralNetwork network;
+
+    /**
+     * Trainer settings
+     */
+    private final TrainerSettings settings;
+
+    /**
+     * Error function used to measure errors
+     */
+    private final ErrorFunction errorFunction;
+
+    /**
+     * Listeners notified after each epoch
+     */
+    private final List<TrainingListener> listeners = new ArrayList<>();
+
+    /**
+     * Default ctor.
+     * @param network trained network
+     * @param settings trainer settings
+     * @param errorFunction error function used to measure errors
+     */
+    private Trainer(NeuralNetwork network, TrainerSettings settings, ErrorFunction errorFunction) {
+        this.network = network;
+        this.settings = settings;
+        this.errorFunction = errorFunction;
+    }
+
+    /**
+     * Factory method for trainer, checks if settings are valid.
+     * @param network trained network
+     * @param settings trainer settings
+     * @return trainer
+     * @throws NeuralNetworkGenerationException on invalid settings
+     */
+    public static Trainer getTrainer(NeuralNetwork network, TrainerSettings settings)
+            throws NeuralNetworkGenerationException {
+        ErrorFunction errorFunction = settings.getErrorFunction();
+        if (errorFunction == null && network.getLearningProcessor() instanceof AbstractErrorMinimizerLearner) {
+            errorFunction = ((AbstractErrorMinimizerLearner) network.getLearningProcessor()).getErrorFunction();
+        }
+        if (errorFunction == null) {
+            throw new NeuralNetworkGenerationException("Error function is not set and can not be taken"
+                    + " from the learning processor");
+        }
+        if (settings.getMaxEpochNumber() < 1) {
+            throw new NeuralNetworkGenerationException("Maximal number of epochs must be a positive integer");
+        }
+        if (settings.getValidationInterval() < 1) {
+            throw new NeuralNetworkGenerationException("Validation interval must be a positive integer");
+        }
+        if (settings.getPatience() < 1) {
+            throw new NeuralNetworkGenerationException("Patience must be a positive integer");
+        }
+        if (!(settings.getMinImprovement() >= 0.)) {
+            throw new NeuralNetworkGenerationException("Minimal improvement must be a non-negative number");
+        }
+        if (settings.getBatchSize() < 1) {
+            throw new NeuralNetworkGenerationException("Batch size must be a positive integer");
+        }
+        if (settings.getShardNumber() < 1) {
+            throw new NeuralNetworkGenerationException("Shard number must be a positive integer");
+        }
+        return new Trainer(network, settings, errorFunction);
+    }
+
+    /**
+     * Adds listener notified after each epoch.
+     * @param listener listener
+     */
+    public void addTrainingListener(TrainingListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes listener.
+     * @param listener listener
+     */
+    public void removeTrainingListener(TrainingListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return trained network
+     */
+    public NeuralNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Trains the network.
+     * @param trainingSet training set
+     * @param validationSet validation set, may be null, then there is no early stopping
+     * @return training report
+     * @throws NeuralNetworkRuntimeException on empty training set, on datasets which don't fit the network
+     * or on learning failure
+     */
+    public TrainingReport train(Dataset trainingSet, Dataset validationSet) throws NeuralNetworkRuntimeException {
+        checkDataset(trainingSet);
+        if (trainingSet.size() == 0) {
+            throw new NeuralNetworkRuntimeException("Training set is empty");
+        }
+        if (validationSet != null) {
+            checkDataset(validationSet);
+        }
+        final boolean validate = validationSet != null && validationSet.size() > 0;
+        final int[] order = new int[trainingSet.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        final SplittableRandom random = settings.getSeed() == null
+                ? new SplittableRandom() : new SplittableRandom(settings.getSeed());
+        final EpochRunner runner = network.getLearningProcessor() instanceof BatchLearningProcessor
+                ? new BatchEpochRunner(trainingSet) : new OnlineEpochRunner(trainingSet);
+
+        final List<EpochReport> reports = new ArrayList<>();
+        double bestValidationError = Double.NaN;
+        int bestEpochNumber = 0;
+        NeuralNetworkState bestState = null;
+        int epochNumber = 0;
+        int validationsWithoutImprovement = 0;
+        boolean stoppedEarly = false;
+        for (int epoch = 1; epoch <= settings.getMaxEpochNumber(); epoch++) {
+            epochNumber = epoch;
+            final long trainingStart = System.nanoTime();
+            if (settings.isShuffle()) {
+                DatasetUtils.shuffle(order, random);
+            }
+            final double trainingError = runner.runEpoch(order);
+            final long validationStart = System.nanoTime();
+            double validationError = Double.NaN;
+            if (validate && epoch % settings.getValidationInterval() == 0) {
+                validationError = DatasetEvaluator.getAverageError(network, errorFunction, validationSet,
+                        settings.getShardNumber());
+                if (bestEpochNumber == 0 || validationError < bestValidationError - settings.getMinImprovement()) {
+                    bestValidationError = validationError;
+                    bestEpochNumber = epoch;
+                    validationsWithoutImprovement = 0;
+                    if (settings.isBestStateRestored()) {
+                        bestState = bestState == null ? network.getNetworkStateSnapshot(null, null)
+                                : network.getNetworkStateSnapshot(bestState.getWeight(), bestState.getBias());
+                    }
+                }
+                else {
+                    validationsWithoutImprovement++;
+                }
+            }
+            final long validationEnd = System.nanoTime();
+            final EpochReport report = new EpochReport(epoch, trainingError, validationError,
+                    validationStart - trainingStart, validationEnd - validationStart);
+            reports.add(report);
+            for (TrainingListener listener : listeners) {
+                listener.epochFinished(network, report);
+            }
+            if (validationsWithoutImprovement >= settings.getPatience()) {
+                stoppedEarly = true;
+                break;
+            }
+        }
+        if (bestState != null && bestEpochNumber != epochNumber) {
+            network.restoreNetworkStateSnapshot(bestState);
+        }
+        return new TrainingReport(reports, stoppedEarly, bestEpochNumber, bestValidationError);
+    }
+
+    /**
+     * Checks if dataset fits the network.
+     * @param dataset dataset
+     * @throws NeuralNetworkRuntimeException if dataset doesn't fit the network
+     */
+    private void checkDataset(Dataset dataset) throws NeuralNetworkRuntimeException {
+        if (dataset.getInputVectorSize() != network.getInputVectorSize()
+                || dataset.getResultVectorSize() != network.getResultVectorSize()) {
+            throw new NeuralNetworkRuntimeException(String.format("Dataset has vectors of sizes %d and %d,"
+                    + " network accepts %d and produces %d", dataset.getInputVectorSize(),
+                    dataset.getResultVectorSize(), network.getInputVectorSize(), network.getResultVectorSize()));
+        }
+    }
+
+    /**
+     * Runs a single epoch over training set.
+     */
+    private interface EpochRunner {
+
+        /**
+         * @param order order of samples
+         * @return average error on training set
+         * @throws NeuralNetworkRuntimeException on learning failure
+         */
+        double runEpoch(int[] order) throws NeuralNetworkRuntimeException;
+    }
+
+    /**
+     * Learns samples one by one, training error is measured on network answers
+     * calculated just before learning of each sample.
+     */
+    private final class OnlineEpochRunner implements EpochRunner {
+
+        private final Dataset trainingSet;
+
+        private final double[] input;
+
+        private final double[] reference;
+
+        private final double[] answer;
+
+        /**
+         * True if coordinates of input vectors need no checks
+         */
+        private final boolean validated;
+
+        OnlineEpochRunner(Dataset trainingSet) {
+            this.trainingSet = trainingSet;
+            validated = trainingSet.isValidated(network.getInputVectorAmplitude());
+            input = new double[trainingSet.getInputVectorSize()];
+            reference = new double[trainingSet.getResultVectorSize()];
+            answer = new double[trainingSet.getResultVectorSize()];
+        }
+
+        @Override
+        public double runEpoch(int[] order) throws NeuralNetworkRuntimeException {
+            double error = 0.;
+            for (int index : order) {
+                trainingSet.getInputVector(index, input);
+                trainingSet.getReference(index, reference);
+                if (validated) {
+                    network.learnValidated(input, reference, answer);
+                }
+                else {
+                    network.learn(input, reference, answer);
+                }
+                error += errorFunction.getValue(answer, reference);
+            }
+            return error / order.length;
+        }
+    }
+
+    /**
+     * Learns samples in batches. Training error is averaged from errors on batches reported
+     * by the learning processor after learning each of them, or is evaluated in parallel after the epoch
+     * if {@link TrainerSettings#isTrainingErrorEvaluated()}.
+     */
+    private final class BatchEpochRunner implements EpochRunner {
+
+        private final Dataset trainingSet;
+
+        private final double[][] inputs;
+
+        private final double[][] references;
+
+        /**
+         * Input vectors of the last incomplete batch, rows are shared with full batch
+         */
+        private final double[][] tailInputs;
+
+        /**
+         * Reference vectors of the last incomplete batch, rows are shared with full batch
+         */
+        private final double[][] tailReferences;
+
+        /**
+         * Learning processor of the network
+         */
+        private final BatchLearningProcessor learner;
+
+        /**
+         * True if coordinates of input vectors need no checks
+         */
+        private final boolean validated;
+
+        BatchEpochRunner(Dataset trainingSet) {
+            this.trainingSet = trainingSet;
+            validated = trainingSet.isValidated(network.getInputVectorAmplitude());
+            final int batchSize = Math.min(settings.getBatchSize(), trainingSet.size());
+            inputs = new double[batchSize][trainingSet.getInputVectorSize()];
+            references = new double[batchSize][trainingSet.getResultVectorSize()];
+            tailInputs = Arrays.copyOf(inputs, trainingSet.size() % batchSize);
+            tailReferences = Arrays.copyOf(references, tailInputs.length);
+            learner = (BatchLearningProcessor) network.getLearningProcessor();
+        }
+
+        @Override
+        public double runEpoch(int[] order) throws NeuralNetworkRuntimeException {
+            double error = 0.;
+            int count = 0;
+            for (int index : order) {
+                trainingSet.getInputVector(index, inputs[count]);
+                trainingSet.getReference(index, references[count]);
+                count++;
+                if (count == inputs.length) {
+                    error += learnBatch(inputs, references);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                error += learnBatch(tailInputs, tailReferences);
+            }
+            if (settings.isTrainingErrorEvaluated()) {
+                return DatasetEvaluator.getAverageError(network, errorFunction, trainingSet,
+                        settings.getShardNumber());
+            }
+            return error / order.length;
+        }
+
+        /**
+         * @param inputVectors input vectors of the batch
+         * @param referenceVectors reference vectors of the batch
+         * @return error on the batch reported by the learning processor multiplied by batch size
+         * @throws NeuralNetworkRuntimeException on learning failure
+         */
+        private double learnBatch(double[][] inputVectors, double[][] referenceVectors)
+                throws NeuralNetworkRuntimeException {
+            if (validated) {
+                network.learnBatchValidated(inputVectors, referenceVectors);
+            }
+            else {
+                network.learnBatch(inputVectors, referenceVectors);
+            }
+            return learner.getLastError() * inputVectors.length;
+        }
+    }
+}
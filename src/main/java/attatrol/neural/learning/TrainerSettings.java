@@ -0,0 +1,160 @@
+package attatrol.neural.learning;
+
+import attatrol.neural.errorfunction.ErrorFunction;
+
+/**
+ * POJO, contains settings of a {@link Trainer}.
+ * All settings have sensible default values.
+ * @author attatrol
+ *
+ */
+public class TrainerSettings {
+
+    /**
+     * Error function used to measure training and validation errors.
+     * If null, error function of the learning processor is used.
+     */
+    private ErrorFunction errorFunction;
+
+    /**
+     * Maximal number of epochs.
+     */
+    private int maxEpochNumber = 100;
+
+    /**
+     * Validation set is evaluated once per this number of epochs.
+     */
+    private int validationInterval = 1;
+
+    /**
+     * Training stops after this number of validations without improvement.
+     */
+    private int patience = 5;
+
+    /**
+     * Validation error must decrease at least by this value to be counted as an improvement.
+     */
+    private double minImprovement;
+
+    /**
+     * True if training samples are shuffled before each epoch.
+     */
+    private boolean shuffle = true;
+
+    /**
+     * Seed of shuffling, null for unseeded shuffling.
+     */
+    private Long seed;
+
+    /**
+     * Number of samples in a batch, used only with batch learning processors.
+     */
+    private int batchSize = 256;
+
+    /**
+     * Number of parallel shards used on evaluation of errors.
+     */
+    private int shardNumber = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * True if training error of batch learning is evaluated over the whole training set after each epoch.
+     * Otherwise it is averaged from errors on batches reported by the learning processor,
+     * see {@link BatchLearningProcessor#getLastError()}.
+     */
+    private boolean trainingErrorEvaluated;
+
+    /**
+     * True if weights and biases of the epoch with the lowest validation error are restored
+     * after training.
+     */
+    private boolean bestStateRestored = true;
+
+    public ErrorFunction getErrorFunction() {
+        return errorFunction;
+    }
+
+    public void setErrorFunction(ErrorFunction errorFunction) {
+        this.errorFunction = errorFunction;
+    }
+
+    public int getMaxEpochNumber() {
+        return maxEpochNumber;
+    }
+
+    public void setMaxEpochNumber(int maxEpochNumber) {
+        this.maxEpochNumber = maxEpochNumber;
+    }
+
+    public int getValidationInterval() {
+        return validationInterval;
+    }
+
+    public void setValidationInterval(int validationInterval) {
+        this.validationInterval = validationInterval;
+    }
+
+    public int getPatience() {
+        return patience;
+    }
+
+    public void setPatience(int patience) {
+        this.patience = patience;
+    }
+
+    public double getMinImprovement() {
+        return minImprovement;
+    }
+
+    public void setMinImprovement(double minImprovement) {
+        this.minImprovement = minImprovement;
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getShardNumber() {
+        return shardNumber;
+    }
+
+    public void setShardNumber(int shardNumber) {
+        this.shardNumber = shardNumber;
+    }
+
+    public boolean isTrainingErrorEvaluated() {
+        return trainingErrorEvaluated;
+    }
+
+    public void setTrainingErrorEvaluated(boolean trainingErrorEvaluated) {
+        this.trainingErrorEvaluated = trainingErrorEvaluated;
+    }
+
+    public boolean isBestStateRestored() {
+        return bestStateRestored;
+    }
+
+    public void setBestStateRestored(boolean bestStateRestored) {
+        this.bestStateRestored = bestStateRestored;
+    }
+
+}
@@ -0,0 +1,19 @@
+package attatrol.neural.learning;
+
+import attatrol.neural.network.NeuralNetwork;
+
+/**
+ * Gets notified by {@link Trainer} after each epoch.
+ * @author attatrol
+ *
+ */
+public interface TrainingListener {
+
+    /**
+     * Called from training thread after each epoch.
+     * @param network trained network
+     * @param report report of the finished epoch
+     */
+    void epochFinished(NeuralNetwork network, EpochReport report);
+
+}
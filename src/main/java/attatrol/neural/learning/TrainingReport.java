@@ -0,0 +1,57 @@
+package attatrol.neural.learning;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * POJO, describes results of a training performed by {@link Trainer}.
+ * @author attatrol
+ *
+ */
+public class TrainingReport {
+
+    /**
+     * Reports of all performed epochs in order
+     */
+    private final List<EpochReport> epochReports;
+
+    /**
+     * True if training was stopped because validation error stopped improving
+     */
+    private final boolean stoppedEarly;
+
+    /**
+     * Number of the epoch with the lowest validation error, 0 if there was no validation
+     */
+    private final int bestEpochNumber;
+
+    /**
+     * The lowest validation error, NaN if there was no validation
+     */
+    private final double bestValidationError;
+
+    public TrainingReport(List<EpochReport> epochReports, boolean stoppedEarly, int bestEpochNumber,
+            double bestValidationError) {
+        this.epochReports = Collections.unmodifiableList(epochReports);
+        this.stoppedEarly = stoppedEarly;
+        this.bestEpochNumber = bestEpochNumber;
+        this.bestValidationError = bestValidationError;
+    }
+
+    public List<EpochReport> getEpochReports() {
+        return epochReports;
+    }
+
+    public boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+
+    public int getBestEpochNumber() {
+        return bestEpochNumber;
+    }
+
+    public double getBestValidationError() {
+        return bestValidationError;
+    }
+
+}
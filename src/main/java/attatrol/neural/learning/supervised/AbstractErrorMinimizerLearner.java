@@ -72,7 +72,7 @@ public abstract class AbstractErrorMinimizerLearner implements LearningProcessor
      * @param reference reference vector
      * @throws NeuralNetworkRuntimeException on invalid reference vector
      */
-    private void checkReferenceVector(double[] reference, int resultVectorSize) throws NeuralNetworkRuntimeException {
+    protected void checkReferenceVector(double[] reference, int resultVectorSize) throws NeuralNetworkRuntimeException {
         if (reference.length != resultVectorSize) {
             throw new NeuralNetworkRuntimeException(
                     String.format("Reference vector has cardinality of %d, network accepts only %d",
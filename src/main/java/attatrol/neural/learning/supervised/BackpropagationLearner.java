@@ -1,7 +1,5 @@
 package attatrol.neural.learning.supervised;
 
-import java.util.Arrays;
-
 import attatrol.neural.NeuralNetworkGenerationException;
 import attatrol.neural.NeuralNetworkRuntimeException;
 import attatrol.neural.activationfunction.ActivationFunction;
@@ -61,6 +59,13 @@ public class BackpropagationLearner extends AbstractErrorMinimizerLearner {
         return new BackpropagationLearner(errorFunction, changeFactor);
     }
 
+    /**
+     * @return weight shift speed modifier
+     */
+    public float getChangeFactor() {
+        return changeFactor;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -89,12 +94,14 @@ public class BackpropagationLearner extends AbstractErrorMinimizerLearner {
         final ActivationFunctionAnalyzer afa = (ActivationFunctionAnalyzer) analyzer;
         final ActivationFunction f = afa.getActivationFunction();
 
-        // array of dE/dS[i]
-        double[] errorFunctionDerivative = new double[result.length];
+        // array of dE/dS[i], buffers are allocated per call
+        // because one learner may be shared by several networks
+        final double[] errorFunctionDerivative = new double[result.length];
+        final double[] resultVector = new double[reference.length];
 
         int surfaceLayerFirstNeuronIndex = result.length - reference.length;
         // neural network result vector (results of the surface layer)
-        double[] resultVector = Arrays.copyOfRange(result, surfaceLayerFirstNeuronIndex, result.length);
+        System.arraycopy(result, surfaceLayerFirstNeuronIndex, resultVector, 0, reference.length);
 
         // first let us find all dE/dS for surface layer, it is easy:
         // dE/dS[i] = dE/dR[i] * dR[i]/dS[i] = dE/dR[i] * df(S[i])/dS[i]
@@ -0,0 +1,556 @@
+package attatrol.neural.learning.supervised;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.BatchLearningProcessor;
+import attatrol.neural.network.NeuralNetworkState;
+
+/**
+ * Full-batch limited memory BFGS learner.
+ * <p>
+ * All weights and biases of the network are treated as a single parameter vector,
+ * the minimized function is an average value of the error function over the batch.
+ * Error function and its gradient are evaluated in parallel over shards of the batch,
+ * each shard has its own buffers, so the batch itself is never copied.
+ * Step length is chosen by backtracking line search with Armijo condition.
+ * <p>
+ * Memory consumption is O(historySize * parameterNumber) for the curvature history
+ * plus one gradient buffer per shard.
+ * <p>
+ * {@link #process(NeuralNetworkState, double[], AnalyticalProcessor)} treats a single sample
+ * as a batch of size 1, use {@link attatrol.neural.network.NeuralNetwork#learnBatch(double[][], double[][])}
+ * to get the real benefit of this learner.
+ * @author attatrol
+ *
+ */
+public class LbfgsLearner extends AbstractErrorMinimizerLearner implements BatchLearningProcessor {
+
+    /**
+     *
+     */
+    private static final long serialVersionUID = -2630519924000925806L;
+
+    /**
+     * Default number of stored curvature pairs.
+     */
+    public static final int DEFAULT_HISTORY_SIZE = 10;
+
+    /**
+     * Default number of iterations per batch.
+     */
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    /**
+     * Default relative tolerance for gradient norm.
+     */
+    public static final double DEFAULT_GRADIENT_TOLERANCE = 1e-5;
+
+    /**
+     * Sufficient decrease constant of Armijo condition.
+     */
+    private static final double ARMIJO_CONSTANT = 1e-4;
+
+    /**
+     * Step length is multiplied by this value on each failed line search step.
+     */
+    private static final double BACKTRACKING_FACTOR = 0.5;
+
+    /**
+     * Maximal number of function evaluations in a single line search.
+     */
+    private static final int MAX_LINE_SEARCH_STEPS = 30;
+
+    /**
+     * Curvature pairs with s*y lesser than this value (relative to y*y) are dropped,
+     * otherwise inverse hessian approximation may lose positive definiteness.
+     */
+    private static final double CURVATURE_EPSILON = 1e-10;
+
+    /**
+     * Number of stored curvature pairs.
+     */
+    private final int historySize;
+
+    /**
+     * Maximal number of iterations per batch.
+     */
+    private final int maxIterations;
+
+    /**
+     * Iterations stop when gradient norm becomes lesser than
+     * gradientTolerance * max(1, parameter vector norm).
+     */
+    private final double gradientTolerance;
+
+    /**
+     * Number of shards the batch is divided into.
+     */
+    private final int shardNumber;
+
+    /**
+     * Average error on the batch after the last batch learning.
+     */
+    private double lastError = Double.NaN;
+
+    /**
+     * Number of iterations performed during the last batch learning.
+     */
+    private int lastIterationNumber;
+
+    /**
+     * Default ctor.
+     * @param errorFunction error function
+     * @param historySize number of stored curvature pairs
+     * @param maxIterations maximal number of iterations per batch
+     * @param gradientTolerance relative tolerance for gradient norm
+     * @param shardNumber number of shards the batch is divided into
+     */
+    private LbfgsLearner(ErrorFunction errorFunction, int historySize, int maxIterations,
+            double gradientTolerance, int shardNumber) {
+        super(errorFunction);
+        this.historySize = historySize;
+        this.maxIterations = maxIterations;
+        this.gradientTolerance = gradientTolerance;
+        this.shardNumber = shardNumber;
+    }
+
+    /**
+     * Simple ctor. Uses default history size, iteration number and tolerance,
+     * batch is divided into one shard per available processor.
+     * @param errorFunction error function
+     */
+    public LbfgsLearner(ErrorFunction errorFunction) {
+        this(errorFunction, DEFAULT_HISTORY_SIZE, DEFAULT_MAX_ITERATIONS, DEFAULT_GRADIENT_TOLERANCE,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Factory method for L-BFGS learner.
+     * @param errorFunction error function
+     * @param historySize number of stored curvature pairs, positive
+     * @param maxIterations maximal number of iterations per batch, positive
+     * @param gradientTolerance relative tolerance for gradient norm, non-negative
+     * @param shardNumber number of shards the batch is divided into, positive
+     * @return L-BFGS learner instance
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static LbfgsLearner getLbfgsLearner(ErrorFunction errorFunction, int historySize,
+            int maxIterations, double gradientTolerance, int shardNumber)
+                    throws NeuralNetworkGenerationException {
+        if (historySize < 1) {
+            throw new NeuralNetworkGenerationException("History size must be a positive integer");
+        }
+        if (maxIterations < 1) {
+            throw new NeuralNetworkGenerationException("Maximal number of iterations must be a positive integer");
+        }
+        if (!(gradientTolerance >= 0.)) {
+            throw new NeuralNetworkGenerationException("Gradient tolerance must be a non-negative number");
+        }
+        if (shardNumber < 1) {
+            throw new NeuralNetworkGenerationException("Shard number must be a positive integer");
+        }
+        return new LbfgsLearner(errorFunction, historySize, maxIterations, gradientTolerance, shardNumber);
+    }
+
+    /**
+     * @return average error on the batch after the last batch learning
+     */
+    @Override
+    public double getLastError() {
+        return lastError;
+    }
+
+    /**
+     * @return number of iterations performed during the last batch learning
+     */
+    public int getLastIterationNumber() {
+        return lastIterationNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Single sample is learned as a batch of size 1.
+     */
+    @Override
+    protected void internalProcess(NeuralNetworkState state, double[] reference, AnalyticalProcessor analyzer)
+            throws NeuralNetworkRuntimeException {
+        final double[] input = Arrays.copyOf(state.getResult(), state.getInputVectorSize());
+        learn(state, new double[][] {input}, new double[][] {reference}, analyzer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processBatch(NeuralNetworkState state, double[][] inputs, double[][] references,
+            AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException {
+        for (double[] reference : references) {
+            checkReferenceVector(reference, state.getResultVectorSize());
+        }
+        learn(state, inputs, references, analyzer);
+    }
+
+    /**
+     * L-BFGS main loop.
+     * Legend for in-code commentaries:<br/>
+     * x - parameter vector (all weights and biases)<br/>
+     * F(x) - average value of error function over the batch<br/>
+     * g - gradient of F<br/>
+     * s[k] = x[k+1] - x[k], y[k] = g[k+1] - g[k] - curvature pairs
+     * @param state network state
+     * @param inputs input vectors
+     * @param references reference vectors, already checked
+     * @param analyzer analyzer associated with neural network
+     * @throws NeuralNetworkRuntimeException on unsupported analyzer or empty batch
+     */
+    private void learn(NeuralNetworkState state, double[][] inputs, double[][] references,
+            AnalyticalProcessor analyzer) throws NeuralNetworkRuntimeException {
+        if (!(analyzer instanceof ActivationFunctionAnalyzer)) {
+            throw new NeuralNetworkRuntimeException("L-BFGS learner works only with analyzers"
+                    + " which use differentiable activation function"
+                    + " (belonging to ActivationFunctionAnalylizer class)");
+        }
+        if (inputs.length == 0) {
+            throw new NeuralNetworkRuntimeException("Batch is empty");
+        }
+        final ObjectiveFunction objective = new ObjectiveFunction(state, inputs, references,
+                (ActivationFunctionAnalyzer) analyzer);
+        final int n = objective.getParameterNumber();
+
+        double[] x = objective.pack();
+        double[] g = new double[n];
+        double fx = objective.evaluate(x, g);
+        double[] xNew = new double[n];
+        double[] gNew = new double[n];
+        final double[] direction = new double[n];
+
+        // ring buffer of curvature pairs
+        final double[][] s = new double[historySize][n];
+        final double[][] y = new double[historySize][n];
+        final double[] rho = new double[historySize];
+        final double[] alpha = new double[historySize];
+        int newest = -1;
+        int stored = 0;
+
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            final double gNorm = Math.sqrt(dot(g, g));
+            if (gNorm <= gradientTolerance * Math.max(1., Math.sqrt(dot(x, x)))) {
+                break;
+            }
+            // two-loop recursion: direction = -H * g
+            for (int i = 0; i < n; i++) {
+                direction[i] = -g[i];
+            }
+            for (int k = 0, j = newest; k < stored; k++, j = (j - 1 + historySize) % historySize) {
+                alpha[j] = rho[j] * dot(s[j], direction);
+                axpy(-alpha[j], y[j], direction);
+            }
+            if (stored > 0) {
+                // initial inverse hessian approximation H0 = (s*y / y*y) I
+                scale(1. / (rho[newest] * dot(y[newest], y[newest])), direction);
+            }
+            for (int k = 0, j = (newest - stored + 1 + historySize) % historySize; k < stored;
+                    k++, j = (j + 1) % historySize) {
+                final double beta = rho[j] * dot(y[j], direction);
+                axpy(alpha[j] - beta, s[j], direction);
+            }
+            double slope = dot(direction, g);
+            if (slope >= 0.) {
+                // not a descent direction, forget the history and use steepest descent
+                stored = 0;
+                newest = -1;
+                for (int i = 0; i < n; i++) {
+                    direction[i] = -g[i];
+                }
+                slope = -gNorm * gNorm;
+            }
+
+            // backtracking line search, first step without history is normalized
+            double step = stored == 0 ? Math.min(1., 1. / gNorm) : 1.;
+            double fxNew = Double.NaN;
+            boolean accepted = false;
+            for (int k = 0; k < MAX_LINE_SEARCH_STEPS; k++) {
+                for (int i = 0; i < n; i++) {
+                    xNew[i] = x[i] + step * direction[i];
+                }
+                fxNew = objective.evaluate(xNew, gNew);
+                if (fxNew <= fx + ARMIJO_CONSTANT * step * slope) {
+                    accepted = true;
+                    break;
+                }
+                step *= BACKTRACKING_FACTOR;
+            }
+            iteration++;
+            if (!accepted) {
+                // no progress is possible, return to the last good point
+                objective.unpack(x);
+                break;
+            }
+
+            // update curvature history, the oldest pair is overwritten
+            double sy = 0.;
+            double yy = 0.;
+            for (int i = 0; i < n; i++) {
+                sy += (xNew[i] - x[i]) * (gNew[i] - g[i]);
+                yy += (gNew[i] - g[i]) * (gNew[i] - g[i]);
+            }
+            if (sy > CURVATURE_EPSILON * yy) {
+                newest = (newest + 1) % historySize;
+                for (int i = 0; i < n; i++) {
+                    s[newest][i] = xNew[i] - x[i];
+                    y[newest][i] = gNew[i] - g[i];
+                }
+                rho[newest] = 1. / sy;
+                stored = Math.min(stored + 1, historySize);
+            }
+
+            double[] swap = x;
+            x = xNew;
+            xNew = swap;
+            swap = g;
+            g = gNew;
+            gNew = swap;
+            fx = fxNew;
+        }
+        lastError = fx;
+        lastIterationNumber = iteration;
+    }
+
+    private static double dot(double[] a, double[] b) {
+        double accumulator = 0.;
+        for (int i = 0; i < a.length; i++) {
+            accumulator += a[i] * b[i];
+        }
+        return accumulator;
+    }
+
+    private static void axpy(double factor, double[] x, double[] y) {
+        for (int i = 0; i < x.length; i++) {
+            y[i] += factor * x[i];
+        }
+    }
+
+    private static void scale(double factor, double[] x) {
+        for (int i = 0; i < x.length; i++) {
+            x[i] *= factor;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LbfgsLearner [historySize=" + historySize + ", maxIterations=" + maxIterations
+                + ", gradientTolerance=" + gradientTolerance + ", shardNumber=" + shardNumber
+                + ", errorFunction=" + errorFunction + "]";
+    }
+
+    /**
+     * Average error over the batch as a function of parameter vector.
+     * Parameter vector is laid out neuron by neuron in order of forward traverse:
+     * weights of the neuron followed by its bias.
+     */
+    private final class ObjectiveFunction {
+
+        private final NeuralNetworkState state;
+
+        private final double[][] inputs;
+
+        private final double[][] references;
+
+        private final ActivationFunctionAnalyzer analyzer;
+
+        /**
+         * Offset of the first weight of each source in parameter vector
+         */
+        private final int[] weightOffset;
+
+        /**
+         * Offset of the bias of each source in parameter vector
+         */
+        private final int[] biasOffset;
+
+        private final int parameterNumber;
+
+        private final Shard[] shards;
+
+        ObjectiveFunction(NeuralNetworkState state, double[][] inputs, double[][] references,
+                ActivationFunctionAnalyzer analyzer) {
+            this.state = state;
+            this.inputs = inputs;
+            this.references = references;
+            this.analyzer = analyzer;
+            final int[] traverseOrder = state.getTraverseOrder();
+            final int[][] parents = state.getParents();
+            final int sourceNumber = parents.length;
+            weightOffset = new int[sourceNumber];
+            biasOffset = new int[sourceNumber];
+            int offset = 0;
+            for (int neuronIndex : traverseOrder) {
+                weightOffset[neuronIndex] = offset;
+                offset += parents[neuronIndex].length;
+                biasOffset[neuronIndex] = offset;
+                offset++;
+            }
+            parameterNumber = offset;
+            final int effectiveShardNumber = Math.min(shardNumber, inputs.length);
+            shards = new Shard[effectiveShardNumber];
+            for (int i = 0; i < effectiveShardNumber; i++) {
+                shards[i] = new Shard((int) ((long) inputs.length * i / effectiveShardNumber),
+                        (int) ((long) inputs.length * (i + 1) / effectiveShardNumber));
+            }
+        }
+
+        int getParameterNumber() {
+            return parameterNumber;
+        }
+
+        /**
+         * @return current weights and biases as a parameter vector
+         */
+        double[] pack() {
+            final double[] x = new double[parameterNumber];
+            final float[][] weight = state.getWeight();
+            final float[] bias = state.getBias();
+            for (int neuronIndex : state.getTraverseOrder()) {
+                final int offset = weightOffset[neuronIndex];
+                for (int k = 0; k < weight[neuronIndex].length; k++) {
+                    x[offset + k] = weight[neuronIndex][k];
+                }
+                x[biasOffset[neuronIndex]] = bias[neuronIndex];
+            }
+            return x;
+        }
+
+        /**
+         * Writes parameter vector into network state.
+         * Parameter vector is rounded to float precision, so it is always equal to the real state.
+         * @param x parameter vector
+         */
+        void unpack(double[] x) {
+            final float[][] weight = state.getWeight();
+            final float[] bias = state.getBias();
+            for (int neuronIndex : state.getTraverseOrder()) {
+                final int offset = weightOffset[neuronIndex];
+                for (int k = 0; k < weight[neuronIndex].length; k++) {
+                    weight[neuronIndex][k] = (float) x[offset + k];
+                    x[offset + k] = weight[neuronIndex][k];
+                }
+                bias[neuronIndex] = (float) x[biasOffset[neuronIndex]];
+                x[biasOffset[neuronIndex]] = bias[neuronIndex];
+            }
+        }
+
+        /**
+         * Sets parameter vector into network state and evaluates average error and its gradient.
+         * @param x parameter vector
+         * @param gradient gradient output
+         * @return average error
+         */
+        double evaluate(double[] x, double[] gradient) {
+            unpack(x);
+            IntStream.range(0, shards.length).parallel().forEach(i -> shards[i].evaluate());
+            Arrays.fill(gradient, 0.);
+            double error = 0.;
+            for (Shard shard : shards) {
+                error += shard.error;
+                axpy(1., shard.gradient, gradient);
+            }
+            scale(1. / inputs.length, gradient);
+            return error / inputs.length;
+        }
+
+        /**
+         * Evaluates error and gradient on a continuous part of the batch.
+         * Shares weights with the network but has its own results and linear combinations.
+         */
+        private final class Shard {
+
+            private final int from;
+
+            private final int to;
+
+            private final NeuralNetworkState shardState;
+
+            /**
+             * array of dE/dS[i]
+             */
+            private final double[] errorFunctionDerivative;
+
+            private final double[] resultVector;
+
+            private final double[] gradient;
+
+            private double error;
+
+            Shard(int from, int to) {
+                this.from = from;
+                this.to = to;
+                final int sourceNumber = state.getParents().length;
+                shardState = new NeuralNetworkState(true, state.getInputVectorAmplitude(),
+                        state.getInputVectorSize(), state.getResultVectorSize(), state.getWeight(),
+                        state.getBias(), new double[sourceNumber], new double[sourceNumber],
+                        state.getChildren(), state.getParents(), state.getTraverseOrder());
+                errorFunctionDerivative = new double[sourceNumber];
+                resultVector = new double[state.getResultVectorSize()];
+                gradient = new double[parameterNumber];
+            }
+
+            /**
+             * Same math as in {@link BackpropagationLearner}, but derivatives by weights
+             * are accumulated instead of being applied.
+             */
+            void evaluate() {
+                final int[] traverseOrder = shardState.getTraverseOrder();
+                final float[][] weight = shardState.getWeight();
+                final int[][] parents = shardState.getParents();
+                final double[] result = shardState.getResult();
+                final double[] linearCombination = shardState.getLinearCombination();
+                final ActivationFunction f = analyzer.getActivationFunction();
+                final int inputVectorSize = shardState.getInputVectorSize();
+                final int surfaceLayerFirstNeuronIndex = result.length - resultVector.length;
+                Arrays.fill(gradient, 0.);
+                error = 0.;
+                for (int sample = from; sample < to; sample++) {
+                    System.arraycopy(inputs[sample], 0, result, 0, inputVectorSize);
+                    analyzer.process(shardState, LbfgsLearner.this);
+                    final double[] reference = references[sample];
+                    System.arraycopy(result, surfaceLayerFirstNeuronIndex, resultVector, 0, resultVector.length);
+                    error += errorFunction.getValue(resultVector, reference);
+
+                    Arrays.fill(errorFunctionDerivative, 0.);
+                    for (int i = 0; i < reference.length; i++) {
+                        errorFunctionDerivative[i + surfaceLayerFirstNeuronIndex] =
+                                errorFunction.getDerivative(resultVector, reference, i)
+                                * f.getDerivative(linearCombination[i + surfaceLayerFirstNeuronIndex],
+                                        resultVector[i]);
+                    }
+                    for (int j = traverseOrder.length - 1; j >= 0; j--) {
+                        final int i = traverseOrder[j];
+                        final double efd = errorFunctionDerivative[i];
+                        final int offset = weightOffset[i];
+                        for (int k = 0; k < parents[i].length; k++) {
+                            final int parentIndex = parents[i][k];
+                            if (parentIndex >= inputVectorSize) {
+                                errorFunctionDerivative[parentIndex] += efd * weight[i][k]
+                                        * f.getDerivative(linearCombination[parentIndex], result[parentIndex]);
+                            }
+                            // dE/dw[i][j] = dE/dS[i] * R[j]
+                            gradient[offset + k] += efd * result[parentIndex];
+                        }
+                        // dE/db[i] = dE/dS[i]
+                        gradient[biasOffset[i]] += efd;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package attatrol.neural.network;
+
+import java.util.function.Consumer;
+
+import attatrol.neural.NeuralNetworkRuntimeException;
+
+/**
+ * Inference-only neural network produced by {@link NetworkCompiler}: weights, biases and indices
+ * are constants of generated code, which calculates results of all sources in place.
+ * <p>
+ * Instances are immutable, results of sources are kept in one array per calling thread,
+ * so a single instance may be used by many threads without locking.
+ * @author attatrol
+ *
+ */
+public final class CompiledNeuralNetwork {
+
+    /**
+     * Generated code, calculates results of all neurons from results of input sources
+     */
+    private final Consumer<double[]> kernel;
+
+    /**
+     * Total number of sources
+     */
+    private final int sourceTotalNumber;
+
+    /**
+     * Input vector size
+     */
+    private final int inputVectorSize;
+
+    /**
+     * Result vector size
+     */
+    private final int resultVectorSize;
+
+    /**
+     * Amplitude of input vector coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * If true, input vectors are raw features, their coordinates are not checked against amplitude
+     */
+    private final boolean rawInput;
+
+    /**
+     * Results of all sources, one array per thread
+     */
+    private final ThreadLocal<double[]> result;
+
+    /**
+     * Default ctor.
+     * @param kernel generated code
+     * @param sourceTotalNumber total number of sources
+     * @param inputVectorSize input vector size
+     * @param resultVectorSize result vector size
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @param rawInput if true, input vectors are raw features
+     */
+    CompiledNeuralNetwork(Consumer<double[]> kernel, int sourceTotalNumber, int inputVectorSize,
+            int resultVectorSize, double inputVectorAmplitude, boolean rawInput) {
+        this.kernel = kernel;
+        this.sourceTotalNumber = sourceTotalNumber;
+        this.inputVectorSize = inputVectorSize;
+        this.resultVectorSize = resultVectorSize;
+        this.inputVectorAmplitude = inputVectorAmplitude;
+        this.rawInput = rawInput;
+        this.result = ThreadLocal.withInitial(() -> new double[sourceTotalNumber]);
+    }
+
+    /**
+     * @return amplitude of input vector coordinates
+     */
+    public double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    /**
+     * @return result vector size
+     */
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    /**
+     * Neural network maps input vector into some result vector.
+     * @param inputVector argument
+     * @return result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    public double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        final double[] answer = new double[resultVectorSize];
+        map(inputVector, answer);
+        return answer;
+    }
+
+    /**
+     * Same as {@link #map(double[])}, but result vector is written into preallocated buffer,
+     * so no memory is allocated per call.
+     * @param inputVector argument
+     * @param resultBuffer buffer for result vector, must have size of result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or buffer
+     */
+    public void map(double[] inputVector, double[] resultBuffer) throws NeuralNetworkRuntimeException {
+        if (resultBuffer.length != resultVectorSize) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Result buffer has cardinality of %d, network produces %d",
+                            resultBuffer.length, resultVectorSize));
+        }
+        NeuralNetwork.checkInputVector(inputVector, inputVectorSize, rawInput ? Double.NaN : inputVectorAmplitude);
+        final double[] sourceResult = result.get();
+        System.arraycopy(inputVector, 0, sourceResult, 0, inputVectorSize);
+        kernel.accept(sourceResult);
+        System.arraycopy(sourceResult, sourceTotalNumber - resultVectorSize, resultBuffer, 0, resultVectorSize);
+    }
+}
@@ -0,0 +1,272 @@
+package attatrol.neural.network;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.utils.Utils;
+
+/**
+ * Neural network which can learn and serve at the same time.
+ * <p>
+ * Learning works with the training copy of weights and biases as usual, while {@link #map(double[])}
+ * reads a published read-only copy and never takes the network lock, so serving threads never wait
+ * for the learner. Training copy is copied into a new published copy after a number of updates
+ * or after some time passes, then it is published with a single volatile write.
+ * Serving threads always see either the old or the new published copy as a whole.
+ * <p>
+ * Analytical processor is called from several threads at once, thus it must be stateless
+ * (activation function analyzers are). Learning processors which modify topology arrays
+ * in place are not supported, topology arrays are shared with published copies.
+ * @author attatrol
+ *
+ */
+public class DoubleBufferedNeuralNetwork extends NeuralNetwork {
+
+    /**
+     * Published copy is refreshed after this number of learning calls, 0 if disabled
+     */
+    private final int publishUpdateInterval;
+
+    /**
+     * Published copy is refreshed on the first learning call after this time (in milliseconds)
+     * passes since the last publication, 0 if disabled
+     */
+    private final long publishTimeInterval;
+
+    /**
+     * Published read-only copy of the network state, without results and linear combinations
+     */
+    private volatile NeuralNetworkState publishedState;
+
+    /**
+     * Number of learning calls since the last publication
+     */
+    private int updatesSincePublication;
+
+    /**
+     * Time of the last publication, in milliseconds
+     */
+    private long lastPublicationTime;
+
+    /**
+     * Per-thread buffers of serving threads
+     */
+    private final ThreadLocal<ServingBuffer> servingBuffer = new ThreadLocal<ServingBuffer>() {
+        @Override
+        protected ServingBuffer initialValue() {
+            return new ServingBuffer();
+        }
+    };
+
+    /**
+     * Constructs network from state of some other neural network.
+     * @param state state of a neural network, used as a training copy
+     * @param analyticalProcessor analytical processor
+     * @param learningProcessor learning processor
+     * @param publishUpdateInterval published copy is refreshed after this number of learning calls,
+     * 0 if disabled
+     * @param publishTimeInterval published copy is refreshed on the first learning call after this
+     * time (in milliseconds) passes since the last publication, 0 if disabled
+     */
+    public DoubleBufferedNeuralNetwork(NeuralNetworkState state, AnalyticalProcessor analyticalProcessor,
+            LearningProcessor learningProcessor, int publishUpdateInterval, long publishTimeInterval) {
+        super(state, analyticalProcessor, learningProcessor);
+        this.publishUpdateInterval = publishUpdateInterval;
+        this.publishTimeInterval = publishTimeInterval;
+        publish();
+    }
+
+    /**
+     * Factory method, creates double buffered network from a deep copy of some network.
+     * Processors are shared, so source network should not be used anymore.
+     * @param network source network
+     * @param publishUpdateInterval published copy is refreshed after this number of learning calls,
+     * 0 if disabled
+     * @param publishTimeInterval published copy is refreshed on the first learning call after this
+     * time (in milliseconds) passes since the last publication, 0 if disabled
+     * @return double buffered network
+     * @throws NeuralNetworkGenerationException on invalid intervals
+     */
+    public static DoubleBufferedNeuralNetwork getDoubleBufferedNetwork(NeuralNetwork network,
+            int publishUpdateInterval, long publishTimeInterval) throws NeuralNetworkGenerationException {
+        if (publishUpdateInterval < 0 || publishTimeInterval < 0) {
+            throw new NeuralNetworkGenerationException("Publication intervals must be non-negative");
+        }
+        return new DoubleBufferedNeuralNetwork(network.getNetworkStateCopy(), network.getAnalythicalProcessor(),
+                network.getLearningProcessor(), publishUpdateInterval, publishTimeInterval);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Uses published copy of weights and biases, doesn't wait for the learner.
+     */
+    @Override
+    public double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        final NeuralNetworkState state = publishedState;
+        final double[] resultVector = new double[state.getResultVectorSize()];
+        serve(state, inputVector, resultVector);
+        return resultVector;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Uses published copy of weights and biases, doesn't wait for the learner.
+     */
+    @Override
+    public void map(double[] inputVector, double[] resultBuffer) throws NeuralNetworkRuntimeException {
+        final NeuralNetworkState state = publishedState;
+        if (resultBuffer.length != state.getResultVectorSize()) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Result buffer has cardinality of %d, network produces %d",
+                            resultBuffer.length, state.getResultVectorSize()));
+        }
+        serve(state, inputVector, resultBuffer);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Works with the training copy, may publish it afterwards.
+     */
+    @Override
+    public synchronized void learn(double[] inputVector, double[] reference, double[] resultBuffer)
+            throws NeuralNetworkRuntimeException {
+        super.learn(inputVector, reference, resultBuffer);
+        onUpdate();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Works with the training copy, may publish it afterwards.
+     */
+    @Override
+    public synchronized void learnBatch(double[][] inputVectors, double[][] references)
+            throws NeuralNetworkRuntimeException {
+        super.learnBatch(inputVectors, references);
+        onUpdate();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Works with the training copy, may publish it afterwards.
+     */
+    @Override
+    public synchronized void learnValidated(double[] inputVector, double[] reference, double[] resultBuffer)
+            throws NeuralNetworkRuntimeException {
+        super.learnValidated(inputVector, reference, resultBuffer);
+        onUpdate();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Works with the training copy, may publish it afterwards.
+     */
+    @Override
+    public synchronized void learnBatchValidated(double[][] inputVectors, double[][] references)
+            throws NeuralNetworkRuntimeException {
+        super.learnBatchValidated(inputVectors, references);
+        onUpdate();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Works with the training copy and publishes it at once.
+     */
+    @Override
+    public synchronized void restoreNetworkStateSnapshot(NeuralNetworkState snapshot)
+            throws NeuralNetworkRuntimeException {
+        super.restoreNetworkStateSnapshot(snapshot);
+        publish();
+    }
+
+    /**
+     * Copies training copy of weights and biases into a new published copy
+     * and publishes it at once.
+     */
+    public synchronized void publish() {
+        publishedState = new NeuralNetworkState(false, inputVectorAmplitude, inputVectorSize,
+                resultVectorSize, Utils.getDeepCopy(weight), Utils.getCopy(bias), null, null,
+                children, parents, traverseOrder);
+        publishedState.setRawInput(rawInput);
+        updatesSincePublication = 0;
+        lastPublicationTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return published read-only copy of the network state, results and linear combinations are null
+     */
+    public NeuralNetworkState getPublishedState() {
+        return publishedState;
+    }
+
+    /**
+     * Publishes training copy if it is time to.
+     */
+    private void onUpdate() {
+        updatesSincePublication++;
+        if ((publishUpdateInterval > 0 && updatesSincePublication >= publishUpdateInterval)
+                || (publishTimeInterval > 0
+                        && System.currentTimeMillis() - lastPublicationTime >= publishTimeInterval)) {
+            publish();
+        }
+    }
+
+    /**
+     * Maps input vector with the published state using buffers of the current thread.
+     * @param state published state
+     * @param inputVector input vector
+     * @param resultBuffer buffer for result vector
+     * @throws NeuralNetworkRuntimeException on invalid input vector
+     */
+    private void serve(NeuralNetworkState state, double[] inputVector, double[] resultBuffer)
+            throws NeuralNetworkRuntimeException {
+        checkInputVector(inputVector, state.getInputVectorSize(),
+                state.isRawInput() ? Double.NaN : state.getInputVectorAmplitude());
+        final NeuralNetworkState workingState = servingBuffer.get().getWorkingState(state);
+        final double[] result = workingState.getResult();
+        System.arraycopy(inputVector, 0, result, 0, inputVector.length);
+        analyticalProcessor.process(workingState, learningProcessor);
+        System.arraycopy(result, result.length - resultBuffer.length, resultBuffer, 0, resultBuffer.length);
+    }
+
+    /**
+     * Results and linear combinations of a single serving thread.
+     */
+    private static final class ServingBuffer {
+
+        /**
+         * Published state the working state is bound to
+         */
+        private NeuralNetworkState publishedState;
+
+        /**
+         * Shallow copy of the published state with own results and linear combinations
+         */
+        private NeuralNetworkState workingState;
+
+        NeuralNetworkState getWorkingState(NeuralNetworkState state) {
+            if (publishedState != state) {
+                final int sourceNumber = state.getParents().length;
+                double[] result = workingState == null ? null : workingState.getResult();
+                double[] linearCombination = workingState == null ? null : workingState.getLinearCombination();
+                if (result == null || result.length != sourceNumber) {
+                    result = new double[sourceNumber];
+                    linearCombination = new double[sourceNumber];
+                }
+                workingState = new NeuralNetworkState(true, state.getInputVectorAmplitude(),
+                        state.getInputVectorSize(), state.getResultVectorSize(), state.getWeight(),
+                        state.getBias(), linearCombination, result, state.getChildren(), state.getParents(),
+                        state.getTraverseOrder());
+                publishedState = state;
+            }
+            return workingState;
+        }
+    }
+}
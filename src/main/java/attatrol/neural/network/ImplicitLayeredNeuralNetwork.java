@@ -0,0 +1,447 @@
+package attatrol.neural.network;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.topology.ImplicitLayeredTopology;
+import attatrol.neural.utils.RandomUtils;
+import attatrol.neural.utils.Utils;
+
+/**
+ * Layered feed-forward neural network over {@link ImplicitLayeredTopology}, no adjacency arrays
+ * are stored, children of each neuron are calculated on the fly.
+ * <p>
+ * Weights are stored per layer in parent-major order: weight of the j-th child of the p-th neuron
+ * of layer l is weight[l][p * K + j], where K is number of children per neuron of layer l.
+ * Forward pass pushes result of each parent into linear combinations of its children,
+ * backward pass pulls errors of children into each parent, so parents of a neuron are never needed.
+ * Parents are pushed in ascending order, so results are exactly the same as results of
+ * {@link NeuralNetwork} with {@link ActivationFunctionAnalyzer} on the same weights.
+ * Learning is the same as of {@link BackpropagationLearner}.
+ * @author attatrol
+ *
+ */
+public class ImplicitLayeredNeuralNetwork {
+
+    /**
+     * Topology of the network
+     */
+    private final ImplicitLayeredTopology topology;
+
+    /**
+     * Analyzer, supplies activation function
+     */
+    private final ActivationFunctionAnalyzer analyzer;
+
+    /**
+     * Learner, supplies error function and change factor
+     */
+    private final BackpropagationLearner learner;
+
+    /**
+     * Amplitude of input vector coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * If true, input vectors are raw features, their coordinates are not checked against amplitude
+     */
+    private final boolean rawInput;
+
+    /**
+     * Weights of connections from each layer to the next one, parent-major
+     */
+    private final float[][] weight;
+
+    /**
+     * Biases of neurons of each layer, empty for input vector layer
+     */
+    private final float[][] bias;
+
+    /**
+     * Linear combinations of neurons of each layer
+     */
+    private final double[][] linearCombination;
+
+    /**
+     * Results of neurons of each layer, input vector for the first layer
+     */
+    private final double[][] result;
+
+    /**
+     * dE/dS of neurons of each layer, used by learning
+     */
+    private final double[][] errorFunctionDerivative;
+
+    /**
+     * Buffer for children of a single neuron
+     */
+    private final int[] childrenBuffer;
+
+    /**
+     * Default ctor.
+     * @param topology topology of the network
+     * @param analyzer analyzer
+     * @param learner learner
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @param weight weights of connections from each layer to the next one, parent-major
+     * @param bias biases of neurons of each layer
+     * @param rawInput if true, input vectors are raw features
+     */
+    private ImplicitLayeredNeuralNetwork(ImplicitLayeredTopology topology, ActivationFunctionAnalyzer analyzer,
+            BackpropagationLearner learner, double inputVectorAmplitude, float[][] weight, float[][] bias,
+            boolean rawInput) {
+        this.topology = topology;
+        this.analyzer = analyzer;
+        this.learner = learner;
+        this.inputVectorAmplitude = inputVectorAmplitude;
+        this.weight = weight;
+        this.bias = bias;
+        this.rawInput = rawInput;
+        final int layerNumber = topology.getLayerNumber();
+        linearCombination = new double[layerNumber][];
+        result = new double[layerNumber][];
+        errorFunctionDerivative = new double[layerNumber][];
+        int maxChildPerNeuronNumber = 0;
+        for (int i = 0; i < layerNumber; i++) {
+            linearCombination[i] = new double[topology.getLayerSize(i)];
+            result[i] = new double[topology.getLayerSize(i)];
+            errorFunctionDerivative[i] = new double[topology.getLayerSize(i)];
+            maxChildPerNeuronNumber = Math.max(maxChildPerNeuronNumber, topology.getChildPerNeuronNumber(i));
+        }
+        childrenBuffer = new int[maxChildPerNeuronNumber];
+    }
+
+    /**
+     * Factory method, creates network with random weights and biases
+     * (same ranges as {@link NeuralNetwork} uses).
+     * @param topology topology of the network
+     * @param analyzer analyzer
+     * @param learner learner
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @return network
+     * @throws NeuralNetworkGenerationException on invalid parameters or on too large layers
+     */
+    public static ImplicitLayeredNeuralNetwork getImplicitLayeredNeuralNetwork(ImplicitLayeredTopology topology,
+            ActivationFunctionAnalyzer analyzer, BackpropagationLearner learner, double inputVectorAmplitude)
+                    throws NeuralNetworkGenerationException {
+        return getImplicitLayeredNeuralNetwork(topology, analyzer, learner, inputVectorAmplitude, null);
+    }
+
+    /**
+     * Factory method, creates network with random weights and biases
+     * (same ranges as {@link NeuralNetwork} uses). Each layer has its own random stream
+     * split sequentially from the seed, so a seeded network is reproducible.
+     * @param topology topology of the network
+     * @param analyzer analyzer
+     * @param learner learner
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @param seed seed of weights and biases, null if unseeded
+     * @return network
+     * @throws NeuralNetworkGenerationException on invalid parameters or on too large layers
+     */
+    public static ImplicitLayeredNeuralNetwork getImplicitLayeredNeuralNetwork(ImplicitLayeredTopology topology,
+            ActivationFunctionAnalyzer analyzer, BackpropagationLearner learner, double inputVectorAmplitude,
+            Long seed) throws NeuralNetworkGenerationException {
+        checkParameters(topology, analyzer, learner, inputVectorAmplitude);
+        final int layerNumber = topology.getLayerNumber();
+        final float[][] weight = new float[layerNumber - 1][];
+        final float[][] bias = new float[layerNumber][];
+        bias[0] = new float[0];
+        final SplittableRandom seedRandom = RandomUtils.getSplittableRandom(seed);
+        for (int i = 0; i < layerNumber - 1; i++) {
+            final SplittableRandom random = seedRandom.split();
+            weight[i] = RandomUtils.generateRandomFloats(NeuralNetwork.RAMDOM_WEIGHT_MIN,
+                    NeuralNetwork.RANDOM_WEIGHT_MAX, getWeightNumber(topology, i), random);
+            //initial values of biases cover medium zone of input vector domain
+            bias[i + 1] = RandomUtils.generateRandomFloats((float) (inputVectorAmplitude / 4),
+                    (float) (inputVectorAmplitude * 3 / 4), topology.getLayerSize(i + 1), random);
+        }
+        return new ImplicitLayeredNeuralNetwork(topology, analyzer, learner, inputVectorAmplitude,
+                weight, bias, false);
+    }
+
+    /**
+     * Factory method, creates network with weights and biases of an ordinary network
+     * generated from the same layered topology description.
+     * @param network source network, not modified
+     * @param topology topology of the network
+     * @return network
+     * @throws NeuralNetworkGenerationException if processors of the source network are not supported
+     * or if its topology differs
+     */
+    public static ImplicitLayeredNeuralNetwork getImplicitLayeredNeuralNetwork(NeuralNetwork network,
+            ImplicitLayeredTopology topology) throws NeuralNetworkGenerationException {
+        if (!(network.getAnalythicalProcessor() instanceof ActivationFunctionAnalyzer)
+                || !(network.getLearningProcessor() instanceof BackpropagationLearner)) {
+            throw new NeuralNetworkGenerationException("Only networks with activation function analyzer"
+                    + " and backpropagation learner are supported");
+        }
+        final NeuralNetworkState state = network.getNetworkStateCopy();
+        checkParameters(topology, (ActivationFunctionAnalyzer) network.getAnalythicalProcessor(),
+                (BackpropagationLearner) network.getLearningProcessor(), state.getInputVectorAmplitude());
+        final int[][] parents = state.getParents();
+        long connectionNumber = 0;
+        for (int[] neuronParents : parents) {
+            connectionNumber += neuronParents.length;
+        }
+        if (parents.length != topology.getSourceTotalNumber()
+                || state.getInputVectorSize() != topology.getInputVectorSize()
+                || state.getResultVectorSize() != topology.getResultVectorSize()
+                || connectionNumber != topology.getConnectionNumber()) {
+            throw new NeuralNetworkGenerationException("Network topology differs from implicit topology");
+        }
+        final int layerNumber = topology.getLayerNumber();
+        final float[][] weight = new float[layerNumber - 1][];
+        final float[][] bias = new float[layerNumber][];
+        bias[0] = new float[0];
+        for (int i = 0; i < layerNumber - 1; i++) {
+            final int childPerNeuronNumber = topology.getChildPerNeuronNumber(i);
+            final int parentFirstIndex = topology.getFirstIndexOfLayer(i);
+            final int childFirstIndex = topology.getFirstIndexOfLayer(i + 1);
+            final int[] children = new int[childPerNeuronNumber];
+            weight[i] = new float[getWeightNumber(topology, i)];
+            for (int p = 0; p < topology.getLayerSize(i); p++) {
+                topology.fillChildren(i, p, children);
+                for (int j = 0; j < childPerNeuronNumber; j++) {
+                    final int child = childFirstIndex + children[j];
+                    // parents of the ordinary network are sorted
+                    final int k = Arrays.binarySearch(parents[child], parentFirstIndex + p);
+                    if (k < 0) {
+                        throw new NeuralNetworkGenerationException(String.format(
+                                "Network has no connection from %d to %d", parentFirstIndex + p, child));
+                    }
+                    weight[i][p * childPerNeuronNumber + j] = state.getWeight()[child][k];
+                }
+            }
+            bias[i + 1] = Arrays.copyOfRange(state.getBias(), childFirstIndex,
+                    childFirstIndex + topology.getLayerSize(i + 1));
+        }
+        return new ImplicitLayeredNeuralNetwork(topology,
+                (ActivationFunctionAnalyzer) network.getAnalythicalProcessor(),
+                (BackpropagationLearner) network.getLearningProcessor(), state.getInputVectorAmplitude(),
+                weight, bias, state.isRawInput());
+    }
+
+    /**
+     * @return topology of the network
+     */
+    public ImplicitLayeredTopology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return amplitude of input vector coordinates
+     */
+    public double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * Neural network maps input vector into some result vector.
+     * @param inputVector argument
+     * @return result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    public synchronized double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        forward(inputVector);
+        return Utils.getCopy(result[result.length - 1]);
+    }
+
+    /**
+     * Same as {@link #map(double[])}, but result vector is written into preallocated buffer.
+     * @param inputVector argument
+     * @param resultBuffer buffer for result vector, must have size of result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or buffer
+     */
+    public synchronized void map(double[] inputVector, double[] resultBuffer) throws NeuralNetworkRuntimeException {
+        checkResultBuffer(resultBuffer);
+        forward(inputVector);
+        System.arraycopy(result[result.length - 1], 0, resultBuffer, 0, resultBuffer.length);
+    }
+
+    /**
+     * Maps input vector, then performs single backpropagation iteration.
+     * @param inputVector input vector
+     * @param reference reference result vector
+     * @return result vector (calculated before learning)
+     * @throws NeuralNetworkRuntimeException on bad format of input or reference vector
+     */
+    public synchronized double[] learn(double[] inputVector, double[] reference)
+            throws NeuralNetworkRuntimeException {
+        final double[] answer = new double[topology.getResultVectorSize()];
+        learn(inputVector, reference, answer);
+        return answer;
+    }
+
+    /**
+     * Same as {@link #learn(double[], double[])}, but result vector is written into
+     * preallocated buffer.
+     * @param inputVector input vector
+     * @param reference reference result vector
+     * @param resultBuffer buffer for result vector (calculated before learning),
+     * must have size of result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input or reference vector or buffer
+     */
+    public synchronized void learn(double[] inputVector, double[] reference, double[] resultBuffer)
+            throws NeuralNetworkRuntimeException {
+        checkResultBuffer(resultBuffer);
+        checkReferenceVector(reference);
+        forward(inputVector);
+        System.arraycopy(result[result.length - 1], 0, resultBuffer, 0, resultBuffer.length);
+        backward(reference);
+    }
+
+    /**
+     * Checks factory method parameters.
+     * @param topology topology of the network
+     * @param analyzer analyzer
+     * @param learner learner
+     * @param inputVectorAmplitude amplitude of input vector coordinates
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    private static void checkParameters(ImplicitLayeredTopology topology, ActivationFunctionAnalyzer analyzer,
+            BackpropagationLearner learner, double inputVectorAmplitude) throws NeuralNetworkGenerationException {
+        if (topology == null || analyzer == null || learner == null) {
+            throw new NeuralNetworkGenerationException("Topology, analyzer and learner must not be null");
+        }
+        if (inputVectorAmplitude <= NeuralNetworkFactory.INCOMING_VALUE_MINIMAL_BANDWIDTH) {
+            throw new NeuralNetworkGenerationException("Incoming vector components have very small amplitude,"
+                    + "increase the amplitude");
+        }
+    }
+
+    /**
+     * Calculates number of weights of connections from a layer to the next one.
+     * @param topology topology of the network
+     * @param layer parent layer index
+     * @return number of weights
+     * @throws NeuralNetworkGenerationException if weights don't fit into an array
+     */
+    private static int getWeightNumber(ImplicitLayeredTopology topology, int layer)
+            throws NeuralNetworkGenerationException {
+        final long weightNumber = (long) topology.getLayerSize(layer) * topology.getChildPerNeuronNumber(layer);
+        if (weightNumber > Integer.MAX_VALUE - 8) {
+            throw new NeuralNetworkGenerationException(String.format(
+                    "Layer %d: %d connections do not fit into an array", layer, weightNumber));
+        }
+        return (int) weightNumber;
+    }
+
+    /**
+     * Checks if buffer for result vector is valid.
+     * @param resultBuffer buffer for result vector
+     * @throws NeuralNetworkRuntimeException on invalid buffer
+     */
+    private void checkResultBuffer(double[] resultBuffer) throws NeuralNetworkRuntimeException {
+        if (resultBuffer.length != topology.getResultVectorSize()) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Result buffer has cardinality of %d, network produces %d",
+                            resultBuffer.length, topology.getResultVectorSize()));
+        }
+    }
+
+    /**
+     * Checks if reference vector is valid, as {@link BackpropagationLearner} does.
+     * @param reference reference vector
+     * @throws NeuralNetworkRuntimeException on invalid reference vector
+     */
+    private void checkReferenceVector(double[] reference) throws NeuralNetworkRuntimeException {
+        if (reference.length != topology.getResultVectorSize()) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Reference vector has cardinality of %d, network accepts only %d",
+                            reference.length, topology.getResultVectorSize()));
+        }
+        for (int i = 0; i < reference.length; i++) {
+            if (reference[i] < 0. || reference[i] > 1.) {
+                throw new NeuralNetworkRuntimeException(
+                        String.format("Reference vector coordinate %d has value of %f, which is out of bounds [0, 1]",
+                                i, reference[i]));
+            }
+        }
+    }
+
+    /**
+     * Calculates results of all neurons, layer by layer.
+     * @param inputVector input vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    private void forward(double[] inputVector) throws NeuralNetworkRuntimeException {
+        NeuralNetwork.checkInputVector(inputVector, topology.getInputVectorSize(),
+                rawInput ? Double.NaN : inputVectorAmplitude);
+        System.arraycopy(inputVector, 0, result[0], 0, inputVector.length);
+        for (int l = 0; l < weight.length; l++) {
+            final int childPerNeuronNumber = topology.getChildPerNeuronNumber(l);
+            final float[] layerWeight = weight[l];
+            final double[] parentResult = result[l];
+            final double[] childLinearCombination = linearCombination[l + 1];
+            final double[] childResult = result[l + 1];
+            final float[] childBias = bias[l + 1];
+            for (int c = 0; c < childLinearCombination.length; c++) {
+                childLinearCombination[c] = childBias[c];
+            }
+            for (int p = 0; p < parentResult.length; p++) {
+                topology.fillChildren(l, p, childrenBuffer);
+                final double parentValue = parentResult[p];
+                final int offset = p * childPerNeuronNumber;
+                for (int j = 0; j < childPerNeuronNumber; j++) {
+                    childLinearCombination[childrenBuffer[j]] += layerWeight[offset + j] * parentValue;
+                }
+            }
+            for (int c = 0; c < childResult.length; c++) {
+                childResult[c] = analyzer.activate(childLinearCombination[c]);
+            }
+        }
+    }
+
+    /**
+     * Backward propagation of error, see {@link BackpropagationLearner} for legend.
+     * @param reference reference vector
+     */
+    private void backward(double[] reference) {
+        final ErrorFunction errorFunction = learner.getErrorFunction();
+        final ActivationFunction f = analyzer.getActivationFunction();
+        final float changeFactor = learner.getChangeFactor();
+        final int surfaceLayer = result.length - 1;
+
+        // dE/dS[i] = dE/dR[i] * df(S[i])/dS[i] for surface layer
+        for (int i = 0; i < reference.length; i++) {
+            errorFunctionDerivative[surfaceLayer][i] = errorFunction.getDerivative(result[surfaceLayer], reference, i)
+                    * f.getDerivative(linearCombination[surfaceLayer][i], result[surfaceLayer][i]);
+        }
+        for (int l = surfaceLayer - 1; l >= 0; l--) {
+            final int childPerNeuronNumber = topology.getChildPerNeuronNumber(l);
+            final float[] layerWeight = weight[l];
+            final double[] parentResult = result[l];
+            final double[] childEfd = errorFunctionDerivative[l + 1];
+            for (int p = 0; p < parentResult.length; p++) {
+                topology.fillChildren(l, p, childrenBuffer);
+                final double parentValue = parentResult[p];
+                final int offset = p * childPerNeuronNumber;
+                // dE/dR[p] = SUM (dE/dS[i] * w[i][p]), weights are used before their change
+                double efdSum = 0.;
+                for (int j = 0; j < childPerNeuronNumber; j++) {
+                    final double efd = childEfd[childrenBuffer[j]];
+                    efdSum += efd * layerWeight[offset + j];
+                    // w[i][p] -= n * dE/dS[i] * R[p]
+                    layerWeight[offset + j] -= changeFactor * efd * parentValue;
+                }
+                if (l > 0) {
+                    errorFunctionDerivative[l][p] = efdSum
+                            * f.getDerivative(linearCombination[l][p], parentValue);
+                }
+            }
+            // b[i] -= n * dE/dS[i]
+            final float[] childBias = bias[l + 1];
+            for (int c = 0; c < childBias.length; c++) {
+                childBias[c] -= changeFactor * childEfd[c];
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package attatrol.neural.network;
+
+/**
+ * Ways to calculate a feed-forward network, see {@link InferenceEngineSelector}.
+ * @author attatrol
+ *
+ */
+public enum InferenceEngine {
+
+    /**
+     * {@link NeuralNetwork} with {@link attatrol.neural.analysis.ActivationFunctionAnalyzer},
+     * neurons are calculated one by one in traverse order
+     */
+    SERIAL,
+
+    /**
+     * {@link NeuralNetwork} with {@link attatrol.neural.analysis.LevelParallelActivationFunctionAnalyzer},
+     * neurons of each large level are calculated concurrently
+     */
+    LEVEL_PARALLEL,
+
+    /**
+     * {@link ImplicitLayeredNeuralNetwork}, parents push results into children computed on the fly,
+     * no adjacency arrays are read; available for procedural layered topologies only
+     */
+    IMPLICIT_LAYERED;
+
+}
@@ -0,0 +1,232 @@
+package attatrol.neural.network;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.analysis.LevelParallelActivationFunctionAnalyzer;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.topology.ImplicitLayeredTopology;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import attatrol.neural.topology.Topology;
+import attatrol.neural.topology.TopologyCostModel;
+import attatrol.neural.topology.TraverseLevels;
+
+/**
+ * Utility class, chooses the fastest {@link InferenceEngine} for a topology with help of its
+ * {@link TopologyCostModel}.
+ * <p>
+ * Mapping is assumed to be bound by memory traffic, so cost of an engine is estimated
+ * in bytes moved by the slowest thread: serial engine moves all bytes of the cost model,
+ * level-parallel engine divides bytes of each large level between processors and pays fixed overhead
+ * per such level. Implicit layered engine reads no adjacency, but it calculates index of each child
+ * and updates it in place, which is priced per connection of each distribution.
+ * @author attatrol
+ *
+ */
+public final class InferenceEngineSelector {
+
+    /**
+     * Estimated overhead of a single concurrent level calculation, in bytes moved in the same time.
+     * Handing a level to the common fork/join pool and joining it takes a few microseconds,
+     * while a single core streams memory at several gigabytes per second, which gives tens of kilobytes.
+     * This is an order-of-magnitude estimate rather than a measurement, calibrate it on the target
+     * machine by mapping the same network with {@link ActivationFunctionAnalyzer} and
+     * {@link LevelParallelActivationFunctionAnalyzer}.
+     */
+    public static final long PARALLEL_LEVEL_OVERHEAD_BYTES = 1 << 16;
+
+    /**
+     * Estimated cost of a connection of {@link InferenceEngine#IMPLICIT_LAYERED} engine with
+     * {@link LayerInterconnectionDistribution#LOCALIZED} distribution, in bytes moved in the same time.
+     * Calibrated against {@link TopologyCostModel#CONNECTION_BYTES} of the serial engine: on layers
+     * of 300 to 5000 neurons implicit mapping took 1.3 to 1.9 times longer than serial one on a single core.
+     */
+    public static final int IMPLICIT_LOCALIZED_CONNECTION_BYTES = 28;
+
+    /**
+     * Estimated cost of a connection of {@link InferenceEngine#IMPLICIT_LAYERED} engine with
+     * {@link LayerInterconnectionDistribution#DISPERSE} distribution, in bytes moved in the same time.
+     * Each child index is rounded from a floating point division, on the same layers implicit mapping
+     * took 3.4 to 4.9 times longer than serial one.
+     */
+    public static final int IMPLICIT_DISPERSE_CONNECTION_BYTES = 72;
+
+    /**
+     * Not in use
+     */
+    private InferenceEngineSelector() { }
+
+    /**
+     * Chooses engine of the lowest estimated cost.
+     * @param model cost model of the topology
+     * @param implicitTopology implicit representation of the topology, null if it is not available
+     * @param processorNumber number of processors
+     * @return the fastest engine
+     */
+    public static InferenceEngine select(TopologyCostModel model, ImplicitLayeredTopology implicitTopology,
+            int processorNumber) {
+        InferenceEngine best = InferenceEngine.SERIAL;
+        long bestCost = getEstimatedCost(model, InferenceEngine.SERIAL, processorNumber);
+        if (implicitTopology != null && getEstimatedCost(implicitTopology) < bestCost) {
+            best = InferenceEngine.IMPLICIT_LAYERED;
+            bestCost = getEstimatedCost(implicitTopology);
+        }
+        if (getEstimatedCost(model, InferenceEngine.LEVEL_PARALLEL, processorNumber) < bestCost) {
+            best = InferenceEngine.LEVEL_PARALLEL;
+        }
+        return best;
+    }
+
+    /**
+     * Chooses engine of the lowest estimated cost for a network generated from layered topology
+     * description, uses all available processors.
+     * @param model cost model of the topology
+     * @param description description the topology was generated from, null if unknown
+     * @return the fastest engine
+     */
+    public static InferenceEngine select(TopologyCostModel model, LayeredTopologyDescription description) {
+        return select(model, getImplicitLayeredTopology(description), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Estimates cost of a single mapping by an engine over ordinary topology.
+     * @param model cost model of the topology
+     * @param engine {@link InferenceEngine#SERIAL} or {@link InferenceEngine#LEVEL_PARALLEL},
+     * see {@link #getEstimatedCost(ImplicitLayeredTopology)} for {@link InferenceEngine#IMPLICIT_LAYERED}
+     * @param processorNumber number of processors
+     * @return estimated number of bytes moved by the slowest thread
+     * @throws IllegalArgumentException if engine is {@link InferenceEngine#IMPLICIT_LAYERED}
+     */
+    public static long getEstimatedCost(TopologyCostModel model, InferenceEngine engine, int processorNumber) {
+        switch (engine) {
+        case IMPLICIT_LAYERED:
+            throw new IllegalArgumentException("Cost of implicit layered engine depends on distributions");
+        case LEVEL_PARALLEL:
+            final TraverseLevels levels = model.getLevels();
+            long cost = 0;
+            for (int level = 0; level < levels.getLevelNumber(); level++) {
+                final long levelConnectionNumber = model.getLevelConnectionNumber(level);
+                final long levelCost = TopologyCostModel.CONNECTION_BYTES * levelConnectionNumber
+                        + (long) TopologyCostModel.NEURON_BYTES * levels.getLevelWidth(level);
+                final int threadNumber = Math.min(processorNumber, levels.getLevelWidth(level));
+                if (threadNumber > 1 && levelConnectionNumber
+                        >= LevelParallelActivationFunctionAnalyzer.PARALLEL_LEVEL_MIN_CONNECTIONS) {
+                    cost += levelCost / threadNumber + PARALLEL_LEVEL_OVERHEAD_BYTES;
+                }
+                else {
+                    cost += levelCost;
+                }
+            }
+            return cost;
+        default:
+            return model.getBytesPerMap();
+        }
+    }
+
+    /**
+     * Estimates cost of a single mapping by {@link InferenceEngine#IMPLICIT_LAYERED} engine.
+     * @param topology implicit topology
+     * @return estimated number of bytes moved, see {@link #IMPLICIT_LOCALIZED_CONNECTION_BYTES}
+     */
+    public static long getEstimatedCost(ImplicitLayeredTopology topology) {
+        long cost = (long) TopologyCostModel.NEURON_BYTES
+                * (topology.getSourceTotalNumber() - topology.getInputVectorSize());
+        for (int layer = 0; layer < topology.getLayerNumber() - 1; layer++) {
+            final int connectionBytes = topology.getDistribution(layer) == LayerInterconnectionDistribution.LOCALIZED
+                    ? IMPLICIT_LOCALIZED_CONNECTION_BYTES : IMPLICIT_DISPERSE_CONNECTION_BYTES;
+            cost += (long) connectionBytes * topology.getLayerSize(layer) * topology.getChildPerNeuronNumber(layer);
+        }
+        return cost;
+    }
+
+    /**
+     * Creates copy of the network which uses the fastest of engines applicable to {@link NeuralNetwork}
+     * ({@link InferenceEngine#SERIAL} or {@link InferenceEngine#LEVEL_PARALLEL}).
+     * Networks with analyzers other than {@link ActivationFunctionAnalyzer} are copied as is.
+     * See {@link #getImplicitLayeredNetwork(NeuralNetwork, LayeredTopologyDescription)}
+     * for {@link InferenceEngine#IMPLICIT_LAYERED}.
+     * Processors are shared, so source network should not be used anymore.
+     * @param network source network
+     * @return copy of the network
+     * @throws NeuralNetworkGenerationException if network graph has cycles
+     */
+    public static NeuralNetwork getNetwork(NeuralNetwork network) throws NeuralNetworkGenerationException {
+        final NeuralNetworkState state = network.getNetworkStateCopy();
+        AnalyticalProcessor analyzer = network.getAnalythicalProcessor();
+        if (analyzer.getClass() == ActivationFunctionAnalyzer.class
+                || analyzer.getClass() == LevelParallelActivationFunctionAnalyzer.class) {
+            final int sourceNumber = state.getParents().length;
+            final Topology topology = new Topology(sourceNumber, state.getInputVectorSize(),
+                    sourceNumber - state.getResultVectorSize(), state.getChildren(), state.getParents(),
+                    state.getTraverseOrder());
+            final InferenceEngine engine = select(TopologyCostModel.getTopologyCostModel(topology), null,
+                    Runtime.getRuntime().availableProcessors());
+            final ActivationFunctionAnalyzer activationFunctionAnalyzer = (ActivationFunctionAnalyzer) analyzer;
+            if (engine == InferenceEngine.LEVEL_PARALLEL) {
+                analyzer = new LevelParallelActivationFunctionAnalyzer(
+                        activationFunctionAnalyzer.getActivationFunction());
+            }
+            else {
+                analyzer = new ActivationFunctionAnalyzer(activationFunctionAnalyzer.getActivationFunction());
+            }
+        }
+        return new NeuralNetwork(state, analyzer, network.getLearningProcessor());
+    }
+
+    /**
+     * Creates {@link ImplicitLayeredNeuralNetwork} with weights of the network if it is the fastest engine
+     * for the topology, see {@link #select(TopologyCostModel, LayeredTopologyDescription)}.
+     * @param network source network with {@link ActivationFunctionAnalyzer} and {@link BackpropagationLearner},
+     * not modified
+     * @param description description the network topology was generated from
+     * @return implicit layered network, null if another engine is faster or the network is not supported,
+     * then use {@link #getNetwork(NeuralNetwork)}
+     * @throws NeuralNetworkGenerationException if network graph has cycles or its topology differs
+     * from the description
+     */
+    public static ImplicitLayeredNeuralNetwork getImplicitLayeredNetwork(NeuralNetwork network,
+            LayeredTopologyDescription description) throws NeuralNetworkGenerationException {
+        final ImplicitLayeredTopology implicitTopology = getImplicitLayeredTopology(description);
+        if (network.getAnalythicalProcessor().getClass() != ActivationFunctionAnalyzer.class
+                && network.getAnalythicalProcessor().getClass() != LevelParallelActivationFunctionAnalyzer.class
+                || !(network.getLearningProcessor() instanceof BackpropagationLearner)
+                || implicitTopology == null) {
+            return null;
+        }
+        final NeuralNetworkState state = network.getNetworkStateCopy();
+        final int sourceNumber = state.getParents().length;
+        final Topology topology = new Topology(sourceNumber, state.getInputVectorSize(),
+                sourceNumber - state.getResultVectorSize(), state.getChildren(), state.getParents(),
+                state.getTraverseOrder());
+        if (select(TopologyCostModel.getTopologyCostModel(topology), implicitTopology,
+                Runtime.getRuntime().availableProcessors()) != InferenceEngine.IMPLICIT_LAYERED) {
+            return null;
+        }
+        return ImplicitLayeredNeuralNetwork.getImplicitLayeredNeuralNetwork(network, implicitTopology);
+    }
+
+    /**
+     * @param description layered topology description
+     * @return true if the description can be turned into {@link ImplicitLayeredTopology}
+     */
+    public static boolean isImplicitLayeredAvailable(LayeredTopologyDescription description) {
+        return getImplicitLayeredTopology(description) != null;
+    }
+
+    /**
+     * @param description layered topology description, may be null
+     * @return implicit topology of the description, null if it can't be created
+     */
+    private static ImplicitLayeredTopology getImplicitLayeredTopology(LayeredTopologyDescription description) {
+        if (description == null) {
+            return null;
+        }
+        try {
+            return ImplicitLayeredTopology.getImplicitLayeredTopology(description);
+        }
+        catch (NeuralNetworkGenerationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package attatrol.neural.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of a model file (see {@link ModelFile}) mapped into memory.
+ * <p>
+ * Mapping reads and checks only the header, data is paged in by the operating system on access,
+ * so even a very large model is ready in milliseconds and doesn't occupy the heap.
+ * File is mapped in segments of {@link #SEGMENT_SIZE} bytes, all sections are aligned, so no
+ * element crosses a segment border. Data checksum is checked on demand by {@link #isChecksumValid()},
+ * as it reads the whole file. Instances are immutable and may be shared between threads.
+ * @author attatrol
+ *
+ */
+public final class MappedModel {
+
+    /**
+     * Size of a mapped segment, in bytes
+     */
+    public static final int SEGMENT_SIZE = 1 << 30;
+
+    /**
+     * Mapped segments of the file, the first one starts with header
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Flags, reserved
+     */
+    private final int flags;
+
+    /**
+     * Total number of sources
+     */
+    private final int sourceTotalNumber;
+
+    /**
+     * Input vector size
+     */
+    private final int inputVectorSize;
+
+    /**
+     * Result vector size
+     */
+    private final int resultVectorSize;
+
+    /**
+     * Amplitude of input vector coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * Total number of connections
+     */
+    private final long connectionNumber;
+
+    /**
+     * Length of traverse order
+     */
+    private final int traverseLength;
+
+    /**
+     * Checksum of data stored in header
+     */
+    private final long dataCrc;
+
+    /**
+     * Position of traverse order in file
+     */
+    private final long traverseOrderPosition;
+
+    /**
+     * Position of parent offsets in file
+     */
+    private final long parentOffsetPosition;
+
+    /**
+     * Position of parents in file
+     */
+    private final long parentPosition;
+
+    /**
+     * Position of weights in file
+     */
+    private final long weightPosition;
+
+    /**
+     * Position of children offsets in file
+     */
+    private final long childOffsetPosition;
+
+    /**
+     * Position of children in file
+     */
+    private final long childrenPosition;
+
+    /**
+     * Default ctor.
+     * @param segments mapped segments
+     * @param header header
+     */
+    private MappedModel(MappedByteBuffer[] segments, ByteBuffer header) {
+        this.segments = segments;
+        this.flags = header.getInt(8);
+        this.sourceTotalNumber = header.getInt(12);
+        this.inputVectorSize = header.getInt(16);
+        this.resultVectorSize = header.getInt(20);
+        this.inputVectorAmplitude = header.getDouble(24);
+        this.connectionNumber = header.getLong(32);
+        this.traverseLength = header.getInt(40);
+        this.dataCrc = header.getLong(ModelFile.DATA_CRC_POSITION);
+        this.traverseOrderPosition = ModelFile.getTraverseOrderPosition(sourceTotalNumber);
+        this.parentOffsetPosition = ModelFile.getParentOffsetPosition(sourceTotalNumber, traverseLength);
+        this.parentPosition = ModelFile.getParentPosition(sourceTotalNumber, traverseLength);
+        this.weightPosition = ModelFile.getWeightPosition(sourceTotalNumber, connectionNumber, traverseLength);
+        this.childOffsetPosition = ModelFile.getChildOffsetPosition(sourceTotalNumber, connectionNumber,
+                traverseLength);
+        this.childrenPosition = ModelFile.getChildrenPosition(sourceTotalNumber, connectionNumber, traverseLength);
+    }
+
+    /**
+     * Memory maps a model file, checks its header and size.
+     * @param path file path
+     * @return mapped model
+     * @throws IOException on failure to read file, on damaged header or on unknown flags
+     */
+    public static MappedModel map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < ModelFile.HEADER_SIZE) {
+                throw new IOException(path + " is too short for a model file");
+            }
+            final MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+            for (int i = 0; i < segments.length; i++) {
+                final long position = (long) i * SEGMENT_SIZE;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(SEGMENT_SIZE, size - position));
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            final ByteBuffer header = segments[0].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != ModelFile.MAGIC || header.getInt(4) != ModelFile.FORMAT_VERSION) {
+                throw new IOException(path + " is not a model file of version " + ModelFile.FORMAT_VERSION);
+            }
+            if (header.getInt(ModelFile.HEADER_CRC_POSITION) != ModelFile.getHeaderCrc(header)) {
+                throw new IOException(path + " has invalid header checksum");
+            }
+            if ((header.getInt(8) & ~ModelFile.FLAG_RAW_INPUT) != 0) {
+                throw new IOException(path + " has unknown flags " + Integer.toHexString(header.getInt(8)));
+            }
+            final MappedModel model = new MappedModel(segments, header);
+            if (model.sourceTotalNumber < 0 || model.connectionNumber < 0 || model.traverseLength < 0
+                    || size != ModelFile.getFileSize(model.sourceTotalNumber, model.connectionNumber,
+                            model.traverseLength)) {
+                throw new IOException(path + " has invalid size");
+            }
+            return model;
+        }
+    }
+
+    /**
+     * @return flags, see {@link ModelFile#FLAG_RAW_INPUT}
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * @return true if the network takes raw features, see {@link NeuralNetworkState#isRawInput()}
+     */
+    public boolean isRawInput() {
+        return (flags & ModelFile.FLAG_RAW_INPUT) != 0;
+    }
+
+    /**
+     * @return total number of sources
+     */
+    public int getSourceTotalNumber() {
+        return sourceTotalNumber;
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    /**
+     * @return result vector size
+     */
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    /**
+     * @return amplitude of input vector coordinates
+     */
+    public double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * @return total number of connections
+     */
+    public long getConnectionNumber() {
+        return connectionNumber;
+    }
+
+    /**
+     * @return length of traverse order
+     */
+    public int getTraverseLength() {
+        return traverseLength;
+    }
+
+    /**
+     * @param source source index
+     * @return bias of the source
+     */
+    public float getBias(int source) {
+        return getFloat(ModelFile.HEADER_SIZE + 4L * source);
+    }
+
+    /**
+     * @param index index in traverse order
+     * @return neuron index
+     */
+    public int getTraverseOrder(int index) {
+        return getInt(traverseOrderPosition + 4L * index);
+    }
+
+    /**
+     * Parents of source i are connections from getParentOffset(i) to getParentOffset(i + 1).
+     * @param source source index, up to total number of sources inclusive
+     * @return index of the first connection of the source
+     */
+    public long getParentOffset(int source) {
+        return getLong(parentOffsetPosition + 8L * source);
+    }
+
+    /**
+     * @param connection connection index
+     * @return parent of the connection
+     */
+    public int getParent(long connection) {
+        return getInt(parentPosition + 4 * connection);
+    }
+
+    /**
+     * @param connection connection index
+     * @return weight of the connection
+     */
+    public float getWeight(long connection) {
+        return getFloat(weightPosition + 4 * connection);
+    }
+
+    /**
+     * Children of source i are from getChildOffset(i) to getChildOffset(i + 1).
+     * @param source source index, up to total number of sources inclusive
+     * @return index of the first child of the source
+     */
+    public long getChildOffset(int source) {
+        return getLong(childOffsetPosition + 8L * source);
+    }
+
+    /**
+     * @param index index of a child
+     * @return the child
+     */
+    public int getChild(long index) {
+        return getInt(childrenPosition + 4 * index);
+    }
+
+    /**
+     * @return number of mapped segments
+     */
+    int getSegmentNumber() {
+        return segments.length;
+    }
+
+    /**
+     * Creates little-endian view of a part of the first segment, the model must consist of a single segment.
+     * @param position position in file
+     * @param size size of the view, in bytes
+     * @return view
+     */
+    ByteBuffer getView(long position, long size) {
+        final ByteBuffer view = segments[0].duplicate();
+        view.limit((int) (position + size));
+        view.position((int) position);
+        return view.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * @return position of traverse order in file
+     */
+    long getTraverseOrderPosition() {
+        return traverseOrderPosition;
+    }
+
+    /**
+     * @return position of parent offsets in file
+     */
+    long getParentOffsetPosition() {
+        return parentOffsetPosition;
+    }
+
+    /**
+     * @return position of parents in file
+     */
+    long getParentPosition() {
+        return parentPosition;
+    }
+
+    /**
+     * @return position of weights in file
+     */
+    long getWeightPosition() {
+        return weightPosition;
+    }
+
+    /**
+     * Reads the whole file and compares its checksum with the stored one.
+     * @return true if data is not damaged
+     */
+    public boolean isChecksumValid() {
+        return ModelFile.getDataCrc(segments) == dataCrc;
+    }
+
+    /**
+     * Copies the model onto the heap, checks its structure on the way.
+     * @return network state, results and linear combinations are zeroed
+     * @throws IOException on damaged structure or on too large neighbour lists
+     */
+    public NeuralNetworkState toNeuralNetworkState() throws IOException {
+        final float[] bias = new float[sourceTotalNumber];
+        for (int i = 0; i < sourceTotalNumber; i++) {
+            bias[i] = getBias(i);
+        }
+        final int[] traverseOrder = new int[traverseLength];
+        for (int i = 0; i < traverseLength; i++) {
+            traverseOrder[i] = getTraverseOrder(i);
+            checkIndex(traverseOrder[i]);
+        }
+        final float[][] weight = new float[sourceTotalNumber][];
+        final int[][] parents = new int[sourceTotalNumber][];
+        final int[][] children = new int[sourceTotalNumber][];
+        for (int i = 0; i < sourceTotalNumber; i++) {
+            final long first = getParentOffset(i);
+            parents[i] = new int[getListLength(first, getParentOffset(i + 1))];
+            weight[i] = new float[parents[i].length];
+            for (int j = 0; j < parents[i].length; j++) {
+                parents[i][j] = getParent(first + j);
+                weight[i][j] = getWeight(first + j);
+                checkIndex(parents[i][j]);
+            }
+        }
+        for (int i = 0; i < sourceTotalNumber; i++) {
+            final long first = getChildOffset(i);
+            children[i] = new int[getListLength(first, getChildOffset(i + 1))];
+            for (int j = 0; j < children[i].length; j++) {
+                children[i][j] = getChild(first + j);
+                checkIndex(children[i][j]);
+            }
+        }
+        final NeuralNetworkState state = new NeuralNetworkState(false, inputVectorAmplitude, inputVectorSize,
+                resultVectorSize, weight, bias, new double[sourceTotalNumber], new double[sourceTotalNumber],
+                children, parents, traverseOrder);
+        state.setRawInput(isRawInput());
+        return state;
+    }
+
+    /**
+     * @param first offset of the first element of a neighbour list
+     * @param last offset after the last element of a neighbour list
+     * @return length of the list
+     * @throws IOException on invalid offsets
+     */
+    private int getListLength(long first, long last) throws IOException {
+        if (first < 0 || last < first || last > connectionNumber || last - first > Integer.MAX_VALUE - 8) {
+            throw new IOException(String.format("Invalid neighbour list offsets %d, %d", first, last));
+        }
+        return (int) (last - first);
+    }
+
+    /**
+     * @param index source index
+     * @throws IOException if index is out of bounds
+     */
+    private void checkIndex(int index) throws IOException {
+        if (index < 0 || index >= sourceTotalNumber) {
+            throw new IOException("Source index out of bounds: " + index);
+        }
+    }
+
+    private int getInt(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].getInt((int) (position % SEGMENT_SIZE));
+    }
+
+    private long getLong(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].getLong((int) (position % SEGMENT_SIZE));
+    }
+
+    private float getFloat(long position) {
+        return segments[(int) (position / SEGMENT_SIZE)].getFloat((int) (position % SEGMENT_SIZE));
+    }
+}
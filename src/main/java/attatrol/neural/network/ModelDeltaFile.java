@@ -0,0 +1,468 @@
+package attatrol.neural.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import attatrol.neural.utils.FileUtils;
+
+/**
+ * Utility class, binary format of delta checkpoints: weights and biases of source blocks which
+ * changed since the previous checkpoint. A chain of deltas is applied on top of a full model file
+ * (see {@link ModelFile}), topology is never stored in deltas.
+ * <p>
+ * Sources are divided into blocks of {@link #BLOCK_SIZE} consecutive sources, block is changed
+ * if one of its values differs from the base by more than a threshold, the base is a copy of the values
+ * which the chain reproduces (see {@link #getChangedBlocks(NeuralNetworkState, float[][], float[], float)}).
+ * With zero threshold the chain reproduces the state exactly, otherwise each restored value differs
+ * from the trained one by at most the threshold.
+ * File is little-endian, it starts with a header of {@link #HEADER_SIZE} bytes:
+ * <pre>
+ *  0 int    magic "MLPD"
+ *  4 int    format version
+ *  8 int    total number of sources
+ * 12 int    block size
+ * 16 long   total number of connections
+ * 24 int    epoch of the previous checkpoint
+ * 28 int    epoch of this checkpoint
+ * 32 int    number of changed blocks
+ * 36 int    reserved, 0
+ * 40 long   CRC32 of all bytes after header
+ * 48 int    CRC32 of header bytes 0..47
+ * 52 int    reserved, 0
+ * </pre>
+ * Each changed block follows: block index (int), biases of its sources (float),
+ * then weights of its sources (float, in the order of parents).
+ * @author attatrol
+ *
+ */
+public final class ModelDeltaFile {
+
+    /**
+     * Extension of delta files
+     */
+    public static final String FILE_EXTENSION = ".delta";
+
+    /**
+     * Number of sources in a block
+     */
+    public static final int BLOCK_SIZE = 256;
+
+    /**
+     * First int of each delta file ("MLPD")
+     */
+    static final int MAGIC = 0x44504C4D;
+
+    /**
+     * Version of file format
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of header, in bytes
+     */
+    static final int HEADER_SIZE = 56;
+
+    /**
+     * Position of CRC32 of data in header
+     */
+    static final int DATA_CRC_POSITION = 40;
+
+    /**
+     * Position of CRC32 of header in header
+     */
+    static final int HEADER_CRC_POSITION = 48;
+
+    /**
+     * Size of read buffer, in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    /**
+     * Not in use
+     */
+    private ModelDeltaFile() { }
+
+    /**
+     * @param sourceTotalNumber total number of sources
+     * @return number of blocks
+     */
+    public static int getBlockNumber(int sourceTotalNumber) {
+        return (sourceTotalNumber + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Finds blocks of the state which differ from the base.
+     * Value is changed if its bits differ and its difference from the base value exceeds the threshold,
+     * so with zero threshold every change is found, NaN never equals a number.
+     * @param state network state
+     * @param baseWeight weights which the chain of checkpoints reproduces
+     * @param baseBias biases which the chain of checkpoints reproduces
+     * @param threshold maximal absolute difference of unchanged values, non-negative
+     * @return change flag of each block, null if the base doesn't match the state topology
+     */
+    public static boolean[] getChangedBlocks(NeuralNetworkState state, float[][] baseWeight, float[] baseBias,
+            float threshold) {
+        final float[][] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        if (baseBias.length != bias.length || baseWeight.length != weight.length) {
+            return null;
+        }
+        final boolean[] changedBlocks = new boolean[getBlockNumber(bias.length)];
+        for (int block = 0; block < changedBlocks.length; block++) {
+            final int last = getLastSource(block, bias.length);
+            for (int i = getFirstSource(block); i < last; i++) {
+                final int weightNumber = weight[i] == null ? 0 : weight[i].length;
+                if (weightNumber != (baseWeight[i] == null ? 0 : baseWeight[i].length)) {
+                    return null;
+                }
+                changedBlocks[block] |= isChanged(bias[i], baseBias[i], threshold);
+                for (int j = 0; j < weightNumber && !changedBlocks[block]; j++) {
+                    changedBlocks[block] = isChanged(weight[i][j], baseWeight[i][j], threshold);
+                }
+            }
+        }
+        return changedBlocks;
+    }
+
+    /**
+     * @param changedBlocks change flag of each block
+     * @return number of changed blocks
+     */
+    public static int getChangedBlockNumber(boolean[] changedBlocks) {
+        int changedBlockNumber = 0;
+        for (boolean changed : changedBlocks) {
+            if (changed) {
+                changedBlockNumber++;
+            }
+        }
+        return changedBlockNumber;
+    }
+
+    /**
+     * Copies values of changed blocks of the state into the base, after a delta with these blocks is written.
+     * @param state network state
+     * @param changedBlocks change flag of each block
+     * @param baseWeight weights which the chain of checkpoints reproduces, changed in place
+     * @param baseBias biases which the chain of checkpoints reproduces, changed in place
+     */
+    public static void updateBase(NeuralNetworkState state, boolean[] changedBlocks, float[][] baseWeight,
+            float[] baseBias) {
+        final float[][] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        for (int block = 0; block < changedBlocks.length; block++) {
+            if (changedBlocks[block]) {
+                final int last = getLastSource(block, bias.length);
+                System.arraycopy(bias, getFirstSource(block), baseBias, getFirstSource(block),
+                        last - getFirstSource(block));
+                for (int i = getFirstSource(block); i < last; i++) {
+                    if (weight[i] != null) {
+                        System.arraycopy(weight[i], 0, baseWeight[i], 0, weight[i].length);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes changed blocks of the state into a file atomically.
+     * @param state network state
+     * @param changedBlocks change flag of each block, see
+     * {@link #getChangedBlocks(NeuralNetworkState, float[][], float[], float)}
+     * @param previousEpochNumber epoch of the previous checkpoint
+     * @param epochNumber epoch of this checkpoint
+     * @param path file path
+     * @throws IOException on failure to write file
+     */
+    public static void write(NeuralNetworkState state, boolean[] changedBlocks,
+            int previousEpochNumber, int epochNumber, Path path) throws IOException {
+        final float[][] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        if (changedBlocks.length != getBlockNumber(bias.length)) {
+            throw new IOException("Changed blocks don't match the state");
+        }
+        final Path temporary = FileUtils.createTemporaryFile(path);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final ModelFile.SectionWriter writer = new ModelFile.SectionWriter(channel, HEADER_SIZE);
+                int changedBlockNumber = 0;
+                for (int block = 0; block < changedBlocks.length; block++) {
+                    if (changedBlocks[block]) {
+                        changedBlockNumber++;
+                        writer.putInt(block);
+                        final int last = getLastSource(block, bias.length);
+                        writer.putFloats(bias, getFirstSource(block), last);
+                        for (int i = getFirstSource(block); i < last; i++) {
+                            if (weight[i] != null) {
+                                writer.putFloats(weight[i]);
+                            }
+                        }
+                    }
+                }
+                writer.flush();
+
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC);
+                header.putInt(FORMAT_VERSION);
+                header.putInt(bias.length);
+                header.putInt(BLOCK_SIZE);
+                header.putLong(getConnectionNumber(weight));
+                header.putInt(previousEpochNumber);
+                header.putInt(epochNumber);
+                header.putInt(changedBlockNumber);
+                header.putInt(0);
+                header.putLong(writer.getCrc());
+                header.putInt(getHeaderCrc(header));
+                header.putInt(0);
+                header.flip();
+                long position = 0;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+                channel.force(false);
+            }
+            FileUtils.moveIntoPlace(temporary, path);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Applies delta file to the state of the previous checkpoint.
+     * File is checked completely before the state is changed: header, data checksum, block indexes
+     * and data length, so a damaged file leaves the state intact.
+     * @param path file path
+     * @param state state of the previous checkpoint, its weights and biases are changed in place
+     * @param previousEpochNumber epoch of the state
+     * @return epoch of the state after application
+     * @throws IOException on failure to read file, on damaged file or if the file doesn't follow the state
+     */
+    public static int apply(Path path, NeuralNetworkState state, int previousEpochNumber) throws IOException {
+        final float[][] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException(path + " is too short for a delta file");
+                }
+            }
+            if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION) {
+                throw new IOException(path + " is not a delta file of version " + FORMAT_VERSION);
+            }
+            if (header.getInt(HEADER_CRC_POSITION) != getHeaderCrc(header)) {
+                throw new IOException(path + " has invalid header checksum");
+            }
+            if (header.getInt(8) != bias.length || header.getInt(12) != BLOCK_SIZE
+                    || header.getLong(16) != getConnectionNumber(weight)) {
+                throw new IOException(path + " doesn't match the network topology");
+            }
+            if (header.getInt(24) != previousEpochNumber) {
+                throw new IOException(String.format("%s follows epoch %d, not %d", path, header.getInt(24),
+                        previousEpochNumber));
+            }
+            final SectionReader reader = new SectionReader(channel);
+            final CRC32 crc = new CRC32();
+            ByteBuffer buffer;
+            while ((buffer = reader.next()) != null) {
+                crc.update(buffer);
+            }
+            if (crc.getValue() != header.getLong(DATA_CRC_POSITION)) {
+                throw new IOException(path + " has invalid checksum");
+            }
+            final int changedBlockNumber = header.getInt(32);
+            checkBlocks(path, channel, changedBlockNumber, weight);
+            reader.rewind();
+            for (int k = 0; k < changedBlockNumber; k++) {
+                final int block = reader.getInt();
+                final int last = getLastSource(block, bias.length);
+                for (int i = getFirstSource(block); i < last; i++) {
+                    bias[i] = reader.getFloat();
+                }
+                for (int i = getFirstSource(block); i < last; i++) {
+                    if (weight[i] != null) {
+                        for (int j = 0; j < weight[i].length; j++) {
+                            weight[i][j] = reader.getFloat();
+                        }
+                    }
+                }
+            }
+            return header.getInt(28);
+        }
+    }
+
+    /**
+     * Walks over changed blocks of a delta file reading only their indexes, checks that indexes
+     * are ascending and within bounds, and that blocks end exactly at the end of file.
+     * @param path file path
+     * @param channel file channel
+     * @param changedBlockNumber number of changed blocks from header
+     * @param weight weights of the state
+     * @throws IOException on failure to read file or on invalid blocks
+     */
+    private static void checkBlocks(Path path, FileChannel channel, int changedBlockNumber, float[][] weight)
+            throws IOException {
+        final ByteBuffer index = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        final int blockNumber = getBlockNumber(weight.length);
+        long position = HEADER_SIZE;
+        int previousBlock = -1;
+        for (int k = 0; k < changedBlockNumber; k++) {
+            index.clear();
+            while (index.hasRemaining()) {
+                if (channel.read(index, position + index.position()) < 0) {
+                    throw new IOException(path + " is truncated");
+                }
+            }
+            final int block = index.getInt(0);
+            if (block <= previousBlock || block >= blockNumber) {
+                throw new IOException(path + " has invalid block index " + block);
+            }
+            final int last = getLastSource(block, weight.length);
+            position += 4 + 4L * (last - getFirstSource(block));
+            for (int i = getFirstSource(block); i < last; i++) {
+                if (weight[i] != null) {
+                    position += 4L * weight[i].length;
+                }
+            }
+            previousBlock = block;
+        }
+        if (changedBlockNumber < 0 || position != channel.size()) {
+            throw new IOException(path + " has data of invalid length");
+        }
+    }
+
+    /**
+     * @param block block index
+     * @return the first source of the block
+     */
+    private static int getFirstSource(int block) {
+        return block * BLOCK_SIZE;
+    }
+
+    /**
+     * @param block block index
+     * @param sourceTotalNumber total number of sources
+     * @return the source after the last one of the block
+     */
+    private static int getLastSource(int block, int sourceTotalNumber) {
+        return Math.min(sourceTotalNumber, (block + 1) * BLOCK_SIZE);
+    }
+
+    /**
+     * @param weight weights of each source
+     * @return total number of connections
+     */
+    private static long getConnectionNumber(float[][] weight) {
+        long connectionNumber = 0;
+        for (float[] sourceWeight : weight) {
+            if (sourceWeight != null) {
+                connectionNumber += sourceWeight.length;
+            }
+        }
+        return connectionNumber;
+    }
+
+    /**
+     * @param value current value
+     * @param baseValue value which the chain of checkpoints reproduces
+     * @param threshold maximal absolute difference of unchanged values
+     * @return true if value is changed
+     */
+    private static boolean isChanged(float value, float baseValue, float threshold) {
+        return Float.floatToRawIntBits(value) != Float.floatToRawIntBits(baseValue)
+                && !(Math.abs(value - baseValue) <= threshold);
+    }
+
+    /**
+     * Calculates CRC32 of header bytes before header checksum.
+     * @param header header buffer
+     * @return checksum
+     */
+    private static int getHeaderCrc(ByteBuffer header) {
+        final CRC32 crc = new CRC32();
+        for (int i = 0; i < HEADER_CRC_POSITION; i++) {
+            crc.update(header.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Reads data after header through a reusable direct buffer.
+     */
+    private static final class SectionReader {
+
+        /**
+         * Source channel
+         */
+        private final FileChannel channel;
+
+        /**
+         * Buffer
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * File position after the buffer
+         */
+        private long position = HEADER_SIZE;
+
+        SectionReader(FileChannel channel) {
+            this.channel = channel;
+            buffer.limit(0);
+        }
+
+        /**
+         * Reads the next portion of data.
+         * @return buffer with data, null at the end of file
+         */
+        ByteBuffer next() throws IOException {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                buffer.limit(0);
+                return null;
+            }
+            position += read;
+            buffer.flip();
+            return buffer;
+        }
+
+        void rewind() {
+            position = HEADER_SIZE;
+            buffer.limit(0);
+        }
+
+        int getInt() throws IOException {
+            fill();
+            return buffer.getInt();
+        }
+
+        float getFloat() throws IOException {
+            fill();
+            return buffer.getFloat();
+        }
+
+        /**
+         * Makes sure that the next 4 bytes are in the buffer.
+         */
+        private void fill() throws IOException {
+            if (buffer.remaining() < 4) {
+                buffer.compact();
+                while (buffer.position() < 4) {
+                    final int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of delta file");
+                    }
+                    position += read;
+                }
+                buffer.flip();
+            }
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package attatrol.neural.network;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import attatrol.neural.utils.FileUtils;
+
+/**
+ * Utility class, versioned binary format of neural network models.
+ * <p>
+ * File is little-endian, it starts with a header of {@link #HEADER_SIZE} bytes:
+ * <pre>
+ *  0 int    magic "MLPM"
+ *  4 int    format version
+ *  8 int    flags, see {@link #FLAG_RAW_INPUT}, files with other bits set are rejected
+ * 12 int    total number of sources
+ * 16 int    input vector size
+ * 20 int    result vector size
+ * 24 double input vector amplitude
+ * 32 long   total number of connections
+ * 40 int    length of traverse order
+ * 44 int    reserved, 0
+ * 48 long   CRC32 of all bytes after header
+ * 56 int    CRC32 of header bytes 0..55
+ * 60 int    reserved, 0
+ * </pre>
+ * Flat sections follow, each one starts at a multiple of 8 bytes: biases (float per source),
+ * traverse order (int), parent offsets (long per source plus one), parents (int per connection),
+ * weights (float per connection, in the order of parents), children offsets and children.
+ * Linear combinations and results are not stored.
+ * <p>
+ * Files are written into a temporary file and atomically moved into place, see {@link MappedModel}
+ * for loading.
+ * @author attatrol
+ *
+ */
+public final class ModelFile {
+
+    /**
+     * Extension of model files
+     */
+    public static final String FILE_EXTENSION = ".model";
+
+    /**
+     * Flag, set if the network takes raw features, see {@link NeuralNetworkState#isRawInput()}
+     */
+    public static final int FLAG_RAW_INPUT = 1;
+
+    /**
+     * First int of each model file ("MLPM")
+     */
+    static final int MAGIC = 0x4D504C4D;
+
+    /**
+     * Version of file format
+     */
+    static final int FORMAT_VERSION = 1;
+
+    /**
+     * Size of header, in bytes
+     */
+    static final int HEADER_SIZE = 64;
+
+    /**
+     * Position of CRC32 of data in header
+     */
+    static final int DATA_CRC_POSITION = 48;
+
+    /**
+     * Position of CRC32 of header in header
+     */
+    static final int HEADER_CRC_POSITION = 56;
+
+    /**
+     * Size of write buffer, in bytes
+     */
+    private static final int BUFFER_SIZE = 1 << 22;
+
+    /**
+     * Not in use
+     */
+    private ModelFile() { }
+
+    /**
+     * Writes network state into a file atomically.
+     * @param state network state, only topology, weights and biases are written
+     * @param path file path
+     * @throws IOException on failure to write file
+     */
+    public static void write(NeuralNetworkState state, Path path) throws IOException {
+        final int sourceTotalNumber = state.getParents().length;
+        final long connectionNumber = getConnectionNumber(state.getParents());
+        final Path temporary = FileUtils.createTemporaryFile(path);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final SectionWriter writer = new SectionWriter(channel, HEADER_SIZE);
+                writer.putFloats(state.getBias());
+                writer.align();
+                writer.putInts(state.getTraverseOrder());
+                writer.align();
+                writeOffsets(writer, state.getParents());
+                for (int[] parents : state.getParents()) {
+                    writer.putInts(parents);
+                }
+                writer.align();
+                final float[][] weight = state.getWeight();
+                for (int i = 0; i < sourceTotalNumber; i++) {
+                    final int weightNumber = weight[i] == null ? 0 : weight[i].length;
+                    if (weightNumber != state.getParents()[i].length) {
+                        throw new IOException(String.format("Source %d has %d weights but %d parents",
+                                i, weightNumber, state.getParents()[i].length));
+                    }
+                    if (weight[i] != null) {
+                        writer.putFloats(weight[i]);
+                    }
+                }
+                writer.align();
+                writeOffsets(writer, state.getChildren());
+                for (int[] children : state.getChildren()) {
+                    writer.putInts(children);
+                }
+                writer.align();
+                writer.flush();
+
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC);
+                header.putInt(FORMAT_VERSION);
+                header.putInt(state.isRawInput() ? FLAG_RAW_INPUT : 0);
+                header.putInt(sourceTotalNumber);
+                header.putInt(state.getInputVectorSize());
+                header.putInt(state.getResultVectorSize());
+                header.putDouble(state.getInputVectorAmplitude());
+                header.putLong(connectionNumber);
+                header.putInt(state.getTraverseOrder().length);
+                header.putInt(0);
+                header.putLong(writer.getCrc());
+                header.putInt(getHeaderCrc(header));
+                header.putInt(0);
+                header.flip();
+                long position = 0;
+                while (header.hasRemaining()) {
+                    position += channel.write(header, position);
+                }
+                channel.force(false);
+            }
+            FileUtils.moveIntoPlace(temporary, path);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Writes network into a file atomically.
+     * @param network network
+     * @param path file path
+     * @throws IOException on failure to write file
+     */
+    public static void write(NeuralNetwork network, Path path) throws IOException {
+        write(network.getNetworkStateCopy(), path);
+    }
+
+    /**
+     * Memory maps a model file, see {@link MappedModel#map(Path)}.
+     * @param path file path
+     * @return mapped model
+     * @throws IOException on failure to read file or on damaged header
+     */
+    public static MappedModel map(Path path) throws IOException {
+        return MappedModel.map(path);
+    }
+
+    /**
+     * Reads network state from a model file onto the heap, checks data checksum.
+     * @param path file path
+     * @return network state
+     * @throws IOException on failure to read file or on damaged file
+     */
+    public static NeuralNetworkState read(Path path) throws IOException {
+        final MappedModel model = MappedModel.map(path);
+        if (!model.isChecksumValid()) {
+            throw new IOException(path + " has invalid checksum");
+        }
+        return model.toNeuralNetworkState();
+    }
+
+    /**
+     * Calculates file size from header values.
+     * @param sourceTotalNumber total number of sources
+     * @param connectionNumber total number of connections
+     * @param traverseLength length of traverse order
+     * @return file size, in bytes
+     */
+    static long getFileSize(int sourceTotalNumber, long connectionNumber, int traverseLength) {
+        return getChildrenPosition(sourceTotalNumber, connectionNumber, traverseLength)
+                + align(4 * connectionNumber);
+    }
+
+    /**
+     * @param sourceTotalNumber total number of sources
+     * @return position of traverse order
+     */
+    static long getTraverseOrderPosition(int sourceTotalNumber) {
+        return HEADER_SIZE + align(4L * sourceTotalNumber);
+    }
+
+    /**
+     * @param sourceTotalNumber total number of sources
+     * @param traverseLength length of traverse order
+     * @return position of parent offsets
+     */
+    static long getParentOffsetPosition(int sourceTotalNumber, int traverseLength) {
+        return getTraverseOrderPosition(sourceTotalNumber) + align(4L * traverseLength);
+    }
+
+    /**
+     * @param sourceTotalNumber total number of sources
+     * @param traverseLength length of traverse order
+     * @return position of parents
+     */
+    static long getParentPosition(int sourceTotalNumber, int traverseLength) {
+        return getParentOffsetPosition(sourceTotalNumber, traverseLength) + 8L * (sourceTotalNumber + 1);
+    }
+
+    /**
+     * @param sourceTotalNumber total number of sources
+     * @param connectionNumber total number of connections
+     * @param traverseLength length of traverse order
+     * @return position of weights
+     */
+    static long getWeightPosition(int sourceTotalNumber, long connectionNumber, int traverseLength) {
+        return getParentPosition(sourceTotalNumber, traverseLength) + align(4 * connectionNumber);
+    }
+
+    /**
+     * @param sourceTotalNumber total number of sources
+     * @param connectionNumber total number of connections
+     * @param traverseLength length of traverse order
+     * @return position of children offsets
+     */
+    static long getChildOffsetPosition(int sourceTotalNumber, long connectionNumber, int traverseLength) {
+        return getWeightPosition(sourceTotalNumber, connectionNumber, traverseLength) + align(4 * connectionNumber);
+    }
+
+    /**
+     * @param sourceTotalNumber total number of sources
+     * @param connectionNumber total number of connections
+     * @param traverseLength length of traverse order
+     * @return position of children
+     */
+    static long getChildrenPosition(int sourceTotalNumber, long connectionNumber, int traverseLength) {
+        return getChildOffsetPosition(sourceTotalNumber, connectionNumber, traverseLength)
+                + 8L * (sourceTotalNumber + 1);
+    }
+
+    /**
+     * Calculates CRC32 of header bytes before header checksum.
+     * @param header header buffer
+     * @return checksum
+     */
+    static int getHeaderCrc(ByteBuffer header) {
+        final CRC32 crc = new CRC32();
+        for (int i = 0; i < HEADER_CRC_POSITION; i++) {
+            crc.update(header.get(i));
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Calculates CRC32 of mapped data.
+     * @param segments mapped segments of file, the first one starts with header
+     * @return checksum
+     */
+    static long getDataCrc(MappedByteBuffer[] segments) {
+        final CRC32 crc = new CRC32();
+        for (int i = 0; i < segments.length; i++) {
+            final ByteBuffer segment = segments[i].duplicate();
+            if (i == 0) {
+                segment.position(HEADER_SIZE);
+            }
+            crc.update(segment);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * @param size size of a section, in bytes
+     * @return size rounded up to a multiple of 8
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * @param adjacency children or parents of each source
+     * @return total number of connections
+     */
+    private static long getConnectionNumber(int[][] adjacency) {
+        long connectionNumber = 0;
+        for (int[] neighbours : adjacency) {
+            connectionNumber += neighbours.length;
+        }
+        return connectionNumber;
+    }
+
+    /**
+     * Writes offsets of neighbour lists.
+     * @param writer writer
+     * @param adjacency children or parents of each source
+     * @throws IOException on failure to write
+     */
+    private static void writeOffsets(SectionWriter writer, int[][] adjacency) throws IOException {
+        long offset = 0;
+        writer.putLong(offset);
+        for (int[] neighbours : adjacency) {
+            offset += neighbours.length;
+            writer.putLong(offset);
+        }
+    }
+
+    /**
+     * Writes sections after header through a reusable direct buffer, calculates their checksum.
+     */
+    static final class SectionWriter {
+
+        /**
+         * Target channel
+         */
+        private final FileChannel channel;
+
+        /**
+         * Buffer
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * Checksum of written data
+         */
+        private final CRC32 crc = new CRC32();
+
+        /**
+         * File position of the buffer
+         */
+        private long position;
+
+        SectionWriter(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int value : values) {
+                if (buffer.remaining() < 4) {
+                    flush();
+                }
+                buffer.putInt(value);
+            }
+        }
+
+        void putFloats(float[] values) throws IOException {
+            putFloats(values, 0, values.length);
+        }
+
+        void putFloats(float[] values, int from, int to) throws IOException {
+            for (int i = from; i < to; i++) {
+                if (buffer.remaining() < 4) {
+                    flush();
+                }
+                buffer.putFloat(values[i]);
+            }
+        }
+
+        void putInt(int value) throws IOException {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            if (buffer.remaining() < 8) {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        /**
+         * Pads section with zeros up to a multiple of 8 bytes.
+         */
+        void align() throws IOException {
+            while ((position + buffer.position()) % 8 != 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put((byte) 0);
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            buffer.clear();
+        }
+
+        long getCrc() {
+            return crc.getValue();
+        }
+    }
+}
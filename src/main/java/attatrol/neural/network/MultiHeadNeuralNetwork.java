@@ -0,0 +1,305 @@
+package attatrol.neural.network;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.learning.LearningProcessor;
+
+/**
+ * Several neural networks (heads) which share a common lower network (trunk).
+ * Result vector of the trunk is the input vector of every head, so the trunk is calculated
+ * only once per input vector, no matter how many heads use it.
+ * <p>
+ * Each head has its own result vector and its own learning processor, a head without learning
+ * processor is used for mapping only. Heads are trained independently, learning of a head changes
+ * neither the trunk nor other heads. Heads never share a learning processor instance,
+ * so different heads may be trained from different threads at once. The trunk is never trained here,
+ * train it as an ordinary network beforehand.
+ * <p>
+ * Input vector amplitude of each head must cover the range of activation function of the trunk,
+ * e.g. sigmoid trunk gives values from (0, 1).
+ * @author attatrol
+ *
+ */
+public class MultiHeadNeuralNetwork {
+
+    /**
+     * Shared lower network
+     */
+    private final NeuralNetwork trunk;
+
+    /**
+     * Upper networks
+     */
+    private final NeuralNetwork[] heads;
+
+    /**
+     * Result vector of the trunk of the current thread
+     */
+    private final ThreadLocal<double[]> trunkResult = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[trunk.getResultVectorSize()];
+        }
+    };
+
+    /**
+     * Default ctor.
+     * @param trunk shared lower network
+     * @param heads upper networks
+     */
+    private MultiHeadNeuralNetwork(NeuralNetwork trunk, NeuralNetwork[] heads) {
+        this.trunk = trunk;
+        this.heads = heads;
+    }
+
+    /**
+     * Factory method, creates multi-head network from deep copies of some networks.
+     * Processors are shared, so source networks should not be used anymore.
+     * @param trunk shared lower network
+     * @param heads upper networks, their input vector size must be equal to result vector size of the trunk
+     * @param headLearningProcessors learning processors of heads, null element means that the head
+     * is not trained; if the array itself is null, own learning processors of heads are used.
+     * Each head needs a separate instance, networks created from the same settings share
+     * their learning processor, so pass distinct processors for them
+     * @return multi-head network
+     * @throws NeuralNetworkGenerationException on invalid heads or learning processors,
+     * or if several heads have the same learning processor instance
+     */
+    public static MultiHeadNeuralNetwork getMultiHeadNeuralNetwork(NeuralNetwork trunk, NeuralNetwork[] heads,
+            LearningProcessor[] headLearningProcessors) throws NeuralNetworkGenerationException {
+        if (trunk == null || heads == null || heads.length == 0) {
+            throw new NeuralNetworkGenerationException("Trunk and at least one head must be set");
+        }
+        if (headLearningProcessors != null && headLearningProcessors.length != heads.length) {
+            throw new NeuralNetworkGenerationException(
+                    String.format("There are %d heads but %d learning processors",
+                            heads.length, headLearningProcessors.length));
+        }
+        final NeuralNetwork[] headCopies = new NeuralNetwork[heads.length];
+        final Set<LearningProcessor> usedLearningProcessors =
+                Collections.newSetFromMap(new IdentityHashMap<LearningProcessor, Boolean>());
+        for (int i = 0; i < heads.length; i++) {
+            if (heads[i].getInputVectorSize() != trunk.getResultVectorSize()) {
+                throw new NeuralNetworkGenerationException(
+                        String.format("Head %d accepts input vector of cardinality %d, trunk produces %d",
+                                i, heads[i].getInputVectorSize(), trunk.getResultVectorSize()));
+            }
+            final LearningProcessor learningProcessor = headLearningProcessors == null
+                    ? heads[i].getLearningProcessor() : headLearningProcessors[i];
+            if (learningProcessor != null) {
+                learningProcessor.checkValidity();
+                if (!usedLearningProcessors.add(learningProcessor)) {
+                    throw new NeuralNetworkGenerationException(String.format(
+                            "Learning processor of head %d is used by another head", i));
+                }
+            }
+            headCopies[i] = new NeuralNetwork(heads[i].getNetworkStateCopy(), heads[i].getAnalythicalProcessor(),
+                    learningProcessor);
+        }
+        return new MultiHeadNeuralNetwork(new NeuralNetwork(trunk.getNetworkStateCopy(),
+                trunk.getAnalythicalProcessor(), trunk.getLearningProcessor()), headCopies);
+    }
+
+    /**
+     * @return number of heads
+     */
+    public int getHeadNumber() {
+        return heads.length;
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return trunk.getInputVectorSize();
+    }
+
+    /**
+     * @return amplitude of input vector coordinates
+     */
+    public double getInputVectorAmplitude() {
+        return trunk.getInputVectorAmplitude();
+    }
+
+    /**
+     * @param head index of the head
+     * @return result vector size of the head
+     * @throws NeuralNetworkRuntimeException on invalid head index
+     */
+    public int getResultVectorSize(int head) throws NeuralNetworkRuntimeException {
+        return getHead(head).getResultVectorSize();
+    }
+
+    /**
+     * @param head index of the head
+     * @return true if the head has learning processor
+     * @throws NeuralNetworkRuntimeException on invalid head index
+     */
+    public boolean isTrainable(int head) throws NeuralNetworkRuntimeException {
+        return getHead(head).getLearningProcessor() != null;
+    }
+
+    /**
+     * @return deep copy of the trunk state
+     */
+    public NeuralNetworkState getTrunkNetworkStateCopy() {
+        return trunk.getNetworkStateCopy();
+    }
+
+    /**
+     * @param head index of the head
+     * @return deep copy of the head state
+     * @throws NeuralNetworkRuntimeException on invalid head index
+     */
+    public NeuralNetworkState getHeadNetworkStateCopy(int head) throws NeuralNetworkRuntimeException {
+        return getHead(head).getNetworkStateCopy();
+    }
+
+    /**
+     * Maps input vector by all heads, the trunk is calculated once.
+     * Heads are calculated one by one, learning of some head
+     * may happen between calculations of different heads.
+     * @param inputVector argument
+     * @return result vectors of all heads
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or on internal failure
+     */
+    public double[][] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        final double[][] resultVectors = new double[heads.length][];
+        for (int i = 0; i < heads.length; i++) {
+            resultVectors[i] = new double[heads[i].getResultVectorSize()];
+        }
+        map(inputVector, resultVectors);
+        return resultVectors;
+    }
+
+    /**
+     * Same as {@link #map(double[])}, but result vectors are written into preallocated buffers.
+     * @param inputVector argument
+     * @param resultBuffers buffers for result vectors of all heads
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or buffers
+     * or on internal failure
+     */
+    public void map(double[] inputVector, double[][] resultBuffers) throws NeuralNetworkRuntimeException {
+        checkResultBuffers(resultBuffers);
+        final double[] trunkResultVector = mapTrunk(inputVector);
+        for (int i = 0; i < heads.length; i++) {
+            heads[i].map(trunkResultVector, resultBuffers[i]);
+        }
+    }
+
+    /**
+     * Maps input vector by a single head.
+     * @param head index of the head
+     * @param inputVector argument
+     * @return result vector of the head
+     * @throws NeuralNetworkRuntimeException on invalid head index, on bad format of input vector
+     * or on internal failure
+     */
+    public double[] map(int head, double[] inputVector) throws NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getHead(head);
+        return network.map(mapTrunk(inputVector));
+    }
+
+    /**
+     * Maps input vector, then performs single learning iteration of a single head.
+     * @param head index of the head
+     * @param inputVector input vector
+     * @param reference reference result vector of the head, not used if learning is unsupervised
+     * @return result vector of the head (calculated before learning)
+     * @throws NeuralNetworkRuntimeException on invalid or not trainable head,
+     * on bad format of input vector or on internal failure
+     */
+    public double[] learn(int head, double[] inputVector, double[] reference) throws NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getTrainableHead(head);
+        return network.learn(mapTrunk(inputVector), reference);
+    }
+
+    /**
+     * Maps input vector by all heads, the trunk is calculated once, then every head
+     * which has reference vector performs single learning iteration.
+     * @param inputVector input vector
+     * @param references reference result vectors of heads, null element means that the head is only mapped
+     * @param resultBuffers buffers for result vectors of all heads (calculated before learning)
+     * @throws NeuralNetworkRuntimeException on not trainable head with reference vector,
+     * on bad format of input vector or buffers or on internal failure
+     */
+    public void learn(double[] inputVector, double[][] references, double[][] resultBuffers)
+            throws NeuralNetworkRuntimeException {
+        checkResultBuffers(resultBuffers);
+        if (references.length != heads.length) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("There are %d heads but %d reference vectors", heads.length, references.length));
+        }
+        for (int i = 0; i < heads.length; i++) {
+            if (references[i] != null) {
+                getTrainableHead(i);
+            }
+        }
+        final double[] trunkResultVector = mapTrunk(inputVector);
+        for (int i = 0; i < heads.length; i++) {
+            if (references[i] != null) {
+                heads[i].learn(trunkResultVector, references[i], resultBuffers[i]);
+            }
+            else {
+                heads[i].map(trunkResultVector, resultBuffers[i]);
+            }
+        }
+    }
+
+    /**
+     * Calculates the trunk.
+     * @param inputVector input vector
+     * @return result vector of the trunk, buffer of the current thread
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or on internal failure
+     */
+    private double[] mapTrunk(double[] inputVector) throws NeuralNetworkRuntimeException {
+        final double[] trunkResultVector = trunkResult.get();
+        trunk.map(inputVector, trunkResultVector);
+        return trunkResultVector;
+    }
+
+    /**
+     * @param head index of the head
+     * @return head
+     * @throws NeuralNetworkRuntimeException on invalid head index
+     */
+    private NeuralNetwork getHead(int head) throws NeuralNetworkRuntimeException {
+        if (head < 0 || head >= heads.length) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Head index %d is out of bounds [0, %d)", head, heads.length));
+        }
+        return heads[head];
+    }
+
+    /**
+     * @param head index of the head
+     * @return head which has learning processor
+     * @throws NeuralNetworkRuntimeException on invalid head index or on head without learning processor
+     */
+    private NeuralNetwork getTrainableHead(int head) throws NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getHead(head);
+        if (network.getLearningProcessor() == null) {
+            throw new NeuralNetworkRuntimeException(String.format("Head %d has no learning processor", head));
+        }
+        return network;
+    }
+
+    /**
+     * Checks if buffers for result vectors are valid.
+     * @param resultBuffers buffers for result vectors of all heads
+     * @throws NeuralNetworkRuntimeException on invalid buffers
+     */
+    private void checkResultBuffers(double[][] resultBuffers) throws NeuralNetworkRuntimeException {
+        if (resultBuffers.length != heads.length) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("There are %d heads but %d result buffers", heads.length, resultBuffers.length));
+        }
+        for (int i = 0; i < heads.length; i++) {
+            heads[i].checkResultBuffer(resultBuffers[i]);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package attatrol.neural.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.activationfunction.ActivationFunction;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.analysis.LevelParallelActivationFunctionAnalyzer;
+
+/**
+ * Utility class, compiles a trained network into straight-line Java code, see {@link CompiledNeuralNetwork}.
+ * <p>
+ * Each neuron becomes a sequence of statements with constant indices and exact float literals
+ * of its bias and weights, in traverse order, with the arithmetic of {@link ActivationFunctionAnalyzer},
+ * so results are exactly the same as results of the source network. {@link SigmoidFunction} is inlined,
+ * other activation functions are called through the analyzer.
+ * Code is split into methods of at most {@link #CONNECTIONS_PER_METHOD} connections, small enough
+ * for the JIT compiler, methods are grouped into classes under the constant pool limit.
+ * Source is compiled in memory by the system Java compiler, so a JDK is required at runtime.
+ * <p>
+ * Weights are copied at compilation, later learning of the source network doesn't affect compiled one.
+ * @author attatrol
+ *
+ */
+public final class NetworkCompiler {
+
+    /**
+     * Maximal number of connections of a compiled network, code of larger networks doesn't fit into
+     * processor caches and runs slower than {@link ActivationFunctionAnalyzer}
+     */
+    public static final int MAX_CONNECTION_NUMBER = 1 << 15;
+
+    /**
+     * Maximal number of connections calculated by a single generated method
+     */
+    static final int CONNECTIONS_PER_METHOD = 256;
+
+    /**
+     * Maximal number of generated methods in a single class
+     */
+    static final int METHODS_PER_CLASS = 64;
+
+    /**
+     * Package of generated classes
+     */
+    private static final String PACKAGE = "attatrol.neural.network.generated";
+
+    /**
+     * Counter of generated networks, makes class names unique
+     */
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    /**
+     * Not in use
+     */
+    private NetworkCompiler() { }
+
+    /**
+     * Compiles network.
+     * @param network trained network, not modified
+     * @return compiled network
+     * @throws NeuralNetworkGenerationException if analyzer of the network is not supported,
+     * if network is too large, or if compiler is not available or fails
+     */
+    public static CompiledNeuralNetwork compile(NeuralNetwork network) throws NeuralNetworkGenerationException {
+        final AnalyticalProcessor analyticalProcessor = network.getAnalythicalProcessor();
+        // subclasses like stochastic analyzer change activation, so they can't be inlined
+        if (analyticalProcessor == null || analyticalProcessor.getClass() != ActivationFunctionAnalyzer.class
+                && analyticalProcessor.getClass() != LevelParallelActivationFunctionAnalyzer.class) {
+            throw new NeuralNetworkGenerationException("Analyzer " + analyticalProcessor + " is not supported");
+        }
+        final ActivationFunctionAnalyzer analyzer = (ActivationFunctionAnalyzer) analyticalProcessor;
+        analyzer.checkValidity();
+        final NeuralNetworkState state = network.getNetworkStateCopy();
+        long connectionNumber = 0;
+        for (int neuron : state.getTraverseOrder()) {
+            connectionNumber += state.getParents()[neuron].length;
+        }
+        if (connectionNumber > MAX_CONNECTION_NUMBER) {
+            throw new NeuralNetworkGenerationException(String.format(
+                    "Network has %d connections, at most %d can be compiled", connectionNumber,
+                    MAX_CONNECTION_NUMBER));
+        }
+        final ActivationFunction activationFunction = analyzer.getActivationFunction();
+        final Float flatnessRatio = activationFunction.getClass() == SigmoidFunction.class
+                ? ((SigmoidFunction) activationFunction).getFlatnessRatio() : null;
+        final String name = "CompiledNeuralNetwork" + COUNTER.incrementAndGet();
+        final Map<String, String> sources = generate(state, name, flatnessRatio);
+        final Consumer<double[]> kernel = load(PACKAGE + "." + name, compileSources(sources),
+                analyzer::activate);
+        return new CompiledNeuralNetwork(kernel, state.getParents().length, state.getInputVectorSize(),
+                state.getResultVectorSize(), state.getInputVectorAmplitude(), state.isRawInput());
+    }
+
+    /**
+     * Generates sources of classes which calculate network.
+     * @param state network state
+     * @param name simple name of the main class
+     * @param flatnessRatio flatness ratio of inlined sigmoid function, null if activation function is called
+     * @return sources by simple class names
+     */
+    static Map<String, String> generate(NeuralNetworkState state, String name, Float flatnessRatio) {
+        final int[] traverseOrder = state.getTraverseOrder();
+        final int[][] parents = state.getParents();
+        final float[][] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        final Map<String, String> sources = new HashMap<>();
+        final List<String> classNames = new ArrayList<>();
+        StringBuilder part = null;
+        int methodNumber = METHODS_PER_CLASS;
+        int connectionNumber = CONNECTIONS_PER_METHOD;
+        for (int neuron : traverseOrder) {
+            for (int j = 0; j <= parents[neuron].length; j++) {
+                // neuron starts a new method only if its statement doesn't fit, long ones are split
+                if (connectionNumber >= CONNECTIONS_PER_METHOD) {
+                    if (part != null) {
+                        part.append("        return s;\n    }\n");
+                    }
+                    if (methodNumber >= METHODS_PER_CLASS) {
+                        if (part != null) {
+                            part.append("}\n");
+                            sources.put(classNames.get(classNames.size() - 1), part.toString());
+                        }
+                        classNames.add(name + "Part" + classNames.size());
+                        part = new StringBuilder();
+                        part.append("package ").append(PACKAGE).append(";\n\n");
+                        part.append("final class ").append(classNames.get(classNames.size() - 1)).append(" {\n");
+                        methodNumber = 0;
+                    }
+                    part.append("\n    static double m").append(methodNumber++)
+                            .append("(double[] r, double s, java.util.function.DoubleUnaryOperator f) {\n");
+                    connectionNumber = 0;
+                }
+                if (j == 0) {
+                    part.append("        s = ").append(getLiteral(bias[neuron])).append(";\n");
+                }
+                else {
+                    part.append("        s += ").append(getLiteral(weight[neuron][j - 1]))
+                            .append(" * r[").append(parents[neuron][j - 1]).append("];\n");
+                }
+                connectionNumber++;
+            }
+            if (flatnessRatio != null) {
+                // the same expression as SigmoidFunction.getValue
+                part.append("        r[").append(neuron).append("] = 1. / (1. + Math.exp(-1. * ")
+                        .append(getLiteral(flatnessRatio)).append(" * s));\n");
+            }
+            else {
+                part.append("        r[").append(neuron).append("] = f.applyAsDouble(s);\n");
+            }
+        }
+        if (part != null) {
+            part.append("        return s;\n    }\n}\n");
+            sources.put(classNames.get(classNames.size() - 1), part.toString());
+        }
+
+        final StringBuilder main = new StringBuilder();
+        main.append("package ").append(PACKAGE).append(";\n\n");
+        main.append("public final class ").append(name)
+                .append(" implements java.util.function.Consumer<double[]> {\n\n");
+        main.append("    private final java.util.function.DoubleUnaryOperator f;\n\n");
+        main.append("    public ").append(name).append("(java.util.function.DoubleUnaryOperator f) {\n");
+        main.append("        this.f = f;\n    }\n\n");
+        main.append("    @Override\n    public void accept(double[] r) {\n");
+        main.append("        double s = 0.;\n");
+        for (int i = 0; i < classNames.size(); i++) {
+            main.append("        s = run").append(i).append("(r, s);\n");
+        }
+        main.append("    }\n");
+        for (int i = 0; i < classNames.size(); i++) {
+            main.append("\n    private double run").append(i).append("(double[] r, double s) {\n");
+            final int lastMethod = i < classNames.size() - 1 ? METHODS_PER_CLASS : methodNumber;
+            for (int m = 0; m < lastMethod; m++) {
+                main.append("        s = ").append(classNames.get(i)).append(".m").append(m).append("(r, s, f);\n");
+            }
+            main.append("        return s;\n    }\n");
+        }
+        main.append("}\n");
+        sources.put(name, main.toString());
+        return sources;
+    }
+
+    /**
+     * @param value float value
+     * @return Java literal of exactly the same value
+     */
+    private static String getLiteral(float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            return "Float.intBitsToFloat(" + Float.floatToRawIntBits(value) + ")";
+        }
+        return Float.toHexString(value) + "f";
+    }
+
+    /**
+     * Compiles sources in memory.
+     * @param sources sources by simple class names
+     * @return bytecode by binary class names
+     * @throws NeuralNetworkGenerationException if compiler is not available or fails
+     */
+    private static Map<String, byte[]> compileSources(Map<String, String> sources)
+            throws NeuralNetworkGenerationException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new NeuralNetworkGenerationException("Java compiler is not available, run on a JDK");
+        }
+        final List<JavaFileObject> units = new ArrayList<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            units.add(new SourceFile(source.getKey(), source.getValue()));
+        }
+        final Map<String, byte[]> classes = new HashMap<>();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        final ForwardingJavaFileManager<StandardJavaFileManager> fileManager =
+                new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+                    @Override
+                    public JavaFileObject getJavaFileForOutput(Location location, String className,
+                            JavaFileObject.Kind kind, FileObject sibling) {
+                        return new ClassFile(className, classes);
+                    }
+                };
+        final Boolean success = compiler.getTask(null, fileManager, diagnostics, Arrays.asList("-g:none"),
+                null, units).call();
+        if (!Boolean.TRUE.equals(success)) {
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    throw new NeuralNetworkGenerationException("Failed to compile network: "
+                            + diagnostic.getMessage(null));
+                }
+            }
+            throw new NeuralNetworkGenerationException("Failed to compile network");
+        }
+        return classes;
+    }
+
+    /**
+     * Loads compiled classes and creates instance of the main class.
+     * @param className binary name of the main class
+     * @param classes bytecode by binary class names
+     * @param activation activation of a neuron, called by generated code if not inlined
+     * @return instance of the main class
+     * @throws NeuralNetworkGenerationException on failure to load classes
+     */
+    @SuppressWarnings("unchecked")
+    private static Consumer<double[]> load(String className, Map<String, byte[]> classes,
+            DoubleUnaryOperator activation) throws NeuralNetworkGenerationException {
+        final ClassLoader loader = new GeneratedClassLoader(NetworkCompiler.class.getClassLoader(), classes);
+        try {
+            return (Consumer<double[]>) loader.loadClass(className).getConstructor(DoubleUnaryOperator.class)
+                    .newInstance(activation);
+        }
+        catch (ReflectiveOperationException | LinkageError e) {
+            throw new NeuralNetworkGenerationException("Failed to load compiled network: " + e);
+        }
+    }
+
+    /**
+     * Source held in memory.
+     */
+    private static final class SourceFile extends SimpleJavaFileObject {
+
+        /**
+         * Source code
+         */
+        private final String source;
+
+        SourceFile(String simpleName, String source) {
+            super(URI.create("string:///" + PACKAGE.replace('.', '/') + "/" + simpleName + Kind.SOURCE.extension),
+                    Kind.SOURCE);
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return source;
+        }
+    }
+
+    /**
+     * Class file held in memory.
+     */
+    private static final class ClassFile extends SimpleJavaFileObject {
+
+        /**
+         * Binary name of the class
+         */
+        private final String className;
+
+        /**
+         * Storage of compiled classes
+         */
+        private final Map<String, byte[]> classes;
+
+        ClassFile(String className, Map<String, byte[]> classes) {
+            super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+            this.className = className;
+            this.classes = classes;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    classes.put(className, toByteArray());
+                }
+            };
+        }
+    }
+
+    /**
+     * Loads classes compiled in memory.
+     */
+    private static final class GeneratedClassLoader extends ClassLoader {
+
+        /**
+         * Bytecode by binary class names
+         */
+        private final Map<String, byte[]> classes;
+
+        GeneratedClassLoader(ClassLoader parent, Map<String, byte[]> classes) {
+            super(parent);
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            final byte[] bytecode = classes.get(name);
+            if (bytecode == null) {
+                throw new ClassNotFoundException(name);
+            }
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
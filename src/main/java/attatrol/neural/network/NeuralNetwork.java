@@ -1,9 +1,12 @@
 package attatrol.neural.network;
 
 import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 import attatrol.neural.NeuralNetworkRuntimeException;
 import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.learning.BatchLearningProcessor;
 import attatrol.neural.learning.LearningProcessor;
 import attatrol.neural.topology.Topology;
 import attatrol.neural.utils.RandomUtils;
@@ -36,6 +39,11 @@ public class NeuralNetwork {
      */
     public static final float RANDOM_WEIGHT_MAX = 0.5f;
 
+    /**
+     * Number of sources initialized by a single random stream, blocks are initialized in parallel
+     */
+    private static final int INITIALIZATION_BLOCK_SIZE = 1024;
+
     /**
      * Analythical processor. Generates new result values for each neuron.
      */
@@ -61,6 +69,11 @@ public class NeuralNetwork {
      */
     protected int resultVectorSize;
 
+    /**
+     * If true, input vectors are raw features, their coordinates are not checked against amplitude
+     */
+    protected boolean rawInput;
+
     /*
      * Below are mutable variables of internal state of the neural network
      */
@@ -121,16 +134,11 @@ public class NeuralNetwork {
 
         // generate arrays with neurons states
         final int numberOfSources = parents.length;
-        //initial values of biases cover medium zone of input vector domain
-        this.bias = RandomUtils.generateRandomFloats(
-                inputVectorAmplitude / 4, inputVectorAmplitude * 3 / 4, numberOfSources);
+        this.bias = new float[numberOfSources];
         this.linearCombination = new double[numberOfSources];
         this.result = new double[numberOfSources];
         this.weight = new float[numberOfSources][];
-        for (int i = 0; i < numberOfSources; i++) {
-            weight[i] = RandomUtils.generateRandomFloats(
-                    RAMDOM_WEIGHT_MIN, RANDOM_WEIGHT_MAX, parents[i].length);
-        }
+        initializeWeights(settings.getWeightInitialization(), settings.getSeed());
     }
 
     /**
@@ -169,6 +177,34 @@ public class NeuralNetwork {
         return learningProcessor;
     }
 
+    /**
+     * @return amplitude of input vector coordinates
+     */
+    public synchronized double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * @return true if the network takes raw features, see {@link NeuralNetworkState#isRawInput()}
+     */
+    public synchronized boolean isRawInput() {
+        return rawInput;
+    }
+
+    /**
+     * @return input vector size
+     */
+    public synchronized int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    /**
+     * @return result vector size
+     */
+    public synchronized int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
     /**
      * Neural network maps input vector into some result vector. 
      * @param inputVector argument
@@ -177,17 +213,24 @@ public class NeuralNetwork {
      * of analytical engine
      */
     public synchronized double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
-        checkInputVector(inputVector);
-        // put input vector values into sources' results
-        for (int i = 0; i < inputVectorSize; i++) {
-            result[i] = inputVector[i];
-        }
-        NeuralNetworkState shallowLiveState = getNetworkStateShallowCopy();
-        analyticalProcessor.process(shallowLiveState, learningProcessor);
-        replaceNetworkState(shallowLiveState);
+        forward(inputVector);
         return Arrays.copyOfRange(result, result.length - resultVectorSize, result.length);
     }
 
+    /**
+     * Same as {@link #map(double[])}, but result vector is written into preallocated buffer,
+     * so no memory is allocated per call.
+     * @param inputVector argument
+     * @param resultBuffer buffer for result vector, must have size of result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or buffer
+     * or on internal failure of analytical engine
+     */
+    public synchronized void map(double[] inputVector, double[] resultBuffer) throws NeuralNetworkRuntimeException {
+        checkResultBuffer(resultBuffer);
+        forward(inputVector);
+        System.arraycopy(result, result.length - resultVectorSize, resultBuffer, 0, resultVectorSize);
+    }
+
     /**
      * Neural network will perform {@link #map(double[])},
      * then it will try to perform single learning iteration.
@@ -199,37 +242,209 @@ public class NeuralNetwork {
      * @throws NeuralNetworkRuntimeException on internal failure
      */
     public synchronized double[] learn(double[] inputVector, double[] reference) throws NeuralNetworkRuntimeException {
-        final double[] answer = map(inputVector);
-        NeuralNetworkState shallowLiveState = getNetworkStateShallowCopy();
-        learningProcessor.process(shallowLiveState, reference, analyticalProcessor);
-        replaceNetworkState(shallowLiveState);
+        final double[] answer = new double[resultVectorSize];
+        learn(inputVector, reference, answer);
         return answer;
         
     }
 
+    /**
+     * Same as {@link #learn(double[], double[])}, but result vector is written into
+     * preallocated buffer, so result array is not allocated per call. A shallow copy
+     * of the network state and working buffers of the learning processor are still allocated.
+     * @param inputVector input vector
+     * @param reference reference result vector, not used if learning is unsupervised
+     * @param resultBuffer buffer for result vector (calculated before learning),
+     * must have size of result vector
+     * @throws NeuralNetworkRuntimeException on internal failure or on bad buffer
+     */
+    public synchronized void learn(double[] inputVector, double[] reference, double[] resultBuffer)
+            throws NeuralNetworkRuntimeException {
+        learn(inputVector, reference, resultBuffer, true);
+    }
+
+    /**
+     * Same as {@link #learn(double[], double[], double[])}, but coordinates of input vector are not
+     * checked, only its size. Use it for samples validated in advance, see
+     * {@link attatrol.neural.dataset.Dataset#isValidated(double)}.
+     * @param inputVector input vector, its coordinates must lie in [0, input vector amplitude]
+     * @param reference reference result vector, not used if learning is unsupervised
+     * @param resultBuffer buffer for result vector (calculated before learning),
+     * must have size of result vector
+     * @throws NeuralNetworkRuntimeException on internal failure or on bad buffer
+     */
+    public synchronized void learnValidated(double[] inputVector, double[] reference, double[] resultBuffer)
+            throws NeuralNetworkRuntimeException {
+        learn(inputVector, reference, resultBuffer, false);
+    }
+
+    /**
+     * Neural network will perform a single learning iteration over the whole batch of samples.
+     * Works only with learning processors that implement {@link BatchLearningProcessor}.
+     * @param inputVectors input vectors of the batch
+     * @param references reference result vectors of the batch, same order as input vectors
+     * @throws NeuralNetworkRuntimeException on invalid batch, on learning processor which
+     * doesn't support batch learning or on internal failure
+     */
+    public synchronized void learnBatch(double[][] inputVectors, double[][] references)
+            throws NeuralNetworkRuntimeException {
+        learnBatch(inputVectors, references, true);
+    }
+
+    /**
+     * Same as {@link #learnBatch(double[][], double[][])}, but coordinates of input vectors are not
+     * checked, only their sizes. Use it for samples validated in advance, see
+     * {@link attatrol.neural.dataset.Dataset#isValidated(double)}.
+     * @param inputVectors input vectors of the batch, their coordinates must lie in [0, input vector amplitude]
+     * @param references reference result vectors of the batch, same order as input vectors
+     * @throws NeuralNetworkRuntimeException on invalid batch, on learning processor which
+     * doesn't support batch learning or on internal failure
+     */
+    public synchronized void learnBatchValidated(double[][] inputVectors, double[][] references)
+            throws NeuralNetworkRuntimeException {
+        learnBatch(inputVectors, references, false);
+    }
+
+    /**
+     * Learns batch, see {@link #learnBatch(double[][], double[][])}.
+     * @param inputVectors input vectors of the batch
+     * @param references reference result vectors of the batch, same order as input vectors
+     * @param checkCoordinates true if coordinates of input vectors should be checked
+     * @throws NeuralNetworkRuntimeException on invalid batch, on learning processor which
+     * doesn't support batch learning or on internal failure
+     */
+    private void learnBatch(double[][] inputVectors, double[][] references, boolean checkCoordinates)
+            throws NeuralNetworkRuntimeException {
+        if (!(learningProcessor instanceof BatchLearningProcessor)) {
+            throw new NeuralNetworkRuntimeException("Learning processor " + learningProcessor
+                    + " does not support batch learning");
+        }
+        if (inputVectors.length != references.length) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Batch has %d input vectors but %d reference vectors",
+                            inputVectors.length, references.length));
+        }
+        for (double[] inputVector : inputVectors) {
+            checkInputVector(inputVector, checkCoordinates);
+        }
+        NeuralNetworkState shallowLiveState = getNetworkStateShallowCopy();
+        ((BatchLearningProcessor) learningProcessor).processBatch(shallowLiveState,
+                inputVectors, references, analyticalProcessor);
+        replaceNetworkState(shallowLiveState);
+    }
+
     /**
      * Creates deep copy of internal network state.
      * @return deep copy of network state
      */
     public synchronized NeuralNetworkState getNetworkStateCopy() {
-        return new NeuralNetworkState(false,
+        final NeuralNetworkState copy = new NeuralNetworkState(false,
                 inputVectorAmplitude, inputVectorSize, resultVectorSize, 
                 Utils.getDeepCopy(weight), 
                 Utils.getCopy(bias), Utils.getCopy(linearCombination), Utils.getCopy(result),
                 Utils.getDeepCopy(children), Utils.getDeepCopy(parents), Utils.getCopy(traverseOrder));
+        copy.setRawInput(rawInput);
+        return copy;
+    }
+
+    /**
+     * Creates snapshot of weights and biases for persistence, cheaper than
+     * {@link #getNetworkStateCopy()}: weights and biases are copied into buffers from a previous
+     * snapshot if they fit, topology arrays are shared, results and linear combinations are null.
+     * Don't use it with learning processors which modify topology arrays in place.
+     * @param weightBuffer weights of a previous snapshot, may be null
+     * @param biasBuffer biases of a previous snapshot, may be null
+     * @return snapshot of the network state
+     */
+    public synchronized NeuralNetworkState getNetworkStateSnapshot(float[][] weightBuffer, float[] biasBuffer) {
+        float[][] weightCopy = weightBuffer;
+        if (weightCopy == null || weightCopy.length != weight.length) {
+            weightCopy = new float[weight.length][];
+        }
+        for (int i = 0; i < weight.length; i++) {
+            if (weight[i] == null) {
+                weightCopy[i] = null;
+            }
+            else {
+                if (weightCopy[i] == null || weightCopy[i].length != weight[i].length) {
+                    weightCopy[i] = new float[weight[i].length];
+                }
+                System.arraycopy(weight[i], 0, weightCopy[i], 0, weight[i].length);
+            }
+        }
+        float[] biasCopy = biasBuffer;
+        if (biasCopy == null || biasCopy.length != bias.length) {
+            biasCopy = new float[bias.length];
+        }
+        System.arraycopy(bias, 0, biasCopy, 0, bias.length);
+        final NeuralNetworkState snapshot = new NeuralNetworkState(true, inputVectorAmplitude, inputVectorSize,
+                resultVectorSize, weightCopy, biasCopy, null, null, children, parents, traverseOrder);
+        snapshot.setRawInput(rawInput);
+        return snapshot;
+    }
+
+    /**
+     * Copies weights and biases of a snapshot back into the network, e.g. to return to the best state
+     * found during training.
+     * @param snapshot snapshot of this network taken by {@link #getNetworkStateSnapshot(float[][], float[])}
+     * @throws NeuralNetworkRuntimeException if snapshot has other shape of weights or biases
+     */
+    public synchronized void restoreNetworkStateSnapshot(NeuralNetworkState snapshot)
+            throws NeuralNetworkRuntimeException {
+        final float[][] snapshotWeight = snapshot.getWeight();
+        final float[] snapshotBias = snapshot.getBias();
+        if (snapshotWeight.length != weight.length || snapshotBias.length != bias.length) {
+            throw new NeuralNetworkRuntimeException("Snapshot doesn't match the network");
+        }
+        for (int i = 0; i < weight.length; i++) {
+            if (weight[i] != null) {
+                if (snapshotWeight[i] == null || snapshotWeight[i].length != weight[i].length) {
+                    throw new NeuralNetworkRuntimeException("Snapshot doesn't match the network at neuron " + i);
+                }
+                System.arraycopy(snapshotWeight[i], 0, weight[i], 0, weight[i].length);
+            }
+        }
+        System.arraycopy(snapshotBias, 0, bias, 0, bias.length);
+    }
+
+    /**
+     * Checks if input vector is valid.
+     * @param inputVector input vector
+     * @throws NeuralNetworkRuntimeException on invalid input vector
+     */
+    protected void checkInputVector(double[] inputVector) throws NeuralNetworkRuntimeException {
+        checkInputVector(inputVector, true);
     }
 
     /**
      * Checks if input vector is valid.
      * @param inputVector input vector
+     * @param checkCoordinates true if coordinates should be checked, otherwise only size is checked
      * @throws NeuralNetworkRuntimeException on invalid input vector
      */
-    private void checkInputVector(double[] inputVector) throws NeuralNetworkRuntimeException {
+    private void checkInputVector(double[] inputVector, boolean checkCoordinates)
+            throws NeuralNetworkRuntimeException {
+        checkInputVector(inputVector, inputVectorSize,
+                checkCoordinates && !rawInput ? inputVectorAmplitude : Double.NaN);
+    }
+
+    /**
+     * Checks if input vector is valid.
+     * @param inputVector input vector
+     * @param inputVectorSize expected input vector size
+     * @param inputVectorAmplitude amplitude of input vector coordinates, NaN to check size only
+     * @throws NeuralNetworkRuntimeException on invalid input vector
+     */
+    public static void checkInputVector(double[] inputVector, int inputVectorSize, double inputVectorAmplitude)
+            throws NeuralNetworkRuntimeException {
         if (inputVector.length != inputVectorSize) {
             throw new NeuralNetworkRuntimeException(
                     String.format("Incoming vector has cardinality of %d, network accepts only %d",
                             inputVector.length, inputVectorSize));
         }
+        if (Double.isNaN(inputVectorAmplitude)) {
+            return;
+        }
         for (int i = 0; i < inputVector.length; i++) {
             if (inputVector[i] < 0. || inputVector[i] > inputVectorAmplitude) {
                 throw new NeuralNetworkRuntimeException(
@@ -239,14 +454,110 @@ public class NeuralNetwork {
         }
     }
 
+    /**
+     * Checks if buffer for result vector is valid.
+     * @param resultBuffer buffer for result vector
+     * @throws NeuralNetworkRuntimeException on invalid buffer
+     */
+    protected void checkResultBuffer(double[] resultBuffer) throws NeuralNetworkRuntimeException {
+        if (resultBuffer.length != resultVectorSize) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Result buffer has cardinality of %d, network produces %d",
+                            resultBuffer.length, resultVectorSize));
+        }
+    }
+
+    /**
+     * Fills weights and biases with random values. Sources are split into blocks, each block
+     * has its own random stream, streams are split sequentially from the seed, so the result
+     * doesn't depend on the number of threads which initialize blocks.
+     * @param weightInitialization scheme of initialization of weights
+     * @param seed seed, null if unseeded
+     */
+    private void initializeWeights(WeightInitialization weightInitialization, Long seed) {
+        final int numberOfSources = parents.length;
+        final int blockNumber = (numberOfSources + INITIALIZATION_BLOCK_SIZE - 1) / INITIALIZATION_BLOCK_SIZE;
+        final SplittableRandom seedRandom = RandomUtils.getSplittableRandom(seed);
+        final SplittableRandom[] random = new SplittableRandom[blockNumber];
+        for (int i = 0; i < blockNumber; i++) {
+            random[i] = seedRandom.split();
+        }
+        IntStream blocks = IntStream.range(0, blockNumber);
+        if (blockNumber > 1) {
+            blocks = blocks.parallel();
+        }
+        blocks.forEach(b -> {
+            final int last = Math.min(numberOfSources, (b + 1) * INITIALIZATION_BLOCK_SIZE);
+            for (int i = b * INITIALIZATION_BLOCK_SIZE; i < last; i++) {
+                //initial values of biases cover medium zone of input vector domain
+                bias[i] = (float) (random[b].nextDouble() * inputVectorAmplitude / 2 + inputVectorAmplitude / 4);
+                double fanOut = 0.;
+                if (weightInitialization == WeightInitialization.XAVIER) {
+                    for (int parent : parents[i]) {
+                        fanOut += children[parent].length;
+                    }
+                    fanOut /= Math.max(1, parents[i].length);
+                }
+                final float bound = weightInitialization.getBound(parents[i].length, fanOut);
+                weight[i] = RandomUtils.generateRandomFloats(-bound, bound, parents[i].length, random[b]);
+            }
+        });
+    }
+
+    /**
+     * Learns a single sample, see {@link #learn(double[], double[], double[])}.
+     * @param inputVector input vector
+     * @param reference reference result vector
+     * @param resultBuffer buffer for result vector
+     * @param checkCoordinates true if coordinates of input vector should be checked
+     * @throws NeuralNetworkRuntimeException on internal failure or on bad buffer
+     */
+    private void learn(double[] inputVector, double[] reference, double[] resultBuffer, boolean checkCoordinates)
+            throws NeuralNetworkRuntimeException {
+        checkResultBuffer(resultBuffer);
+        forward(inputVector, checkCoordinates);
+        System.arraycopy(result, result.length - resultVectorSize, resultBuffer, 0, resultVectorSize);
+        NeuralNetworkState shallowLiveState = getNetworkStateShallowCopy();
+        learningProcessor.process(shallowLiveState, reference, analyticalProcessor);
+        replaceNetworkState(shallowLiveState);
+    }
+
+    /**
+     * Puts input vector into sources' results and lets analytical processor calculate all neurons.
+     * @param inputVector input vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    private void forward(double[] inputVector) throws NeuralNetworkRuntimeException {
+        forward(inputVector, true);
+    }
+
+    /**
+     * Puts input vector into sources' results and lets analytical processor calculate all neurons.
+     * @param inputVector input vector
+     * @param checkCoordinates true if coordinates of input vector should be checked
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    private void forward(double[] inputVector, boolean checkCoordinates) throws NeuralNetworkRuntimeException {
+        checkInputVector(inputVector, checkCoordinates);
+        // put input vector values into sources' results
+        for (int i = 0; i < inputVectorSize; i++) {
+            result[i] = inputVector[i];
+        }
+        NeuralNetworkState shallowLiveState = getNetworkStateShallowCopy();
+        analyticalProcessor.process(shallowLiveState, learningProcessor);
+        replaceNetworkState(shallowLiveState);
+    }
+
     /**
      * Creates shallow copy of this neural network state.
      * @return
      */
     private NeuralNetworkState getNetworkStateShallowCopy() {
-        return new NeuralNetworkState(true,
+        final NeuralNetworkState copy = new NeuralNetworkState(true,
                 inputVectorAmplitude, inputVectorSize, resultVectorSize, 
                 weight, bias, linearCombination, result, children, parents, traverseOrder);
+        copy.setRawInput(rawInput);
+        return copy;
     }
 
     /**
@@ -257,6 +568,7 @@ public class NeuralNetwork {
         this.inputVectorAmplitude = state.getInputVectorAmplitude();
         this.resultVectorSize = state.getResultVectorSize();
         this.inputVectorSize = state.getInputVectorSize();
+        this.rawInput = state.isRawInput();
         this.weight = state.getWeight();
         this.bias = state.getBias();
         this.linearCombination = state.getLinearCombination();
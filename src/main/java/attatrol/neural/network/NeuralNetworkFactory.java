@@ -69,6 +69,9 @@ public final class NeuralNetworkFactory {
         if (settings.getLearningProcessor() == null) {
             throw new NeuralNetworkGenerationException("Null learning processor");
         }
+        if (settings.getWeightInitialization() == null) {
+            throw new NeuralNetworkGenerationException("Null weight initialization scheme");
+        }
        return new NeuralNetwork(settings, topology);
     }
 
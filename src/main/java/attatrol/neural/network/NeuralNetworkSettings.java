@@ -53,7 +53,16 @@ public class NeuralNetworkSettings {
      * Learning processor
      */
     private final LearningProcessor learningProcessor;
- 
+
+    /**
+     * Scheme of initialization of weights
+     */
+    private WeightInitialization weightInitialization = WeightInitialization.UNIFORM;
+
+    /**
+     * Seed of initialization of weights and biases, null if unseeded
+     */
+    private Long seed;
 
     /**
      * Ctor used with preset topology type.
@@ -152,4 +161,24 @@ public class NeuralNetworkSettings {
         return learningProcessor;
     }
 
+    public WeightInitialization getWeightInitialization() {
+        return weightInitialization;
+    }
+
+    public void setWeightInitialization(WeightInitialization weightInitialization) {
+        this.weightInitialization = weightInitialization;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Seeded networks with the same settings and topology get the same initial weights and biases.
+     * @param seed seed, null if unseeded
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
 }
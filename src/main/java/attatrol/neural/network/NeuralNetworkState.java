@@ -44,6 +44,12 @@ public class NeuralNetworkState implements Serializable {
      */
     private int resultVectorSize;
 
+    /**
+     * If true, input vectors are raw features folded into weights by an input normalizer,
+     * their coordinates are not checked against amplitude
+     */
+    private boolean rawInput;
+
     /*
      * Below are mutable variables of internal state of the neural network
      */
@@ -126,6 +132,14 @@ public class NeuralNetworkState implements Serializable {
         this.resultVectorSize = resultVectorSize;
     }
 
+    public boolean isRawInput() {
+        return rawInput;
+    }
+
+    public void setRawInput(boolean rawInput) {
+        this.rawInput = rawInput;
+    }
+
     public float[][] getWeight() {
         return weight;
     }
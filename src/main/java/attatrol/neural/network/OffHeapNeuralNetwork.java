@@ -0,0 +1,312 @@
+package attatrol.neural.network;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.analysis.LevelParallelActivationFunctionAnalyzer;
+
+/**
+ * Inference-only neural network whose weights, biases and adjacency stay in a memory-mapped
+ * model file (see {@link ModelFile}), so a network larger than the heap is served without GC pressure.
+ * <p>
+ * Only results of neurons live on the heap, one array per calling thread, so a single instance
+ * may be used by many threads without locking. The file is mapped read-only, thus several
+ * processes mapping the same file share its pages in the operating system cache.
+ * Neurons are calculated in the order and with the arithmetic of {@link ActivationFunctionAnalyzer},
+ * so results are the same as results of {@link NeuralNetwork} restored from the file.
+ * Models of a single mapped segment are read through typed views of their sections.
+ * Models larger than {@link MappedModel#SEGMENT_SIZE} (1 GB) always take the slower path
+ * through {@link MappedModel} accessors, which locate the segment of every element.
+ * <p>
+ * Structure of the model is checked once on creation by a linear scan over the mapped sections,
+ * so a damaged file is rejected instead of failing on an index out of bounds during mapping.
+ * @author attatrol
+ *
+ */
+public final class OffHeapNeuralNetwork {
+
+    /**
+     * Mapped model
+     */
+    private final MappedModel model;
+
+    /**
+     * Analyzer, supplies activation function
+     */
+    private final ActivationFunctionAnalyzer analyzer;
+
+    /**
+     * Total number of sources
+     */
+    private final int sourceTotalNumber;
+
+    /**
+     * Input vector size
+     */
+    private final int inputVectorSize;
+
+    /**
+     * Result vector size
+     */
+    private final int resultVectorSize;
+
+    /**
+     * Amplitude of input vector coordinates
+     */
+    private final double inputVectorAmplitude;
+
+    /**
+     * If true, input vectors are raw features, their coordinates are not checked against amplitude
+     */
+    private final boolean rawInput;
+
+    /**
+     * Length of traverse order
+     */
+    private final int traverseLength;
+
+    /**
+     * Biases, null if the model has several segments
+     */
+    private final FloatBuffer biasView;
+
+    /**
+     * Traverse order, null if the model has several segments
+     */
+    private final IntBuffer traverseOrderView;
+
+    /**
+     * Parent offsets, null if the model has several segments
+     */
+    private final LongBuffer parentOffsetView;
+
+    /**
+     * Parents, null if the model has several segments
+     */
+    private final IntBuffer parentView;
+
+    /**
+     * Weights, null if the model has several segments
+     */
+    private final FloatBuffer weightView;
+
+    /**
+     * Results of all sources, one array per thread
+     */
+    private final ThreadLocal<double[]> result;
+
+    /**
+     * Default ctor.
+     * @param model mapped model
+     * @param analyzer analyzer
+     */
+    private OffHeapNeuralNetwork(MappedModel model, ActivationFunctionAnalyzer analyzer) {
+        this.model = model;
+        this.analyzer = analyzer;
+        this.sourceTotalNumber = model.getSourceTotalNumber();
+        this.inputVectorSize = model.getInputVectorSize();
+        this.resultVectorSize = model.getResultVectorSize();
+        this.inputVectorAmplitude = model.getInputVectorAmplitude();
+        this.rawInput = model.isRawInput();
+        this.traverseLength = model.getTraverseLength();
+        if (model.getSegmentNumber() == 1) {
+            final long connectionNumber = model.getConnectionNumber();
+            biasView = model.getView(ModelFile.HEADER_SIZE, 4L * sourceTotalNumber).asFloatBuffer();
+            traverseOrderView = model.getView(model.getTraverseOrderPosition(), 4L * traverseLength).asIntBuffer();
+            parentOffsetView = model.getView(model.getParentOffsetPosition(), 8L * (sourceTotalNumber + 1))
+                    .asLongBuffer();
+            parentView = model.getView(model.getParentPosition(), 4 * connectionNumber).asIntBuffer();
+            weightView = model.getView(model.getWeightPosition(), 4 * connectionNumber).asFloatBuffer();
+        }
+        else {
+            biasView = null;
+            traverseOrderView = null;
+            parentOffsetView = null;
+            parentView = null;
+            weightView = null;
+        }
+        this.result = ThreadLocal.withInitial(() -> new double[sourceTotalNumber]);
+    }
+
+    /**
+     * Factory method, creates network over a mapped model.
+     * @param model mapped model
+     * @param analyzer analyzer, only deterministic activation function analyzers are supported,
+     * as it is shared between threads
+     * @return network
+     * @throws NeuralNetworkGenerationException on invalid parameters or on damaged model structure
+     */
+    public static OffHeapNeuralNetwork getOffHeapNeuralNetwork(MappedModel model,
+            ActivationFunctionAnalyzer analyzer) throws NeuralNetworkGenerationException {
+        if (model == null || analyzer == null) {
+            throw new NeuralNetworkGenerationException("Model and analyzer must not be null");
+        }
+        if (analyzer.getClass() != ActivationFunctionAnalyzer.class
+                && analyzer.getClass() != LevelParallelActivationFunctionAnalyzer.class) {
+            throw new NeuralNetworkGenerationException("Analyzer " + analyzer + " is not supported");
+        }
+        analyzer.checkValidity();
+        if (model.getInputVectorSize() < 1 || model.getResultVectorSize() < 1
+                || model.getInputVectorSize() + model.getResultVectorSize() > model.getSourceTotalNumber()) {
+            throw new NeuralNetworkGenerationException("Model has invalid vector sizes");
+        }
+        checkStructure(model);
+        return new OffHeapNeuralNetwork(model, analyzer);
+    }
+
+    /**
+     * Checks that all indices stored in the model are in bounds, reads sections in place.
+     * @param model mapped model
+     * @throws NeuralNetworkGenerationException on damaged model structure
+     */
+    private static void checkStructure(MappedModel model) throws NeuralNetworkGenerationException {
+        final int sourceTotalNumber = model.getSourceTotalNumber();
+        final int inputVectorSize = model.getInputVectorSize();
+        for (int i = 0; i < model.getTraverseLength(); i++) {
+            final int neuron = model.getTraverseOrder(i);
+            if (neuron < inputVectorSize || neuron >= sourceTotalNumber) {
+                throw new NeuralNetworkGenerationException(String.format(
+                        "Traverse order element %d refers to %d, which is not a neuron", i, neuron));
+            }
+        }
+        if (model.getParentOffset(0) != 0 || model.getParentOffset(sourceTotalNumber) != model.getConnectionNumber()) {
+            throw new NeuralNetworkGenerationException("Parent offsets don't cover all connections");
+        }
+        for (int source = 0; source < sourceTotalNumber; source++) {
+            if (model.getParentOffset(source + 1) < model.getParentOffset(source)) {
+                throw new NeuralNetworkGenerationException("Parent offsets of source " + source + " are decreasing");
+            }
+        }
+        for (long j = 0; j < model.getConnectionNumber(); j++) {
+            final int parent = model.getParent(j);
+            if (parent < 0 || parent >= sourceTotalNumber) {
+                throw new NeuralNetworkGenerationException(String.format(
+                        "Connection %d has parent %d out of bounds", j, parent));
+            }
+        }
+    }
+
+    /**
+     * Factory method, maps model file and creates network over it.
+     * @param path path of model file
+     * @param analyzer analyzer, see {@link #getOffHeapNeuralNetwork(MappedModel, ActivationFunctionAnalyzer)}
+     * @return network
+     * @throws IOException on failure to map file or on damaged header
+     * @throws NeuralNetworkGenerationException on invalid parameters
+     */
+    public static OffHeapNeuralNetwork getOffHeapNeuralNetwork(Path path, ActivationFunctionAnalyzer analyzer)
+            throws IOException, NeuralNetworkGenerationException {
+        return getOffHeapNeuralNetwork(MappedModel.map(path), analyzer);
+    }
+
+    /**
+     * @return mapped model
+     */
+    public MappedModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return analyzer
+     */
+    public ActivationFunctionAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    /**
+     * @return amplitude of input vector coordinates
+     */
+    public double getInputVectorAmplitude() {
+        return inputVectorAmplitude;
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return inputVectorSize;
+    }
+
+    /**
+     * @return result vector size
+     */
+    public int getResultVectorSize() {
+        return resultVectorSize;
+    }
+
+    /**
+     * Neural network maps input vector into some result vector.
+     * @param inputVector argument
+     * @return result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector
+     */
+    public double[] map(double[] inputVector) throws NeuralNetworkRuntimeException {
+        final double[] answer = new double[resultVectorSize];
+        map(inputVector, answer);
+        return answer;
+    }
+
+    /**
+     * Same as {@link #map(double[])}, but result vector is written into preallocated buffer,
+     * so no memory is allocated per call.
+     * @param inputVector argument
+     * @param resultBuffer buffer for result vector, must have size of result vector
+     * @throws NeuralNetworkRuntimeException on bad format of input vector or buffer
+     */
+    public void map(double[] inputVector, double[] resultBuffer) throws NeuralNetworkRuntimeException {
+        if (resultBuffer.length != resultVectorSize) {
+            throw new NeuralNetworkRuntimeException(
+                    String.format("Result buffer has cardinality of %d, network produces %d",
+                            resultBuffer.length, resultVectorSize));
+        }
+        NeuralNetwork.checkInputVector(inputVector, inputVectorSize, rawInput ? Double.NaN : inputVectorAmplitude);
+        final double[] sourceResult = result.get();
+        System.arraycopy(inputVector, 0, sourceResult, 0, inputVectorSize);
+        if (weightView != null) {
+            forward(sourceResult);
+        }
+        else {
+            forwardSegmented(sourceResult);
+        }
+        System.arraycopy(sourceResult, sourceTotalNumber - resultVectorSize, resultBuffer, 0, resultVectorSize);
+    }
+
+    /**
+     * Calculates all neurons through section views.
+     * @param sourceResult results of sources, input vector is set
+     */
+    private void forward(double[] sourceResult) {
+        for (int i = 0; i < traverseLength; i++) {
+            final int currentNeuronIndex = traverseOrderView.get(i);
+            // a single segment has less than 2^30 bytes, so connection indices fit into int
+            final int last = (int) parentOffsetView.get(currentNeuronIndex + 1);
+            double linearCombo = biasView.get(currentNeuronIndex);
+            for (int j = (int) parentOffsetView.get(currentNeuronIndex); j < last; j++) {
+                linearCombo += weightView.get(j) * sourceResult[parentView.get(j)];
+            }
+            sourceResult[currentNeuronIndex] = analyzer.activate(linearCombo);
+        }
+    }
+
+    /**
+     * Calculates all neurons through model accessors, for models of several segments.
+     * @param sourceResult results of sources, input vector is set
+     */
+    private void forwardSegmented(double[] sourceResult) {
+        for (int i = 0; i < traverseLength; i++) {
+            final int currentNeuronIndex = model.getTraverseOrder(i);
+            final long last = model.getParentOffset(currentNeuronIndex + 1);
+            double linearCombo = model.getBias(currentNeuronIndex);
+            for (long j = model.getParentOffset(currentNeuronIndex); j < last; j++) {
+                linearCombo += model.getWeight(j) * sourceResult[model.getParent(j)];
+            }
+            sourceResult[currentNeuronIndex] = analyzer.activate(linearCombo);
+        }
+    }
+}
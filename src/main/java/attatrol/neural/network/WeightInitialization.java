@@ -0,0 +1,51 @@
+package attatrol.neural.network;
+
+/**
+ * Schemes of initialization of weights, weights of each neuron are drawn uniformly
+ * from [-bound, bound], the bound may depend on the number of parents of the neuron (fan-in)
+ * and on the number of children of those parents (fan-out).
+ * @author attatrol
+ *
+ */
+public enum WeightInitialization {
+
+    /**
+     * Fixed range [{@link NeuralNetwork#RAMDOM_WEIGHT_MIN}, {@link NeuralNetwork#RANDOM_WEIGHT_MAX}]
+     */
+    UNIFORM {
+        @Override
+        public float getBound(int fanIn, double fanOut) {
+            return NeuralNetwork.RANDOM_WEIGHT_MAX;
+        }
+    },
+
+    /**
+     * Glorot (Xavier) scheme, bound is sqrt(6 / (fan-in + fan-out)), keeps variance of signals
+     * of both passes, suits sigmoid activation
+     */
+    XAVIER {
+        @Override
+        public float getBound(int fanIn, double fanOut) {
+            return (float) Math.sqrt(6. / Math.max(1., fanIn + fanOut));
+        }
+    },
+
+    /**
+     * He scheme, bound is sqrt(6 / fan-in), suits rectifier-like activations
+     */
+    HE {
+        @Override
+        public float getBound(int fanIn, double fanOut) {
+            return (float) Math.sqrt(6. / Math.max(1, fanIn));
+        }
+    };
+
+    /**
+     * Calculates bound of weights of a neuron.
+     * @param fanIn number of parents of the neuron
+     * @param fanOut average number of children of the parents
+     * @return bound of weights
+     */
+    public abstract float getBound(int fanIn, double fanOut);
+
+}
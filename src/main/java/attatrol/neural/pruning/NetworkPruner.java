@@ -0,0 +1,249 @@
+package attatrol.neural.pruning;
+
+import java.util.Arrays;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.analysis.AnalyticalProcessor;
+import attatrol.neural.analysis.StochasticActivationFunctionAnalyzer;
+import attatrol.neural.dataset.Dataset;
+import attatrol.neural.dataset.DatasetEvaluator;
+import attatrol.neural.errorfunction.ErrorFunction;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.topology.LayeredTopologyGenerator;
+import attatrol.neural.topology.Topology;
+
+/**
+ * Utility class, removes insignificant weights and dead neurons from a trained network
+ * and compacts its topology, so the pruned network really does less work.
+ * <p>
+ * Pruning is performed in 3 steps:<br/>
+ * 1. Connections with weights lesser (by absolute value) than the threshold are removed.<br/>
+ * 2. Hidden neurons left without parents produce a constant value, this value is folded
+ * into biases of their children and neurons are removed. This is done only for deterministic
+ * activation function analyzers, otherwise such neurons are kept.<br/>
+ * 3. Hidden neurons left without children are removed together with their incoming connections.<br/>
+ * Both removals cascade. Input vector coordinates and surface neurons are never removed,
+ * relative order of remaining sources is preserved.
+ * @author attatrol
+ *
+ */
+public final class NetworkPruner {
+
+    /**
+     * Not in use
+     */
+    private NetworkPruner() { }
+
+    /**
+     * Removes weights with absolute value lesser than the threshold.
+     * @param network trained network, not modified
+     * @param threshold weight threshold, non-negative
+     * @param errorFunction error function used to measure accuracy, may be null
+     * @param dataset dataset used to measure accuracy, may be null
+     * @return pruned network state, its topology and pruning report
+     * @throws NeuralNetworkGenerationException on invalid threshold
+     * @throws NeuralNetworkRuntimeException if dataset doesn't fit the network
+     */
+    public static PruningResult pruneByThreshold(NeuralNetwork network, float threshold,
+            ErrorFunction errorFunction, Dataset dataset)
+                    throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        if (!(threshold >= 0.f)) {
+            throw new NeuralNetworkGenerationException("Pruning threshold must be a non-negative number");
+        }
+        return prune(network, network.getNetworkStateCopy(), threshold, errorFunction, dataset);
+    }
+
+    /**
+     * Removes approximately given percent of weights with the lowest absolute values.
+     * @param network trained network, not modified
+     * @param percent percent of weights to remove, in [0, 100]
+     * @param errorFunction error function used to measure accuracy, may be null
+     * @param dataset dataset used to measure accuracy, may be null
+     * @return pruned network state, its topology and pruning report
+     * @throws NeuralNetworkGenerationException on invalid percent
+     * @throws NeuralNetworkRuntimeException if dataset doesn't fit the network
+     */
+    public static PruningResult pruneByPercent(NeuralNetwork network, double percent,
+            ErrorFunction errorFunction, Dataset dataset)
+                    throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        if (!(percent >= 0. && percent <= 100.)) {
+            throw new NeuralNetworkGenerationException("Percent of pruned weights must be in [0, 100]");
+        }
+        final NeuralNetworkState state = network.getNetworkStateCopy();
+        return prune(network, state, getPercentThreshold(state, percent), errorFunction, dataset);
+    }
+
+    /**
+     * Calculates threshold which cuts given percent of weights.
+     * @param state network state
+     * @param percent percent of weights to remove
+     * @return threshold
+     */
+    private static float getPercentThreshold(NeuralNetworkState state, double percent) {
+        final float[][] weight = state.getWeight();
+        int connectionNumber = 0;
+        for (int neuronIndex : state.getTraverseOrder()) {
+            connectionNumber += weight[neuronIndex].length;
+        }
+        final float[] absoluteWeights = new float[connectionNumber];
+        int position = 0;
+        for (int neuronIndex : state.getTraverseOrder()) {
+            for (float value : weight[neuronIndex]) {
+                absoluteWeights[position++] = Math.abs(value);
+            }
+        }
+        Arrays.sort(absoluteWeights);
+        final int cut = (int) (connectionNumber * percent / 100.);
+        if (cut >= connectionNumber) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return absoluteWeights[cut];
+    }
+
+    /**
+     * Prunes network state.
+     * @param network source network
+     * @param state deep copy of the network state
+     * @param threshold weight threshold
+     * @param errorFunction error function used to measure accuracy, may be null
+     * @param dataset dataset used to measure accuracy, may be null
+     * @return pruning result
+     * @throws NeuralNetworkRuntimeException if dataset doesn't fit the network
+     */
+    private static PruningResult prune(NeuralNetwork network, NeuralNetworkState state, float threshold,
+            ErrorFunction errorFunction, Dataset dataset) throws NeuralNetworkRuntimeException {
+        final float[][] weight = state.getWeight();
+        final float[] bias = state.getBias();
+        final int[][] parents = state.getParents();
+        final int[] traverseOrder = state.getTraverseOrder();
+        final int sourceNumber = parents.length;
+        final int neuronFirstIndex = state.getInputVectorSize();
+        final int surfaceNeuronFirstIndex = sourceNumber - state.getResultVectorSize();
+        final AnalyticalProcessor analyzer = network.getAnalythicalProcessor();
+        final boolean foldConstants = analyzer instanceof ActivationFunctionAnalyzer
+                && !(analyzer instanceof StochasticActivationFunctionAnalyzer);
+
+        // step 1: weight pruning
+        final boolean[][] kept = new boolean[sourceNumber][];
+        final int[] parentNumber = new int[sourceNumber];
+        final int[] childNumber = new int[sourceNumber];
+        long connectionNumberBefore = 0;
+        for (int neuronIndex : traverseOrder) {
+            kept[neuronIndex] = new boolean[parents[neuronIndex].length];
+            connectionNumberBefore += parents[neuronIndex].length;
+            for (int k = 0; k < parents[neuronIndex].length; k++) {
+                if (Math.abs(weight[neuronIndex][k]) >= threshold) {
+                    kept[neuronIndex][k] = true;
+                    parentNumber[neuronIndex]++;
+                    childNumber[parents[neuronIndex][k]]++;
+                }
+            }
+        }
+
+        final boolean[] removed = new boolean[sourceNumber];
+        // step 2: parents are always folded before children in forward traverse order
+        if (foldConstants) {
+            final ActivationFunctionAnalyzer afa = (ActivationFunctionAnalyzer) analyzer;
+            final double[] constantResult = new double[sourceNumber];
+            for (int neuronIndex : traverseOrder) {
+                for (int k = 0; k < parents[neuronIndex].length; k++) {
+                    final int parentIndex = parents[neuronIndex][k];
+                    if (kept[neuronIndex][k] && removed[parentIndex]) {
+                        bias[neuronIndex] += weight[neuronIndex][k] * constantResult[parentIndex];
+                        kept[neuronIndex][k] = false;
+                        parentNumber[neuronIndex]--;
+                    }
+                }
+                // neuron is constant if it had no parents or all of them were folded
+                if (neuronIndex < surfaceNeuronFirstIndex && !removed[neuronIndex]
+                        && parentNumber[neuronIndex] == 0) {
+                    removed[neuronIndex] = true;
+                    constantResult[neuronIndex] = afa.activate(bias[neuronIndex]);
+                }
+            }
+        }
+        // step 3: children are always removed before parents in backward traverse order
+        for (int j = traverseOrder.length - 1; j >= 0; j--) {
+            final int neuronIndex = traverseOrder[j];
+            if (neuronIndex < surfaceNeuronFirstIndex && childNumber[neuronIndex] == 0) {
+                removed[neuronIndex] = true;
+            }
+            if (removed[neuronIndex]) {
+                for (int k = 0; k < parents[neuronIndex].length; k++) {
+                    if (kept[neuronIndex][k]) {
+                        kept[neuronIndex][k] = false;
+                        childNumber[parents[neuronIndex][k]]--;
+                    }
+                }
+            }
+        }
+
+        // compaction
+        final int[] newIndex = new int[sourceNumber];
+        int newSourceNumber = 0;
+        for (int i = 0; i < sourceNumber; i++) {
+            newIndex[i] = removed[i] ? -1 : newSourceNumber++;
+        }
+        final float[][] newWeight = new float[newSourceNumber][];
+        final int[][] newParents = new int[newSourceNumber][];
+        final float[] newBias = new float[newSourceNumber];
+        for (int i = 0; i < neuronFirstIndex; i++) {
+            newWeight[i] = new float[0];
+            newParents[i] = new int[0];
+            newBias[i] = bias[i];
+        }
+        final int[] newTraverseOrder = new int[newSourceNumber - neuronFirstIndex];
+        long connectionNumberAfter = 0;
+        int position = 0;
+        for (int neuronIndex : traverseOrder) {
+            if (removed[neuronIndex]) {
+                continue;
+            }
+            final int index = newIndex[neuronIndex];
+            newTraverseOrder[position++] = index;
+            newBias[index] = bias[neuronIndex];
+            int keptNumber = 0;
+            for (boolean value : kept[neuronIndex]) {
+                if (value) {
+                    keptNumber++;
+                }
+            }
+            newWeight[index] = new float[keptNumber];
+            newParents[index] = new int[keptNumber];
+            // parents stay sorted because new indexes are monotonic
+            for (int k = 0, m = 0; k < parents[neuronIndex].length; k++) {
+                if (kept[neuronIndex][k]) {
+                    newWeight[index][m] = weight[neuronIndex][k];
+                    newParents[index][m] = newIndex[parents[neuronIndex][k]];
+                    m++;
+                }
+            }
+            connectionNumberAfter += keptNumber;
+        }
+        // inversion of parents gives children
+        final int[][] newChildren = LayeredTopologyGenerator.getParents(newParents);
+
+        final NeuralNetworkState prunedState = new NeuralNetworkState(false, state.getInputVectorAmplitude(),
+                state.getInputVectorSize(), state.getResultVectorSize(), newWeight, newBias,
+                new double[newSourceNumber], new double[newSourceNumber], newChildren, newParents,
+                newTraverseOrder);
+        prunedState.setRawInput(state.isRawInput());
+        final Topology topology = new Topology(newSourceNumber, neuronFirstIndex,
+                newSourceNumber - state.getResultVectorSize(), newChildren, newParents, newTraverseOrder);
+
+        double errorBefore = Double.NaN;
+        double errorAfter = Double.NaN;
+        if (errorFunction != null && dataset != null) {
+            final int shardNumber = Runtime.getRuntime().availableProcessors();
+            errorBefore = DatasetEvaluator.getAverageError(network, errorFunction, dataset, shardNumber);
+            errorAfter = DatasetEvaluator.getAverageError(prunedState, analyzer, network.getLearningProcessor(),
+                    errorFunction, dataset, shardNumber);
+        }
+        final PruningReport report = new PruningReport(sourceNumber, newSourceNumber, connectionNumberBefore,
+                connectionNumberAfter, threshold, errorBefore, errorAfter);
+        return new PruningResult(prunedState, topology, report);
+    }
+}
@@ -0,0 +1,130 @@
+package attatrol.neural.pruning;
+
+/**
+ * POJO, describes effect of pruning of a neural network.
+ * <p>
+ * FLOPs per map are estimated as 2 per connection (multiplication and addition)
+ * plus 2 per neuron (bias and activation function). Memory is estimated as the size of all
+ * state arrays without array headers: weights and both adjacency arrays (4 bytes per connection
+ * each), biases (4 bytes per source), linear combinations and results (8 bytes per source each)
+ * and traverse order (4 bytes per neuron).
+ * @author attatrol
+ *
+ */
+public class PruningReport {
+
+    private final int sourceNumberBefore;
+
+    private final int sourceNumberAfter;
+
+    private final long connectionNumberBefore;
+
+    private final long connectionNumberAfter;
+
+    /**
+     * Weights with absolute value lesser than this one were removed
+     */
+    private final float threshold;
+
+    /**
+     * Average error on supplied dataset before pruning, NaN if there was no dataset
+     */
+    private final double errorBefore;
+
+    /**
+     * Average error on supplied dataset after pruning, NaN if there was no dataset
+     */
+    private final double errorAfter;
+
+    public PruningReport(int sourceNumberBefore, int sourceNumberAfter, long connectionNumberBefore,
+            long connectionNumberAfter, float threshold, double errorBefore, double errorAfter) {
+        this.sourceNumberBefore = sourceNumberBefore;
+        this.sourceNumberAfter = sourceNumberAfter;
+        this.connectionNumberBefore = connectionNumberBefore;
+        this.connectionNumberAfter = connectionNumberAfter;
+        this.threshold = threshold;
+        this.errorBefore = errorBefore;
+        this.errorAfter = errorAfter;
+    }
+
+    /**
+     * Estimates number of floating point operations per map.
+     * @param neuronNumber number of neurons
+     * @param connectionNumber number of connections
+     * @return FLOPs per map
+     */
+    public static long estimateFlops(int neuronNumber, long connectionNumber) {
+        return 2 * connectionNumber + 2L * neuronNumber;
+    }
+
+    /**
+     * Estimates memory occupied by network state arrays.
+     * @param sourceNumber number of sources
+     * @param neuronNumber number of neurons
+     * @param connectionNumber number of connections
+     * @return bytes
+     */
+    public static long estimateBytes(int sourceNumber, int neuronNumber, long connectionNumber) {
+        return 12 * connectionNumber + 20L * sourceNumber + 4L * neuronNumber;
+    }
+
+    public int getSourceNumberBefore() {
+        return sourceNumberBefore;
+    }
+
+    public int getSourceNumberAfter() {
+        return sourceNumberAfter;
+    }
+
+    public long getConnectionNumberBefore() {
+        return connectionNumberBefore;
+    }
+
+    public long getConnectionNumberAfter() {
+        return connectionNumberAfter;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    public double getErrorBefore() {
+        return errorBefore;
+    }
+
+    public double getErrorAfter() {
+        return errorAfter;
+    }
+
+    /**
+     * @return error after pruning minus error before pruning, NaN if there was no dataset
+     */
+    public double getErrorDelta() {
+        return errorAfter - errorBefore;
+    }
+
+    /**
+     * @param inputVectorSize input vector size (input sources are not neurons)
+     * @return FLOPs per map saved by pruning
+     */
+    public long getFlopSavings(int inputVectorSize) {
+        return estimateFlops(sourceNumberBefore - inputVectorSize, connectionNumberBefore)
+                - estimateFlops(sourceNumberAfter - inputVectorSize, connectionNumberAfter);
+    }
+
+    /**
+     * @param inputVectorSize input vector size (input sources are not neurons)
+     * @return bytes of state arrays saved by pruning
+     */
+    public long getMemorySavings(int inputVectorSize) {
+        return estimateBytes(sourceNumberBefore, sourceNumberBefore - inputVectorSize, connectionNumberBefore)
+                - estimateBytes(sourceNumberAfter, sourceNumberAfter - inputVectorSize, connectionNumberAfter);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PruningReport [threshold=%g, sources %d -> %d, connections %d -> %d,"
+                + " error %g -> %g]", threshold, sourceNumberBefore, sourceNumberAfter,
+                connectionNumberBefore, connectionNumberAfter, errorBefore, errorAfter);
+    }
+}
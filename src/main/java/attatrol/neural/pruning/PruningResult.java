@@ -0,0 +1,45 @@
+package attatrol.neural.pruning;
+
+import attatrol.neural.network.NeuralNetworkState;
+import attatrol.neural.topology.Topology;
+
+/**
+ * POJO, holds pruned network state, its compacted topology and pruning report.
+ * @author attatrol
+ *
+ */
+public class PruningResult {
+
+    /**
+     * Pruned network state, deep copy, use it with
+     * {@link attatrol.neural.network.NeuralNetwork#NeuralNetwork(NeuralNetworkState,
+     * attatrol.neural.analysis.AnalyticalProcessor, attatrol.neural.learning.LearningProcessor)}
+     */
+    private final NeuralNetworkState state;
+
+    /**
+     * Compacted topology of the pruned network
+     */
+    private final Topology topology;
+
+    private final PruningReport report;
+
+    public PruningResult(NeuralNetworkState state, Topology topology, PruningReport report) {
+        this.state = state;
+        this.topology = topology;
+        this.report = report;
+    }
+
+    public NeuralNetworkState getState() {
+        return state;
+    }
+
+    public Topology getTopology() {
+        return topology;
+    }
+
+    public PruningReport getReport() {
+        return report;
+    }
+
+}
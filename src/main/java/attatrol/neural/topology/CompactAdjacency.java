@@ -0,0 +1,198 @@
+package attatrol.neural.topology;
+
+/**
+ * Compressed storage of neighbour lists (children or parents) of all sources.
+ * <p>
+ * Lists are concatenated, number of neighbours of each list is kept separately
+ * (compressed sparse row form). The first neighbour of each list is stored as a zigzag encoded
+ * difference with the source index, every next one as a difference with the previous neighbour.
+ * Differences are written into a byte array, 7 bits per byte, highest bit marks continuation,
+ * so each of them takes as few bytes as its value allows. Sorted lists of layered topologies
+ * give small differences, which mostly take one or two bytes instead of four. If some list
+ * is not sorted, all differences are zigzag encoded, so small negative values stay small.
+ * @author attatrol
+ *
+ */
+final class CompactAdjacency {
+
+    /**
+     * Offset of neighbour list of each source, last element is total number of neighbours
+     */
+    private final int[] offset;
+
+    /**
+     * Position of encoded neighbour list of each source in {@link #data}
+     */
+    private final int[] position;
+
+    /**
+     * Encoded differences
+     */
+    private final byte[] data;
+
+    /**
+     * True if differences between neighbours are zigzag encoded
+     */
+    private final boolean zigzag;
+
+    /**
+     * Default ctor.
+     * @param offset offset of neighbour list of each source
+     * @param position position of encoded neighbour list of each source
+     * @param data encoded differences
+     * @param zigzag true if differences between neighbours are zigzag encoded
+     */
+    private CompactAdjacency(int[] offset, int[] position, byte[] data, boolean zigzag) {
+        this.offset = offset;
+        this.position = position;
+        this.data = data;
+        this.zigzag = zigzag;
+    }
+
+    /**
+     * Encodes neighbour lists.
+     * @param adjacency neighbour lists of each source
+     * @return compressed neighbour lists
+     */
+    static CompactAdjacency encode(int[][] adjacency) {
+        final int[] offset = new int[adjacency.length + 1];
+        boolean sorted = true;
+        for (int i = 0; i < adjacency.length; i++) {
+            final int[] neighbours = adjacency[i];
+            offset[i + 1] = offset[i] + neighbours.length;
+            for (int j = 1; j < neighbours.length && sorted; j++) {
+                sorted = neighbours[j] >= neighbours[j - 1];
+            }
+        }
+        final boolean zigzag = !sorted;
+        final int[] position = new int[adjacency.length + 1];
+        for (int i = 0; i < adjacency.length; i++) {
+            final int[] neighbours = adjacency[i];
+            int size = 0;
+            for (int j = 0; j < neighbours.length; j++) {
+                size += getCodeLength(getCode(neighbours, j, i, zigzag));
+            }
+            position[i + 1] = position[i] + size;
+        }
+        final byte[] data = new byte[position[adjacency.length]];
+        for (int i = 0; i < adjacency.length; i++) {
+            final int[] neighbours = adjacency[i];
+            int current = position[i];
+            for (int j = 0; j < neighbours.length; j++) {
+                int code = getCode(neighbours, j, i, zigzag);
+                while ((code & ~0x7F) != 0) {
+                    data[current++] = (byte) (code & 0x7F | 0x80);
+                    code >>>= 7;
+                }
+                data[current++] = (byte) code;
+            }
+        }
+        return new CompactAdjacency(offset, position, data, zigzag);
+    }
+
+    /**
+     * @param index source index
+     * @return number of neighbours of the source
+     */
+    int getNumber(int index) {
+        return offset[index + 1] - offset[index];
+    }
+
+    /**
+     * @return total number of neighbours of all sources
+     */
+    int getTotalNumber() {
+        return offset[offset.length - 1];
+    }
+
+    /**
+     * Decodes neighbour list of a source.
+     * @param index source index
+     * @return new array with neighbours of the source
+     */
+    int[] get(int index) {
+        final int[] neighbours = new int[getNumber(index)];
+        int current = position[index];
+        int previous = index;
+        for (int j = 0; j < neighbours.length; j++) {
+            int code = 0;
+            int shift = 0;
+            byte value;
+            do {
+                value = data[current++];
+                code |= (value & 0x7F) << shift;
+                shift += 7;
+            }
+            while (value < 0);
+            previous += j == 0 || zigzag ? decode(code) : code;
+            neighbours[j] = previous;
+        }
+        return neighbours;
+    }
+
+    /**
+     * Decodes all neighbour lists.
+     * @return neighbour lists of each source
+     */
+    int[][] getAll() {
+        final int[][] adjacency = new int[offset.length - 1][];
+        for (int i = 0; i < adjacency.length; i++) {
+            adjacency[i] = get(i);
+        }
+        return adjacency;
+    }
+
+    /**
+     * @return approximate heap size of the storage, in bytes
+     */
+    long getByteSize() {
+        return 4L * (offset.length + position.length) + data.length;
+    }
+
+    /**
+     * Calculates code of a neighbour.
+     * @param neighbours neighbour list
+     * @param j index of the neighbour in the list
+     * @param index source index
+     * @param zigzag true if differences between neighbours are zigzag encoded
+     * @return code
+     */
+    private static int getCode(int[] neighbours, int j, int index, boolean zigzag) {
+        if (j == 0) {
+            return encode(neighbours[0] - index);
+        }
+        final int difference = neighbours[j] - neighbours[j - 1];
+        return zigzag ? encode(difference) : difference;
+    }
+
+    /**
+     * @param code code
+     * @return number of bytes needed to write the code
+     */
+    private static int getCodeLength(int code) {
+        int length = 1;
+        while ((code & ~0x7F) != 0) {
+            code >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Zigzag encoding, maps 0, -1, 1, -2, ... into 0, 1, 2, 3, ...
+     * @param value difference
+     * @return code
+     */
+    private static int encode(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Inverse of {@link #encode(int)}.
+     * @param code code
+     * @return difference
+     */
+    private static int decode(int code) {
+        return (code >>> 1) ^ -(code & 1);
+    }
+}
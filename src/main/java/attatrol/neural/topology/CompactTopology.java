@@ -0,0 +1,129 @@
+package attatrol.neural.topology;
+
+/**
+ * Topology which keeps children and parents of sources in compressed form, see {@link CompactAdjacency}.
+ * Layered topologies of large networks take a fraction of heap of ordinary {@link Topology}.
+ * <p>
+ * Neighbour lists are decoded on each call of {@link #getSourceChildrenByIndex(int)}
+ * and {@link #getSourceParentsByIndex(int)}, {@link #getSourceChildren()} and
+ * {@link #getSourceParents()} decode the whole topology, use them only to create a network.
+ * @author attatrol
+ *
+ */
+public class CompactTopology extends Topology {
+
+    /**
+     * Children of each source
+     */
+    private final CompactAdjacency children;
+
+    /**
+     * Parents of each source
+     */
+    private final CompactAdjacency parents;
+
+    /**
+     * First index of every layer, null if topology is not layered
+     */
+    private final int[] firstIndexOfLayer;
+
+    /**
+     * Default ctor.
+     * @param topology source topology
+     * @param firstIndexOfLayer first index of every layer or null
+     */
+    private CompactTopology(Topology topology, int[] firstIndexOfLayer) {
+        super(topology.getSourceTotalNumber(), topology.getNeuronFirstIndex(),
+                topology.getSurfaceNeuronFirstIndex(), null, null, topology.getForwardTraverseNeuronsOrder());
+        this.children = CompactAdjacency.encode(topology.getSourceChildren());
+        this.parents = CompactAdjacency.encode(topology.getSourceParents());
+        this.firstIndexOfLayer = firstIndexOfLayer;
+    }
+
+    /**
+     * Compresses some topology, source topology is not referenced afterwards and may be discarded.
+     * @param topology source topology
+     * @return compressed topology
+     */
+    public static CompactTopology getCompactTopology(Topology topology) {
+        if (topology instanceof CompactTopology) {
+            return (CompactTopology) topology;
+        }
+        final int[] firstIndexOfLayer = topology instanceof LayeredTopology
+                ? ((LayeredTopology) topology).getFirstIndexOfLayer() : null;
+        return new CompactTopology(topology, firstIndexOfLayer);
+    }
+
+    @Override
+    public int[] getSourceChildrenByIndex(int neuronIndex) {
+        return children.get(neuronIndex);
+    }
+
+    @Override
+    public int[] getSourceParentsByIndex(int neuronIndex) {
+        return parents.get(neuronIndex);
+    }
+
+    @Override
+    public int getSourceChildNumber(int neuronIndex) {
+        return children.getNumber(neuronIndex);
+    }
+
+    @Override
+    public int getSourceParentNumber(int neuronIndex) {
+        return parents.getNumber(neuronIndex);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Decodes new arrays on each call.
+     */
+    @Override
+    public int[][] getSourceChildren() {
+        return children.getAll();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Decodes new arrays on each call.
+     */
+    @Override
+    public int[][] getSourceParents() {
+        return parents.getAll();
+    }
+
+    /**
+     * @return first index of every layer, null if topology is not layered
+     */
+    public int[] getFirstIndexOfLayer() {
+        return firstIndexOfLayer;
+    }
+
+    /**
+     * @return total number of connections
+     */
+    public int getConnectionNumber() {
+        return children.getTotalNumber();
+    }
+
+    /**
+     * @return approximate heap size of children and parents, in bytes
+     */
+    public long getAdjacencyByteSize() {
+        return children.getByteSize() + parents.getByteSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected String getType(int currentIndex) {
+        if (firstIndexOfLayer == null) {
+            return super.getType(currentIndex);
+        }
+        return LayeredTopology.getType(currentIndex, neuronFirstIndex, surfaceNeuronFirstIndex,
+                firstIndexOfLayer);
+    }
+}
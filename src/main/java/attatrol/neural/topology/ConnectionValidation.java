@@ -0,0 +1,22 @@
+package attatrol.neural.topology;
+
+/**
+ * Level of validation of generated layer interconnections.
+ * @author attatrol
+ *
+ */
+public enum ConnectionValidation {
+    /**
+     * Every parent is checked, uniformity of parents per child is checked
+     */
+    FULL,
+    /**
+     * Only evenly spread sample of parents is checked, uniformity is not checked
+     */
+    SAMPLED,
+    /**
+     * No checks, for trusted distributions and layer sizes
+     */
+    OFF;
+
+}
@@ -0,0 +1,207 @@
+package attatrol.neural.topology;
+
+import java.util.List;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Layered topology which stores no connections, only layer sizes and distribution parameters.
+ * Children of a neuron are calculated on demand by the procedural distribution of its layer,
+ * so memory consumption doesn't depend on number of connections.
+ * <p>
+ * Sources are numbered the same way as in {@link LayeredTopology} generated from the same
+ * description, but children of a neuron are not sorted.
+ * @author attatrol
+ *
+ */
+public final class ImplicitLayeredTopology {
+
+    /**
+     * Number of neurons in each layer, input vector layer is the first
+     */
+    private final int[] layerSize;
+
+    /**
+     * Index of the first source of each layer
+     */
+    private final int[] firstIndexOfLayer;
+
+    /**
+     * Number of children per neuron of each layer, 0 for the surface layer
+     */
+    private final int[] childPerNeuronNumber;
+
+    /**
+     * Distribution of connections from each layer to the next one, null for the surface layer
+     */
+    private final LayerInterconnectionDistribution[] distribution;
+
+    /**
+     * Total number of sources
+     */
+    private final int sourceTotalNumber;
+
+    /**
+     * Default ctor.
+     * @param layerSize number of neurons in each layer
+     * @param firstIndexOfLayer index of the first source of each layer
+     * @param childPerNeuronNumber number of children per neuron of each layer
+     * @param distribution distribution of connections from each layer to the next one
+     * @param sourceTotalNumber total number of sources
+     */
+    private ImplicitLayeredTopology(int[] layerSize, int[] firstIndexOfLayer, int[] childPerNeuronNumber,
+            LayerInterconnectionDistribution[] distribution, int sourceTotalNumber) {
+        this.layerSize = layerSize;
+        this.firstIndexOfLayer = firstIndexOfLayer;
+        this.childPerNeuronNumber = childPerNeuronNumber;
+        this.distribution = distribution;
+        this.sourceTotalNumber = sourceTotalNumber;
+    }
+
+    /**
+     * Factory method, creates implicit topology from layered topology description.
+     * @param layeredTopologyDescription the description, all its layers except the surface one
+     * must have procedural distributions
+     * @return implicit topology
+     * @throws NeuralNetworkGenerationException on incomplete description, on non-procedural
+     * distribution or on invalid number of children
+     */
+    public static ImplicitLayeredTopology getImplicitLayeredTopology(
+            LayeredTopologyDescription layeredTopologyDescription) throws NeuralNetworkGenerationException {
+        final List<Layer> layers = layeredTopologyDescription.getLayers();
+        if (layers.size() < 2 || layers.get(layers.size() - 1).getType() != LayerType.SURFACE) {
+            throw new NeuralNetworkGenerationException("Description must end with a surface layer");
+        }
+        final int layerNumber = layers.size();
+        final int[] layerSize = new int[layerNumber];
+        final int[] firstIndexOfLayer = new int[layerNumber];
+        final int[] childPerNeuronNumber = new int[layerNumber];
+        final LayerInterconnectionDistribution[] distribution = new LayerInterconnectionDistribution[layerNumber];
+        long sourceTotalNumber = 0;
+        for (int i = 0; i < layerNumber; i++) {
+            final Layer layer = layers.get(i);
+            layerSize[i] = layer.getNeuronNumber();
+            firstIndexOfLayer[i] = (int) sourceTotalNumber;
+            sourceTotalNumber += layer.getNeuronNumber();
+            if (i == layerNumber - 1) {
+                break;
+            }
+            if (layer.getDistribution() == null || !layer.getDistribution().isProcedural()) {
+                throw new NeuralNetworkGenerationException(String.format(
+                        "Layer %d: distribution %s can not be computed on the fly", i, layer.getDistribution()));
+            }
+            final long childNumber = layers.get(i + 1).getNeuronNumber();
+            if (layer.getChildPerNeuronNumber() > childNumber
+                    || (long) layer.getChildPerNeuronNumber() * layer.getNeuronNumber() < childNumber) {
+                throw new NeuralNetworkGenerationException(String.format(
+                        "Layer %d: %d children per neuron can not cover next layer of %d neurons uniformly",
+                        i, layer.getChildPerNeuronNumber(), childNumber));
+            }
+            childPerNeuronNumber[i] = layer.getChildPerNeuronNumber();
+            distribution[i] = layer.getDistribution();
+        }
+        if (sourceTotalNumber > Integer.MAX_VALUE) {
+            throw new NeuralNetworkGenerationException("Too many sources: " + sourceTotalNumber);
+        }
+        return new ImplicitLayeredTopology(layerSize, firstIndexOfLayer, childPerNeuronNumber,
+                distribution, (int) sourceTotalNumber);
+    }
+
+    /**
+     * Calculates children of a neuron.
+     * @param layer layer of the parent neuron, not the surface one
+     * @param parentIndex index of the parent neuron within its layer
+     * @param children buffer for indexes of children within the next layer,
+     * at least {@link #getChildPerNeuronNumber(int)} long, not sorted
+     */
+    public void fillChildren(int layer, int parentIndex, int[] children) {
+        distribution[layer].fillChildren(parentIndex, layerSize[layer], layerSize[layer + 1],
+                childPerNeuronNumber[layer], children);
+    }
+
+    /**
+     * @return number of layers, including input vector and surface layers
+     */
+    public int getLayerNumber() {
+        return layerSize.length;
+    }
+
+    /**
+     * @param layer layer index
+     * @return number of neurons in the layer
+     */
+    public int getLayerSize(int layer) {
+        return layerSize[layer];
+    }
+
+    /**
+     * @param layer layer index
+     * @return index of the first source of the layer
+     */
+    public int getFirstIndexOfLayer(int layer) {
+        return firstIndexOfLayer[layer];
+    }
+
+    /**
+     * @param layer layer index
+     * @return number of children per neuron of the layer, 0 for the surface layer
+     */
+    public int getChildPerNeuronNumber(int layer) {
+        return childPerNeuronNumber[layer];
+    }
+
+    /**
+     * @param layer layer index
+     * @return distribution of connections from the layer to the next one, null for the surface layer
+     */
+    public LayerInterconnectionDistribution getDistribution(int layer) {
+        return distribution[layer];
+    }
+
+    /**
+     * @return total number of sources
+     */
+    public int getSourceTotalNumber() {
+        return sourceTotalNumber;
+    }
+
+    /**
+     * @return input vector size
+     */
+    public int getInputVectorSize() {
+        return layerSize[0];
+    }
+
+    /**
+     * @return result vector size
+     */
+    public int getResultVectorSize() {
+        return layerSize[layerSize.length - 1];
+    }
+
+    /**
+     * @return total number of connections
+     */
+    public long getConnectionNumber() {
+        long connectionNumber = 0;
+        for (int i = 0; i < layerSize.length; i++) {
+            connectionNumber += (long) layerSize[i] * childPerNeuronNumber[i];
+        }
+        return connectionNumber;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("ImplicitLayeredTopology [");
+        for (int i = 0; i < layerSize.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(layerSize[i]);
+            if (distribution[i] != null) {
+                sb.append(' ').append(distribution[i]).append('x').append(childPerNeuronNumber[i]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+}
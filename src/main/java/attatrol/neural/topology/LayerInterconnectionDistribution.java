@@ -1,13 +1,7 @@
 package attatrol.neural.topology;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.SplittableRandom;
 
 import attatrol.neural.NeuralNetworkGenerationException;
 
@@ -41,39 +35,51 @@ public enum LayerInterconnectionDistribution {
          */
         @Override
         protected int[][] innerGenerateConnections(int parentLayerSize, int childLayerFirstIndex,
-                int childLayerLastIndex, int childPerNeuronNumber) {
-            final int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
-            float[] arcCenterCoordinate = divideCircleInArcs(parentLayerSize);
+                int childLayerLastIndex, int childPerNeuronNumber, SplittableRandom random) {
+            return generateProceduralConnections(this, parentLayerSize, childLayerFirstIndex,
+                    childLayerLastIndex, childPerNeuronNumber);
+        }
 
-            int[][] connections = new int[parentLayerSize][childPerNeuronNumber];
-            for (int i = 0; i < parentLayerSize; i++) {
-                final int firstChildIndex;
-                //different calculation for odd and even childPerNeuronNumber
-                if (childPerNeuronNumber % 2 != 0) {
-                    firstChildIndex = Math.round(arcCenterCoordinate[i] * numberOfChildren)
-                            - childPerNeuronNumber / 2;
-                }
-                else {
-                    firstChildIndex = (int) (arcCenterCoordinate[i] * numberOfChildren)
-                            - childPerNeuronNumber / 2 + 1;
-                }
-                for (int j = 0; j < childPerNeuronNumber; j++) {
-                    connections[i][j] = getNormalized(firstChildIndex + j, numberOfChildren) + childLayerFirstIndex;
-                }
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        void fillChildren(int parentIndex, int parentLayerSize, int numberOfChildren,
+                int childPerNeuronNumber, int[] children) {
+            // coordinate of the first point of i-th arc, see divideCircleInArcs of earlier versions
+            final float arcCenterCoordinate = parentIndex * (1.f / parentLayerSize);
+            final int firstChildIndex;
+            //different calculation for odd and even childPerNeuronNumber
+            if (childPerNeuronNumber % 2 != 0) {
+                firstChildIndex = Math.round(arcCenterCoordinate * numberOfChildren)
+                        - childPerNeuronNumber / 2;
+            }
+            else {
+                firstChildIndex = (int) (arcCenterCoordinate * numberOfChildren)
+                        - childPerNeuronNumber / 2 + 1;
+            }
+            for (int j = 0; j < childPerNeuronNumber; j++) {
+                children[j] = getNormalized(firstChildIndex + j, numberOfChildren);
             }
-            return connections;
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        protected void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex) 
-                throws NeuralNetworkGenerationException {
-            testNoEqualConnections(connections);
-            testUniformity(connections);
-            testChildlessParents(connections);
-            testContinuity(connections,childLayerFirstIndex, childLayerLastIndex);
+        public boolean isProcedural() {
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex,
+                int parentStep) throws NeuralNetworkGenerationException {
+            testNoEqualConnections(connections, parentStep);
+            testChildlessParents(connections, parentStep);
+            testContinuity(connections, childLayerFirstIndex, childLayerLastIndex, parentStep);
         }
     },
 
@@ -84,8 +90,10 @@ public enum LayerInterconnectionDistribution {
      * of children from each parent are distributed uniformly, so number of parents per child
      * always is equal to floor(total_number_of_connections/number_of_children) or exceeds it by 1.
      * Use this distribution to get ordinary neural networks.
+     * <p>
+     * Rounding makes the number of parents per child uneven for some layer sizes,
+     * so uniformity is not validated.
      */
-    // TODO create discrete determined algorithm, a-b cutting maybe
     DISPERSE("Each layer of neurons presented as a set of continuous indexes, "
             + "e.g. {N, N+1, ..., M}. Take segment [N, M+1) from number axis and circle it. "
             + "Children of each parent neuron smeared over a circle uniformly, and all sets "
@@ -97,124 +105,131 @@ public enum LayerInterconnectionDistribution {
          */
         @Override
         protected int[][] innerGenerateConnections(int parentLayerSize, int childLayerFirstIndex,
-                int childLayerLastIndex, int childPerNeuronNumber) {
-            // calculating necessary invariants
-            final int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
-            /*int maxNumberOfParents = parentLayerSize * childPerNeuronNumber / numberOfChildren;
-            if (maxNumberOfParents * numberOfChildren != parentLayerSize * childPerNeuronNumber) {
-                maxNumberOfParents++;
-            }
-            int minimalRangeBetweenBrothers = numberOfChildren / childPerNeuronNumber;
-            int maximalRangeBetweenBrothers = minimalRangeBetweenBrothers + 1;
-            int maximalRangeCount = numberOfChildren - minimalRangeBetweenBrothers * childPerNeuronNumber;
-            int minimalRangeCount = childPerNeuronNumber - maximalRangeCount; */
-            // cost is equal to number of parents for a child neuron
-            // cost can not exceed maxNumberOfParents
-            /*final int[] costs = new int[numberOfChildren];
-            final boolean[] minimizedCostDistribution = getMinimizedCostDistribution(
-                    minimalRangeBetweenBrothers, maximalRangeBetweenBrothers,
-                    minimalRangeCount, maximalRangeCount, costs, maxNumberOfParents);*/
+                int childLayerLastIndex, int childPerNeuronNumber, SplittableRandom random) {
+            return generateProceduralConnections(this, parentLayerSize, childLayerFirstIndex,
+                    childLayerLastIndex, childPerNeuronNumber);
+        }
 
-            int[][] connections = new int[parentLayerSize][childPerNeuronNumber];
-            for (int i = 0; i < parentLayerSize; i++) {
-                for (int j = 0; j < childPerNeuronNumber; j++) {
-                    int childIndex = (int) Math.round(((double) j * numberOfChildren) / childPerNeuronNumber
-                            + ((double) i * numberOfChildren) / parentLayerSize);
-                    final int newChild = getNormalized(childIndex, numberOfChildren);
-                    boolean collision = false;
-                    for (int k = 0; k < j; k++) {
-                        if (newChild  + childLayerFirstIndex == connections[i][k]) {
-                            collision = true;
-                            break;
-                        }
-                    }
-                    if (!collision) {
-                        connections[i][j] = newChild + childLayerFirstIndex;
-                    }
-                    else {
-                        connections[i][j] = newChild == numberOfChildren - 1
-                                ? childLayerFirstIndex : newChild + childLayerFirstIndex + 1;
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        void fillChildren(int parentIndex, int parentLayerSize, int numberOfChildren,
+                int childPerNeuronNumber, int[] children) {
+            final double parentShift = ((double) parentIndex * numberOfChildren) / parentLayerSize;
+            int firstRawIndex = 0;
+            int previousRawIndex = 0;
+            // true while raw indexes grow and no child was shifted on collision
+            boolean increasing = true;
+            for (int j = 0; j < childPerNeuronNumber; j++) {
+                final int rawIndex = (int) Math.round(((double) j * numberOfChildren) / childPerNeuronNumber
+                        + parentShift);
+                final int newChild = getNormalized(rawIndex, numberOfChildren);
+                if (j == 0) {
+                    firstRawIndex = rawIndex;
+                }
+                else if (!increasing || rawIndex <= previousRawIndex || rawIndex - firstRawIndex >= numberOfChildren) {
+                    // raw indexes within one circle never collide, other cases are checked one by one
+                    increasing = false;
+                }
+                previousRawIndex = rawIndex;
+                boolean collision = false;
+                for (int k = 0; k < j && !increasing; k++) {
+                    if (newChild == children[k]) {
+                        collision = true;
+                        break;
                     }
                 }
+                if (!collision) {
+                    children[j] = newChild;
+                }
+                else {
+                    children[j] = newChild == numberOfChildren - 1 ? 0 : newChild + 1;
+                }
             }
-            return connections;
         }
 
         /**
          * {@inheritDoc}
          */
         @Override
-        protected void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex) 
-                throws NeuralNetworkGenerationException {
-            testNoEqualConnections(connections);
-            testUniformity(connections);
-            testChildlessParents(connections);
-            testDispersity(connections,childLayerFirstIndex, childLayerLastIndex);
+        public boolean isProcedural() {
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex,
+                int parentStep) throws NeuralNetworkGenerationException {
+            testNoEqualConnections(connections, parentStep);
+            testChildlessParents(connections, parentStep);
+            testDispersity(connections, childLayerFirstIndex, childLayerLastIndex, parentStep);
         }
     },
 
     /**
      * Each parent has random children, but there is a guarantee that there is a
      * uniform distribution of parents per every child (difference between number
-     * of parents between every 2 child neurons is 0 or 1). Work very slow on large numbers
-     * because of birthdays paradox: it tries to add shuffled list of children  to connections and
-     * checks each time if there are no equal children among already recorded children of a parent.
-     * Obviously check fails often on large sets of children.
+     * of parents between every 2 child neurons is 0 or 1).
+     * <p>
+     * Connections of all parents form a sequence of slots, which is covered with random
+     * permutations of the child layer one after another. Parent's children are distinct inside
+     * one permutation, so the only possible collisions are between tail of one permutation and
+     * head of the next one for the parent whose slots straddle the border. Such collisions are
+     * resolved by swaps inside the next permutation, so generation works in linear time.
      */
-    //TODO too slow - switch from Collection.shuffle to proper derangements generation
     RANDOM("Each parent has random children, but there is a guarantee that there is a "
             + "uniform distribution of parents per every child (difference between number"
-            + " of parents between every 2 child neurons is 0 or 1). Work very slow on large numbers"
-            + " because of birthdays paradox: it tries to add shuffled list of children  to connections and "
-            + "checks each time if there are no equal children among already recorded children of a parent.") {
+            + " of parents between every 2 child neurons is 0 or 1). Children are laid out as a sequence"
+            + " of random permutations of the child layer, generation works in linear time.") {
         @Override
         protected int[][] innerGenerateConnections(int parentLayerSize, int childLayerFirstIndex,
-                int childLayerLastIndex, int childPerNeuronNumber) {
+                int childLayerLastIndex, int childPerNeuronNumber, SplittableRandom random) {
             final int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
+            final long slotNumber = (long) parentLayerSize * childPerNeuronNumber;
 
-            List<Integer> children = new ArrayList<Integer>();
-            for (int i = childLayerFirstIndex; i <= childLayerLastIndex; i++) {
-                children.add(i);
-            }
-
-            int maxNumberOfParents = parentLayerSize * childPerNeuronNumber / numberOfChildren;
-            if (maxNumberOfParents * numberOfChildren != parentLayerSize * childPerNeuronNumber) {
-                maxNumberOfParents++;
+            int[] permutation = new int[numberOfChildren];
+            for (int i = 0; i < numberOfChildren; i++) {
+                permutation[i] = i;
             }
-            int[][] childrenMappingBounds = calculateMappingBounds(numberOfChildren, maxNumberOfParents,
-                    parentLayerSize, childPerNeuronNumber);
-
-            int currentBoundedRegion = 0;
+            // marks children of the straddling parent taken from the previous permutation
+            int[] mark = new int[numberOfChildren];
             int[][] connections = new int[parentLayerSize][childPerNeuronNumber];
-            // main cycle, execution time not determined
-            while (currentBoundedRegion < maxNumberOfParents) {
-                // put shiffled children into the region of connections
-                Collections.shuffle(children);
-                int childIndex = 0;
-                boolean currentCycleSucceed = true;
-                // traverce over current bounds of mapping
-                breakOnEqualChildrenOccurence:
-                for (int i = childrenMappingBounds[currentBoundedRegion][0];
-                        i <= childrenMappingBounds[currentBoundedRegion][2]; i++) {
-                    for (int j = (i == childrenMappingBounds[currentBoundedRegion][0]
-                            ? childrenMappingBounds[currentBoundedRegion][1] : 0);
-                        j <= (i == childrenMappingBounds[currentBoundedRegion][2]
-                                ? childrenMappingBounds[currentBoundedRegion][3]
-                                : childPerNeuronNumber - 1); j++) {
-                        final int currentChild = children.get(childIndex);
-                        connections[i][j] = currentChild;
-                        // check if this child is not present among already listed children of this parent
-                        for (int k = 0; k < j; k++) {
-                            if (currentChild == connections[i][k]) {
-                                currentCycleSucceed = false;
-                                break breakOnEqualChildrenOccurence;
+            int round = 0;
+            for (long roundStart = 0; roundStart < slotNumber; roundStart += numberOfChildren) {
+                round++;
+                shuffle(permutation, random);
+                final int roundLength = (int) Math.min(numberOfChildren, slotNumber - roundStart);
+                final int tailLength = (int) (roundStart % childPerNeuronNumber);
+                if (tailLength != 0) {
+                    // parent straddles the border: tailLength children are in the previous permutation,
+                    // headLength children are taken from the head of this one
+                    final int parent = (int) (roundStart / childPerNeuronNumber);
+                    final int headLength = Math.min(childPerNeuronNumber - tailLength, roundLength);
+                    for (int j = 0; j < tailLength; j++) {
+                        mark[connections[parent][j] - childLayerFirstIndex] = round;
+                    }
+                    // there are numberOfChildren - tailLength unmarked children and
+                    // numberOfChildren >= tailLength + headLength, so candidates never run out
+                    int candidate = headLength;
+                    for (int j = 0; j < headLength; j++) {
+                        if (mark[permutation[j]] == round) {
+                            while (mark[permutation[candidate]] == round) {
+                                candidate++;
                             }
+                            final int temp = permutation[j];
+                            permutation[j] = permutation[candidate];
+                            permutation[candidate] = temp;
+                            candidate++;
                         }
-                        childIndex++;
                     }
                 }
-                if (currentCycleSucceed) {
-                    currentBoundedRegion++;
+                for (int j = 0; j < roundLength; j++) {
+                    final long slot = roundStart + j;
+                    connections[(int) (slot / childPerNeuronNumber)][(int) (slot % childPerNeuronNumber)] =
+                            permutation[j] + childLayerFirstIndex;
                 }
             }
             return connections;
@@ -222,61 +237,67 @@ public enum LayerInterconnectionDistribution {
 
         /**
          * {@inheritDoc}
+         * <p>
+         * Random distribution has no closed form.
+         * @throws IllegalStateException always
          */
         @Override
-        protected void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex) 
-                throws NeuralNetworkGenerationException {
-            testNoEqualConnections(connections);
-            testUniformity(connections);
-            testChildlessParents(connections);
+        void fillChildren(int parentIndex, int parentLayerSize, int numberOfChildren,
+                int childPerNeuronNumber, int[] children) {
+            throw new IllegalStateException(name() + " distribution has no closed form");
         }
 
         /**
-         * We are going to map shiffled children list into some regions on the connections double array
-         * so this calculates borders of such regions in the connections double array
-         * @param numberOfChildren number of neurons in child layer
-         * @param maxNumberOfParents maximum number of parents per child neuron
-         * @param parentLayerSize neuron number in parent layer
-         * @param childPerNeuronNumber number of children per parent layer neuron
-         * @return borders for each sequential child list mapping
+         * {@inheritDoc}
          */
-        private int[][] calculateMappingBounds(int numberOfChildren, int maxNumberOfParents,
-                int parentLayerSize, int childPerNeuronNumber) {
-            int[][] childrenMappingBounds = new int[maxNumberOfParents][4];
-            int childSetCounter = 0;
-            int childSetSizeCounter = 0;
-            for (int i = 0; i < parentLayerSize; i++) {
-                for (int j = 0; j < childPerNeuronNumber; j++) {
-                    if (childSetSizeCounter == 1) {
-                        childrenMappingBounds[childSetCounter - 1][2] = i;
-                        childrenMappingBounds[childSetCounter - 1][3] = j;
-                    }
-                    if (childSetSizeCounter == 0) {
-                        childSetSizeCounter = numberOfChildren;
-                        childrenMappingBounds[childSetCounter][0] = i;
-                        childrenMappingBounds[childSetCounter][1] = j;
-                        childSetCounter++;
-                    }
-                    childSetSizeCounter--;
-                }
+        @Override
+        protected void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex,
+                int parentStep) throws NeuralNetworkGenerationException {
+            testNoEqualConnections(connections, parentStep);
+            if (parentStep == 1) {
+                testUniformity(connections, childLayerFirstIndex, childLayerLastIndex);
+            }
+            testChildlessParents(connections, parentStep);
+        }
+
+        /**
+         * Shuffles array in place (Fisher-Yates algorithm).
+         * @param array array to shuffle
+         * @param random source of random numbers
+         */
+        private void shuffle(int[] array, SplittableRandom random) {
+            for (int i = array.length - 1; i > 0; i--) {
+                final int j = random.nextInt(i + 1);
+                final int temp = array[i];
+                array[i] = array[j];
+                array[j] = temp;
             }
-            childrenMappingBounds[maxNumberOfParents - 1][2] = parentLayerSize - 1;
-            childrenMappingBounds[maxNumberOfParents - 1][3] = childPerNeuronNumber - 1;
-            return childrenMappingBounds;
         }
     };
 
+    /**
+     * Approximate number of parents checked on sampled validation.
+     */
+    private static final int VALIDATION_SAMPLE_SIZE = 1024;
+
+    /**
+     * A detailed description of enum member used in ui.
+     */
+    private String description;
+
     /**
      * Generates connections between layers.
      * @param parentLayerSize number of neurons in parent layer
      * @param childLayerFirstIndex child layer first index (in global set of sources)
      * @param childLayerLastIndex child layer last index (in global set of sources)
      * @param childPerNeuronNumber number of connections from each parent neuron
+     * @param validation level of validation of generated connections
+     * @param random source of random numbers for random distributions
      * @return connections between 2 layers of neurons
      * @throws NeuralNetworkGenerationException on failure to create proper connections
      */
-    int[][] generateConnections(int parentLayerSize,
-            int childLayerFirstIndex, int childLayerLastIndex, int childPerNeuronNumber)
+    int[][] generateConnections(int parentLayerSize, int childLayerFirstIndex, int childLayerLastIndex,
+            int childPerNeuronNumber, ConnectionValidation validation, SplittableRandom random)
         throws NeuralNetworkGenerationException {
         // preliminary checks
         if (childPerNeuronNumber > childLayerLastIndex - childLayerFirstIndex + 1) {
@@ -289,21 +310,22 @@ public enum LayerInterconnectionDistribution {
         }
         // generation
         int[][] result = innerGenerateConnections(parentLayerSize,
-                childLayerFirstIndex, childLayerLastIndex, childPerNeuronNumber);
+                childLayerFirstIndex, childLayerLastIndex, childPerNeuronNumber, random);
         // sorting
         for (int[] token : result) {
             Arrays.sort(token);
         }
         // testing (always test sorted arrays)
-        testConnections(result, childLayerFirstIndex, childLayerLastIndex);
+        if (validation == ConnectionValidation.FULL) {
+            testConnections(result, childLayerFirstIndex, childLayerLastIndex, 1);
+        }
+        else if (validation == ConnectionValidation.SAMPLED) {
+            testConnections(result, childLayerFirstIndex, childLayerLastIndex,
+                    Math.max(1, parentLayerSize / VALIDATION_SAMPLE_SIZE));
+        }
         return result;
     }
 
-    /**
-     * A detailed description of enum member used in ui.
-     */
-    private String description;
-
     /**
      * Default ctor.
      * @param description detailed description of enum member used in ui.
@@ -326,10 +348,56 @@ public enum LayerInterconnectionDistribution {
      * @param childLayerFirstIndex child layer first index (in global set of sources)
      * @param childLayerLastIndex child layer last index (in global set of sources)
      * @param childPerNeuronNumber number of connections from each parent neuron
+     * @param random source of random numbers for random distributions
      * @return connections between 2 layers of neurons
      */
     abstract protected int[][] innerGenerateConnections(int parentLayerSize, int childLayerFirstIndex,
-            int childLayerLastIndex, int childPerNeuronNumber);
+            int childLayerLastIndex, int childPerNeuronNumber, SplittableRandom random);
+
+    /**
+     * Calculates children of a single parent neuron without generation of all connections.
+     * Supported only by procedural distributions, see {@link #isProcedural()}.
+     * @param parentIndex index of the parent within its layer
+     * @param parentLayerSize number of neurons in parent layer
+     * @param numberOfChildren number of neurons in child layer
+     * @param childPerNeuronNumber number of connections from each parent neuron
+     * @param children buffer for indexes of children within child layer,
+     * at least childPerNeuronNumber long, not sorted
+     */
+    abstract void fillChildren(int parentIndex, int parentLayerSize, int numberOfChildren,
+            int childPerNeuronNumber, int[] children);
+
+    /**
+     * Procedural distribution calculates children of each parent from a closed-form
+     * function of parent index and layer sizes, so connections may be computed on the fly
+     * and never stored.
+     * @return true if distribution is procedural
+     */
+    public boolean isProcedural() {
+        return false;
+    }
+
+    /**
+     * Generates connections of a procedural distribution parent by parent.
+     * @param distribution procedural distribution
+     * @param parentLayerSize number of neurons in parent layer
+     * @param childLayerFirstIndex child layer first index (in global set of sources)
+     * @param childLayerLastIndex child layer last index (in global set of sources)
+     * @param childPerNeuronNumber number of connections from each parent neuron
+     * @return connections between 2 layers of neurons
+     */
+    private static int[][] generateProceduralConnections(LayerInterconnectionDistribution distribution,
+            int parentLayerSize, int childLayerFirstIndex, int childLayerLastIndex, int childPerNeuronNumber) {
+        final int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
+        int[][] connections = new int[parentLayerSize][childPerNeuronNumber];
+        for (int i = 0; i < parentLayerSize; i++) {
+            distribution.fillChildren(i, parentLayerSize, numberOfChildren, childPerNeuronNumber, connections[i]);
+            for (int j = 0; j < childPerNeuronNumber; j++) {
+                connections[i][j] += childLayerFirstIndex;
+            }
+        }
+        return connections;
+    }
 
     /**
      * Here some invariants of generated connections are tested.
@@ -338,12 +406,14 @@ public enum LayerInterconnectionDistribution {
      * sized layers but may fail on large layers. Failure to pass this test means
      * either inadequate precision of float arithmetics or general failure of algorithm.
      * @param connections sorted set of connections
-     * @param childLayerLastIndex 
-     * @param childLayerFirstIndex 
+     * @param childLayerFirstIndex child layer first index (in global set of sources)
+     * @param childLayerLastIndex child layer last index (in global set of sources)
+     * @param parentStep only every parentStep-th parent is checked, uniformity
+     * of parents per child is checked only if it is 1
      * @throws NeuralNetworkGenerationException on failure to pass tests
      */
-    protected abstract void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex) 
-            throws NeuralNetworkGenerationException;
+    protected abstract void testConnections(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex,
+            int parentStep) throws NeuralNetworkGenerationException;
 
     /**
      * Finds true coordinate of point j on a integer circle with coordinates [0, numberOfChildren -1]
@@ -362,24 +432,6 @@ public enum LayerInterconnectionDistribution {
         return j;
     }
 
-    /**
-     * View child layer as a circle with symmetrically equally placed neurons on it,
-     * each neuron's coordinate is a normalized neuron index
-     * let us divide circle into several arcs
-     * @param numberOfArcs number of arcs, presumed to be positive 
-     * @return coordinates of the first points (or median points) of the arcs
-     */
-    private static float[] divideCircleInArcs(int numberOfArcs) {
-        float arcStep = 1.f/numberOfArcs;
-        float[] arcCenterCoordinate = new float[numberOfArcs];
-        for (int i = 0; i < numberOfArcs; i++) {
-            arcCenterCoordinate[i] = i * arcStep;
-        }
-        return arcCenterCoordinate;
-    }
-
-
-
     /*
      * Specific tests for created connections placed below.
      */
@@ -387,20 +439,18 @@ public enum LayerInterconnectionDistribution {
     /**
      * Connections is equal if they have the same parent and child.
      * Checks if there no equal connections.
-     * @param connections generated connections
+     * @param connections generated connections, sorted
+     * @param parentStep only every parentStep-th parent is checked
      * @throws NeuralNetworkGenerationException on test failure
      */
-    private static void testNoEqualConnections(int[][] connections)
+    private static void testNoEqualConnections(int[][] connections, int parentStep)
             throws NeuralNetworkGenerationException {
-        for (int[] children : connections) {
-            Set<Integer> uniqueChildren = new HashSet<>();
-            for (int child : children) {
-                if (uniqueChildren.contains(child)) {
+        for (int i = 0; i < connections.length; i += parentStep) {
+            final int[] children = connections[i];
+            for (int j = 1; j < children.length; j++) {
+                if (children[j] == children[j - 1]) {
                     throw new NeuralNetworkGenerationException("Equal connection encountered");
                 }
-                else {
-                    uniqueChildren.add(child);
-                }
             }
         }
     }
@@ -411,55 +461,41 @@ public enum LayerInterconnectionDistribution {
      * Tests if each child has an equal number of parents 
      * ( floor(K*N/M) || floor(K*N/M) + 1).
      * @param connections generated connections
+     * @param childLayerFirstIndex child layer first index (in global set of sources)
+     * @param childLayerLastIndex child layer last index (in global set of sources)
      * @throws NeuralNetworkGenerationException on test failure
      */
-    private static void testUniformity(int[][] connections)
+    private static void testUniformity(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex)
         throws NeuralNetworkGenerationException {
-        Map<Integer, Integer> parentPerChild = new HashMap<>();
+        int[] parentPerChild = new int[childLayerLastIndex - childLayerFirstIndex + 1];
         for (int[] children : connections) {
             for (int child : children) {
-                Integer numberOfParents = parentPerChild.get(child);
-                if (numberOfParents == null) {
-                    parentPerChild.put(child, 1);
-                }
-                else {
-                    parentPerChild.put(child, numberOfParents++);
-                }
+                parentPerChild[child - childLayerFirstIndex]++;
             }
         }
-        int parentNumber1 = -1;
-        int parentNumber2 = -1;
-        for (Integer parentNumber : parentPerChild.values()) {
-            if (parentNumber1 < 0) {
-                parentNumber1 = parentNumber;
-            }
-            else {
-                if (parentNumber != parentNumber1) {
-                    if (parentNumber2 < 0) {
-                        parentNumber2 = parentNumber;
-                    }
-                    else if (parentNumber != parentNumber2) {
-                        throw new NeuralNetworkGenerationException(
-                                "Uniformity test found 3rd value for parents per child number: " + parentNumber);
-                    }
-                }
-            }
+        int minParentNumber = Integer.MAX_VALUE;
+        int maxParentNumber = 0;
+        for (int parentNumber : parentPerChild) {
+            minParentNumber = Math.min(minParentNumber, parentNumber);
+            maxParentNumber = Math.max(maxParentNumber, parentNumber);
         }
-        if (parentNumber2 != -1 && Math.abs(parentNumber1 - parentNumber2) != 1) {
-            throw new NeuralNetworkGenerationException(
-                    "Uniformity test found that difference between values for parents per child number is greater than 1");
+        if (maxParentNumber - minParentNumber > 1) {
+            throw new NeuralNetworkGenerationException(String.format(
+                    "Uniformity test found that number of parents per child varies from %d to %d",
+                    minParentNumber, maxParentNumber));
         }
     }
 
     /**
      * Checks if there are childless parents
      * @param connections generated connections
+     * @param parentStep only every parentStep-th parent is checked
      * @throws NeuralNetworkGenerationException on test failure
      */
-    private static void testChildlessParents(int[][] connections)
+    private static void testChildlessParents(int[][] connections, int parentStep)
         throws NeuralNetworkGenerationException {
-        for (int[] children : connections) {
-            if (children.length == 0) {
+        for (int i = 0; i < connections.length; i += parentStep) {
+            if (connections[i].length == 0) {
                 throw new NeuralNetworkGenerationException("Childless neuron encounered");
             }
         }
@@ -467,19 +503,20 @@ public enum LayerInterconnectionDistribution {
 
     /**
      * Checks if children form continious integer set.
-     * @param connections generated connections
+     * @param connections generated connections, sorted
      * @param childLayerFirstIndex child layer first index (in global set of sources)
      * @param childLayerLastIndex child layer last index (in global set of sources)
+     * @param parentStep only every parentStep-th parent is checked
      * @throws NeuralNetworkGenerationException on test failure
      */
-    private static void testContinuity(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex)
-            throws NeuralNetworkGenerationException {
-        int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
-        for (int[] children : connections) {
-            List<Integer> ranges = getRanges(children, numberOfChildren);
-            for(Integer range : ranges) {
-                boolean singleLongRangeEncountered = false;
-                if (range != 1) {
+    private static void testContinuity(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex,
+            int parentStep) throws NeuralNetworkGenerationException {
+        final int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
+        for (int i = 0; i < connections.length; i += parentStep) {
+            final int[] children = connections[i];
+            boolean singleLongRangeEncountered = false;
+            for (int j = 0; j < children.length; j++) {
+                if (getRange(children, j, numberOfChildren) != 1) {
                     if (!singleLongRangeEncountered) {
                         singleLongRangeEncountered = true;
                     }
@@ -494,19 +531,21 @@ public enum LayerInterconnectionDistribution {
 
     /**
      * Checks if children are dispersed over circle well enough.
-     * @param connections generated connections
+     * @param connections generated connections, sorted
      * @param childLayerFirstIndex child layer first index (in global set of sources)
      * @param childLayerLastIndex child layer last index (in global set of sources)
+     * @param parentStep only every parentStep-th parent is checked
      * @throws NeuralNetworkGenerationException on test failure
      */
-    private static void testDispersity(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex)
-            throws NeuralNetworkGenerationException {
-        int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
-        for (int[] children : connections) {
+    private static void testDispersity(int[][] connections, int childLayerFirstIndex, int childLayerLastIndex,
+            int parentStep) throws NeuralNetworkGenerationException {
+        final int numberOfChildren = childLayerLastIndex - childLayerFirstIndex + 1;
+        for (int i = 0; i < connections.length; i += parentStep) {
+            final int[] children = connections[i];
             if (children.length > 1) {
-                List<Integer> ranges = getRanges(children, numberOfChildren);
-                int minimalDistance = numberOfChildren / children.length;
-                for(Integer range : ranges) {
+                final int minimalDistance = numberOfChildren / children.length;
+                for (int j = 0; j < children.length; j++) {
+                    final int range = getRange(children, j, numberOfChildren);
                     if (range != minimalDistance && range != (minimalDistance + 1)) {
                         throw new NeuralNetworkGenerationException(String.format("Distance between neurons is too short," +
                                 " it equals %d, but should't be lesser than %d", range, minimalDistance));
@@ -517,21 +556,17 @@ public enum LayerInterconnectionDistribution {
     }
 
     /**
-     * Calculates ranges between neighbours in ordered point set on circle.
+     * Calculates range between neighbours in ordered point set on circle.
      * @param orderedPointSet points (childrens of some neuron)
-     * @param curcleLength length of a curcle (ringed child layer of neurons)
-     * @return
+     * @param index index of the point, range to the next point (or to the first one for the last point)
+     * is calculated
+     * @param circleLength length of a curcle (ringed child layer of neurons)
+     * @return range between the point and its neighbour
      */
-    private static List<Integer> getRanges(int[] orderedPointSet, int circleLength) {
-        List<Integer> ranges = new ArrayList<>();
-        for (int i = 0; i < orderedPointSet.length - 1; i++) {
-            int range1 = Math.abs(orderedPointSet[i] - orderedPointSet[i + 1]);
-            int range2 = circleLength - range1;
-            ranges.add(range1 < range2 ? range1 : range2);
-        }
-        int range1 = Math.abs(orderedPointSet[0] - orderedPointSet[orderedPointSet.length - 1]);
-        int range2 = circleLength - range1;
-        ranges.add(range1 < range2 ? range1 : range2);
-        return ranges;
+    private static int getRange(int[] orderedPointSet, int index, int circleLength) {
+        final int next = index == orderedPointSet.length - 1 ? 0 : index + 1;
+        final int range1 = Math.abs(orderedPointSet[index] - orderedPointSet[next]);
+        final int range2 = circleLength - range1;
+        return range1 < range2 ? range1 : range2;
     }
 }
@@ -33,6 +33,19 @@ public class LayeredTopology extends Topology {
      */
     @Override
     protected String getType(int currentIndex) {
+        return getType(currentIndex, neuronFirstIndex, surfaceNeuronFirstIndex, firstIndexOfLayer);
+    }
+
+    /**
+     * Specifies type of a source of a layered topology.
+     * @param currentIndex index of the source
+     * @param neuronFirstIndex index of the first neuron
+     * @param surfaceNeuronFirstIndex index of the first surface neuron
+     * @param firstIndexOfLayer first index of every layer
+     * @return type of the source as string.
+     */
+    static String getType(int currentIndex, int neuronFirstIndex, int surfaceNeuronFirstIndex,
+            int[] firstIndexOfLayer) {
         if (currentIndex < neuronFirstIndex) {
             return "IN";
         }
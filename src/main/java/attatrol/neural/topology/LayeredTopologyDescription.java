@@ -18,6 +18,16 @@ public class LayeredTopologyDescription {
      */
     private final List<Layer> layers = new ArrayList<>();
 
+    /**
+     * Level of validation of generated layer interconnections.
+     */
+    private ConnectionValidation connectionValidation = ConnectionValidation.FULL;
+
+    /**
+     * Seed of random distributions, null for unseeded generation.
+     */
+    private Long seed;
+
     /**
      * Adds new layer.
      * @param layer new layer.
@@ -61,4 +71,34 @@ public class LayeredTopologyDescription {
         return Collections.unmodifiableList(layers);
     }
 
+    /**
+     * @return level of validation of generated layer interconnections
+     */
+    public ConnectionValidation getConnectionValidation() {
+        return connectionValidation;
+    }
+
+    /**
+     * @param connectionValidation level of validation of generated layer interconnections,
+     * {@link ConnectionValidation#FULL} by default
+     */
+    public void setConnectionValidation(ConnectionValidation connectionValidation) {
+        this.connectionValidation = connectionValidation;
+    }
+
+    /**
+     * @return seed of random distributions, null for unseeded generation
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Same seed and same layers give the same topology.
+     * @param seed seed of random distributions, null for unseeded generation (default)
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
 }
@@ -1,7 +1,8 @@
 package attatrol.neural.topology;
 
-import java.util.Arrays;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
 
 import attatrol.neural.NeuralNetworkGenerationException;
 
@@ -10,6 +11,16 @@ import attatrol.neural.NeuralNetworkGenerationException;
  */
 public final class LayeredTopologyGenerator {
 
+    /**
+     * Maximal number of unreachable neurons listed in exception message.
+     */
+    private static final int UNREACHABLE_NEURONS_REPORT_LIMIT = 16;
+
+    /**
+     * Minimal number of sources per chunk of parallel parent generation.
+     */
+    private static final int PARENTS_CHUNK_MIN_SIZE = 4096;
+
     /**
      * Utility class ctor.
      */
@@ -25,37 +36,53 @@ public final class LayeredTopologyGenerator {
      */
     public static LayeredTopology generate(LayeredTopologyDescription layeredTopologyDescription) 
             throws NeuralNetworkGenerationException {
-        List<Layer> layers = layeredTopologyDescription.getLayers();
+        final List<Layer> layers = layeredTopologyDescription.getLayers();
         //get cardinal bounds of the topology
         int sourceTotalNumber = 0;
         final int incomingTotalNumber = layers.get(0).getNeuronNumber();
         final int outcomingTotalNumber = layers.get(layers.size() - 1).getNeuronNumber();
-        int[] firstIndexOfLayer = new int[layers.size()];
+        final int[] firstIndexOfLayer = new int[layers.size()];
         for (int i = 0; i < layers.size(); i++) {
             firstIndexOfLayer[i] = sourceTotalNumber;
             sourceTotalNumber += layers.get(i).getNeuronNumber();
         }
         final int neuronFirstIndex = incomingTotalNumber;
-        int surfaceNeuronFirstIndex = sourceTotalNumber - outcomingTotalNumber;
-        int[][] sourceChildren = new int[sourceTotalNumber][];
+        final int surfaceNeuronFirstIndex = sourceTotalNumber - outcomingTotalNumber;
+        final int[][] sourceChildren = new int[sourceTotalNumber][];
 
-        //iterative generation of layer forward interconnections
-        int parentLevelOffset = 0;
-        for (int i = 0; i < layers.size() - 1; i++) {
+        //generation of layer forward interconnections, each layer pair depends only on layer bounds
+        final NeuralNetworkGenerationException[] failures = new NeuralNetworkGenerationException[layers.size() - 1];
+        //random streams are split sequentially, so seeded generation is repeatable
+        final Long seed = layeredTopologyDescription.getSeed();
+        final SplittableRandom seedRandom = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        final SplittableRandom[] random = new SplittableRandom[layers.size() - 1];
+        for (int i = 0; i < random.length; i++) {
+            random[i] = seedRandom.split();
+        }
+        IntStream.range(0, layers.size() - 1).parallel().forEach(i -> {
             final Layer parentLayer = layers.get(i);
             final Layer childLayer = layers.get(i + 1);
-            final int childLayerStartIndex = parentLevelOffset  + parentLayer.getNeuronNumber();
+            final int childLayerStartIndex = firstIndexOfLayer[i + 1];
             final int childLayerEndIndex = childLayerStartIndex + childLayer.getNeuronNumber() - 1;
-            final int[][] offsetConnections = parentLayer.getDistribution()
-                    .generateConnections(parentLayer.getNeuronNumber(),
-                            childLayerStartIndex, childLayerEndIndex, parentLayer.getChildPerNeuronNumber());
-            for (int j = 0; j < offsetConnections.length; j++) {
-                sourceChildren[j + parentLevelOffset] = offsetConnections[j];
+            try {
+                final int[][] offsetConnections = parentLayer.getDistribution()
+                        .generateConnections(parentLayer.getNeuronNumber(),
+                                childLayerStartIndex, childLayerEndIndex, parentLayer.getChildPerNeuronNumber(),
+                                layeredTopologyDescription.getConnectionValidation(), random[i]);
+                System.arraycopy(offsetConnections, 0, sourceChildren, firstIndexOfLayer[i],
+                        offsetConnections.length);
+            }
+            catch (NeuralNetworkGenerationException e) {
+                failures[i] = e;
+            }
+        });
+        for (NeuralNetworkGenerationException failure : failures) {
+            if (failure != null) {
+                throw failure;
             }
-            parentLevelOffset += parentLayer.getNeuronNumber();
         }
         //fill surface level with empty arrays
-        for (int i = parentLevelOffset; i < sourceChildren.length; i++) {
+        for (int i = surfaceNeuronFirstIndex; i < sourceChildren.length; i++) {
             sourceChildren[i] = new int[0];
         }
 
@@ -73,37 +100,57 @@ public final class LayeredTopologyGenerator {
 
     /**
      * Generates parents of sources from children of the sources.
+     * Works as a parallel counting sort: sources are split into continuous chunks, each chunk counts
+     * its connections per child, prefix sums of the counts give each chunk its own region of every
+     * parent array, then chunks scatter their indexes there concurrently. Chunks and sources inside
+     * them are traversed in ascending order, so parent arrays come out sorted.
      * @param sourceChildren children of the sources
      * @return parents of the sources
      */
     public static int[][] getParents(int[][] sourceChildren) {
-        // get parent number per source
-        int[] parentNumberPerSource = new int[sourceChildren.length];
-        for (int[] children : sourceChildren) {
-            for (int child : children) {
-                parentNumberPerSource[child]++;
-            }
+        final int sourceNumber = sourceChildren.length;
+        final int chunkNumber = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                sourceNumber / PARENTS_CHUNK_MIN_SIZE));
+        final int[] chunkFirstIndex = new int[chunkNumber + 1];
+        for (int c = 0; c <= chunkNumber; c++) {
+            chunkFirstIndex[c] = (int) ((long) sourceNumber * c / chunkNumber);
         }
 
-        // create proper return array
-        int[][] sourceParents = new int[sourceChildren.length][];
-        for (int i = 0; i < sourceChildren.length; i++) {
-            sourceParents[i] = new int[parentNumberPerSource[i]];
-        }
+        // get parent number per source for each chunk
+        final int[][] chunkParentNumber = new int[chunkNumber][];
+        IntStream.range(0, chunkNumber).parallel().forEach(c -> {
+            final int[] parentNumber = new int[sourceNumber];
+            for (int i = chunkFirstIndex[c]; i < chunkFirstIndex[c + 1]; i++) {
+                for (int child : sourceChildren[i]) {
+                    parentNumber[child]++;
+                }
+            }
+            chunkParentNumber[c] = parentNumber;
+        });
 
-        // create arrays of indexes of first free parent cell in return array
-        int[] currentIndex = new int[sourceChildren.length];
+        // create proper return array, turn counts into first free parent cells of each chunk
+        final int[][] sourceParents = new int[sourceNumber][];
+        IntStream.range(0, chunkNumber).parallel().forEach(part -> {
+            for (int i = chunkFirstIndex[part]; i < chunkFirstIndex[part + 1]; i++) {
+                int offset = 0;
+                for (int c = 0; c < chunkNumber; c++) {
+                    final int parentNumber = chunkParentNumber[c][i];
+                    chunkParentNumber[c][i] = offset;
+                    offset += parentNumber;
+                }
+                sourceParents[i] = new int[offset];
+            }
+        });
 
         // fill return array
-        for (int i = 0; i < sourceChildren.length; i++) {
-            for (int child : sourceChildren[i]) {
-                sourceParents[child][currentIndex[child]] = i;
-                currentIndex[child]++;
+        IntStream.range(0, chunkNumber).parallel().forEach(c -> {
+            final int[] currentIndex = chunkParentNumber[c];
+            for (int i = chunkFirstIndex[c]; i < chunkFirstIndex[c + 1]; i++) {
+                for (int child : sourceChildren[i]) {
+                    sourceParents[child][currentIndex[child]++] = i;
+                }
             }
-        }
-        for (int[] parents : sourceParents) {
-            Arrays.sort(parents);
-        }
+        });
         return sourceParents;
     }
 
@@ -117,40 +164,102 @@ public final class LayeredTopologyGenerator {
      * @param neuronFirstIndex first index of neuron among sources (sources are ordered: first vector values, after neurons)
      * @return proper order of processing
      * @throws NeuralNetworkGenerationException on failure to produce order of processing for all existing neurons,
-     * this means either your graph isn't connected or there are cycles within it.
+     * this means there are cycles within the graph.
      */
     public static int[] getForwardTraverseOrder(int[][] sourceParents, int[][] sourceChildren, int neuronFirstIndex)
         throws NeuralNetworkGenerationException {
-        int[] unreadyParentNumber = new int[sourceChildren.length];
-        boolean[] alreadyTraversed = new boolean[sourceChildren.length];
-        for (int i = 0; i < sourceChildren.length; i++) {
+        return getTraverseLevels(sourceParents, sourceChildren, neuronFirstIndex).getForwardTraverseNeuronsOrder();
+    }
+
+    /**
+     * Topological sort of the network graph (Kahn algorithm), works in O(sources + connections).
+     * Sources are taken from a FIFO queue, so they leave it in order of non-decreasing depth
+     * and traverse order is grouped by levels.
+     * @param sourceParents parents of each source (sources = neurons + incoming vector)
+     * @param sourceChildren children of each source
+     * @param neuronFirstIndex first index of neuron among sources
+     * @return traverse order, depth of each source and level bounds
+     * @throws NeuralNetworkGenerationException if some neurons can not be reached,
+     * this means there are cycles within the graph, unreachable neurons are listed in message
+     */
+    public static TraverseLevels getTraverseLevels(int[][] sourceParents, int[][] sourceChildren,
+            int neuronFirstIndex) throws NeuralNetworkGenerationException {
+        final int sourceNumber = sourceChildren.length;
+        int[] unreadyParentNumber = new int[sourceNumber];
+        int[] depth = new int[sourceNumber];
+        int[] queue = new int[sourceNumber];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < sourceNumber; i++) {
             unreadyParentNumber[i] = sourceParents[i].length;
+            if (unreadyParentNumber[i] == 0) {
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            final int source = queue[head++];
+            for (int child : sourceChildren[source]) {
+                if (depth[child] <= depth[source]) {
+                    depth[child] = depth[source] + 1;
+                }
+                if (--unreadyParentNumber[child] == 0) {
+                    queue[tail++] = child;
+                }
+            }
+        }
+        if (tail < sourceNumber) {
+            throw new NeuralNetworkGenerationException(getUnreachableNeuronsMessage(unreadyParentNumber,
+                    sourceNumber - tail));
         }
 
-        int[] forwardTraverseOrder = new int[sourceChildren.length - neuronFirstIndex];
+        // queue holds sources in order of non-decreasing depth, drop input vector coordinates
+        int[] forwardTraverseOrder = new int[sourceNumber - neuronFirstIndex];
+        int maxDepth = 0;
         int currentTraverceIndex = 0;
-        int watchdog = 0;
-        // main loop, we iterate over passages through array of neurons
-        while (currentTraverceIndex < forwardTraverseOrder.length) {
-            if (watchdog > forwardTraverseOrder.length + 1) {
-                // watchdog == forwardTraverseOrder.length + 1 if and only if topology of the net is a simple chain
-                throw new NeuralNetworkGenerationException("Topology is not connected, some neurons can not be reached");
+        for (int i = 0; i < sourceNumber; i++) {
+            if (queue[i] >= neuronFirstIndex) {
+                forwardTraverseOrder[currentTraverceIndex++] = queue[i];
+                maxDepth = depth[queue[i]];
             }
-            // a passage through array of neurons
-            for (int i = 0; i < sourceChildren.length; i++) {
-                if (unreadyParentNumber[i] == 0 && !alreadyTraversed[i]) {
-                    alreadyTraversed[i] = true;
-                    if (i >= neuronFirstIndex) {
-                        forwardTraverseOrder[currentTraverceIndex] = i;
-                        currentTraverceIndex++;
-                    }
-                    for (int child : sourceChildren[i]) {
-                        unreadyParentNumber[child]--;
-                    }
+        }
+        int[] levelFirstIndex = new int[maxDepth + 2];
+        int level = 0;
+        for (int i = 0; i < forwardTraverseOrder.length; i++) {
+            while (level < depth[forwardTraverseOrder[i]]) {
+                level++;
+                levelFirstIndex[level] = i;
+            }
+        }
+        while (level <= maxDepth) {
+            level++;
+            levelFirstIndex[level] = forwardTraverseOrder.length;
+        }
+        return new TraverseLevels(forwardTraverseOrder, depth, levelFirstIndex);
+    }
+
+    /**
+     * Creates exception message which lists unreachable neurons.
+     * @param unreadyParentNumber number of unprocessed parents per source after topological sort
+     * @param unreachableNumber number of unreachable neurons
+     * @return message
+     */
+    private static String getUnreachableNeuronsMessage(int[] unreadyParentNumber, int unreachableNumber) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Topology has cycles, ").append(unreachableNumber)
+            .append(" neurons can not be reached: [");
+        int listed = 0;
+        for (int i = 0; i < unreadyParentNumber.length && listed < UNREACHABLE_NEURONS_REPORT_LIMIT; i++) {
+            if (unreadyParentNumber[i] > 0) {
+                if (listed > 0) {
+                    sb.append(", ");
                 }
+                sb.append(i);
+                listed++;
             }
-            watchdog++;
         }
-        return forwardTraverseOrder;
+        if (unreachableNumber > listed) {
+            sb.append(", ...");
+        }
+        return sb.append(']').toString();
     }
 }
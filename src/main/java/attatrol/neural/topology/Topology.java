@@ -1,6 +1,7 @@
 package attatrol.neural.topology;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.StringWriter;
 
 /**
  * POJO, describes topology of the graph of some neural network.
@@ -84,6 +85,14 @@ public class Topology {
         return sourceParents[neuronIndex];
     }
 
+    public int getSourceChildNumber(int neuronIndex) {
+        return sourceChildren[neuronIndex].length;
+    }
+
+    public int getSourceParentNumber(int neuronIndex) {
+        return sourceParents[neuronIndex].length;
+    }
+
     public int[][] getSourceChildren() {
         return sourceChildren;
     }
@@ -100,104 +109,19 @@ public class Topology {
      * Sources are printed in order of forward traverse.
      * Incoming vector is printed first, followed by neurons,
      * typically surface neurons are printed last.
+     * Use {@link TopologyExporter} to write large topologies into a stream.
      */
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-
-        final String nameOfChildrenColumn = "Children";
-        int childrenColumnWidth = getSubarrayMaximumStringLength(sourceChildren);
-        childrenColumnWidth = childrenColumnWidth > nameOfChildrenColumn.length()
-                ? childrenColumnWidth : nameOfChildrenColumn.length();
-
-        final String nameOfParentColumn = "Parents";
-        int parentColumnWidth = getSubarrayMaximumStringLength(sourceParents);
-        parentColumnWidth = parentColumnWidth > nameOfParentColumn.length()
-                ? parentColumnWidth : nameOfParentColumn.length();
-
-        final String header = String.format("| ## | Type | #P | #C | %-" + (parentColumnWidth - 1)
-                + "s| %-" + (childrenColumnWidth - 1) + "s|", nameOfParentColumn, nameOfChildrenColumn);
-        final String divider = getDividerString(header.length());
-
-        sb.append(TOPOLOGY_TITLE).append(System.lineSeparator())
-        .append(divider).append(System.lineSeparator())
-        .append(header).append(System.lineSeparator())
-        .append(divider).append(System.lineSeparator());
-
-        final String rowFormat = "|%-" + INTEGER_PADDING + "d|%-6s|%-"
-                + INTEGER_PADDING + "d|%-"
-                + INTEGER_PADDING + "d|%-"
-                + parentColumnWidth+ "s|%-"
-                + childrenColumnWidth + "s|";
-        for(int i = 0; i <sourceTotalNumber; i++) {
-            final int currentIndex = i < neuronFirstIndex ? i : forwardTraverseNeuronsOrder[i - neuronFirstIndex];
-            final String sourceType = getType(currentIndex);
-            sb.append(String.format(rowFormat, currentIndex, sourceType,
-                    sourceParents[currentIndex].length, sourceChildren[currentIndex].length,
-                    arrayToString(sourceParents[currentIndex]), arrayToString(sourceChildren[currentIndex])))
-                .append(System.lineSeparator());
-        }
-
-        return sb.append(divider).append(System.lineSeparator()).toString();
-    }
-
-    /**
-     * Calculates longest possible string presentation of an integer subarrays in some array.
-     * Used only in {@link #toString()}.
-     * @param someArray some array
-     * @param largestPossibleInteger integer to determine possible size of 
-     * @return size of its longest subarray
-     */
-    protected static int getSubarrayMaximumStringLength(int[][] someArray) {
-        int width = 0;
-        for (int[] subarray : someArray) {
-            int stringLength = 2; // brackets length
-            if (subarray != null) {
-                stringLength += subarray.length * (1 + INTEGER_PADDING);
-            }
-            else {
-                stringLength += 4; // "null".length();
-            }
-            if (stringLength > width) {
-                width = stringLength;
-            }
+        final StringWriter writer = new StringWriter();
+        try {
+            TopologyExporter.writeTable(this, writer);
         }
-        return width;
-    }
-
-    /**
-     * Creates a divider string of defined length.
-     * Used in {@link #toString()} only.
-     * @param dividerStringLength length of divider string.
-     * @return divider string.
-     */
-    protected static String getDividerString(int dividerStringLength) {
-        char[] charArray = new char[dividerStringLength];
-        Arrays.fill(charArray, '-');
-        String divider = new String(charArray);
-        return divider;
-    }
-
-    /**
-     * Produces fine string presentation of an integer array.
-     * @param array integer array
-     * @return array as string
-     */
-    protected static String arrayToString(int[] array) {
-        StringBuilder sb = new StringBuilder();
-        sb.append('[');
-        if (array != null) {
-            for (int i = 0; i < array.length - 1; i++) {
-                sb.append(String.format("%-" + INTEGER_PADDING + "d", array[i])).append(" ");
-            }
-            if (array.length != 0) {
-                sb.append(String.format("%-" + INTEGER_PADDING + "d", array[array.length - 1]));
-            }
-        }
-        else {
-            sb.append("null");
+        catch (IOException e) {
+            // never thrown by string writer
+            throw new IllegalStateException(e);
         }
-        return sb.append(']').toString();
+        return writer.toString();
     }
 
     /**
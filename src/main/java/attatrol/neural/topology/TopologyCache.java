@@ -0,0 +1,430 @@
+package attatrol.neural.topology;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.utils.FileUtils;
+
+/**
+ * Persistent cache of generated layered topologies in a local directory.
+ * <p>
+ * Topology is stored in a file named after SHA-256 hash of the canonical form of its description
+ * (layers, distributions, numbers of children and seed), so equal descriptions share one file.
+ * Only reproducible descriptions are cached: seeded ones and ones without random distributions.
+ * <p>
+ * File is a sequence of big-endian ints: header, first indexes of layers, forward traverse order,
+ * then children and parents in compressed sparse row form (offsets of each source, then
+ * concatenated lists). Files are written into a temporary file and atomically moved into place,
+ * and read back by plain channel reads into a reusable direct buffer, as the whole topology is copied
+ * onto the heap anyway. Damaged or outdated files are regenerated, failure to write the cache
+ * doesn't prevent generation.
+ * @author attatrol
+ *
+ */
+public class TopologyCache {
+
+    /**
+     * Extension of cache files
+     */
+    public static final String FILE_EXTENSION = ".topology";
+
+    /**
+     * Version of topology generation algorithms, it is a part of the cache key,
+     * increase it on any change of generated topologies
+     */
+    private static final int GENERATOR_VERSION = 2;
+
+    /**
+     * First int of each cache file ("MLPT")
+     */
+    private static final int MAGIC = 0x4D4C5054;
+
+    /**
+     * Version of file format
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Number of ints in header
+     */
+    private static final int HEADER_SIZE = 8;
+
+    /**
+     * Size of direct buffer of a single read or write, in bytes. Large enough for few system calls
+     * per megabyte, small enough to be allocated for each cached file.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Cache directory
+     */
+    private final Path directory;
+
+    /**
+     * Default ctor.
+     * @param directory cache directory, created on the first write
+     */
+    public TopologyCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Loads topology from cache or generates it. Generated topology of a reproducible
+     * description is stored into cache, if the cache file can't be written, the topology
+     * is returned anyway.
+     * @param description layered topology description
+     * @return topology
+     * @throws NeuralNetworkGenerationException on failure to generate topology
+     */
+    public LayeredTopology getTopology(LayeredTopologyDescription description)
+            throws NeuralNetworkGenerationException {
+        if (!isCacheable(description)) {
+            return LayeredTopologyGenerator.generate(description);
+        }
+        final Path path = getPath(description);
+        if (Files.isRegularFile(path)) {
+            try {
+                return read(path);
+            }
+            catch (IOException e) {
+                // damaged or outdated file is overwritten below
+            }
+        }
+        final LayeredTopology topology = LayeredTopologyGenerator.generate(description);
+        try {
+            write(topology, path);
+        }
+        catch (IOException e) {
+            // cache is an optimization, the topology is generated next time
+        }
+        return topology;
+    }
+
+    /**
+     * @param description layered topology description
+     * @return path of the cache file of the description
+     */
+    public Path getPath(LayeredTopologyDescription description) {
+        return directory.resolve(getKey(description) + FILE_EXTENSION);
+    }
+
+    /**
+     * Description is reproducible if it has a seed or it has no random distributions.
+     * @param description layered topology description
+     * @return true if topology of the description may be cached
+     */
+    public static boolean isCacheable(LayeredTopologyDescription description) {
+        if (description.getLayers().size() < 2) {
+            return false;
+        }
+        if (description.getSeed() != null) {
+            return true;
+        }
+        for (int i = 0; i < description.getLayers().size() - 1; i++) {
+            if (!description.getLayers().get(i).getDistribution().isProcedural()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates stable key of a description, hex form of SHA-256 hash of its canonical form.
+     * @param description layered topology description
+     * @return key
+     */
+    public static String getKey(LayeredTopologyDescription description) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(GENERATOR_VERSION);
+            out.writeInt(description.getLayers().size());
+            for (Layer layer : description.getLayers()) {
+                out.writeInt(layer.getNeuronNumber());
+                out.writeInt(layer.getChildPerNeuronNumber());
+                out.writeUTF(String.valueOf(layer.getDistribution()));
+                out.writeUTF(String.valueOf(layer.getType()));
+            }
+            out.writeBoolean(description.getSeed() != null);
+            out.writeLong(description.getSeed() == null ? 0L : description.getSeed());
+        }
+        catch (IOException e) {
+            // never thrown by in-memory stream
+            throw new IllegalStateException(e);
+        }
+        final byte[] hash;
+        try {
+            hash = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+        final StringBuilder sb = new StringBuilder(2 * hash.length);
+        for (byte value : hash) {
+            sb.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes topology into a file atomically.
+     * @param topology topology
+     * @param path file path
+     * @throws IOException on failure to write file
+     */
+    public static void write(LayeredTopology topology, Path path) throws IOException {
+        final Path temporary = FileUtils.createTemporaryFile(path);
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                final IntWriter writer = new IntWriter(channel);
+                final int[][] children = topology.getSourceChildren();
+                final int[][] parents = topology.getSourceParents();
+                writer.put(MAGIC);
+                writer.put(FORMAT_VERSION);
+                writer.put(topology.getSourceTotalNumber());
+                writer.put(topology.getNeuronFirstIndex());
+                writer.put(topology.getSurfaceNeuronFirstIndex());
+                writer.put(topology.getFirstIndexOfLayer().length);
+                writer.put(topology.getForwardTraverseNeuronsOrder().length);
+                writer.put(getConnectionNumber(children));
+                writer.put(topology.getFirstIndexOfLayer());
+                writer.put(topology.getForwardTraverseNeuronsOrder());
+                writeAdjacency(writer, children);
+                writeAdjacency(writer, parents);
+                writer.flush();
+                channel.force(false);
+            }
+            FileUtils.moveIntoPlace(temporary, path);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads topology from a file.
+     * @param path file path
+     * @return topology
+     * @throws IOException on failure to read file or on damaged file
+     */
+    public static LayeredTopology read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final IntReader reader = new IntReader(channel);
+            final int[] header = new int[HEADER_SIZE];
+            reader.get(header);
+            if (header[0] != MAGIC || header[1] != FORMAT_VERSION) {
+                throw new IOException(path + " is not a topology file of version " + FORMAT_VERSION);
+            }
+            final int sourceTotalNumber = header[2];
+            final int connectionNumber = header[7];
+            if (sourceTotalNumber < 0 || header[5] < 0 || header[6] < 0 || connectionNumber < 0
+                    || channel.size() != 4L * (HEADER_SIZE + header[5] + header[6]
+                            + 2L * (sourceTotalNumber + 1) + 2L * connectionNumber)) {
+                throw new IOException(path + " has invalid size");
+            }
+            final int[] firstIndexOfLayer = new int[header[5]];
+            reader.get(firstIndexOfLayer);
+            final int[] forwardTraverseNeuronsOrder = new int[header[6]];
+            reader.get(forwardTraverseNeuronsOrder);
+            checkIndexes(path, forwardTraverseNeuronsOrder, sourceTotalNumber);
+            final int[][] children = readAdjacency(path, reader, sourceTotalNumber, connectionNumber);
+            final int[][] parents = readAdjacency(path, reader, sourceTotalNumber, connectionNumber);
+            return new LayeredTopology(sourceTotalNumber, header[3], header[4], children, parents,
+                    forwardTraverseNeuronsOrder, firstIndexOfLayer);
+        }
+    }
+
+    /**
+     * @param adjacency children or parents of each source
+     * @return total number of connections
+     * @throws IOException if it doesn't fit into file format
+     */
+    private static int getConnectionNumber(int[][] adjacency) throws IOException {
+        long connectionNumber = 0;
+        for (int[] neighbours : adjacency) {
+            connectionNumber += neighbours.length;
+        }
+        if (connectionNumber > Integer.MAX_VALUE) {
+            throw new IOException("Too many connections to cache: " + connectionNumber);
+        }
+        return (int) connectionNumber;
+    }
+
+    /**
+     * Writes children or parents in compressed sparse row form.
+     * @param writer writer
+     * @param adjacency children or parents of each source
+     * @throws IOException on failure to write
+     */
+    private static void writeAdjacency(IntWriter writer, int[][] adjacency) throws IOException {
+        int offset = 0;
+        writer.put(offset);
+        for (int[] neighbours : adjacency) {
+            offset += neighbours.length;
+            writer.put(offset);
+        }
+        for (int[] neighbours : adjacency) {
+            writer.put(neighbours);
+        }
+    }
+
+    /**
+     * Reads children or parents in compressed sparse row form.
+     * @param path file path, used in messages
+     * @param reader reader
+     * @param sourceTotalNumber total number of sources
+     * @param connectionNumber total number of connections
+     * @return children or parents of each source
+     * @throws IOException on failure to read or on damaged data
+     */
+    private static int[][] readAdjacency(Path path, IntReader reader, int sourceTotalNumber, int connectionNumber)
+            throws IOException {
+        final int[] offset = new int[sourceTotalNumber + 1];
+        reader.get(offset);
+        if (offset[0] != 0 || offset[sourceTotalNumber] != connectionNumber) {
+            throw new IOException(path + " has invalid adjacency offsets");
+        }
+        final int[][] adjacency = new int[sourceTotalNumber][];
+        for (int i = 0; i < sourceTotalNumber; i++) {
+            if (offset[i + 1] < offset[i]) {
+                throw new IOException(path + " has invalid adjacency offsets");
+            }
+            adjacency[i] = new int[offset[i + 1] - offset[i]];
+            reader.get(adjacency[i]);
+            checkIndexes(path, adjacency[i], sourceTotalNumber);
+        }
+        return adjacency;
+    }
+
+    /**
+     * Checks if all source indexes are in bounds.
+     * @param path file path, used in messages
+     * @param indexes source indexes
+     * @param sourceTotalNumber total number of sources
+     * @throws IOException on index out of bounds
+     */
+    private static void checkIndexes(Path path, int[] indexes, int sourceTotalNumber) throws IOException {
+        for (int index : indexes) {
+            if (index < 0 || index >= sourceTotalNumber) {
+                throw new IOException(path + " has source index out of bounds: " + index);
+            }
+        }
+    }
+
+    /**
+     * Writes ints into file channel through a reusable direct buffer.
+     */
+    private static final class IntWriter {
+
+        /**
+         * Target channel
+         */
+        private final FileChannel channel;
+
+        /**
+         * Byte buffer
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        /**
+         * Int view of the byte buffer
+         */
+        private final IntBuffer intBuffer = buffer.asIntBuffer();
+
+        IntWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void put(int value) throws IOException {
+            if (!intBuffer.hasRemaining()) {
+                flush();
+            }
+            intBuffer.put(value);
+        }
+
+        void put(int[] values) throws IOException {
+            int position = 0;
+            while (position < values.length) {
+                if (!intBuffer.hasRemaining()) {
+                    flush();
+                }
+                final int length = Math.min(intBuffer.remaining(), values.length - position);
+                intBuffer.put(values, position, length);
+                position += length;
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.position(0).limit(4 * intBuffer.position());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            intBuffer.clear();
+        }
+    }
+
+    /**
+     * Reads ints from file channel through a reusable direct buffer.
+     */
+    private static final class IntReader {
+
+        /**
+         * Source channel
+         */
+        private final FileChannel channel;
+
+        /**
+         * Byte buffer
+         */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+
+        /**
+         * Int view of the unread part of the byte buffer
+         */
+        private IntBuffer intBuffer = IntBuffer.allocate(0);
+
+        IntReader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void get(int[] values) throws IOException {
+            int offset = 0;
+            while (offset < values.length) {
+                if (!intBuffer.hasRemaining()) {
+                    fill();
+                }
+                final int length = Math.min(intBuffer.remaining(), values.length - offset);
+                intBuffer.get(values, offset, length);
+                offset += length;
+            }
+        }
+
+        /**
+         * Reads the next chunk of whole ints.
+         * @throws IOException on failure to read or at the end of file
+         */
+        private void fill() throws IOException {
+            buffer.clear();
+            while (buffer.position() < 4) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of topology file");
+                }
+            }
+            buffer.flip();
+            intBuffer = buffer.asIntBuffer();
+            // a trailing partial int is read again with the next chunk
+            channel.position(channel.position() - buffer.remaining() % 4);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package attatrol.neural.topology;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+
+/**
+ * Static analysis of a topology: its size, shape and estimated cost of a single mapping
+ * of an input vector. Used to choose how a network over the topology should be calculated.
+ * <p>
+ * Cost estimates are made for the ordinary network: each connection reads a weight,
+ * an index of a parent and a result of the parent, then multiplies and adds;
+ * each neuron reads its bias, writes its linear combination and result and calls activation function.
+ * @author attatrol
+ *
+ */
+public final class TopologyCostModel {
+
+    /**
+     * Estimated number of floating point operations of a single activation function call
+     */
+    public static final int ACTIVATION_FLOPS = 20;
+
+    /**
+     * Bytes read per connection: weight, parent index and parent result
+     */
+    public static final int CONNECTION_BYTES = 4 + 4 + 8;
+
+    /**
+     * Bytes read or written per neuron: bias, linear combination, result, traverse order element
+     * and references to weight and parent arrays
+     */
+    public static final int NEURON_BYTES = 4 + 8 + 8 + 4 + 8 + 8;
+
+    /**
+     * Total number of sources
+     */
+    private final int sourceTotalNumber;
+
+    /**
+     * Number of neurons
+     */
+    private final int neuronNumber;
+
+    /**
+     * Number of connections
+     */
+    private final long connectionNumber;
+
+    /**
+     * Number of neurons with each number of parents
+     */
+    private final int[] fanInHistogram;
+
+    /**
+     * Number of sources with each number of children
+     */
+    private final int[] fanOutHistogram;
+
+    /**
+     * Neurons grouped by depth
+     */
+    private final TraverseLevels levels;
+
+    /**
+     * Number of connections coming into neurons of each level
+     */
+    private final long[] levelConnectionNumber;
+
+    /**
+     * Density of connections between each layer and the next one, null if topology is not layered
+     */
+    private final double[] layerPairDensity;
+
+    /**
+     * Default ctor.
+     * @param sourceTotalNumber total number of sources
+     * @param neuronNumber number of neurons
+     * @param connectionNumber number of connections
+     * @param fanInHistogram number of neurons with each number of parents
+     * @param fanOutHistogram number of sources with each number of children
+     * @param levels neurons grouped by depth
+     * @param levelConnectionNumber number of connections coming into neurons of each level
+     * @param layerPairDensity density of connections between layers or null
+     */
+    private TopologyCostModel(int sourceTotalNumber, int neuronNumber, long connectionNumber,
+            int[] fanInHistogram, int[] fanOutHistogram, TraverseLevels levels,
+            long[] levelConnectionNumber, double[] layerPairDensity) {
+        this.sourceTotalNumber = sourceTotalNumber;
+        this.neuronNumber = neuronNumber;
+        this.connectionNumber = connectionNumber;
+        this.fanInHistogram = fanInHistogram;
+        this.fanOutHistogram = fanOutHistogram;
+        this.levels = levels;
+        this.levelConnectionNumber = levelConnectionNumber;
+        this.layerPairDensity = layerPairDensity;
+    }
+
+    /**
+     * Analyzes topology.
+     * @param topology topology
+     * @return cost model of the topology
+     * @throws NeuralNetworkGenerationException if topology has cycles
+     */
+    public static TopologyCostModel getTopologyCostModel(Topology topology)
+            throws NeuralNetworkGenerationException {
+        final int sourceTotalNumber = topology.getSourceTotalNumber();
+        final int neuronFirstIndex = topology.getNeuronFirstIndex();
+        final int[][] parents = topology.getSourceParents();
+        final int[][] children = topology.getSourceChildren();
+        final TraverseLevels levels = LayeredTopologyGenerator.getTraverseLevels(parents, children,
+                neuronFirstIndex);
+
+        int maxFanIn = 0;
+        int maxFanOut = 0;
+        long connectionNumber = 0;
+        for (int i = 0; i < sourceTotalNumber; i++) {
+            maxFanIn = Math.max(maxFanIn, parents[i].length);
+            maxFanOut = Math.max(maxFanOut, children[i].length);
+            connectionNumber += parents[i].length;
+        }
+        final int[] fanInHistogram = new int[maxFanIn + 1];
+        final int[] fanOutHistogram = new int[maxFanOut + 1];
+        for (int i = 0; i < sourceTotalNumber; i++) {
+            if (i >= neuronFirstIndex) {
+                fanInHistogram[parents[i].length]++;
+            }
+            fanOutHistogram[children[i].length]++;
+        }
+
+        final long[] levelConnectionNumber = levels.getLevelConnectionNumber(parents);
+
+        final int[] firstIndexOfLayer = getFirstIndexOfLayer(topology);
+        double[] layerPairDensity = null;
+        if (firstIndexOfLayer != null) {
+            layerPairDensity = new double[firstIndexOfLayer.length - 1];
+            for (int layer = 0; layer < layerPairDensity.length; layer++) {
+                final int childFirstIndex = firstIndexOfLayer[layer + 1];
+                final int childLastIndex = layer + 2 < firstIndexOfLayer.length
+                        ? firstIndexOfLayer[layer + 2] : sourceTotalNumber;
+                long layerConnectionNumber = 0;
+                for (int i = firstIndexOfLayer[layer]; i < childFirstIndex; i++) {
+                    for (int child : children[i]) {
+                        if (child >= childFirstIndex && child < childLastIndex) {
+                            layerConnectionNumber++;
+                        }
+                    }
+                }
+                layerPairDensity[layer] = (double) layerConnectionNumber
+                        / ((double) (childFirstIndex - firstIndexOfLayer[layer]) * (childLastIndex - childFirstIndex));
+            }
+        }
+        return new TopologyCostModel(sourceTotalNumber, sourceTotalNumber - neuronFirstIndex, connectionNumber,
+                fanInHistogram, fanOutHistogram, levels, levelConnectionNumber, layerPairDensity);
+    }
+
+    /**
+     * @return total number of sources
+     */
+    public int getSourceTotalNumber() {
+        return sourceTotalNumber;
+    }
+
+    /**
+     * @return number of neurons
+     */
+    public int getNeuronNumber() {
+        return neuronNumber;
+    }
+
+    /**
+     * @return number of connections
+     */
+    public long getConnectionNumber() {
+        return connectionNumber;
+    }
+
+    /**
+     * @return number of neurons with each number of parents, indexed by number of parents
+     */
+    public int[] getFanInHistogram() {
+        return fanInHistogram;
+    }
+
+    /**
+     * @return number of sources with each number of children, indexed by number of children
+     */
+    public int[] getFanOutHistogram() {
+        return fanOutHistogram;
+    }
+
+    /**
+     * @return neurons grouped by depth
+     */
+    public TraverseLevels getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return dependency depth, the number of levels which must be calculated one after another
+     */
+    public int getDepth() {
+        return levels.getLevelNumber();
+    }
+
+    /**
+     * @param level level
+     * @return number of connections coming into neurons of the level
+     */
+    public long getLevelConnectionNumber(int level) {
+        return levelConnectionNumber[level];
+    }
+
+    /**
+     * @return density of connections between each layer and the next one
+     * (1 for full interconnection), null if topology is not layered
+     */
+    public double[] getLayerPairDensity() {
+        return layerPairDensity;
+    }
+
+    /**
+     * @return estimated number of floating point operations of a single mapping
+     */
+    public long getFlopsPerMap() {
+        return 2 * connectionNumber + (long) (ACTIVATION_FLOPS + 1) * neuronNumber;
+    }
+
+    /**
+     * @return estimated number of bytes read and written by a single mapping
+     */
+    public long getBytesPerMap() {
+        return CONNECTION_BYTES * connectionNumber + (long) NEURON_BYTES * neuronNumber;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("TopologyCostModel [sources=").append(sourceTotalNumber)
+            .append(", neurons=").append(neuronNumber)
+            .append(", connections=").append(connectionNumber)
+            .append(", maxFanIn=").append(fanInHistogram.length - 1)
+            .append(", maxFanOut=").append(fanOutHistogram.length - 1)
+            .append(", depth=").append(getDepth())
+            .append(", flopsPerMap=").append(getFlopsPerMap())
+            .append(", bytesPerMap=").append(getBytesPerMap()).append(']');
+        return sb.toString();
+    }
+
+    /**
+     * @param topology topology
+     * @return first index of every layer, null if topology is not layered
+     */
+    private static int[] getFirstIndexOfLayer(Topology topology) {
+        if (topology instanceof LayeredTopology) {
+            return ((LayeredTopology) topology).getFirstIndexOfLayer();
+        }
+        if (topology instanceof CompactTopology) {
+            return ((CompactTopology) topology).getFirstIndexOfLayer();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,306 @@
+package attatrol.neural.topology;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Utility class, writes topology into a character stream incrementally:
+ * as a table (same as {@link Topology#toString()}), as a DOT graph or as a CSV list of edges.
+ * Memory consumption doesn't depend on topology size, no strings are created per source.
+ * @author attatrol
+ *
+ */
+public final class TopologyExporter {
+
+    /**
+     * Size of internal character buffer
+     */
+    private static final int BUFFER_SIZE = 1 << 14;
+
+    /**
+     * Header of the table up to the parents column
+     */
+    private static final String TABLE_HEADER_PREFIX = "| ## | Type | #P | #C | ";
+
+    /**
+     * Name of the parents column of the table
+     */
+    private static final String PARENTS_COLUMN_NAME = "Parents";
+
+    /**
+     * Name of the children column of the table
+     */
+    private static final String CHILDREN_COLUMN_NAME = "Children";
+
+    /**
+     * Width of the type column of the table
+     */
+    private static final int TYPE_COLUMN_WIDTH = 6;
+
+    /**
+     * Not in use
+     */
+    private TopologyExporter() { }
+
+    /**
+     * Writes topology as a table, sources are written in order of forward traverse.
+     * Incoming vector is written first, followed by neurons,
+     * typically surface neurons are written last.
+     * @param topology topology
+     * @param writer target writer, not closed
+     * @throws IOException on failure to write
+     */
+    public static void writeTable(Topology topology, Writer writer) throws IOException {
+        final int[] traverseOrder = topology.getForwardTraverseNeuronsOrder();
+        final int neuronFirstIndex = topology.getNeuronFirstIndex();
+        final String lineSeparator = System.lineSeparator();
+        int maxParentNumber = 0;
+        int maxChildNumber = 0;
+        for (int i = 0; i < topology.getSourceTotalNumber(); i++) {
+            maxParentNumber = Math.max(maxParentNumber, topology.getSourceParentNumber(i));
+            maxChildNumber = Math.max(maxChildNumber, topology.getSourceChildNumber(i));
+        }
+        final int parentColumnWidth = Math.max(getColumnWidth(maxParentNumber), PARENTS_COLUMN_NAME.length());
+        final int childrenColumnWidth = Math.max(getColumnWidth(maxChildNumber), CHILDREN_COLUMN_NAME.length());
+        final int tableWidth = TABLE_HEADER_PREFIX.length()
+                + Math.max(parentColumnWidth - 1, PARENTS_COLUMN_NAME.length()) + 2
+                + Math.max(childrenColumnWidth - 1, CHILDREN_COLUMN_NAME.length()) + 1;
+
+        final CharSink sink = new CharSink(writer);
+        sink.append(Topology.TOPOLOGY_TITLE).append(lineSeparator);
+        sink.appendRepeated('-', tableWidth).append(lineSeparator);
+        sink.append(TABLE_HEADER_PREFIX).appendPadded(PARENTS_COLUMN_NAME, parentColumnWidth - 1)
+            .append("| ").appendPadded(CHILDREN_COLUMN_NAME, childrenColumnWidth - 1).append('|')
+            .append(lineSeparator);
+        sink.appendRepeated('-', tableWidth).append(lineSeparator);
+        for (int i = 0; i < topology.getSourceTotalNumber(); i++) {
+            final int currentIndex = i < neuronFirstIndex ? i : traverseOrder[i - neuronFirstIndex];
+            sink.append('|').appendPadded(currentIndex, Topology.INTEGER_PADDING)
+                .append('|').appendPadded(topology.getType(currentIndex), TYPE_COLUMN_WIDTH)
+                .append('|').appendPadded(topology.getSourceParentNumber(currentIndex), Topology.INTEGER_PADDING)
+                .append('|').appendPadded(topology.getSourceChildNumber(currentIndex), Topology.INTEGER_PADDING)
+                .append('|').appendArray(topology.getSourceParentsByIndex(currentIndex), parentColumnWidth)
+                .append('|').appendArray(topology.getSourceChildrenByIndex(currentIndex), childrenColumnWidth)
+                .append('|').append(lineSeparator);
+        }
+        sink.appendRepeated('-', tableWidth).append(lineSeparator);
+        sink.flush();
+    }
+
+    /**
+     * Writes topology as a directed graph in DOT language, each source is labeled by its type.
+     * @param topology topology
+     * @param writer target writer, not closed
+     * @throws IOException on failure to write
+     */
+    public static void writeDot(Topology topology, Writer writer) throws IOException {
+        final CharSink sink = new CharSink(writer);
+        sink.append("digraph topology {\n");
+        for (int i = 0; i < topology.getSourceTotalNumber(); i++) {
+            sink.append("    ").append(i).append(" [label=\"").append(i).append(' ')
+                .append(topology.getType(i)).append("\"];\n");
+        }
+        for (int i = 0; i < topology.getSourceTotalNumber(); i++) {
+            for (int child : topology.getSourceChildrenByIndex(i)) {
+                sink.append("    ").append(i).append(" -> ").append(child).append(";\n");
+            }
+        }
+        sink.append("}\n");
+        sink.flush();
+    }
+
+    /**
+     * Writes topology as a CSV list of edges with a "parent,child" header.
+     * @param topology topology
+     * @param writer target writer, not closed
+     * @throws IOException on failure to write
+     */
+    public static void writeCsv(Topology topology, Writer writer) throws IOException {
+        final CharSink sink = new CharSink(writer);
+        sink.append("parent,child\n");
+        for (int i = 0; i < topology.getSourceTotalNumber(); i++) {
+            for (int child : topology.getSourceChildrenByIndex(i)) {
+                sink.append(i).append(',').append(child).append('\n');
+            }
+        }
+        sink.flush();
+    }
+
+    /**
+     * Same as {@link #writeTable(Topology, Writer)}, writes UTF-8 text.
+     * @param topology topology
+     * @param stream target stream, not closed
+     * @throws IOException on failure to write
+     */
+    public static void writeTable(Topology topology, OutputStream stream) throws IOException {
+        final Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        writeTable(topology, writer);
+        writer.flush();
+    }
+
+    /**
+     * Same as {@link #writeDot(Topology, Writer)}, writes UTF-8 text.
+     * @param topology topology
+     * @param stream target stream, not closed
+     * @throws IOException on failure to write
+     */
+    public static void writeDot(Topology topology, OutputStream stream) throws IOException {
+        final Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        writeDot(topology, writer);
+        writer.flush();
+    }
+
+    /**
+     * Same as {@link #writeCsv(Topology, Writer)}, writes UTF-8 text.
+     * @param topology topology
+     * @param stream target stream, not closed
+     * @throws IOException on failure to write
+     */
+    public static void writeCsv(Topology topology, OutputStream stream) throws IOException {
+        final Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8);
+        writeCsv(topology, writer);
+        writer.flush();
+    }
+
+    /**
+     * Calculates width of a table column of integer arrays.
+     * @param maxLength maximal length of an array in the column
+     * @return width of the column
+     */
+    private static int getColumnWidth(int maxLength) {
+        // brackets length plus padded integers with spaces
+        return 2 + maxLength * (1 + Topology.INTEGER_PADDING);
+    }
+
+    /**
+     * @param value non-negative integer
+     * @return number of decimal digits
+     */
+    private static int getDigitNumber(int value) {
+        int digitNumber = 1;
+        while (value >= 10) {
+            value /= 10;
+            digitNumber++;
+        }
+        return digitNumber;
+    }
+
+    /**
+     * Buffers characters and passes them to the writer in blocks.
+     */
+    private static final class CharSink {
+
+        /**
+         * Target writer
+         */
+        private final Writer writer;
+
+        /**
+         * Buffer
+         */
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        /**
+         * Number of characters in buffer
+         */
+        private int size;
+
+        CharSink(Writer writer) {
+            this.writer = writer;
+        }
+
+        CharSink append(char value) throws IOException {
+            if (size == buffer.length) {
+                flush();
+            }
+            buffer[size++] = value;
+            return this;
+        }
+
+        CharSink append(String value) throws IOException {
+            for (int i = 0; i < value.length(); i++) {
+                append(value.charAt(i));
+            }
+            return this;
+        }
+
+        CharSink append(int value) throws IOException {
+            if (value < 0) {
+                if (value == Integer.MIN_VALUE) {
+                    return append(String.valueOf(value));
+                }
+                append('-');
+                value = -value;
+            }
+            if (size + 10 > buffer.length) {
+                flush();
+            }
+            final int digitNumber = getDigitNumber(value);
+            for (int i = size + digitNumber - 1; i >= size; i--) {
+                buffer[i] = (char) ('0' + value % 10);
+                value /= 10;
+            }
+            size += digitNumber;
+            return this;
+        }
+
+        CharSink appendRepeated(char value, int number) throws IOException {
+            while (number > 0) {
+                if (size == buffer.length) {
+                    flush();
+                }
+                final int length = Math.min(number, buffer.length - size);
+                Arrays.fill(buffer, size, size + length, value);
+                size += length;
+                number -= length;
+            }
+            return this;
+        }
+
+        /**
+         * Left-justified value, padded with spaces up to width.
+         */
+        CharSink appendPadded(String value, int width) throws IOException {
+            return append(value).appendRepeated(' ', width - value.length());
+        }
+
+        /**
+         * Left-justified value, padded with spaces up to width.
+         */
+        CharSink appendPadded(int value, int width) throws IOException {
+            final int length = value < 0 ? String.valueOf(value).length() : getDigitNumber(value);
+            return append(value).appendRepeated(' ', width - length);
+        }
+
+        /**
+         * Array in brackets, each element padded, padded with spaces up to width.
+         */
+        CharSink appendArray(int[] array, int width) throws IOException {
+            if (array == null) {
+                return appendPadded("[null]", width);
+            }
+            int length = 2;
+            append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    append(' ');
+                    length++;
+                }
+                appendPadded(array[i], Topology.INTEGER_PADDING);
+                length += Math.max(Topology.INTEGER_PADDING,
+                        array[i] < 0 ? String.valueOf(array[i]).length() : getDigitNumber(array[i]));
+            }
+            append(']');
+            return appendRepeated(' ', width - length);
+        }
+
+        void flush() throws IOException {
+            writer.write(buffer, 0, size);
+            size = 0;
+        }
+    }
+}
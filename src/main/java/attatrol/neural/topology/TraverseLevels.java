@@ -0,0 +1,83 @@
+package attatrol.neural.topology;
+
+/**
+ * POJO, result of topological sort of a network graph.
+ * Neurons in traverse order are grouped by depth, so neurons of the same level
+ * depend only on neurons of previous levels and may be processed in any order (or concurrently).
+ * <p>
+ * Depth of an input vector coordinate or a parentless neuron is 0,
+ * depth of any other neuron is 1 + maximal depth of its parents.
+ * @author attatrol
+ *
+ */
+public class TraverseLevels {
+
+    /**
+     * Forward traverse order of neurons, ordered by depth
+     */
+    private final int[] forwardTraverseNeuronsOrder;
+
+    /**
+     * Depth of each source
+     */
+    private final int[] depth;
+
+    /**
+     * Index in traverse order of the first neuron of each level (level = depth),
+     * last element equals to traverse order length
+     */
+    private final int[] levelFirstIndex;
+
+    public TraverseLevels(int[] forwardTraverseNeuronsOrder, int[] depth, int[] levelFirstIndex) {
+        this.forwardTraverseNeuronsOrder = forwardTraverseNeuronsOrder;
+        this.depth = depth;
+        this.levelFirstIndex = levelFirstIndex;
+    }
+
+    public int[] getForwardTraverseNeuronsOrder() {
+        return forwardTraverseNeuronsOrder;
+    }
+
+    public int[] getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return index in traverse order of the first neuron of each level,
+     * last element equals to traverse order length
+     */
+    public int[] getLevelFirstIndex() {
+        return levelFirstIndex;
+    }
+
+    /**
+     * @return number of levels, including level 0 (which may contain no neurons)
+     */
+    public int getLevelNumber() {
+        return levelFirstIndex.length - 1;
+    }
+
+    /**
+     * @param level level
+     * @return number of neurons on the level
+     */
+    public int getLevelWidth(int level) {
+        return levelFirstIndex[level + 1] - levelFirstIndex[level];
+    }
+
+    /**
+     * Counts connections coming into neurons of each level, it is the amount of work of the level.
+     * @param sourceParents parents of each source
+     * @return number of connections coming into neurons of each level
+     */
+    public long[] getLevelConnectionNumber(int[][] sourceParents) {
+        final long[] levelConnectionNumber = new long[getLevelNumber()];
+        for (int level = 0; level < levelConnectionNumber.length; level++) {
+            for (int i = levelFirstIndex[level]; i < levelFirstIndex[level + 1]; i++) {
+                levelConnectionNumber[level] += sourceParents[forwardTraverseNeuronsOrder[i]].length;
+            }
+        }
+        return levelConnectionNumber;
+    }
+
+}
@@ -0,0 +1,48 @@
+package attatrol.neural.utils;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Utility class for writing files atomically: a file is written into a temporary file
+ * in the same directory, which is moved into place when complete.
+ * @author attatrol
+ *
+ */
+public final class FileUtils {
+
+    /**
+     * Not in use
+     */
+    private FileUtils() { }
+
+    /**
+     * Creates the directory of a target file and a temporary file next to it.
+     * @param path target path
+     * @return empty temporary file
+     * @throws IOException on failure to create directory or file
+     */
+    public static Path createTemporaryFile(Path path) throws IOException {
+        final Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        return Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+    }
+
+    /**
+     * Moves written temporary file into place, atomically if file system allows it.
+     * @param temporary temporary file
+     * @param path target path
+     * @throws IOException on failure to move
+     */
+    public static void moveIntoPlace(Path temporary, Path path) throws IOException {
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
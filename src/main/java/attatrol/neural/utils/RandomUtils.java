@@ -1,6 +1,7 @@
 package attatrol.neural.utils;
 
 import java.util.Random;
+import java.util.SplittableRandom;
 
 /**
  * Utility class that provides different randomization methods.
@@ -9,8 +10,6 @@ import java.util.Random;
  */
 public final class RandomUtils {
 
-    private static Random sRandom;
-
     /**
      * Not in use
      */
@@ -29,15 +28,40 @@ public final class RandomUtils {
         return generateRandomFloats((float) min, (float) max, size);
     }
 
-    private static Random getRandom() {
-        if (sRandom == null) {
-            synchronized(RandomUtils.class) {
-                if (sRandom == null) {
-                    sRandom = new Random();
-                }
-            }
+    /**
+     * Generates floats from a seedable random stream.
+     * @param min lower bound
+     * @param max upper bound
+     * @param size number of floats
+     * @param random random stream, used by the calling thread only
+     * @return random floats
+     */
+    public static float[] generateRandomFloats(float min, float max, int size, SplittableRandom random) {
+        float[] result = new float[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (float) random.nextDouble() * (max - min) + min;
         }
-        return sRandom;
+        return result;
+    }
+
+    /**
+     * @param seed seed, null if unseeded
+     * @return new random stream
+     */
+    public static SplittableRandom getSplittableRandom(Long seed) {
+        return seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+    }
+
+    private static Random getRandom() {
+        return RandomHolder.RANDOM;
+    }
+
+    /**
+     * Lazy initialization holder of the shared random, class initialization is thread safe.
+     */
+    private static final class RandomHolder {
+
+        private static final Random RANDOM = new Random();
     }
 
 }
@@ -0,0 +1,193 @@
+package attatrol.neural.dataset;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of {@link CsvParser}: lines around chunk boundaries and CRLF line endings.
+ */
+public class CsvParserTest extends TestCase {
+
+    /**
+     * Number of chunks in the large file
+     */
+    private static final int CHUNK_NUMBER = 4;
+
+    /**
+     * Directory of test files
+     */
+    private Path directory;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public CsvParserTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(CsvParserTest.class);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        directory = Files.createTempDirectory("csv");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        for (Path file : Files.newDirectoryStream(directory)) {
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Lines are "index,value,-index". Chunk boundaries fall between '\r' and '\n' of a line,
+     * right after a line and inside a line, each line must be read exactly once.
+     */
+    public void testChunkBoundaries() throws IOException, NeuralNetworkGenerationException {
+        final Path path = directory.resolve("large.csv");
+        final long boundary1 = CsvParser.CHUNK_SIZE;
+        final long boundary2 = 2L * CsvParser.CHUNK_SIZE;
+        final long boundary3 = 3L * CsvParser.CHUNK_SIZE;
+        // line ends, exclusive: CRLF split by the first boundary, LF right before the second one,
+        // the third boundary inside a line
+        final long[] paddedLineEnds = {boundary1 + 1, boundary2, boundary3 + 7};
+        final BitSet padded = new BitSet();
+        int lineNumber = 0;
+        long length = 0;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            length += write(out, "index,value,negated\n");
+            int target = 0;
+            while (length < boundary3 + CsvParser.CHUNK_SIZE / 2) {
+                if (target < paddedLineEnds.length && paddedLineEnds[target] - length < 100) {
+                    final String line = getPaddedLine(lineNumber, (int) (paddedLineEnds[target] - length),
+                            target == 0);
+                    padded.set(lineNumber);
+                    length += write(out, line);
+                    assertEquals(paddedLineEnds[target], length);
+                    target++;
+                }
+                else {
+                    length += write(out, getLine(lineNumber));
+                }
+                lineNumber++;
+            }
+            // last line without line end
+            length += write(out, getLine(lineNumber).trim());
+            lineNumber++;
+        }
+        assertEquals(length, Files.size(path));
+        final CsvParser parser = CsvParser.getCsvParser(path, 2, 1, ',', true);
+        assertEquals(CHUNK_NUMBER, parser.getChunkNumber());
+
+        final BitSet seen = new BitSet();
+        final BatchLoader loader = parser.getBatchLoader(null);
+        final VectorBatch batch = new VectorBatch(1000, 2, 1);
+        while (loader.fill(batch)) {
+            for (int n = 0; n < batch.getSize(); n++) {
+                final double[] input = batch.getInputVectors()[n];
+                final int index = (int) input[0];
+                assertEquals((double) index, input[0]);
+                assertFalse("Line " + index + " is read twice", seen.get(index));
+                seen.set(index);
+                assertEquals(getValue(index, padded), input[1]);
+                assertEquals((double) -index, batch.getReferences()[n][0]);
+            }
+        }
+        assertEquals(lineNumber, seen.cardinality());
+        assertEquals(lineNumber, seen.nextClearBit(0));
+
+        final ColumnScaling scaling = parser.fitScaling(1.);
+        assertEquals(0., scaling.getMin(0));
+        assertEquals((double) lineNumber - 1, scaling.getMax(0));
+        assertEquals((double) 1 - lineNumber, scaling.getMin(2));
+        assertEquals(lineNumber, parser.convert(directory.resolve("large.bin"), scaling));
+    }
+
+    /**
+     * Header, rows, blank lines and fields are terminated by CRLF, last line has no line end.
+     */
+    public void testCrlfLineEndings() throws IOException, NeuralNetworkGenerationException {
+        final Path path = directory.resolve("crlf.csv");
+        Files.write(path, ("a;b;c\r\n"
+                + "1;2;3\r\n"
+                + "\r\n"
+                + " 4.5 ;-6\t;7e1 \r\n"
+                + "  \r\n"
+                + "8;9;10").getBytes(StandardCharsets.US_ASCII));
+        final CsvParser parser = CsvParser.getCsvParser(path, 2, 1, ';', true);
+        final VectorBatch batch = new VectorBatch(10, 2, 1);
+        final BatchLoader loader = parser.getBatchLoader(null);
+        assertTrue(loader.fill(batch));
+        assertEquals(3, batch.getSize());
+        assertTrue(Arrays.equals(new double[] {1., 2.}, batch.getInputVectors()[0]));
+        assertTrue(Arrays.equals(new double[] {3.}, batch.getReferences()[0]));
+        assertTrue(Arrays.equals(new double[] {4.5, -6.}, batch.getInputVectors()[1]));
+        assertTrue(Arrays.equals(new double[] {70.}, batch.getReferences()[1]));
+        assertTrue(Arrays.equals(new double[] {8., 9.}, batch.getInputVectors()[2]));
+        assertTrue(Arrays.equals(new double[] {10.}, batch.getReferences()[2]));
+        assertFalse(loader.fill(batch));
+        assertEquals(3, parser.convert(directory.resolve("crlf.bin"), parser.fitScaling(1.)));
+    }
+
+    /**
+     * @param out output
+     * @param line text
+     * @return number of written bytes
+     * @throws IOException on failure to write
+     */
+    private static int write(OutputStream out, String line) throws IOException {
+        final byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        out.write(bytes);
+        return bytes.length;
+    }
+
+    /**
+     * @param index line index
+     * @return line, odd lines end with CRLF
+     */
+    private static String getLine(int index) {
+        return index + "," + getValue(index, null) + "," + -index + (index % 2 == 0 ? "\n" : "\r\n");
+    }
+
+    /**
+     * @param index line index
+     * @param length length of the line with line end
+     * @param crlf true if the line ends with CRLF
+     * @return line with the value field padded by zeros to the given length
+     */
+    private static String getPaddedLine(int index, int length, boolean crlf) {
+        final String start = index + ",0.";
+        final String end = "," + -index + (crlf ? "\r\n" : "\n");
+        final char[] zeros = new char[length - start.length() - end.length()];
+        Arrays.fill(zeros, '0');
+        return start + new String(zeros) + end;
+    }
+
+    /**
+     * @param index line index
+     * @param padded indexes of padded lines, may be null
+     * @return value field of the line
+     */
+    private static double getValue(int index, BitSet padded) {
+        return padded != null && padded.get(index) ? 0. : index * 0.25;
+    }
+}
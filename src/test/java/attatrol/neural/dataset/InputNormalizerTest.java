@@ -0,0 +1,122 @@
+package attatrol.neural.dataset;
+
+import java.util.Random;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of {@link InputNormalizer}.
+ */
+public class InputNormalizerTest extends TestCase {
+
+    /**
+     * Number of compared input vectors
+     */
+    private static final int SAMPLE_NUMBER = 50;
+
+    /**
+     * Allowed difference of folded network, which rounds folded weights and biases into floats
+     */
+    private static final double FOLDED_DELTA = 1e-4;
+
+    /**
+     * Scale of each coordinate
+     */
+    private static final double[] SCALE = new double[] {0.5, 0.25, 2., 1., 0.1, 0.01};
+
+    /**
+     * Shift of each coordinate
+     */
+    private static final double[] SHIFT = new double[] {0.5, 0.5, -1., 0., 0.5, 0.2};
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public InputNormalizerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(InputNormalizerTest.class);
+    }
+
+    public void testFoldedNormalizer() throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getNetwork();
+        final InputNormalizer normalizer = InputNormalizer.getInputNormalizer(SCALE, SHIFT, 1.);
+        final NeuralNetwork folded = normalizer.fold(network);
+        final Random random = new Random(4L);
+        final double[] normalized = new double[SCALE.length];
+        for (int n = 0; n < SAMPLE_NUMBER; n++) {
+            // raw features within the range normalized into [0, 1]
+            final double[] raw = new double[SCALE.length];
+            for (int i = 0; i < raw.length; i++) {
+                raw[i] = (random.nextDouble() - SHIFT[i]) / SCALE[i];
+            }
+            normalizer.normalize(raw, normalized);
+            final double[] expected = network.map(normalized);
+            final double[] actual = folded.map(raw);
+            assertEquals(expected.length, actual.length);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals("Coordinate " + i, expected[i], actual[i], FOLDED_DELTA);
+            }
+        }
+    }
+
+    public void testNanIsRejected() throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final InputNormalizer normalizer = InputNormalizer.getInputNormalizer(SCALE, SHIFT, 1.);
+        final double[] raw = new double[SCALE.length];
+        raw[2] = Double.POSITIVE_INFINITY;
+        raw[3] = Double.NEGATIVE_INFINITY;
+        final Dataset dataset = normalizer.normalize(new ArrayDataset(new double[][] {raw}, new double[1][1]));
+        final double[] normalized = new double[SCALE.length];
+        dataset.getInputVector(0, normalized);
+        assertEquals(1., normalized[2]);
+        assertEquals(0., normalized[3]);
+        raw[2] = Double.NaN;
+        try {
+            dataset.getInputVector(0, normalized);
+            fail("NaN feature passed validated view");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * @return network with input vector size of the normalizer
+     * @throws NeuralNetworkGenerationException on failure to create network
+     */
+    private static NeuralNetwork getNetwork() throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(6, 4, LayerInterconnectionDistribution.DISPERSE, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(8, 3, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(5, 2, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(3, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(1., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.5f));
+        settings.setSeed(1L);
+        return NeuralNetworkFactory.getNetwork(settings);
+    }
+}
@@ -0,0 +1,186 @@
+package attatrol.neural.learning;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.dataset.ArrayDataset;
+import attatrol.neural.dataset.Dataset;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.learning.supervised.LbfgsLearner;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of early stopping and best state restoration of {@link Trainer}.
+ */
+public class TrainerTest extends TestCase {
+
+    /**
+     * Number of validations without improvement before stop
+     */
+    private static final int PATIENCE = 2;
+
+    /**
+     * Training set
+     */
+    private Dataset trainingSet;
+
+    /**
+     * Validation set
+     */
+    private Dataset validationSet;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public TrainerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(TrainerTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        trainingSet = getDataset(new Random(2L), 30);
+        validationSet = getDataset(new Random(3L), 10);
+    }
+
+    public void testEarlyStop() throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getNetwork(BackpropagationLearner.getBackpropagationLearner(
+                new QuadraticError(), 0.5f));
+        final TrainingReport report = Trainer.getTrainer(network, getSettings()).train(trainingSet, validationSet);
+        assertTrue(report.isStoppedEarly());
+        assertEquals(1, report.getBestEpochNumber());
+        assertEquals(1 + PATIENCE, report.getEpochReports().size());
+        assertEquals(report.getEpochReports().get(0).getValidationError(), report.getBestValidationError());
+    }
+
+    public void testNoEarlyStopWithoutValidation()
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getNetwork(BackpropagationLearner.getBackpropagationLearner(
+                new QuadraticError(), 0.5f));
+        final TrainerSettings settings = getSettings();
+        settings.setMaxEpochNumber(6);
+        final TrainingReport report = Trainer.getTrainer(network, settings).train(trainingSet, null);
+        assertFalse(report.isStoppedEarly());
+        assertEquals(0, report.getBestEpochNumber());
+        assertEquals(6, report.getEpochReports().size());
+    }
+
+    public void testBestStateRestored() throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final List<float[][]> weights = trainRecordingWeights(true);
+        final float[][] restored = weights.remove(weights.size() - 1);
+        assertTrue(Arrays.deepEquals(weights.get(0), restored));
+        assertFalse(Arrays.deepEquals(weights.get(weights.size() - 1), restored));
+    }
+
+    public void testBestStateNotRestoredWhenDisabled()
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final List<float[][]> weights = trainRecordingWeights(false);
+        final float[][] last = weights.remove(weights.size() - 1);
+        assertTrue(Arrays.deepEquals(weights.get(weights.size() - 1), last));
+    }
+
+    public void testBatchTrainingError() throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getNetwork(LbfgsLearner.getLbfgsLearner(new QuadraticError(), 5, 10, 0., 1));
+        final TrainerSettings settings = getSettings();
+        // incomplete last batch
+        settings.setBatchSize(7);
+        final TrainingReport report = Trainer.getTrainer(network, settings).train(trainingSet, validationSet);
+        for (EpochReport epochReport : report.getEpochReports()) {
+            assertFalse(Double.isNaN(epochReport.getTrainingError()));
+        }
+    }
+
+    /**
+     * Trains a network which stops improving after the first epoch.
+     * @param restored true if the best state should be restored
+     * @return weights after each epoch followed by weights after training
+     * @throws NeuralNetworkGenerationException on failure to create network
+     * @throws NeuralNetworkRuntimeException on learning failure
+     */
+    private List<float[][]> trainRecordingWeights(boolean restored)
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final NeuralNetwork network = getNetwork(BackpropagationLearner.getBackpropagationLearner(
+                new QuadraticError(), 0.5f));
+        final TrainerSettings settings = getSettings();
+        settings.setBestStateRestored(restored);
+        final Trainer trainer = Trainer.getTrainer(network, settings);
+        final List<float[][]> weights = new ArrayList<>();
+        trainer.addTrainingListener((trained, report) -> weights.add(trained.getNetworkStateCopy().getWeight()));
+        trainer.train(trainingSet, validationSet);
+        assertEquals(1 + PATIENCE, weights.size());
+        weights.add(network.getNetworkStateCopy().getWeight());
+        return weights;
+    }
+
+    /**
+     * @return settings where only the first validation counts as an improvement
+     */
+    private static TrainerSettings getSettings() {
+        final TrainerSettings settings = new TrainerSettings();
+        settings.setPatience(PATIENCE);
+        settings.setMinImprovement(1.);
+        settings.setSeed(1L);
+        settings.setShardNumber(1);
+        return settings;
+    }
+
+    /**
+     * @param random source of random numbers
+     * @param size number of samples
+     * @return dataset of random samples
+     * @throws NeuralNetworkRuntimeException on failure to create dataset
+     */
+    private static Dataset getDataset(Random random, int size) throws NeuralNetworkRuntimeException {
+        final double[][] inputs = new double[size][4];
+        final double[][] references = new double[size][2];
+        for (int n = 0; n < size; n++) {
+            for (int i = 0; i < inputs[n].length; i++) {
+                inputs[n][i] = random.nextDouble();
+            }
+            references[n][0] = random.nextDouble();
+            references[n][1] = random.nextDouble();
+        }
+        return new ArrayDataset(inputs, references);
+    }
+
+    /**
+     * @param learner learning processor
+     * @return 4-5-2 network
+     * @throws NeuralNetworkGenerationException on failure to create network
+     */
+    private static NeuralNetwork getNetwork(LearningProcessor learner) throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(4, 3, LayerInterconnectionDistribution.DISPERSE, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(5, 2, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(2, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(1., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()), learner);
+        settings.setSeed(1L);
+        return NeuralNetworkFactory.getNetwork(settings);
+    }
+}
@@ -0,0 +1,128 @@
+package attatrol.neural.learning.supervised;
+
+import java.util.Random;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.dataset.ArrayDataset;
+import attatrol.neural.dataset.DatasetEvaluator;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.network.NeuralNetwork;
+import attatrol.neural.network.NeuralNetworkFactory;
+import attatrol.neural.network.NeuralNetworkSettings;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Convergence tests of {@link LbfgsLearner}. Targets are produced by a teacher network
+ * of the same topology, so the student can reach zero error.
+ */
+public class LbfgsLearnerTest extends TestCase {
+
+    /**
+     * Number of samples in the batch
+     */
+    private static final int SAMPLE_NUMBER = 32;
+
+    /**
+     * Maximal number of iterations per batch
+     */
+    private static final int MAX_ITERATIONS = 200;
+
+    /**
+     * Input vectors of the batch
+     */
+    private double[][] inputs;
+
+    /**
+     * Results of the teacher network
+     */
+    private double[][] references;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LbfgsLearnerTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(LbfgsLearnerTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        final NeuralNetwork teacher = getNetwork(7L, new BackpropagationLearner(new QuadraticError()));
+        final Random random = new Random(3L);
+        inputs = new double[SAMPLE_NUMBER][3];
+        references = new double[SAMPLE_NUMBER][];
+        for (int n = 0; n < SAMPLE_NUMBER; n++) {
+            for (int i = 0; i < inputs[n].length; i++) {
+                inputs[n][i] = random.nextDouble();
+            }
+            references[n] = teacher.map(inputs[n]).clone();
+        }
+    }
+
+    public void testConvergence() throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final LbfgsLearner learner = LbfgsLearner.getLbfgsLearner(new QuadraticError(), 5, MAX_ITERATIONS, 1e-6, 1);
+        final NeuralNetwork network = getNetwork(1L, learner);
+        final ArrayDataset dataset = new ArrayDataset(inputs, references);
+        final double initialError = DatasetEvaluator.getAverageError(network, new QuadraticError(), dataset, 1);
+        network.learnBatch(inputs, references);
+        final double error = DatasetEvaluator.getAverageError(network, new QuadraticError(), dataset, 1);
+        assertTrue(initialError > 1e-3);
+        assertTrue("Error " + error, error < 1e-6);
+        assertEquals(error, learner.getLastError(), 1e-12);
+        assertTrue(learner.getLastIterationNumber() < MAX_ITERATIONS);
+    }
+
+    public void testShardNumberDoesNotChangeResult()
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final NeuralNetwork single = getNetwork(1L,
+                LbfgsLearner.getLbfgsLearner(new QuadraticError(), 5, MAX_ITERATIONS, 1e-6, 1));
+        final NeuralNetwork sharded = getNetwork(1L,
+                LbfgsLearner.getLbfgsLearner(new QuadraticError(), 5, MAX_ITERATIONS, 1e-6, 3));
+        single.learnBatch(inputs, references);
+        sharded.learnBatch(inputs, references);
+        final float[][] singleWeight = single.getNetworkStateCopy().getWeight();
+        final float[][] shardedWeight = sharded.getNetworkStateCopy().getWeight();
+        for (int i = 0; i < singleWeight.length; i++) {
+            for (int k = 0; k < singleWeight[i].length; k++) {
+                assertEquals(singleWeight[i][k], shardedWeight[i][k], 1e-5f);
+            }
+        }
+    }
+
+    /**
+     * @param seed seed of initial weights
+     * @param learner learning processor
+     * @return 3-4-2 network
+     * @throws NeuralNetworkGenerationException on failure to create network
+     */
+    private static NeuralNetwork getNetwork(long seed, LearningProcessor learner)
+            throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(3, 4, LayerInterconnectionDistribution.DISPERSE, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(4, 2, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(2, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(1., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()), learner);
+        settings.setSeed(seed);
+        return NeuralNetworkFactory.getNetwork(settings);
+    }
+}
@@ -0,0 +1,125 @@
+package attatrol.neural.network;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.dataset.ArrayDataset;
+import attatrol.neural.dataset.Dataset;
+import attatrol.neural.dataset.InputNormalizer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.LearningProcessor;
+import attatrol.neural.learning.Trainer;
+import attatrol.neural.learning.TrainerSettings;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.learning.supervised.LbfgsLearner;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of publication of weights learned by {@link DoubleBufferedNeuralNetwork}.
+ */
+public class DoubleBufferedNeuralNetworkTest extends TestCase {
+
+    /**
+     * Number of samples in the dataset
+     */
+    private static final int SAMPLE_NUMBER = 20;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public DoubleBufferedNeuralNetworkTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(DoubleBufferedNeuralNetworkTest.class);
+    }
+
+    public void testValidatedLearningIsPublished()
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final DoubleBufferedNeuralNetwork network = getNetwork(
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.5f));
+        final float[][] initialWeight = network.getPublishedState().getWeight();
+        final Dataset dataset = getValidatedDataset();
+        final TrainerSettings settings = new TrainerSettings();
+        settings.setMaxEpochNumber(1);
+        settings.setSeed(1L);
+        Trainer.getTrainer(network, settings).train(dataset, null);
+        assertFalse(Arrays.deepEquals(initialWeight, network.getPublishedState().getWeight()));
+        assertTrue(Arrays.deepEquals(network.getNetworkStateCopy().getWeight(),
+                network.getPublishedState().getWeight()));
+    }
+
+    public void testValidatedBatchLearningIsPublished()
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final DoubleBufferedNeuralNetwork network = getNetwork(
+                LbfgsLearner.getLbfgsLearner(new QuadraticError(), 5, 10, 0., 1));
+        final float[][] initialWeight = network.getPublishedState().getWeight();
+        final Dataset dataset = getValidatedDataset();
+        final TrainerSettings settings = new TrainerSettings();
+        settings.setMaxEpochNumber(1);
+        settings.setBatchSize(SAMPLE_NUMBER);
+        settings.setShardNumber(1);
+        Trainer.getTrainer(network, settings).train(dataset, null);
+        assertFalse(Arrays.deepEquals(initialWeight, network.getPublishedState().getWeight()));
+        assertTrue(Arrays.deepEquals(network.getNetworkStateCopy().getWeight(),
+                network.getPublishedState().getWeight()));
+    }
+
+    /**
+     * @param learner learning processor
+     * @return network which publishes weights after each learning call
+     * @throws NeuralNetworkGenerationException on failure to create network
+     */
+    private static DoubleBufferedNeuralNetwork getNetwork(LearningProcessor learner)
+            throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(4, 3, LayerInterconnectionDistribution.DISPERSE, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(5, 2, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(2, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(1., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()), learner);
+        settings.setSeed(1L);
+        return DoubleBufferedNeuralNetwork.getDoubleBufferedNetwork(NeuralNetworkFactory.getNetwork(settings), 1, 0);
+    }
+
+    /**
+     * @return normalized view of a random dataset, validated for amplitude 1
+     * @throws NeuralNetworkGenerationException on failure to create normalizer
+     * @throws NeuralNetworkRuntimeException on failure to create dataset
+     */
+    private static Dataset getValidatedDataset()
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final Random random = new Random(2L);
+        final double[][] inputs = new double[SAMPLE_NUMBER][4];
+        final double[][] references = new double[SAMPLE_NUMBER][2];
+        for (int n = 0; n < SAMPLE_NUMBER; n++) {
+            for (int i = 0; i < inputs[n].length; i++) {
+                inputs[n][i] = random.nextDouble() * 10.;
+            }
+            references[n][0] = random.nextDouble();
+            references[n][1] = random.nextDouble();
+        }
+        final InputNormalizer normalizer = InputNormalizer.getInputNormalizer(
+                new double[] {0.1, 0.1, 0.1, 0.1}, new double[4], 1.);
+        final Dataset dataset = normalizer.normalize(new ArrayDataset(inputs, references));
+        assertTrue(dataset.isValidated(1.));
+        return dataset;
+    }
+}
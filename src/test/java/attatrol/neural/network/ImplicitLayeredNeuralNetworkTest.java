@@ -0,0 +1,111 @@
+package attatrol.neural.network;
+
+import java.util.Random;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.topology.ImplicitLayeredTopology;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Round trip test of {@link ImplicitLayeredNeuralNetwork}, network over implicit topology must map input
+ * vectors the same way as {@link NeuralNetwork#map(double[])} of the source network does.
+ */
+public class ImplicitLayeredNeuralNetworkTest extends TestCase {
+
+    /**
+     * Number of compared input vectors
+     */
+    private static final int SAMPLE_NUMBER = 50;
+
+    /**
+     * Allowed difference of engines which keep summation order of the source network
+     */
+    private static final double EXACT_DELTA = 1e-12;
+
+    /**
+     * Topology description of the tested network
+     */
+    private LayeredTopologyDescription description;
+
+    /**
+     * Source network
+     */
+    private NeuralNetwork network;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ImplicitLayeredNeuralNetworkTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ImplicitLayeredNeuralNetworkTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(6, 4, LayerInterconnectionDistribution.DISPERSE, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(8, 3, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(5, 2, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(3, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(1., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.5f));
+        settings.setSeed(1L);
+        network = NeuralNetworkFactory.getNetwork(settings);
+    }
+
+    public void testImplicitLayeredNetwork()
+            throws NeuralNetworkGenerationException, NeuralNetworkRuntimeException {
+        final ImplicitLayeredNeuralNetwork implicit = ImplicitLayeredNeuralNetwork.getImplicitLayeredNeuralNetwork(
+                network, ImplicitLayeredTopology.getImplicitLayeredTopology(description));
+        final Random random = new Random(5L);
+        for (int n = 0; n < SAMPLE_NUMBER; n++) {
+            final double[] input = getInputVector(random);
+            assertVectorEquals(network.map(input), implicit.map(input), EXACT_DELTA);
+        }
+    }
+
+    /**
+     * @param random source of random numbers
+     * @return input vector with coordinates in [0, 1)
+     */
+    private double[] getInputVector(Random random) {
+        final double[] input = new double[network.getNetworkStateCopy().getInputVectorSize()];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextDouble();
+        }
+        return input;
+    }
+
+    /**
+     * @param expected result of the source network
+     * @param actual result of the tested engine
+     * @param delta allowed difference of each coordinate
+     */
+    private static void assertVectorEquals(double[] expected, double[] actual, double delta) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Coordinate " + i, expected[i], actual[i], delta);
+        }
+    }
+}
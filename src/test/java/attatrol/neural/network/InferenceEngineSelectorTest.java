@@ -0,0 +1,95 @@
+package attatrol.neural.network;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.topology.ImplicitLayeredTopology;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import attatrol.neural.topology.LayeredTopologyGenerator;
+import attatrol.neural.topology.TopologyCostModel;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of engine selection by {@link InferenceEngineSelector}.
+ */
+public class InferenceEngineSelectorTest extends TestCase {
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public InferenceEngineSelectorTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(InferenceEngineSelectorTest.class);
+    }
+
+    public void testLocalizedSelectsSerial() throws NeuralNetworkGenerationException {
+        assertSerialSelected(getDescription(LayerInterconnectionDistribution.LOCALIZED));
+    }
+
+    public void testDisperseSelectsSerial() throws NeuralNetworkGenerationException {
+        assertSerialSelected(getDescription(LayerInterconnectionDistribution.DISPERSE));
+    }
+
+    public void testDisperseCostsMoreThanLocalized() throws NeuralNetworkGenerationException {
+        final long localizedCost = InferenceEngineSelector.getEstimatedCost(ImplicitLayeredTopology
+                .getImplicitLayeredTopology(getDescription(LayerInterconnectionDistribution.LOCALIZED)));
+        final long disperseCost = InferenceEngineSelector.getEstimatedCost(ImplicitLayeredTopology
+                .getImplicitLayeredTopology(getDescription(LayerInterconnectionDistribution.DISPERSE)));
+        assertTrue(disperseCost > localizedCost);
+    }
+
+    public void testImplicitCostIsNotEstimatedFromModel() throws NeuralNetworkGenerationException {
+        final TopologyCostModel model = TopologyCostModel.getTopologyCostModel(
+                LayeredTopologyGenerator.generate(getDescription(LayerInterconnectionDistribution.LOCALIZED)));
+        try {
+            InferenceEngineSelector.getEstimatedCost(model, InferenceEngine.IMPLICIT_LAYERED, 1);
+            fail("Implicit layered cost estimated without distributions");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Checks that implicit layered engine, which is available for the description,
+     * loses to serial one on a single processor.
+     * @param description layered topology description
+     * @throws NeuralNetworkGenerationException on failure to generate topology
+     */
+    private static void assertSerialSelected(LayeredTopologyDescription description)
+            throws NeuralNetworkGenerationException {
+        final TopologyCostModel model = TopologyCostModel.getTopologyCostModel(
+                LayeredTopologyGenerator.generate(description));
+        final ImplicitLayeredTopology implicitTopology =
+                ImplicitLayeredTopology.getImplicitLayeredTopology(description);
+        assertTrue(InferenceEngineSelector.getEstimatedCost(implicitTopology)
+                > InferenceEngineSelector.getEstimatedCost(model, InferenceEngine.SERIAL, 1));
+        assertEquals(InferenceEngine.SERIAL, InferenceEngineSelector.select(model, implicitTopology, 1));
+    }
+
+    /**
+     * @param distribution distribution of all layers
+     * @return description of 2000-2000-500 network with 200 and 100 children per neuron
+     * @throws NeuralNetworkGenerationException on invalid layer
+     */
+    private static LayeredTopologyDescription getDescription(LayerInterconnectionDistribution distribution)
+            throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(2000, 200, distribution, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(2000, 100, distribution, LayerType.ORDINARY));
+        description.addLayer(new Layer(500, 1, distribution, LayerType.SURFACE));
+        description.setSeed(1L);
+        return description;
+    }
+}
@@ -0,0 +1,170 @@
+package attatrol.neural.network;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import attatrol.neural.utils.Utils;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of {@link ModelDeltaFile}.
+ */
+public class ModelDeltaFileTest extends TestCase {
+
+    /**
+     * State of the base checkpoint, 310 sources in 2 blocks
+     */
+    private NeuralNetworkState state;
+
+    /**
+     * Delta file
+     */
+    private Path path;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ModelDeltaFileTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ModelDeltaFileTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(200, 3, LayerInterconnectionDistribution.LOCALIZED, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(100, 2, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(10, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(1., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.5f));
+        settings.setSeed(1L);
+        state = NeuralNetworkFactory.getNetwork(settings).getNetworkStateCopy();
+        path = Files.createTempFile("model-delta", ModelDeltaFile.FILE_EXTENSION);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    public void testChainRestoresState() throws IOException {
+        final float[][] baseWeight = Utils.getDeepCopy(state.getWeight());
+        final float[] baseBias = Utils.getCopy(state.getBias());
+        final NeuralNetworkState first = getCopy(state);
+        first.getBias()[3] += 1.f;
+        first.getWeight()[250][0] -= 1.f;
+        // below threshold, block 1 is not written
+        first.getWeight()[305][0] += 0.1f;
+        final boolean[] firstBlocks = ModelDeltaFile.getChangedBlocks(first, baseWeight, baseBias, 0.5f);
+        assertTrue(Arrays.equals(new boolean[] {true, false}, firstBlocks));
+        ModelDeltaFile.write(first, firstBlocks, 0, 1, path);
+        ModelDeltaFile.updateBase(first, firstBlocks, baseWeight, baseBias);
+
+        final NeuralNetworkState second = getCopy(first);
+        second.getWeight()[300][1] *= 2.f;
+        final boolean[] secondBlocks = ModelDeltaFile.getChangedBlocks(second, baseWeight, baseBias, 0.f);
+        assertTrue(Arrays.equals(new boolean[] {false, true}, secondBlocks));
+        final Path secondPath = Files.createTempFile("model-delta", ModelDeltaFile.FILE_EXTENSION);
+        try {
+            ModelDeltaFile.write(second, secondBlocks, 1, 2, secondPath);
+            final NeuralNetworkState restored = getCopy(state);
+            assertEquals(1, ModelDeltaFile.apply(path, restored, 0));
+            assertEquals(first.getBias()[3], restored.getBias()[3]);
+            assertEquals(first.getWeight()[250][0], restored.getWeight()[250][0]);
+            assertEquals(state.getWeight()[305][0], restored.getWeight()[305][0]);
+            assertEquals(2, ModelDeltaFile.apply(secondPath, restored, 1));
+            assertTrue(Arrays.equals(second.getBias(), restored.getBias()));
+            assertTrue(Arrays.deepEquals(second.getWeight(), restored.getWeight()));
+        }
+        finally {
+            Files.deleteIfExists(secondPath);
+        }
+    }
+
+    public void testTruncatedFileLeavesStateIntact() throws IOException {
+        final NeuralNetworkState changed = getCopy(state);
+        changed.getBias()[300] += 1.f;
+        writeDelta(changed, 0, 1);
+        final byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+        assertRejected();
+    }
+
+    public void testDeltaOfOtherTopologyIsRejected() throws IOException {
+        // same source and connection numbers, but block 1 starts 4 bytes later
+        final float[][] weight = Utils.getDeepCopy(state.getWeight());
+        weight[0] = Arrays.copyOf(weight[0], weight[0].length + 1);
+        weight[300] = Arrays.copyOf(weight[300], weight[300].length - 1);
+        final NeuralNetworkState other = new NeuralNetworkState(false, state.getInputVectorAmplitude(),
+                state.getInputVectorSize(), state.getResultVectorSize(), weight, Utils.getCopy(state.getBias()),
+                null, null, state.getChildren(), state.getParents(), state.getTraverseOrder());
+        writeDelta(other, 0, 1);
+        assertRejected();
+    }
+
+    public void testWrongPreviousEpochIsRejected() throws IOException {
+        writeDelta(state, 1, 2);
+        assertRejected();
+    }
+
+    /**
+     * Writes delta of all blocks.
+     * @param changed state to write
+     * @param previousEpochNumber epoch of the previous checkpoint
+     * @param epochNumber epoch of this checkpoint
+     * @throws IOException on failure to write file
+     */
+    private void writeDelta(NeuralNetworkState changed, int previousEpochNumber, int epochNumber)
+            throws IOException {
+        final boolean[] changedBlocks = new boolean[ModelDeltaFile.getBlockNumber(changed.getBias().length)];
+        Arrays.fill(changedBlocks, true);
+        ModelDeltaFile.write(changed, changedBlocks, previousEpochNumber, epochNumber, path);
+    }
+
+    /**
+     * Checks that the delta file is rejected and the state is not changed.
+     */
+    private void assertRejected() {
+        final NeuralNetworkState target = getCopy(state);
+        try {
+            ModelDeltaFile.apply(path, target, 0);
+            fail("Invalid delta is applied");
+        }
+        catch (IOException e) {
+            assertTrue(Arrays.equals(state.getBias(), target.getBias()));
+            assertTrue(Arrays.deepEquals(state.getWeight(), target.getWeight()));
+        }
+    }
+
+    /**
+     * @param source state
+     * @return state with copied weights and biases
+     */
+    private static NeuralNetworkState getCopy(NeuralNetworkState source) {
+        return new NeuralNetworkState(false, source.getInputVectorAmplitude(), source.getInputVectorSize(),
+                source.getResultVectorSize(), Utils.getDeepCopy(source.getWeight()), Utils.getCopy(source.getBias()),
+                null, null, source.getChildren(), source.getParents(), source.getTraverseOrder());
+    }
+}
@@ -0,0 +1,129 @@
+package attatrol.neural.network;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import attatrol.neural.NeuralNetworkRuntimeException;
+import attatrol.neural.activationfunction.SigmoidFunction;
+import attatrol.neural.analysis.ActivationFunctionAnalyzer;
+import attatrol.neural.errorfunction.QuadraticError;
+import attatrol.neural.learning.supervised.BackpropagationLearner;
+import attatrol.neural.topology.Layer;
+import attatrol.neural.topology.LayerInterconnectionDistribution;
+import attatrol.neural.topology.LayerType;
+import attatrol.neural.topology.LayeredTopologyDescription;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of {@link ModelFile} round trip and checksums.
+ */
+public class ModelFileTest extends TestCase {
+
+    /**
+     * Source network
+     */
+    private NeuralNetwork network;
+
+    /**
+     * Model file
+     */
+    private Path path;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public ModelFileTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ModelFileTest.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(6, 4, LayerInterconnectionDistribution.RANDOM, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(8, 3, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(3, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final NeuralNetworkSettings settings = new NeuralNetworkSettings(2., description,
+                new ActivationFunctionAnalyzer(new SigmoidFunction()),
+                BackpropagationLearner.getBackpropagationLearner(new QuadraticError(), 0.5f));
+        settings.setSeed(1L);
+        network = NeuralNetworkFactory.getNetwork(settings);
+        path = Files.createTempFile("model-file", ModelFile.FILE_EXTENSION);
+        ModelFile.write(network, path);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+    }
+
+    public void testRoundTrip() throws IOException, NeuralNetworkRuntimeException {
+        final NeuralNetworkState expected = network.getNetworkStateCopy();
+        final NeuralNetworkState actual = ModelFile.read(path);
+        assertEquals(expected.getInputVectorAmplitude(), actual.getInputVectorAmplitude());
+        assertEquals(expected.getInputVectorSize(), actual.getInputVectorSize());
+        assertEquals(expected.getResultVectorSize(), actual.getResultVectorSize());
+        assertEquals(expected.isRawInput(), actual.isRawInput());
+        assertTrue(Arrays.equals(expected.getBias(), actual.getBias()));
+        assertTrue(Arrays.deepEquals(expected.getWeight(), actual.getWeight()));
+        assertTrue(Arrays.deepEquals(expected.getParents(), actual.getParents()));
+        assertTrue(Arrays.deepEquals(expected.getChildren(), actual.getChildren()));
+        assertTrue(Arrays.equals(expected.getTraverseOrder(), actual.getTraverseOrder()));
+        final NeuralNetwork restored = new NeuralNetwork(actual, network.getAnalythicalProcessor(),
+                network.getLearningProcessor());
+        final double[] input = new double[] {0.1, 1.9, 0.5, 0., 2., 1.3};
+        assertTrue(Arrays.equals(network.map(input), restored.map(input)));
+    }
+
+    public void testCorruptedDataIsRejected() throws IOException {
+        final MappedModel model = ModelFile.map(path);
+        // last byte of the last weight
+        corrupt(ModelFile.getWeightPosition(model.getSourceTotalNumber(), model.getConnectionNumber(),
+                model.getTraverseLength()) + 4 * model.getConnectionNumber() - 1);
+        assertFalse(ModelFile.map(path).isChecksumValid());
+        try {
+            ModelFile.read(path);
+            fail("Corrupted data is not detected");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+        }
+    }
+
+    public void testCorruptedHeaderIsRejected() throws IOException {
+        // input vector amplitude
+        corrupt(24);
+        try {
+            ModelFile.map(path);
+            fail("Corrupted header is not detected");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+        }
+    }
+
+    /**
+     * Flips bits of a byte of the model file.
+     * @param position position of the byte
+     * @throws IOException on failure to read or write file
+     */
+    private void corrupt(long position) throws IOException {
+        final byte[] bytes = Files.readAllBytes(path);
+        bytes[(int) position] ^= 0x5A;
+        Files.write(path, bytes);
+    }
+}
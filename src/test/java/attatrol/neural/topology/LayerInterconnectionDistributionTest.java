@@ -0,0 +1,108 @@
+package attatrol.neural.topology;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of {@link LayerInterconnectionDistribution#RANDOM} generation.
+ */
+public class LayerInterconnectionDistributionTest extends TestCase {
+
+    /**
+     * First index of child layer
+     */
+    private static final int CHILD_LAYER_FIRST_INDEX = 100;
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LayerInterconnectionDistributionTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(LayerInterconnectionDistributionTest.class);
+    }
+
+    public void testRandomIsDeterministic() throws NeuralNetworkGenerationException {
+        final int[][] connections = generateRandom(1000, 700, 37, 5L);
+        assertTrue(Arrays.deepEquals(connections, generateRandom(1000, 700, 37, 5L)));
+        assertFalse(Arrays.deepEquals(connections, generateRandom(1000, 700, 37, 6L)));
+    }
+
+    public void testRandomTopologyIsDeterministic() throws NeuralNetworkGenerationException {
+        final int[][] children = generateTopology(5L).getSourceChildren();
+        assertTrue(Arrays.deepEquals(children, generateTopology(5L).getSourceChildren()));
+        assertFalse(Arrays.deepEquals(children, generateTopology(6L).getSourceChildren()));
+    }
+
+    public void testRandomHasNoDuplicates() throws NeuralNetworkGenerationException {
+        // parents straddle borders of permutations, child number close to child layer size
+        final int[][] sizes = new int[][] {{1000, 700, 37}, {7, 10, 9}, {13, 5, 5}, {50, 9, 8}, {3, 100, 40}};
+        for (int[] size : sizes) {
+            for (long seed = 0; seed < 10; seed++) {
+                assertValid(generateRandom(size[0], size[1], size[2], seed), size[1], size[2]);
+            }
+        }
+    }
+
+    /**
+     * Checks that each parent has distinct children of the child layer
+     * and that numbers of parents per child differ by 1 at most.
+     * @param connections children of each parent, sorted
+     * @param childLayerSize child layer size
+     * @param childPerNeuronNumber number of children per parent
+     */
+    private static void assertValid(int[][] connections, int childLayerSize, int childPerNeuronNumber) {
+        final int[] parentNumber = new int[childLayerSize];
+        for (int[] children : connections) {
+            assertEquals(childPerNeuronNumber, children.length);
+            for (int j = 0; j < children.length; j++) {
+                assertTrue(j == 0 || children[j - 1] < children[j]);
+                parentNumber[children[j] - CHILD_LAYER_FIRST_INDEX]++;
+            }
+        }
+        final int min = Arrays.stream(parentNumber).min().getAsInt();
+        final int max = Arrays.stream(parentNumber).max().getAsInt();
+        assertTrue(max - min <= 1);
+    }
+
+    /**
+     * @param parentLayerSize parent layer size
+     * @param childLayerSize child layer size
+     * @param childPerNeuronNumber number of children per parent
+     * @param seed seed
+     * @return sorted children of each parent
+     * @throws NeuralNetworkGenerationException on invalid sizes
+     */
+    private static int[][] generateRandom(int parentLayerSize, int childLayerSize, int childPerNeuronNumber,
+            long seed) throws NeuralNetworkGenerationException {
+        return LayerInterconnectionDistribution.RANDOM.generateConnections(parentLayerSize, CHILD_LAYER_FIRST_INDEX,
+                CHILD_LAYER_FIRST_INDEX + childLayerSize - 1, childPerNeuronNumber, ConnectionValidation.OFF,
+                new SplittableRandom(seed));
+    }
+
+    /**
+     * @param seed seed of the description
+     * @return random 60-40-10 topology
+     * @throws NeuralNetworkGenerationException on failure to generate topology
+     */
+    private static LayeredTopology generateTopology(long seed) throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(60, 15, LayerInterconnectionDistribution.RANDOM, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(40, 5, LayerInterconnectionDistribution.RANDOM, LayerType.ORDINARY));
+        description.addLayer(new Layer(10, 1, LayerInterconnectionDistribution.RANDOM, LayerType.SURFACE));
+        description.setSeed(seed);
+        return LayeredTopologyGenerator.generate(description);
+    }
+}
@@ -0,0 +1,87 @@
+package attatrol.neural.topology;
+
+import java.util.Arrays;
+
+import attatrol.neural.NeuralNetworkGenerationException;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Tests of traverse order and levels computed by {@link LayeredTopologyGenerator}.
+ */
+public class LayeredTopologyGeneratorTest extends TestCase {
+
+    /**
+     * Create the test case
+     *
+     * @param testName name of the test case
+     */
+    public LayeredTopologyGeneratorTest(String testName) {
+        super(testName);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(LayeredTopologyGeneratorTest.class);
+    }
+
+    public void testLevels() throws NeuralNetworkGenerationException {
+        // 2 input coordinates, neuron 5 has a skip connection from input 0
+        final int[][] children = new int[][] {{2, 5}, {2, 3}, {4, 5}, {4}, {5}, {}};
+        final TraverseLevels levels = LayeredTopologyGenerator.getTraverseLevels(
+                LayeredTopologyGenerator.getParents(children), children, 2);
+        assertTrue(Arrays.equals(new int[] {0, 0, 1, 1, 2, 3}, levels.getDepth()));
+        assertTrue(Arrays.equals(new int[] {0, 0, 2, 3, 4}, levels.getLevelFirstIndex()));
+        assertEquals(4, levels.getLevelNumber());
+        assertEquals(0, levels.getLevelWidth(0));
+        assertEquals(2, levels.getLevelWidth(1));
+        assertTrue(Arrays.equals(new int[] {2, 3, 4, 5}, levels.getForwardTraverseNeuronsOrder()));
+    }
+
+    public void testCycleIsRejected() {
+        // neurons 3 and 4 feed each other
+        final int[][] children = new int[][] {{2}, {3}, {5}, {4}, {3, 5}, {}};
+        try {
+            LayeredTopologyGenerator.getTraverseLevels(LayeredTopologyGenerator.getParents(children), children, 2);
+            fail("Cycle is not detected");
+        }
+        catch (NeuralNetworkGenerationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("3 neurons can not be reached: [3, 4, 5]"));
+        }
+    }
+
+    public void testLayersAreLevels() throws NeuralNetworkGenerationException {
+        final LayeredTopologyDescription description = new LayeredTopologyDescription();
+        description.addLayer(new Layer(6, 4, LayerInterconnectionDistribution.RANDOM, LayerType.INPUT_VECTOR));
+        description.addLayer(new Layer(8, 3, LayerInterconnectionDistribution.LOCALIZED, LayerType.ORDINARY));
+        description.addLayer(new Layer(5, 2, LayerInterconnectionDistribution.DISPERSE, LayerType.ORDINARY));
+        description.addLayer(new Layer(3, 1, LayerInterconnectionDistribution.DISPERSE, LayerType.SURFACE));
+        description.setSeed(1L);
+        final LayeredTopology topology = LayeredTopologyGenerator.generate(description);
+        final int[] firstIndexOfLayer = topology.getFirstIndexOfLayer();
+        assertEquals(4, firstIndexOfLayer.length);
+        final TraverseLevels levels = LayeredTopologyGenerator.getTraverseLevels(topology.getSourceParents(),
+                topology.getSourceChildren(), topology.getNeuronFirstIndex());
+        for (int layer = 0; layer < firstIndexOfLayer.length; layer++) {
+            final int last = layer + 1 < firstIndexOfLayer.length
+                    ? firstIndexOfLayer[layer + 1] : topology.getSourceTotalNumber();
+            for (int i = firstIndexOfLayer[layer]; i < last; i++) {
+                assertEquals(layer, levels.getDepth()[i]);
+            }
+        }
+        // every neuron comes after its parents
+        final int[] position = new int[topology.getSourceTotalNumber()];
+        final int[] order = topology.getForwardTraverseNeuronsOrder();
+        for (int i = 0; i < order.length; i++) {
+            position[order[i]] = i + 1;
+        }
+        for (int neuron : order) {
+            for (int parent : topology.getSourceParents()[neuron]) {
+                assertTrue(parent < topology.getNeuronFirstIndex() || position[parent] < position[neuron]);
+            }
+        }
+    }
+}